@@ -1,17 +1,21 @@
 package ar;
 
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 
 import ar.aggregates.AggregateUtils;
+import ar.aggregates.implementations.TiledAggregates;
+import ar.aggregates.wrappers.TouchedBoundsWrapper;
 import ar.glyphsets.*;
 import ar.glyphsets.implicitgeometry.Indexed;
 import ar.glyphsets.implicitgeometry.Valuer.Constant;
 import ar.glyphsets.implicitgeometry.Indexed.ToRect;
 import ar.renderers.ForkJoinRenderer;
+import ar.renderers.ThreadpoolRenderer;
 import ar.rules.Advise;
 import ar.rules.General;
 import ar.rules.Numbers;
@@ -31,6 +35,7 @@ public class BatchExport {
 		String source = argKey(args, "-data", "../data/circlepoints.hbin");
 		String outPattern = argKey(args, "-out", "./result%s.csv");
 		double size = Double.parseDouble(argKey(args, "-size", ".1"));
+		int tileSize = Integer.parseInt(argKey(args, "-tileSize", "0"));	//Zero: tile only very large outputs (see AggregateUtils.TILED_CELLS) 
 		
 		if (widths.length != heights.length) {
 			System.err.println("Must provide same number of widths as heights\n"); 
@@ -58,13 +63,29 @@ public class BatchExport {
 				int height = Integer.parseInt(heights[i]);
 				System.out.printf("Processing %s at %dx%d\n", source, width, height);
 				AffineTransform ivt = Util.zoomFit(glyphs.bounds(), width, height).createInverse();
-				Aggregates<Integer> aggs = render.aggregate(glyphs, selector, aggregator, ivt);
+				Aggregates<Integer> aggs;
+				if (tileSize > 0) {
+					Rectangle bounds = ivt.createTransformedShape(glyphs.bounds()).getBounds();
+					aggs = render.aggregate(glyphs, selector, aggregator, ivt, 
+							(defVal) -> TouchedBoundsWrapper.wrap(TiledAggregates.make(bounds.x, bounds.y, (int) bounds.getMaxX(), (int) bounds.getMaxY(), defVal, tileSize), false),
+							ThreadpoolRenderer.defaultMerge(aggregator));
+				} else {
+					aggs = render.aggregate(glyphs, selector, aggregator, ivt);
+				}
+				Aggregates<?> base = aggs instanceof TouchedBoundsWrapper ? ((TouchedBoundsWrapper<?>) aggs).base() : aggs;
+
 				String filepart = String.format("%dx%d", width, height);
 				String filename = String.format(outPattern, filepart);
-				System.out.printf("\t Writing to %s\n", filename);
-				if (filename.endsWith("csv")) {
+				if (filename.endsWith("csv") && base instanceof TiledAggregates) {
+					String tilePattern = String.format(outPattern, filepart + "-tile%d-%d");
+					System.out.printf("\t Writing tiles to %s\n", tilePattern);
+					int written = AggregatesToCSV.exportTiles((TiledAggregates<?>) base, tilePattern);
+					System.out.printf("\t %d non-empty tiles\n", written);
+				} else if (filename.endsWith("csv")) {
+					System.out.printf("\t Writing to %s\n", filename);
 					AggregatesToCSV.export(aggs, new File(filename));
 				} else {
+					System.out.printf("\t Writing to %s\n", filename);
 					//Transfer<Number, Color> t = new Numbers.FixedInterpolate(Color.white, Color.red, 0, 25);
 					//Transfer<Number, Color> t = new Advise.DrawDark(Color.black, Color.white, 5);;
 					//Transfer<Number, Color> t = new Numbers.Interpolate<>(new Color(255,0,0,38), Color.red);
@@ -4,18 +4,31 @@ import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 
 import ar.*;
 import ar.app.util.ActionProvider;
 import ar.app.util.MostRecentOnlyExecutor;
 import ar.app.util.ZoomPanHandler;
+import ar.glyphsets.MemMapList;
+import ar.glyphsets.SpatialIndex;
+import ar.renderers.AggregatePyramid;
+import ar.renderers.Cancellation;
+import ar.renderers.ProgressiveRenderer;
 import ar.selectors.TouchesPixel;
 import ar.util.Util;
 import ar.util.axis.Axis;
 import ar.util.axis.DescriptorPair;
 
 /**Render and display exactly what fits on the screen.
+ * 
+ * If the dataset is a SpatialIndex (or a MemMapList with a block index), 
+ * only glyphs in the visible region are aggregated (so any non-provisional pan/zoom triggers a new render).
+ * 
+ * If an aggregate pyramid is set (or the PYRAMID_CACHE_BYTES system property is positive),
+ * aggregates are served from the pyramid at the nearest power-of-two zoom level 
+ * (so revisited views and zoom-outs do not re-aggregate, and pans only aggregate newly exposed tiles).
  */
 public class AggregatingDisplay extends ARComponent.Aggregating {
 	protected static final long serialVersionUID = 1L;
@@ -33,12 +46,21 @@ public class AggregatingDisplay extends ARComponent.Aggregating {
 	protected volatile boolean renderError = false;
 	protected volatile Aggregates<?> aggregates;
 	protected ExecutorService renderPool = new MostRecentOnlyExecutor(1,"FullDisplay Render Thread");
+	
+	/**Token for the most recently requested render; cancelled when a newer render is requested.**/
+	private volatile Cancellation rendering = new Cancellation();
 		
 	protected final Renderer renderer;
 	
+	/**Memory budget (bytes) for the default aggregate pyramid.  
+	 * May be set as a system parameter (-DPYRAMID_CACHE_BYTES=x); no pyramid is used by default.**/
+	public static final long PYRAMID_CACHE_BYTES = Long.parseLong(System.getProperty("PYRAMID_CACHE_BYTES", "0"));
+	protected volatile AggregatePyramid pyramid;
+	
 	public AggregatingDisplay(Renderer renderer) {
 		super();
 		this.renderer = renderer;
+		this.pyramid = PYRAMID_CACHE_BYTES > 0 ? new AggregatePyramid(renderer, PYRAMID_CACHE_BYTES) : null;
 		display = new TransferDisplay(renderer);
 		this.setLayout(new BorderLayout());
 		this.add(display, BorderLayout.CENTER);
@@ -66,6 +88,15 @@ public class AggregatingDisplay extends ARComponent.Aggregating {
 	}
 	
 	@Override public Renderer renderer() {return renderer;}
+	
+	/**Aggregate pyramid used for rendering (null if none).**/
+	public AggregatePyramid pyramid() {return pyramid;}
+	
+	/**Set the aggregate pyramid used for rendering (null to aggregate the whole dataset for each new zoom level).**/
+	public void pyramid(AggregatePyramid pyramid) {
+		this.pyramid = pyramid;
+		renderAgain();
+	}
 	@Override public Glyphset<?,?> dataset() {return dataset;}
 
 	public void dataset(Glyphset<?,?> data, Aggregator<?,?> aggregator, Transfer<?,?> transfer) {dataset(data,aggregator, transfer, true);}
@@ -113,7 +144,9 @@ public class AggregatingDisplay extends ARComponent.Aggregating {
 			g.setColor(Color.GRAY);
 			g.fillRect(0, 0, this.getWidth(), this.getHeight());
  		} else if (fullRender) {
-			action = new AggregateRender();
+			rendering.cancel();
+			rendering = new Cancellation();
+			action = new AggregateRender(rendering);
 			renderPool.execute(action);
 			fullRender = false;
 		} 
@@ -133,11 +166,13 @@ public class AggregatingDisplay extends ARComponent.Aggregating {
 	@Override public AffineTransform viewTransform() {return display.viewTransform();}	
 	@Override public AffineTransform renderTransform() {return new AffineTransform(renderedTransform);}	
 	@Override public void viewTransform(AffineTransform vt, boolean provisional) {
-		//Only force full re-render if the zoom factor changed non-provisionally
+		//Only force full re-render if the zoom factor changed non-provisionally (or the visible glyphs may have changed)
 		fullRender = !provisional 
 				&& (renderedTransform == null 
 					|| vt.getScaleX() != renderedTransform.getScaleX()
-					|| vt.getScaleY() != renderedTransform.getScaleY());
+					|| vt.getScaleY() != renderedTransform.getScaleY()
+					|| culls()
+					|| pyramid != null);
 		display.viewTransform(vt, provisional); 		
 		repaint();
 	}
@@ -160,7 +195,16 @@ public class AggregatingDisplay extends ARComponent.Aggregating {
 	
 	public Rectangle2D dataBounds() {return dataset.bounds();}
 	
+	/**Does the dataset support rendering only the visible glyphs?**/
+	private boolean culls() {
+		return dataset instanceof SpatialIndex 
+				|| (dataset instanceof MemMapList && ((MemMapList<?,?>) dataset).blockIndex() != null);
+	}
+	
 	private final class AggregateRender implements Runnable {
+		private final Cancellation cancel;
+		
+		public AggregateRender(Cancellation cancel) {this.cancel = cancel;}
 		
 		public void run() {
 			try {
@@ -172,8 +216,40 @@ public class AggregatingDisplay extends ARComponent.Aggregating {
 				@SuppressWarnings({"rawtypes"})
 				Selector selector = TouchesPixel.make(dataset);
 				
-				@SuppressWarnings({"unchecked","rawtypes"})
-				Aggregates<?> a = renderer.aggregate(dataset, selector, (Aggregator) aggregator, rt);
+				Glyphset<?,?> glyphs = dataset;
+				Rectangle viewport = new Rectangle(0,0, getWidth(), getHeight());
+				AggregatePyramid pyramid = AggregatingDisplay.this.pyramid;
+				if (pyramid != null) {
+					@SuppressWarnings({"unchecked","rawtypes"})
+					AggregatePyramid.View<?> view = cancel.during(() -> pyramid.aggregate((Glyphset) dataset, selector, (Aggregator) aggregator, vt, viewport));
+					AggregatingDisplay.this.aggregates(view.aggregates, view.renderTransform, dataset.axisDescriptors());
+					AggregatingDisplay.this.repaint();
+					return;
+				}
+				
+				if (dataset instanceof SpatialIndex) {
+					glyphs = ((SpatialIndex<?,?>) dataset).visible(vt, viewport);
+				} else if (culls()) {
+					glyphs = ((MemMapList<?,?>) dataset).visible(vt, viewport);
+				}
+				
+				Aggregates<?> a;
+				if (renderer instanceof ProgressiveRenderer) {
+					//Show estimates from partial renders until the full render completes
+					Glyphset<?,?> visible = glyphs;
+					@SuppressWarnings({"unchecked","rawtypes"})
+					Aggregates<?> full = cancel.during(() -> ((ProgressiveRenderer) renderer).aggregate(
+							(Glyphset) visible, selector, (Aggregator) aggregator, rt, ProgressiveRenderer.numbers(), 
+							(partial, fraction) -> {
+								AggregatingDisplay.this.aggregates((Aggregates<?>) partial, rt, dataset.axisDescriptors());
+								AggregatingDisplay.this.repaint();
+							}));
+					a = full;
+				} else {
+					@SuppressWarnings({"unchecked","rawtypes"})
+					Aggregates<?> full = renderer.aggregate((Glyphset) glyphs, selector, (Aggregator) aggregator, rt, cancel);
+					a = full;
+				}
 				
 				AggregatingDisplay.this.aggregates(a, rt, dataset.axisDescriptors());
 				if (PERFORMANCE_REPORTING) {
@@ -183,6 +259,8 @@ public class AggregatingDisplay extends ARComponent.Aggregating {
 							aggregates.highY()-aggregates.lowY());
 				}
 				
+			} catch (CancellationException e) {
+				return;		//Superseded by a newer render (which will repaint)
 			} catch (Exception e) {
 				renderError = true;
 				String msg = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
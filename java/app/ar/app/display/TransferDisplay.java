@@ -183,7 +183,7 @@ public class TransferDisplay extends ARComponent {
 				Aggregates<?> aggs = aggregates;
 				if (aggs == null) {return;}
 								
-				Transfer.Specialized ts = transfer.specialize((Aggregates) refAggregates());
+				Transfer.Specialized ts = renderer.metrics().specialize(transfer, (Aggregates) refAggregates());
 				postTransferAggregates = renderer.transfer(aggs, ts);
 				
 				int width = TransferDisplay.this.getWidth();
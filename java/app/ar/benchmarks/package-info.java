@@ -1,2 +1,4 @@
-/**Benchmark code.  Used for cost profiling, performance tuning and writing papers.**/
-package ar.benchmarks;
\ No newline at end of file
+/**Benchmark code.  Used for cost profiling, performance tuning and writing papers.
+ * Whole-pipeline timings on real data sets live here; micro-benchmarks (JMH) are in ar.benchmarks.jmh (bench source tree).
+ **/
+package ar.benchmarks;
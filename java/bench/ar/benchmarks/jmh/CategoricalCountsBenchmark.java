@@ -0,0 +1,48 @@
+package ar.benchmarks.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ar.rules.CategoricalCounts;
+
+/**Building categorical counts one item at a time (as the categorical aggregators do per glyph).**/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CategoricalCountsBenchmark {
+	@Param({"2", "10", "100"})
+	public int categories;
+
+	/**Items added per invocation.**/
+	@Param({"1000"})
+	public int items;
+
+	private Integer[] keys;
+
+	@Setup
+	public void setup() {
+		keys = new Integer[items];
+		for (int i=0; i<items; i++) {keys[i] = (int) (Synthetic.uniform(i)*categories);}
+	}
+
+	@Benchmark
+	public CategoricalCounts<Integer> extend() {
+		CategoricalCounts<Integer> counts = new CategoricalCounts<>();
+		for (Integer key: keys) {counts = counts.extend(key, 1);}
+		return counts;
+	}
+}
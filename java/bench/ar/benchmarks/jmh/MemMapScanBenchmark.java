@@ -0,0 +1,78 @@
+package ar.benchmarks.jmh;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ar.Glyph;
+import ar.Glyphset;
+import ar.glyphsets.MemMapList;
+import ar.glyphsets.implicitgeometry.Indexed;
+import ar.util.memoryMapping.MemMapEncoder;
+
+/**Full scan of a memory-mapped (hbin) glyphset, serially and by segment.
+ * 
+ * The hbin file is encoded from synthetic points during setup (and removed on teardown).
+ * **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MemMapScanBenchmark {
+	@Param({"1000000"})
+	public int size;
+
+	@Param({"16"})
+	public int segments;
+
+	private File csv, hbin;
+	private MemMapList<Point2D, Integer> glyphs;
+
+	@Setup
+	public void setup() throws Exception {
+		csv = File.createTempFile("memMapBench", ".csv");
+		hbin = File.createTempFile("memMapBench", ".hbin");
+		try (PrintWriter out = new PrintWriter(csv)) {
+			out.println("x,y,v");
+			for (long i=0; i<size; i++) {out.printf("%f,%f,%d%n", Synthetic.x(i), Synthetic.y(i), (int) (Synthetic.uniform(i)*10));}
+		}
+		MemMapEncoder.write(csv, 1, hbin, "ddi".toCharArray());
+		glyphs = new MemMapList<>(hbin, new Indexed.ToPoint(false, 0, 1), new Indexed.ToValue<Integer,Integer>(2));
+	}
+
+	@TearDown
+	public void teardown() {
+		csv.delete();
+		hbin.delete();
+	}
+
+	@Benchmark
+	public double scan() {return sum(glyphs);}
+
+	@Benchmark
+	public double segmentedScan() {
+		return glyphs.segment(segments).parallelStream().mapToDouble(MemMapScanBenchmark::sum).sum();
+	}
+
+	private static double sum(Glyphset<Point2D, Integer> glyphs) {
+		double acc = 0;
+		for (Glyph<Point2D, Integer> g: glyphs) {acc += g.shape().getX() + g.info();}
+		return acc;
+	}
+}
@@ -0,0 +1,102 @@
+package ar.benchmarks.jmh;
+
+import java.awt.Color;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.implementations.RefFlatAggregates;
+import ar.rules.General;
+import ar.rules.Numbers;
+
+/**Merge of two aligned aggregate sets with AggregateUtils.__unsafeMerge.
+ * 
+ * The left-hand aggregates is the merge target, so values accumulate across invocations 
+ * (this does not change the work done per invocation).
+ * Merges only split into parallel row-bands when called from a fork/join pool, 
+ * so the parallel case runs the merge in a pool held by the benchmark state; the serial case calls it directly.
+ * **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MergeBenchmark {
+	/**Aggregates representation: INT/DOUBLE/COLOR use the primitive-backed implementations; REF uses RefFlatAggregates.**/
+	@Param({"INT", "DOUBLE", "COLOR", "REF"})
+	public String type;
+
+	@Param({"1000"})
+	public int width;
+
+	/**Fraction of cells holding a non-identity value in the right-hand aggregates.**/
+	@Param({"0.1", "1"})
+	public double density;
+
+	/**Merge in a fork/join pool (parallel row-bands) or on the benchmark thread (serial)?**/
+	@Param({"true", "false"})
+	public boolean parallel;
+
+	private Aggregates<Object> left, right;
+	private ForkJoinPool pool;
+	private Aggregator<?, Object> op;
+
+	@Setup
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public void setup() {
+		Object value;
+		if (type.equals("INT") || type.equals("REF")) {
+			op = (Aggregator) new Numbers.Count<>();
+			value = 1;
+		} else if (type.equals("DOUBLE")) {
+			op = (Aggregator) new Numbers.Sum.Double();
+			value = 1d;
+		} else if (type.equals("COLOR")) {
+			op = (Aggregator) new General.Last<>(Color.white);
+			value = Color.red;
+		} else {
+			throw new IllegalArgumentException("Unknown aggregates type: " + type);
+		}
+
+		pool = new ForkJoinPool();
+		left = aggregates(op.identity());
+		right = aggregates(op.identity());
+		for (int x=0; x<width; x++) {
+			for (int y=0; y<width; y++) {
+				left.set(x, y, value);
+				if (Synthetic.uniform(x*width+y) < density) {right.set(x, y, value);}
+			}
+		}
+	}
+
+	private Aggregates<Object> aggregates(Object identity) {
+		if (type.equals("REF")) {return new RefFlatAggregates<>(width, width, identity);}
+		return AggregateUtils.make(width, width, identity);
+	}
+
+	@TearDown
+	public void teardown() {pool.shutdown();}
+
+	@Benchmark
+	public Aggregates<Object> merge() {
+		if (parallel) {return pool.invoke(ForkJoinTask.adapt(() -> AggregateUtils.__unsafeMerge(left, right, op)));}
+		return AggregateUtils.__unsafeMerge(left, right, op);
+	}
+}
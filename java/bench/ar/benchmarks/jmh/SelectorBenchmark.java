@@ -0,0 +1,63 @@
+package ar.benchmarks.jmh;
+
+import java.awt.geom.AffineTransform;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.Glyphset;
+import ar.Selector;
+import ar.aggregates.AggregateUtils;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+import ar.util.Util;
+
+/**Selector throughput (glyphs per second) for each geometry type, counting into a single aggregates set.**/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SelectorBenchmark {
+	@Param({"POINTS", "RECTANGLES", "LINES", "SHAPES", "POLYGONS"})
+	public Synthetic.Geometry geometry;
+
+	@Param({"100000"})
+	public int size;
+
+	@Param({"800"})
+	public int width;
+
+	private Glyphset<Object, Integer> glyphs;
+	private Selector<Object> selector;
+	private AffineTransform view;
+	private Aggregator<Object, Integer> op;
+	private Aggregates<Integer> target;
+
+	@Setup
+	public void setup() {
+		glyphs = Synthetic.materialize(Synthetic.glyphs(geometry, size, 1));
+		selector = TouchesPixel.make(glyphs);
+		view = Util.zoomFit(glyphs.bounds(), width, width);
+		op = new Numbers.Count<>();
+		target = AggregateUtils.make(width, width, op.identity());
+	}
+
+	@Benchmark
+	public Aggregates<Integer> processSubset() {
+		return selector.processSubset(glyphs, view, target, op);
+	}
+}
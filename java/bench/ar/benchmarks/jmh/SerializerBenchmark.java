@@ -0,0 +1,65 @@
+package ar.benchmarks.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ar.Aggregates;
+import ar.aggregates.AggregateUtils;
+import ar.ext.avro.AggregateSerializer;
+import ar.ext.avro.Converters;
+import ar.ext.avro.SchemaComposer;
+
+/**Round trip of count aggregates through the avro AggregateSerializer.**/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+	@Param({"256", "1000"})
+	public int width;
+
+	@Param({"BINARY", "JSON"})
+	public AggregateSerializer.FORMAT format;
+
+	private Aggregates<Integer> counts;
+	private Schema schema;
+	private byte[] serialized;
+
+	@Setup
+	public void setup() throws Exception {
+		counts = AggregateUtils.make(width, width, 0);
+		for (int x=0; x<width; x++) {
+			for (int y=0; y<width; y++) {counts.set(x, y, (int) (Synthetic.uniform(x*width+y)*100));}
+		}
+		schema = new SchemaComposer().addResource(AggregateSerializer.COUNTS_SCHEMA).resolved();
+		serialized = serialize();
+	}
+
+	@Benchmark
+	public byte[] serialize() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AggregateSerializer.serialize(counts, out, schema, format, new Converters.FromCount(schema));
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public Aggregates<Integer> deserialize() {
+		return AggregateSerializer.deserialize(new ByteArrayInputStream(serialized), new Converters.ToCount());
+	}
+}
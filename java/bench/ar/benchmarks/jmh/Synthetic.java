@@ -0,0 +1,78 @@
+package ar.benchmarks.jmh;
+
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.function.Function;
+
+import ar.Glyph;
+import ar.Glyphset;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SyntheticGlyphset;
+
+/**Deterministic synthetic data for the benchmarks.
+ * 
+ * Coordinates are derived from the glyph index (not Math.random) so runs are repeatable.
+ * All geometry falls in the 100x100 bounds reported by SyntheticGlyphset.
+ * **/
+public final class Synthetic {
+	private Synthetic() {}
+
+	/**Geometry types with a TouchesPixel selector.**/
+	public static enum Geometry {POINTS, RECTANGLES, LINES, SHAPES, POLYGONS}
+
+	/**Uniform value in [0,1) derived from a seed.**/
+	public static double uniform(long seed) {
+		long z = seed * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return (z >>> 11) * 0x1.0p-53;
+	}
+
+	public static double x(long i) {return uniform(2*i)*98;}
+	public static double y(long i) {return uniform(2*i+1)*98;}
+
+	/**Shaper for the requested geometry type.**/
+	public static Function<Long, ? extends Object> shaper(Geometry geometry) {
+		switch (geometry) {
+			case POINTS: return i -> new Point2D.Double(x(i), y(i));
+			case RECTANGLES: return i -> new Rectangle2D.Double(x(i), y(i), 1, 1);
+			case LINES: return i -> new Line2D.Double(x(i), y(i), x(i+1), y(i+1));
+			case SHAPES: return i -> (Shape) new Ellipse2D.Double(x(i), y(i), 2, 2);
+			case POLYGONS: return i -> polygon(i, 64);
+			default: throw new IllegalArgumentException("Unknown geometry: " + geometry);
+		}
+	}
+
+	/**Irregular polygon (like a county outline) that fits in the same 2x2 box as the SHAPES ellipses.**/
+	public static Shape polygon(long i, int vertices) {
+		Path2D p = new Path2D.Double();
+		double cx = x(i)+1, cy = y(i)+1;
+		for (int v=0; v<vertices; v++) {
+			double angle = 2*Math.PI*v/vertices;
+			double radius = .6 + .4*uniform(i*vertices + v);
+			if (v == 0) {p.moveTo(cx + radius*Math.cos(angle), cy + radius*Math.sin(angle));}
+			else {p.lineTo(cx + radius*Math.cos(angle), cy + radius*Math.sin(angle));}
+		}
+		p.closePath();
+		return p;
+	}
+
+	/**Synthetic glyphset of the requested geometry with integer categories in [0, categories).**/
+	@SuppressWarnings("unchecked")
+	public static <G> Glyphset.RandomAccess<G, Integer> glyphs(Geometry geometry, long size, int categories) {
+		Function<Long, G> shaper = (Function<Long, G>) shaper(geometry);
+		return new SyntheticGlyphset<>(size, shaper, i -> (int) (uniform(i) * categories));
+	}
+
+	/**Synthetic glyphs copied into a list, so benchmarks do not measure glyph generation.**/
+	public static <G> GlyphList<G, Integer> materialize(Glyphset<G, Integer> glyphs) {
+		GlyphList<G, Integer> list = new GlyphList<>();
+		for (Glyph<G, Integer> g: glyphs) {list.add(g);}
+		return list;
+	}
+}
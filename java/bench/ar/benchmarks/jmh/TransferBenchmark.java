@@ -0,0 +1,110 @@
+package ar.benchmarks.jmh;
+
+import java.awt.Color;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ar.Aggregates;
+import ar.Transfer;
+import ar.aggregates.AggregateUtils;
+import ar.renderers.tasks.PixelParallelTransfer;
+import ar.rules.Numbers;
+
+/**Pixel-parallel transfer (count to color interpolation) at various task sizes.
+ * Canvases are 16:9 (7680 wide is an 8K canvas).
+ * 'legacy' is the column-major, quad-split transfer that PixelParallelTransfer replaced (for comparison).
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+	@Param({"1000", "7680"})
+	public int width;
+
+	/**Maximum cells per task (PixelParallelTransfer splits until a task is smaller).**/
+	@Param({"1000", "100000"})
+	public long taskSize;
+
+	private int height;
+	private ForkJoinPool pool;
+	private Aggregates<Integer> counts;
+	private Aggregates<Color> colors;
+	private Transfer.ItemWise<Number, Color> transfer;
+
+	@Setup
+	public void setup() {
+		pool = new ForkJoinPool();
+		height = width*9/16;
+		counts = AggregateUtils.make(width, height, 0);
+		for (int x=0; x<width; x++) {
+			for (int y=0; y<height; y++) {counts.set(x, y, (int) (Synthetic.uniform(x*height+y)*100));}
+		}
+		transfer = new Numbers.Interpolate<Number>(Color.white, Color.red).specialize(counts);
+		colors = AggregateUtils.make(counts, transfer.emptyValue());
+	}
+
+	@TearDown
+	public void teardown() {pool.shutdown();}
+
+	@Benchmark
+	public Aggregates<Color> transfer() {
+		pool.invoke(new PixelParallelTransfer<>(counts, colors, transfer, taskSize, 0, 0, width, height));
+		return colors;
+	}
+
+	@Benchmark
+	public Aggregates<Color> legacy() {
+		pool.invoke(new Legacy(counts, colors, transfer, taskSize, 0, 0, width, height));
+		return colors;
+	}
+	
+	private static final class Legacy extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Aggregates<Integer> in;
+		private final Aggregates<Color> out;
+		private final Transfer.ItemWise<Number, Color> t;
+		private final long taskSize;
+		private final int lowX, lowY, highX, highY;
+		
+		Legacy(Aggregates<Integer> in, Aggregates<Color> out, Transfer.ItemWise<Number, Color> t, long taskSize, int lowX, int lowY, int highX, int highY) {
+			this.in = in;
+			this.out = out;
+			this.t = t;
+			this.taskSize = taskSize;
+			this.lowX = lowX;
+			this.lowY = lowY;
+			this.highX = highX;
+			this.highY = highY;
+		}
+		
+		@Override
+		protected void compute() {
+			if (((long) highX-lowX)*(highY-lowY) >= taskSize) {
+				int cx = (lowX+highX)/2, cy = (lowY+highY)/2;
+				invokeAll(new Legacy(in, out, t, taskSize, lowX, lowY, cx, cy), new Legacy(in, out, t, taskSize, lowX, cy, cx, highY),
+						  new Legacy(in, out, t, taskSize, cx, lowY, highX, cy), new Legacy(in, out, t, taskSize, cx, cy, highX, highY));
+			} else {
+				for (int x=lowX; x<highX; x++) {
+					for (int y=lowY; y<highY; y++) {out.set(x, y, t.at(x, y, in));}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,7 @@
+/**JMH benchmarks for the aggregation, transfer, merge and I/O hot paths.
+ * 
+ * All benchmarks run on synthetic data (see Synthetic), so no data files are required.
+ * Build with "ant fetch-bench bench", then run with "ant run-bench" 
+ * (pass JMH options with -Dbench.args="...", e.g. -Dbench.args="SelectorBenchmark -p geometry=POINTS").
+ * **/
+package ar.benchmarks.jmh;
@@ -89,4 +89,39 @@ public interface Aggregates<A> extends Serializable, Iterable<A> {
 	 * By default, always assume a set of aggregates is not empty.   
 	 */
 	public default boolean empty() {return false;}
+	
+	
+	/**Aggregates that store int values and permit access without boxing.
+	 * Out-of-bounds behavior matches get/set.
+	 */
+	public static interface IntAccess extends Aggregates<Integer> {
+		public int getInt(int x, int y);
+		public void setInt(int x, int y, int val);
+	}
+
+	/**Aggregates that store long values and permit access without boxing.**/
+	public static interface LongAccess extends Aggregates<Long> {
+		public long getLong(int x, int y);
+		public void setLong(int x, int y, long val);
+	}
+
+	/**Aggregates that store double values and permit access without boxing.**/
+	public static interface DoubleAccess extends Aggregates<Double> {
+		public double getDouble(int x, int y);
+		public void setDouble(int x, int y, double val);
+	}
+
+	/**Aggregates that may be safely updated by many threads at once.
+	 * 
+	 * Get/set are individually thread-safe, but a get followed by a set is not atomic.
+	 * Concurrent updates must go through 'update' instead.  This enables many 
+	 * aggregation tasks to share a single target (instead of merging many targets).
+	 */
+	public static interface Concurrent<A> extends Aggregates<A> {
+		/**Atomically replace the value at x/y with op.combine(value at x/y, v).
+		 * The combine operation may be invoked more than once if there is contention.
+		 * Setting outside of the region should result in a no-op (matching 'set').
+		 */
+		public <I> void update(int x, int y, I v, Aggregator<I,A> op);
+	}
 }
@@ -51,4 +51,54 @@ public interface Aggregator<IN,OUT> extends Serializable {
 	 * property (for example, pixel-serial rendering just uses it for the ag).
 	 **/
 	public OUT identity();
+	
+	
+	/**Aggregator that produces int values and can operate without boxing them.
+	 * 
+	 * Selectors check for this interface (paired with Aggregates.IntAccess targets)
+	 * to take an allocation-free path through the aggregation loop.
+	 * The boxed methods are provided in terms of the primitive ones.
+	 */
+	public static interface IntAggregator<IN> extends Aggregator<IN, Integer> {
+		public int combineInt(int current, IN update);
+		public int rollupInt(int left, int right);
+		public int identityInt();
+
+		@Override public default Integer combine(Integer current, IN update) {return combineInt(current, update);}
+		@Override public default Integer rollup(Integer left, Integer right) {return rollupInt(left, right);}
+		@Override public default Integer identity() {return identityInt();}
+	}
+
+	/**Aggregator that produces long values and can operate without boxing them.**/
+	public static interface LongAggregator<IN> extends Aggregator<IN, Long> {
+		public long combineLong(long current, IN update);
+		public long rollupLong(long left, long right);
+		public long identityLong();
+
+		@Override public default Long combine(Long current, IN update) {return combineLong(current, update);}
+		@Override public default Long rollup(Long left, Long right) {return rollupLong(left, right);}
+		@Override public default Long identity() {return identityLong();}
+	}
+
+	/**Aggregator that produces double values and can operate without boxing them.**/
+	public static interface DoubleAggregator<IN> extends Aggregator<IN, Double> {
+		public double combineDouble(double current, IN update);
+		public double rollupDouble(double left, double right);
+		public double identityDouble();
+
+		@Override public default Double combine(Double current, IN update) {return combineDouble(current, update);}
+		@Override public default Double rollup(Double left, Double right) {return rollupDouble(left, right);}
+		@Override public default Double identity() {return identityDouble();}
+	}
+	
+	/**Int aggregator that also accepts primitive double inputs.
+	 * Selectors use this to aggregate value columns (e.g., ColumnarGlyphset) without boxing.**/
+	public static interface IntFromDouble<IN> extends IntAggregator<IN> {
+		public int combineInt(int current, double update);
+	}
+
+	/**Double aggregator that also accepts primitive double inputs.**/
+	public static interface DoubleFromDouble<IN> extends DoubleAggregator<IN> {
+		public double combineDouble(double current, double update);
+	}
 }
@@ -2,10 +2,13 @@ package ar;
 
 import java.awt.geom.AffineTransform;
 import java.io.Serializable;
+import java.util.concurrent.CancellationException;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
+import ar.renderers.Cancellation;
 import ar.renderers.ProgressRecorder;
+import ar.renderers.RenderMetrics;
 import ar.Selector;
 
 /**A renderer implements a strategy for converting glyphs (geometry+data) into images.
@@ -66,6 +69,41 @@ public interface Renderer extends Serializable {
 	public <IN,OUT> Aggregates<OUT> transfer(Aggregates<? extends IN> aggregates, 
 											 Transfer.ItemWise<IN, OUT> t);
 
+	/**Aggregate, stopping early if the token is cancelled (or its deadline passes).
+	 * 
+	 * The token is installed as the current token of the calling thread for the duration (see Cancellation.during);
+	 * renderers pass it to their tasks and selectors check it cooperatively.
+	 * 
+	 * @throws CancellationException if the render was stopped
+	 */
+	public default <I,G,A> Aggregates<A> aggregate(
+			final Glyphset<? extends G, ? extends I> glyphs, 
+			final Selector<G> selector,
+			final Aggregator<I,A> aggregator, 
+			final AffineTransform viewTransform,
+			Cancellation cancel) throws CancellationException {
+		return cancel.during(() -> aggregate(glyphs, selector, aggregator, viewTransform));
+	}
+
+	/**Aggregate with the given allocator and merge, stopping early if the token is cancelled (see above).**/
+	public default <I,G,A> Aggregates<A> aggregate(
+			final Glyphset<? extends G, ? extends I> glyphs, 
+			final Selector<G> selector,
+			final Aggregator<I,A> aggregator, 
+			final AffineTransform viewTransform,
+			Function<A, Aggregates<A>> allocator,
+			BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge,
+			Cancellation cancel) throws CancellationException {
+		return cancel.during(() -> aggregate(glyphs, selector, aggregator, viewTransform, allocator, merge));
+	}
+	
+	/**Transfer, stopping early if the token is cancelled (see above).**/
+	public default <IN,OUT> Aggregates<OUT> transfer(Aggregates<? extends IN> aggregates, 
+											 Transfer.Specialized<IN, OUT> t,
+											 Cancellation cancel) throws CancellationException {
+		return cancel.during(() -> transfer(aggregates, t));
+	}
+
 	
 	/**For monitoring long-running render operations, this method provides a simple monitoring interface.
 	 * Progress and progress reporting/recording are left up to the renderer to define.  This method may
@@ -75,4 +113,10 @@ public interface Renderer extends Serializable {
 	 * @return The percent of predicted work that has been completed.
 	 */
 	public ProgressRecorder recorder();
+	
+	/**Timings and counts for the phases of rendering (segmenting, aggregating, merging, transfer, etc).
+	 * Unlike the recorder, metrics are meant for performance monitoring.
+	 * Renderers that do not keep metrics return a RenderMetrics.NOP (the default).
+	 */
+	public default RenderMetrics metrics() {return new RenderMetrics.NOP();}
 }
@@ -1,5 +1,6 @@
 package ar;
 
+import java.awt.Color;
 import java.io.Serializable;
 
 /**Transfer functions converts an aggregate value into another aggregate value, often a color.
@@ -92,5 +93,24 @@ public interface Transfer<IN,OUT> extends Serializable {
 		}
 	}
 	
+	/**Item-wise transfer whose result at x/y depends only on the input value at x/y (not its neighbors or position).
+	 * 
+	 * Renderers may compute such a transfer once for a region that holds only the default value
+	 * (e.g., untouched tiles of TiledAggregates) instead of once per cell.
+	 */
+	public static interface CellWise<IN,OUT> extends ItemWise<IN,OUT> {}
+	
+	/**Item-wise transfer from numbers to colors that can also convert runs of int values to packed ARGB colors.
+	 * Renderers use this to transfer int aggregates into color aggregates directly on their backing arrays.
+	 * 
+	 * The packed colors must be the same as those returned by 'at' (as Color.getRGB()).
+	 */
+	public static interface IntToColor<IN extends Number> extends CellWise<IN, Color> {
+		/**Convert in[inOffset ... inOffset+length) to colors in out[outOffset ... outOffset+length).
+		 * @param inDefault Default value of the input aggregates
+		 **/
+		public void argb(int[] in, int inOffset, int[] out, int outOffset, int length, int inDefault);
+	}
+	
 
 }
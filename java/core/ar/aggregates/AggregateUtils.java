@@ -6,11 +6,20 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BiFunction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
 
 import ar.Aggregates;
 import ar.Aggregator;
 import ar.aggregates.implementations.*;
+import ar.aggregates.wrappers.TouchedBoundsWrapper;
+import ar.rules.CategoricalCounts;
+import ar.rules.Categories;
+import ar.util.RunningStats;
 import ar.util.Util;
 
 /**Utilities for working with aggregates.
@@ -18,6 +27,32 @@ import ar.util.Util;
  * TODO: Move this stuff to the Aggregates interface when Java 1.8 comes out...
  */
 public class AggregateUtils {
+	/**How many cells may a merge region have before it is split for parallel processing?**/
+	public static final long MERGE_TASK_SIZE = 100000;
+
+	/**Expected fraction of cells set below which 'make' (with an estimate) creates sparse aggregates.
+	 * May be set as a system parameter (-DSPARSE_OCCUPANCY=x); zero disables sparse aggregates.
+	 * **/
+	public static final double SPARSE_OCCUPANCY;
+	static {
+		double occupancy = .05;
+		if (System.getProperties().containsKey("SPARSE_OCCUPANCY")) {
+			occupancy = Double.parseDouble(System.getProperty("SPARSE_OCCUPANCY"));
+		}
+		SPARSE_OCCUPANCY = occupancy;
+	}
+	
+	/**Number of cells above which 'make' creates tiled aggregates (see TiledAggregates).
+	 * May be set as a system parameter (-DTILED_CELLS=x).
+	 * **/
+	public static final long TILED_CELLS;
+	static {
+		long cells = 1L << 25;
+		if (System.getProperties().containsKey("TILED_CELLS")) {
+			cells = Long.parseLong(System.getProperty("TILED_CELLS"));
+		}
+		TILED_CELLS = Math.max(cells, ((long) TiledAggregates.DEFAULT_TILE_SIZE) * TiledAggregates.DEFAULT_TILE_SIZE);
+	}
 
 	/**Return a rectangle representing the bounds of this aggregate set.
 	 * Bounds are based on the bounds of concern (low/high X/Y) not values set.
@@ -109,6 +144,14 @@ public class AggregateUtils {
 	 * is already of sufficient size, it will be used as both a source and a target.
 	 * Therefore, this may involve a **DESTRUCTIVE** update of one of the sets of aggregates.
 	 * 
+	 * Only the region reported by each source is visited (so TouchedBoundsWrapper sources are only visited where touched).
+	 * When called from a fork/join task, large regions are split into row-bands and merged in parallel in that task's pool.
+	 * Otherwise (e.g., from a ThreadpoolRenderer's executor threads) merges run serially on the calling thread,
+	 * rather than in the common pool.  Merges into sparse targets (and categorical counts from other types) are always serial.
+	 * Int, double and color aggregates are merged with loops over their backing arrays.
+	 * Running statistics of the target (see TouchedBoundsWrapper.stats) are kept up to date; 
+	 * a new target carries statistics if either input does.
+	 * 
 	 * @param left Aggregate set to use for left-hand arguments
 	 * @param right Aggregate set to use for right-hand arguments
 	 * @param identity Identity value for the rollup function
@@ -116,6 +159,18 @@ public class AggregateUtils {
 	 * @return Resulting aggregate set (may be new or a destructively updated left or right parameter) 
 	 */
 	public static <T> Aggregates<T> __unsafeMerge(Aggregates<T> left, Aggregates<T> right, T identity, BiFunction<T,T,T> rollup) {
+		return __unsafeMerge(left, right, identity, rollup, null);
+	}
+	
+	/**FOR INTERNAL USE ONLY. Aligned merge using the aggregator's rollup. 
+	 * Primitive-specialized aggregators (e.g., Aggregator.IntAggregator) are merged without boxing.
+	 * See the other __unsafeMerge for the (many) caveats. 
+	 **/
+	public static <T> Aggregates<T> __unsafeMerge(Aggregates<T> left, Aggregates<T> right, Aggregator<?,T> op) {
+		return __unsafeMerge(left, right, op.identity(), op::rollup, op);
+	}
+	
+	private static <T> Aggregates<T> __unsafeMerge(Aggregates<T> left, Aggregates<T> right, T identity, BiFunction<T,T,T> rollup, Aggregator<?,T> op) {
 		if (left == null || left.empty()) {return right;}
 		if (right == null || right.empty()) {return left;}
 
@@ -137,23 +192,305 @@ public class AggregateUtils {
 		} else {
 			sources.add(left);
 			sources.add(right);
-			target = AggregateUtils.make((int) bounds.getMinX(), (int) bounds.getMinY(), 
-					(int) bounds.getMaxX(), (int) bounds.getMaxY(), identity);
+			Aggregates<T> grid = unwrap(left) instanceof TiledAggregates ? unwrap(left) : unwrap(right);
+			if (grid instanceof TiledAggregates) {		//Stay tiled (on the same grid) so tiles merge tile-to-tile
+				target = ((TiledAggregates<T>) grid).aligned((int) bounds.getMinX(), (int) bounds.getMinY(), 
+						(int) bounds.getMaxX(), (int) bounds.getMaxY(), identity);
+			} else {
+				target = AggregateUtils.make((int) bounds.getMinX(), (int) bounds.getMinY(), 
+						(int) bounds.getMaxX(), (int) bounds.getMaxY(), identity, entries(left)+entries(right));
+			}
+			if (stats(left) != null || stats(right) != null) {
+				TouchedBoundsWrapper<T> wrapped = TouchedBoundsWrapper.wrap(target, false, true);
+				wrapped.touch(target.lowX(), target.lowY(), target.highX(), target.highY());
+				target = wrapped;
+			}
+		}
+		
+		if (unwrap(target) instanceof SparseAggregates) {
+			long expected = entries(target);
+			for (Aggregates<T> source: sources) {expected += entries(source);}
+			if (!sparse(unwrap(target), expected)) {
+				Aggregates<T> dense = densify(target, identity);
+				target = stats(target) != null ? TouchedBoundsWrapper.rewrap(dense, (TouchedBoundsWrapper<?>) target) : dense;
+			}
 		}
 	
+		RunningStats stats = stats(target);
 		for (Aggregates<T> source: sources) {
-			for (int x=Math.max(0, source.lowX()); x<source.highX(); x++) {
-				for (int y=Math.max(0, source.lowY()); y<source.highY(); y++) {
-					T newVal = source.get(x,y);
-					if (Util.isEqual(identity, newVal)) {continue;}
-					T comb = rollup.apply(target.get(x,y), source.get(x,y));
-					target.set(x,y, comb); 
+			//Forks outside of a fork/join pool would go to the common pool.
+			//Sets may insert into a sparse target's table or a categorical target's dictionary (unsynchronized), 
+			//except categorical counts into categorical counts (aligned before merging)
+			boolean serial = !ForkJoinTask.inForkJoinPool()
+					|| unwrap(target) instanceof SparseAggregates 
+					|| (unwrap(target) instanceof CategoricalCountsAggregates && !(unwrap(source) instanceof CategoricalCountsAggregates));
+			RunningStats.Delta delta = stats == null ? null : stats.delta();
+			if (unwrap(source) instanceof TiledAggregates) {
+				mergeTiles(target, source, identity, rollup, op, delta, serial);
+			} else {
+				RegionMerge merger = regionMerge(target, source, identity, rollup, op, delta);
+				if (serial || unwrap(source) instanceof SparseAggregates) {
+					merger.merge(source.lowX(), source.lowY(), source.highX(), source.highY());		//Work follows the entries, not the region
+				} else {
+					new MergeTask(merger, source.lowX(), source.lowY(), source.highX(), source.highY()).invoke();
 				}
 			}
+			if (delta != null) {stats.apply(delta);}
 		}
 		return target;
 	}
 	
+	/**Merge each allocated tile of the source into the target, one task per tile (run one after another if serial).  
+	 * Tiles of a target on the same grid are merged tile-to-tile (so the array-backed merges apply), unless changes are being recorded.
+	 */
+	private static <T> void mergeTiles(Aggregates<T> target, Aggregates<T> source, T identity, BiFunction<T,T,T> rollup, Aggregator<?,T> op, RunningStats.Delta delta, boolean serial) {
+		TiledAggregates<T> tiledSource = (TiledAggregates<T>) unwrap(source);
+		Aggregates<T> t = unwrap(target);
+		boolean aligned = delta == null && t instanceof TiledAggregates && ((TiledAggregates<T>) t).sameGrid(tiledSource);
+		
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (Aggregates<T> tile: tiledSource.tiles()) {
+			int lowX = Math.max(tile.lowX(), source.lowX());
+			int lowY = Math.max(tile.lowY(), source.lowY());
+			int highX = Math.min(tile.highX(), source.highX());
+			int highY = Math.min(tile.highY(), source.highY());
+			if (lowX >= highX || lowY >= highY) {continue;}
+			
+			Aggregates<T> into = aligned ? ((TiledAggregates<T>) t).tile(lowX, lowY, true) : target;
+			if (into == null) {continue;}	//Outside of the target
+			tasks.add(ForkJoinTask.adapt(() -> regionMerge(into, tile, identity, rollup, op, delta).merge(lowX, lowY, highX, highY)));
+		}
+		if (serial) {for (ForkJoinTask<?> task: tasks) {task.invoke();}}
+		else {ForkJoinTask.invokeAll(tasks);}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> Aggregates<T> unwrap(Aggregates<T> aggs) {
+		return aggs instanceof TouchedBoundsWrapper ? ((TouchedBoundsWrapper<T>) aggs).base() : aggs;
+	}
+	
+	private static RunningStats stats(Aggregates<?> aggs) {
+		return aggs instanceof TouchedBoundsWrapper ? ((TouchedBoundsWrapper<?>) aggs).stats() : null;
+	}
+	
+	/**Number of cells that may hold non-default values (exact for sparse aggregates, the area otherwise).**/
+	private static long entries(Aggregates<?> aggs) {
+		Aggregates<?> base = unwrap(aggs);
+		if (base instanceof SparseAggregates) {return ((SparseAggregates<?>) base).entries();}
+		return size(aggs);
+	}
+	
+	/**Copy sparse aggregates into dense aggregates over the same (reported) bounds.**/
+	private static <T> Aggregates<T> densify(Aggregates<T> sparse, T identity) {
+		SparseAggregates<T> base = (SparseAggregates<T>) unwrap(sparse);
+		Aggregates<T> dense = make(sparse.lowX(), sparse.lowY(), sparse.highX(), sparse.highY(), identity);
+		base.forEach(sparse.lowX(), sparse.lowY(), sparse.highX(), sparse.highY(), (x,y,slot) -> dense.set(x, y, base.valueAt(slot)));
+		return dense;
+	}
+	
+	/**Merge of a source into a target over a region.  Selected once per source/target pair.**/
+	private static interface RegionMerge {public void merge(int lowX, int lowY, int highX, int highY);}
+	
+	/**Select a region merge for the target/source pair; uses the backing arrays when possible.
+	 * 
+	 * Writes to the target bypass a TouchedBoundsWrapper. This is safe because a wrapped target 
+	 * is only selected when its touched bounds already cover every source.
+	 * 
+	 * @param delta Records changes to the target (for its running statistics); null to not record
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> RegionMerge regionMerge(Aggregates<T> target, Aggregates<T> source, T identity, BiFunction<T,T,T> rollup, Aggregator<?,T> op, RunningStats.Delta delta) {
+		Aggregates<T> t = unwrap(target);
+		Aggregates<T> s = unwrap(source);
+		
+		if (delta != null) {return recordingMerge(t, s, identity, rollup, op, delta);}
+		if (s instanceof SparseAggregates.Ints && t instanceof Aggregates.IntAccess && identity != null) {
+			BiFunction<Integer, Integer, Integer> boxed = (BiFunction<Integer, Integer, Integer>) rollup;
+			IntBinaryOperator f = op instanceof Aggregator.IntAggregator 
+					? ((Aggregator.IntAggregator<?>) op)::rollupInt 
+					: (l,r) -> boxed.apply(l, r);
+			int id = (Integer) identity;
+			SparseAggregates.Ints ss = (SparseAggregates.Ints) s;
+			Aggregates.IntAccess it = (Aggregates.IntAccess) t;
+			return (lowX, lowY, highX, highY) -> ss.forEach(lowX, lowY, highX, highY, (x,y,slot) -> {
+				int v = ss.intAt(slot);
+				if (v != id) {it.setInt(x, y, f.applyAsInt(it.getInt(x, y), v));}
+			});
+		} else if (s instanceof SparseAggregates) {
+			SparseAggregates<T> ss = (SparseAggregates<T>) s;
+			return (lowX, lowY, highX, highY) -> ss.forEach(lowX, lowY, highX, highY, (x,y,slot) -> {
+				T v = ss.valueAt(slot);
+				if (!Util.isEqual(identity, v)) {t.set(x, y, rollup.apply(t.get(x, y), v));}
+			});
+		} else if (t instanceof IntAggregates && s instanceof IntAggregates && identity != null) {
+			BiFunction<Integer, Integer, Integer> boxed = (BiFunction<Integer, Integer, Integer>) rollup;
+			IntBinaryOperator f = op instanceof Aggregator.IntAggregator 
+					? ((Aggregator.IntAggregator<?>) op)::rollupInt 
+					: (l,r) -> boxed.apply(l, r);
+			int id = (Integer) identity;
+			return (lowX, lowY, highX, highY) -> ((IntAggregates) t).rollup((IntAggregates) s, lowX, lowY, highX, highY, id, f);
+		} else if (t instanceof DoubleAggregates && s instanceof DoubleAggregates && identity != null) {
+			BiFunction<Double, Double, Double> boxed = (BiFunction<Double, Double, Double>) rollup;
+			DoubleBinaryOperator f = op instanceof Aggregator.DoubleAggregator
+					? ((Aggregator.DoubleAggregator<?>) op)::rollupDouble
+					: (l,r) -> boxed.apply(l, r);
+			double id = (Double) identity;
+			return (lowX, lowY, highX, highY) -> ((DoubleAggregates) t).rollup((DoubleAggregates) s, lowX, lowY, highX, highY, id, f);
+		} else if (t instanceof ColorAggregates && s instanceof ColorAggregates && identity != null) {
+			BiFunction<Color, Color, Color> f = (BiFunction<Color, Color, Color>) rollup;
+			Color id = (Color) identity;
+			return (lowX, lowY, highX, highY) -> ((ColorAggregates) t).rollup((ColorAggregates) s, lowX, lowY, highX, highY, id, f::apply);
+		} else if (t instanceof CategoricalCountsAggregates && s instanceof CategoricalCountsAggregates
+				&& (op instanceof Categories.CountCategories || op instanceof Categories.MergeCategories)) {
+			CategoricalCountsAggregates<Object> ct = (CategoricalCountsAggregates<Object>) t;
+			CategoricalCountsAggregates<Object> cs = (CategoricalCountsAggregates<Object>) s;
+			int[] alignment = ct.align(cs);		//Before the (parallel) region merges, since it may extend the dictionary
+			return (lowX, lowY, highX, highY) -> ct.rollup(cs, alignment, lowX, lowY, highX, highY);
+		} else if (t instanceof Aggregates.IntAccess && s instanceof Aggregates.IntAccess && identity != null) {
+			//Unboxed cell-by-cell (e.g., mapped or tiled aggregates); row-major so mapped files are read in order
+			BiFunction<Integer, Integer, Integer> boxed = (BiFunction<Integer, Integer, Integer>) rollup;
+			IntBinaryOperator f = op instanceof Aggregator.IntAggregator 
+					? ((Aggregator.IntAggregator<?>) op)::rollupInt 
+					: (l,r) -> boxed.apply(l, r);
+			int id = (Integer) identity;
+			Aggregates.IntAccess it = (Aggregates.IntAccess) t, is = (Aggregates.IntAccess) s;
+			return (lowX, lowY, highX, highY) -> {
+				for (int y=lowY; y<highY; y++) {
+					for (int x=lowX; x<highX; x++) {
+						int v = is.getInt(x, y);
+						if (v != id) {it.setInt(x, y, f.applyAsInt(it.getInt(x, y), v));}
+					}
+				}
+			};
+		} else if (t instanceof Aggregates.LongAccess && s instanceof Aggregates.LongAccess && identity != null) {
+			BiFunction<Long, Long, Long> boxed = (BiFunction<Long, Long, Long>) rollup;
+			LongBinaryOperator f = op instanceof Aggregator.LongAggregator 
+					? ((Aggregator.LongAggregator<?>) op)::rollupLong 
+					: (l,r) -> boxed.apply(l, r);
+			long id = (Long) identity;
+			Aggregates.LongAccess lt = (Aggregates.LongAccess) t, ls = (Aggregates.LongAccess) s;
+			return (lowX, lowY, highX, highY) -> {
+				for (int y=lowY; y<highY; y++) {
+					for (int x=lowX; x<highX; x++) {
+						long v = ls.getLong(x, y);
+						if (v != id) {lt.setLong(x, y, f.applyAsLong(lt.getLong(x, y), v));}
+					}
+				}
+			};
+		} else if (t instanceof Aggregates.DoubleAccess && s instanceof Aggregates.DoubleAccess && identity != null) {
+			BiFunction<Double, Double, Double> boxed = (BiFunction<Double, Double, Double>) rollup;
+			DoubleBinaryOperator f = op instanceof Aggregator.DoubleAggregator
+					? ((Aggregator.DoubleAggregator<?>) op)::rollupDouble
+					: (l,r) -> boxed.apply(l, r);
+			double id = (Double) identity;
+			Aggregates.DoubleAccess dt = (Aggregates.DoubleAccess) t, ds = (Aggregates.DoubleAccess) s;
+			return (lowX, lowY, highX, highY) -> {
+				for (int y=lowY; y<highY; y++) {
+					for (int x=lowX; x<highX; x++) {
+						double v = ds.getDouble(x, y);
+						if (v != id) {dt.setDouble(x, y, f.applyAsDouble(dt.getDouble(x, y), v));}
+					}
+				}
+			};
+		} else {
+			return (lowX, lowY, highX, highY) -> {
+				for (int y=lowY; y<highY; y++) {
+					for (int x=lowX; x<highX; x++) {
+						T newVal = source.get(x,y);
+						if (Util.isEqual(identity, newVal)) {continue;}
+						T comb = rollup.apply(target.get(x,y), newVal);
+						target.set(x,y, comb); 
+					}
+				}
+			};
+		}
+	}
+	
+	/**Region merge that records each change into a delta (one local delta per region, added to the shared one when done).**/
+	@SuppressWarnings("unchecked")
+	private static <T> RegionMerge recordingMerge(Aggregates<T> t, Aggregates<T> s, T identity, BiFunction<T,T,T> rollup, Aggregator<?,T> op, RunningStats.Delta delta) {
+		if (s instanceof SparseAggregates) {
+			SparseAggregates<T> ss = (SparseAggregates<T>) s;
+			return (lowX, lowY, highX, highY) -> {
+				RunningStats.Delta local = delta.local();
+				ss.forEach(lowX, lowY, highX, highY, (x,y,slot) -> {
+					T v = ss.valueAt(slot);
+					if (Util.isEqual(identity, v)) {return;}
+					T old = t.get(x, y);
+					T comb = rollup.apply(old, v);
+					t.set(x, y, comb);
+					local.record((Number) old, (Number) comb);
+				});
+				delta.add(local);
+			};
+		} else if (t instanceof Aggregates.IntAccess && s instanceof Aggregates.IntAccess && identity != null) {
+			BiFunction<Integer, Integer, Integer> boxed = (BiFunction<Integer, Integer, Integer>) rollup;
+			IntBinaryOperator f = op instanceof Aggregator.IntAggregator 
+					? ((Aggregator.IntAggregator<?>) op)::rollupInt 
+					: (l,r) -> boxed.apply(l, r);
+			int id = (Integer) identity;
+			Aggregates.IntAccess it = (Aggregates.IntAccess) t, is = (Aggregates.IntAccess) s;
+			return (lowX, lowY, highX, highY) -> {
+				RunningStats.Delta local = delta.local();
+				for (int y=lowY; y<highY; y++) {
+					for (int x=lowX; x<highX; x++) {
+						int v = is.getInt(x, y);
+						if (v == id) {continue;}
+						int old = it.getInt(x, y);
+						int comb = f.applyAsInt(old, v);
+						it.setInt(x, y, comb);
+						local.record(old, comb);
+					}
+				}
+				delta.add(local);
+			};
+		} else {
+			return (lowX, lowY, highX, highY) -> {
+				RunningStats.Delta local = delta.local();
+				for (int y=lowY; y<highY; y++) {
+					for (int x=lowX; x<highX; x++) {
+						T v = s.get(x,y);
+						if (Util.isEqual(identity, v)) {continue;}
+						T old = t.get(x, y);
+						T comb = rollup.apply(old, v);
+						t.set(x,y, comb); 
+						local.record((Number) old, (Number) comb);
+					}
+				}
+				delta.add(local);
+			};
+		}
+	}
+	
+	/**Split a merge region into row-bands (or columns, for single rows) until it is small enough to merge directly.**/
+	private static final class MergeTask extends RecursiveAction {
+		private static final long serialVersionUID = -2165263880592367785L;
+		private final RegionMerge merger;
+		private final int lowX, lowY, highX, highY;
+		
+		public MergeTask(RegionMerge merger, int lowX, int lowY, int highX, int highY) {
+			this.merger = merger;
+			this.lowX = lowX;
+			this.lowY = lowY;
+			this.highX = highX;
+			this.highY = highY;
+		}
+
+		@Override
+		protected void compute() {
+			if (highX <= lowX || highY <= lowY) {return;}
+			if (size(lowX, lowY, highX, highY) <= MERGE_TASK_SIZE) {
+				merger.merge(lowX, lowY, highX, highY);
+			} else if (highY-lowY > 1) {
+				int midY = Util.mean(lowY, highY);
+				invokeAll(new MergeTask(merger, lowX, lowY, highX, midY), new MergeTask(merger, lowX, midY, highX, highY));
+			} else {
+				int midX = Util.mean(lowX, highX);
+				invokeAll(new MergeTask(merger, lowX, lowY, midX, highY), new MergeTask(merger, midX, lowY, highX, highY));
+			}
+		}
+	}
+	
 	/**Create a new set of aggregates with smaller bounds
 	 * by making each cell in the new aggregates cover multiple cells
 	 * in the old aggregates. 
@@ -167,9 +504,34 @@ public class AggregateUtils {
 		int size = (int) Math.round(factor);
 		if (size < 1) {return start;}
 		Aggregates<T> end = AggregateUtils.make(start.lowX()/size, start.lowY()/size, start.highX()/size, start.highY()/size, red.identity());
-
-		for (int x = start.lowX(); x < start.highX(); x=x+size) {
-			for (int y=start.lowY(); y < start.highY(); y=y+size) {
+		
+		Aggregates<T> base = unwrap(start);
+		if (base instanceof TiledAggregates 
+				&& ((TiledAggregates<T>) base).tileSize() % size == 0
+				&& (start.lowX()-base.lowX()) % size == 0 && (start.lowY()-base.lowY()) % size == 0
+				&& Util.isEqual(start.defaultValue(), red.identity())) {
+			//Blocks nest in tiles, so each (allocated) tile is coarsened independently; untouched tiles coarsen to the identity.
+			//Tiles are coarsened in parallel only from within a fork/join pool (forks would otherwise go to the common pool).
+			List<ForkJoinTask<?>> tasks = new ArrayList<>();
+			for (Aggregates<T> tile: ((TiledAggregates<T>) base).tiles()) {
+				int lowX = Math.max(tile.lowX(), start.lowX());
+				int lowY = Math.max(tile.lowY(), start.lowY());
+				int highX = Math.min(tile.highX(), start.highX());
+				int highY = Math.min(tile.highY(), start.highY());
+				tasks.add(ForkJoinTask.adapt(() -> coarsen(start, end, red, size, lowX, lowY, highX, highY)));
+			}
+			if (ForkJoinTask.inForkJoinPool()) {ForkJoinTask.invokeAll(tasks);}
+			else {for (ForkJoinTask<?> task: tasks) {task.invoke();}}
+		} else {
+			coarsen(start, end, red, size, start.lowX(), start.lowY(), start.highX(), start.highY());
+		}
+		return end;
+	}
+	
+	/**Coarsen the blocks that start in the given region (block origins are relative to start's lowX/lowY).**/
+	private static <T> void coarsen(Aggregates<T> start, Aggregates<T> end, Aggregator<?,T> red, int size, int lowX, int lowY, int highX, int highY) {
+		for (int x = lowX; x < highX; x=x+size) {
+			for (int y=lowY; y < highY; y=y+size) {
 				
 				T acc = red.identity();
 				for (int xx=0; xx<size; xx++) {
@@ -181,7 +543,6 @@ public class AggregateUtils {
 				end.set(x/size, y/size, acc);
 			}
 		}
-		return end;
 	}
 	
 	/**Make a new set of aggregates with the same values in the same positions as the old one.
@@ -197,19 +558,67 @@ public class AggregateUtils {
 		return target;
 	}
 
-	public static <A> Aggregates<A> make(Aggregates<?> like, A defVal) {return make(like.lowX(), like.lowY(), like.highX(), like.highY(),defVal);}
+	/**Create a set of aggregates with the same bounds as 'like'.
+	 * If 'like' is memory-mapped, the new set is too (see MappedAggregates.like) when the default value allows it.
+	 **/
+	public static <A> Aggregates<A> make(Aggregates<?> like, A defVal) {
+		Aggregates<?> base = like instanceof TouchedBoundsWrapper ? ((TouchedBoundsWrapper<?>) like).base() : like;
+		if (base instanceof MappedAggregates) {
+			Aggregates<A> mapped = MappedAggregates.like((MappedAggregates<?>) base, like.lowX(), like.lowY(), like.highX(), like.highY(), defVal);
+			if (mapped != null) {return mapped;}
+		}
+		return make(like.lowX(), like.lowY(), like.highX(), like.highY(),defVal);
+	}
 
 	public static <A> Aggregates<A> make(int width, int height, A defVal) {return make(0,0,width,height,defVal);}
 
-	/**Create a set of aggregates for the given type.*/
+	/**Create a set of aggregates to aggregate (or merge) into, given an estimate of how many cells will be set.
+	 * 
+	 * If the expected occupancy is below SPARSE_OCCUPANCY, int, double and reference values
+	 * are stored sparsely (see SparseAggregates).  
+	 * Empty categorical counts are stored as CategoricalCountsAggregates, which are only safe for one writer at a time
+	 * (as aggregation targets are) and hold an int per cell for each category seen.
+	 * Otherwise, this is the same as the other 'make'.
+	 * 
+	 * @param expectedCells Estimate (preferably an upper bound) of the number of cells that will be set
+	 */
+	@SuppressWarnings("unchecked")
+	public static <A> Aggregates<A> make(int lowX, int lowY, int highX, int highY, A defVal, long expectedCells) {
+		if (defVal instanceof CategoricalCounts && ((CategoricalCounts<?>) defVal).size() == 0
+				&& size(lowX,lowY,highX,highY) <= Integer.MAX_VALUE) {
+			return (Aggregates<A>) new CategoricalCountsAggregates<>(lowX, lowY, highX, highY, ((CategoricalCounts<?>) defVal).comparator());
+		} else if (!sparse(size(lowX, lowY, highX, highY), expectedCells)
+				|| defVal instanceof Color || defVal instanceof Long 
+				|| defVal instanceof Boolean || defVal instanceof CategoricalCounts) {
+			return make(lowX, lowY, highX, highY, defVal);
+		} else if (defVal instanceof Integer) {
+			return (Aggregates<A>) new SparseAggregates.Ints(lowX, lowY, highX, highY, (Integer) defVal);
+		} else if (defVal instanceof Double) {
+			return (Aggregates<A>) new SparseAggregates.Doubles(lowX, lowY, highX, highY, (Double) defVal);
+		} else {
+			return new SparseAggregates.Refs<>(lowX, lowY, highX, highY, defVal);
+		}
+	}
+	
+	private static boolean sparse(Aggregates<?> aggs, long expectedCells) {return sparse(size(aggs), expectedCells);}
+	private static boolean sparse(long area, long expectedCells) {
+		return area <= Integer.MAX_VALUE && expectedCells < area * SPARSE_OCCUPANCY;
+	}
+
+	/**Create a set of aggregates for the given type.
+	 * Aggregates larger than TILED_CELLS are tiled (and tiles are allocated as they are set).*/
 	@SuppressWarnings("unchecked")
 	public static <A> Aggregates<A> make(int lowX, int lowY, int highX, int highY, A defVal) {
-		if (defVal != null && defVal instanceof Color) {
+		if (size(lowX,lowY,highX,highY) > TILED_CELLS) {
+			return TiledAggregates.make(lowX, lowY, highX, highY, defVal, TiledAggregates.DEFAULT_TILE_SIZE);
+		} else if (defVal != null && defVal instanceof Color) {
 			return (Aggregates<A>) new ColorAggregates(lowX, lowY, highX, highY, (Color) defVal);
 		} else if (defVal instanceof Integer) {
 			return (Aggregates<A>) new IntAggregates(lowX, lowY, highX, highY, (Integer) defVal);
 		} else if (defVal instanceof Double) {
 			return (Aggregates<A>) new DoubleAggregates(lowX, lowY, highX, highY, (Double) defVal);
+		} else if (defVal instanceof Long) {
+			return (Aggregates<A>) new LongAggregates(lowX, lowY, highX, highY, (Long) defVal);
 		} else if (defVal instanceof Boolean) {
 			return (Aggregates<A>) new BooleanAggregates(lowX, lowY, highX, highY, (Boolean) defVal);
 		} else if (size(lowX,lowY,highX,highY) > Integer.MAX_VALUE){
@@ -219,6 +628,27 @@ public class AggregateUtils {
 		}
 	}
 
+	public static <A> Aggregates<A> makeConcurrent(int width, int height, A defVal) {return makeConcurrent(0,0,width,height,defVal);}
+	
+	/**Create a set of aggregates for the given type that supports concurrent updates 
+	 * (i.e., implements Aggregates.Concurrent).  
+	 * 
+	 * Int, long and double values use atomic primitive arrays;
+	 * other types use an atomic reference array.
+	 **/
+	@SuppressWarnings("unchecked")
+	public static <A> Aggregates.Concurrent<A> makeConcurrent(int lowX, int lowY, int highX, int highY, A defVal) {
+		if (defVal instanceof Integer) {
+			return (Aggregates.Concurrent<A>) new ConcurrentIntAggregates(lowX, lowY, highX, highY, (Integer) defVal);
+		} else if (defVal instanceof Long) {
+			return (Aggregates.Concurrent<A>) new ConcurrentLongAggregates(lowX, lowY, highX, highY, (Long) defVal);
+		} else if (defVal instanceof Double) {
+			return (Aggregates.Concurrent<A>) new ConcurrentDoubleAggregates(lowX, lowY, highX, highY, (Double) defVal);
+		} else {
+			return new ConcurrentRefAggregates<>(lowX, lowY, highX, highY, defVal);
+		}
+	}
+
 	/**Grid-style printing of the aggregates.  
 	 * Useful for debugging with small aggregate sets...**/
 	public static String toString(Aggregates<?> aggs) {
@@ -250,6 +680,26 @@ public class AggregateUtils {
 		return ((long) (highX-lowX)) * ((long) (highY-lowY));
 	}
 	
+	/**Estimate of the memory held by a set of aggregates (in bytes).
+	 * Based on the storage type and the number of cells.  
+	 * References are counted at 8 bytes; the referenced values themselves are not counted.
+	 * **/
+	public static final long estimateBytes(Aggregates<?> aggs) {
+		if (aggs == null) {return 0;}
+		if (aggs instanceof TouchedBoundsWrapper) {return estimateBytes(((TouchedBoundsWrapper<?>) aggs).base());}
+		if (aggs instanceof ConstantAggregates) {return 0;}
+		if (aggs instanceof SparseAggregates) {return ((SparseAggregates<?>) aggs).bytes();}
+		if (aggs instanceof TiledAggregates) {return ((TiledAggregates<?>) aggs).bytes();}
+		if (aggs instanceof MappedAggregates) {return 0;}		//Off-heap
+
+		int cellBytes;
+		if (aggs instanceof BooleanAggregates) {cellBytes = 1;}
+		else if (aggs instanceof Aggregates.IntAccess || aggs instanceof ColorAggregates) {cellBytes = 4;}
+		else if (aggs instanceof CategoricalCountsAggregates) {cellBytes = 4*((CategoricalCountsAggregates<?>) aggs).size();}
+		else {cellBytes = 8;}
+		return size(aggs) * cellBytes;
+	}
+	
 	@SuppressWarnings("unused") 
 	/**Convert the x/y value to a single index based on the low/high x/y.**/
 	public static final int idx(int x,int y, int lowX, int lowY, int highX, int highY) {
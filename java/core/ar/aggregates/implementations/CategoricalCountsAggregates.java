@@ -0,0 +1,198 @@
+package ar.aggregates.implementations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ar.Aggregates;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.BoundsInversionException;
+import ar.aggregates.Iterator2D;
+import ar.rules.CategoricalCounts;
+
+/**Categorical counts stored as one dense int array per category.
+ * 
+ * Categories are dictionary-encoded: each distinct category (according to the comparator)
+ * is assigned an index the first time it is seen, and counts[index][cell] holds its count.
+ * Updates through 'increment' are in-place and do not allocate (except when a new category is seen).
+ * 
+ * CategoricalCounts values are only created on 'get' (e.g., for transfers that need them).
+ * Set is supported, but replaces all counts of the cell.
+ * Categories with a zero count in a cell are not reported for that cell.
+ * 
+ * Not thread safe for updates (including the first sighting of a category).
+ * Concurrent 'get' calls are safe once updates are complete.
+ * AggregateUtils only makes these for aggregation targets (see AggregateUtils.make with expected cells), not transfer results.
+ * 
+ * Memory is an int per cell for each category seen (so a few categories over a large view is cheap,
+ * but many categories are not; each parallel task's target has its own arrays).
+ * 
+ * @param <T> The type of the categories
+ */
+public class CategoricalCountsAggregates<T> implements Aggregates<CategoricalCounts<T>> {
+	private static final long serialVersionUID = -2985631077645218476L;
+
+	private final int lowX, lowY, highX, highY;
+	private final int size;
+	private final Comparator<T> comp;
+	private final CategoricalCounts<T> defVal;
+	
+	private final Map<T, Integer> index;
+	private final List<T> labels = new ArrayList<>();
+	private int[][] counts = new int[0][];
+	private int[] order = new int[0];		//Category indices, in comparator order
+	
+	private T lastKey;		//Single-entry cache for runs of the same category
+	private int lastIdx = -1;
+	
+	public CategoricalCountsAggregates(int lowX, int lowY, int highX, int highY, Comparator<T> comp) {
+		if (lowX > highX) {throw new BoundsInversionException(lowX, highX, "X");}
+		if (lowY > highY) {throw new BoundsInversionException(lowY, highY, "Y");}
+		long size = ((long) highX-lowX)*(highY-lowY);
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("Aggregates of size %dx%d exceeds the implementation capacity.", (highX-lowX), (highY-lowY)));
+		}
+
+		this.lowX = lowX;
+		this.lowY = lowY;
+		this.highX = highX;
+		this.highY = highY;
+		this.size = (int) size;
+		this.comp = comp;
+		this.defVal = new CategoricalCounts<>(comp);
+		this.index = new TreeMap<>(comp);
+	}
+	
+	/**Index of the category, adding it to the dictionary if not present.**/
+	public int category(T key) {
+		if (lastIdx >= 0 && lastKey == key) {return lastIdx;}
+		Integer idx = index.get(key);
+		if (idx == null) {
+			idx = labels.size();
+			index.put(key, idx);
+			labels.add(key);
+			counts = Arrays.copyOf(counts, idx+1);
+			counts[idx] = new int[size];
+			order = index.values().stream().mapToInt(Integer::intValue).toArray();
+		}
+		lastKey = key;
+		lastIdx = idx;
+		return idx;
+	}
+	
+	/**Add 'count' to the given category at x/y.  Out-of-bounds is a no-op.**/
+	public void increment(int x, int y, T key, int count) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
+		int c = category(key);		//Before reading 'counts', which a new category replaces
+		counts[c][AggregateUtils.idx(x, y, lowX, lowY, highX, highY)] += count;
+	}
+	
+	/**Count of the category at x/y.**/
+	public int count(int x, int y, T key) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return 0;}
+		Integer idx = index.get(key);
+		return idx == null ? 0 : counts[idx][AggregateUtils.idx(x, y, lowX, lowY, highX, highY)];
+	}
+	
+	/**Sum of all category counts at x/y (equivalent to get(x,y).fullSize()).**/
+	public int total(int x, int y) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return 0;}
+		int i = AggregateUtils.idx(x, y, lowX, lowY, highX, highY);
+		int total = 0;
+		for (int[] c: counts) {total += c[i];}
+		return total;
+	}
+	
+	/**Number of categories with a non-zero count at x/y (equivalent to get(x,y).size()).**/
+	public int present(int x, int y) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return 0;}
+		int i = AggregateUtils.idx(x, y, lowX, lowY, highX, highY);
+		int present = 0;
+		for (int[] c: counts) {if (c[i] != 0) {present++;}}
+		return present;
+	}
+	
+	/**All categories seen so far, in comparator order.**/
+	public List<T> categories() {
+		List<T> cats = new ArrayList<>(order.length);
+		for (int idx: order) {cats.add(labels.get(idx));}
+		return cats;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public CategoricalCounts<T> get(int x, int y) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return defVal;}
+		int i = AggregateUtils.idx(x, y, lowX, lowY, highX, highY);
+		int[] order = this.order;
+		int present = 0;
+		for (int idx: order) {if (counts[idx][i] != 0) {present++;}}
+		if (present == 0) {return defVal;}
+		
+		T[] keys = (T[]) new Object[present];
+		int[] vals = new int[present];
+		int j=0;
+		for (int idx: order) {
+			int v = counts[idx][i];
+			if (v == 0) {continue;}
+			keys[j] = labels.get(idx);
+			vals[j] = v;
+			j++;
+		}
+		return CategoricalCounts.fromSorted(comp, keys, vals);
+	}
+
+	@Override
+	public void set(int x, int y, CategoricalCounts<T> val) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
+		int i = AggregateUtils.idx(x, y, lowX, lowY, highX, highY);
+		for (int[] c: counts) {c[i] = 0;}
+		for (int k=0; k<val.size(); k++) {
+			int c = category(val.key(k));
+			counts[c][i] += val.count(k);
+		}
+	}
+	
+	/**Add the counts of the source into this set over the given region (see AggregateUtils.__unsafeMerge).
+	 * Categories of the source must already be present here (see 'align').**/
+	public void rollup(CategoricalCountsAggregates<T> source, int[] alignment, int lowX, int lowY, int highX, int highY) {
+		lowX = Math.max(lowX, Math.max(this.lowX, source.lowX));
+		lowY = Math.max(lowY, Math.max(this.lowY, source.lowY));
+		highX = Math.min(highX, Math.min(this.highX, source.highX));
+		highY = Math.min(highY, Math.min(this.highY, source.highY));
+
+		for (int c=0; c<alignment.length; c++) {
+			int[] from = source.counts[c];
+			int[] to = counts[alignment[c]];
+			for (int y=lowY; y<highY; y++) {
+				int sourceIdx = AggregateUtils.idx(lowX, y, source.lowX, source.lowY, source.highX, source.highY);
+				int targetIdx = AggregateUtils.idx(lowX, y, this.lowX, this.lowY, this.highX, this.highY);
+				for (int x=lowX; x<highX; x++, sourceIdx++, targetIdx++) {to[targetIdx] += from[sourceIdx];}
+			}
+		}
+	}
+	
+	/**Add the categories of the source to this dictionary.
+	 * @return Map from source category index to category index in this set
+	 */
+	public int[] align(CategoricalCountsAggregates<T> source) {
+		int[] alignment = new int[source.labels.size()];
+		for (int c=0; c<alignment.length; c++) {alignment[c] = category(source.labels.get(c));}
+		return alignment;
+	}
+	
+	/**Number of categories in the dictionary.**/
+	public int size() {return labels.size();}
+	
+	public Comparator<T> comparator() {return comp;}
+	@Override public CategoricalCounts<T> defaultValue() {return defVal;}
+	@Override public int lowX() {return lowX;}
+	@Override public int lowY() {return lowY;}
+	@Override public int highX() {return highX;}
+	@Override public int highY() {return highY;}
+	@Override public Iterator<CategoricalCounts<T>> iterator() {return new Iterator2D<>(this);}
+}
@@ -3,8 +3,11 @@ package ar.aggregates.implementations;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.util.Iterator;
+import java.util.function.BinaryOperator;
 
 import ar.Aggregates;
+import ar.Transfer;
+import ar.aggregates.AggregateUtils;
 import ar.aggregates.Iterator2D;
 
 /**Set of colors, with extra tools for creating images.**/
@@ -34,6 +37,32 @@ public class ColorAggregates extends IntegerBackingAggregates implements Aggrega
 	}
 	public Iterator<Color> iterator() {return new Iterator2D<>(this);};
 	public Color defaultValue() {return background;}
+	
+	/**Combine values from the source into this set over the given region (see AggregateUtils.__unsafeMerge).
+	 * Colors are only realized for cells where the source is not the identity.
+	 **/
+	public void rollup(ColorAggregates source, int lowX, int lowY, int highX, int highY, Color identity, BinaryOperator<Color> rollup) {
+		rollupInts(source, lowX, lowY, highX, highY, identity.getRGB(), 
+				(l, r) -> rollup.apply(new Color(l, true), new Color(r, true)).getRGB());
+	}
+
+	/**Set the colors over the given region from int aggregates, a row at a time on the backing arrays (see Transfer.IntToColor).
+	 * The region is clipped to the bounds of both sets.
+	 **/
+	public void transfer(IntAggregates source, int lowX, int lowY, int highX, int highY, Transfer.IntToColor<?> t) {
+		lowX = Math.max(lowX, Math.max(this.lowX, source.lowX));
+		lowY = Math.max(lowY, Math.max(this.lowY, source.lowY));
+		highX = Math.min(highX, Math.min(this.highX, source.highX));
+		highY = Math.min(highY, Math.min(this.highY, source.highY));
+		if (lowX >= highX) {return;}
+		
+		int inDefault = source.defaultInt();
+		for (int y=lowY; y<highY; y++) {
+			int sourceIdx = AggregateUtils.idx(lowX, y, source.lowX, source.lowY, source.highX, source.highY);
+			int targetIdx = AggregateUtils.idx(lowX, y, this.lowX, this.lowY, this.highX, this.highY);
+			t.argb(source.values, sourceIdx, values, targetIdx, highX-lowX, inDefault);
+		}
+	}
 
 	public BufferedImage image() {
 		int w = highX-lowX;
@@ -0,0 +1,72 @@
+package ar.aggregates.implementations;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.Iterator2D;
+
+/**Set of double values that can be updated from many threads at once.
+ * Values are stored as their raw long bits in an atomic array.
+ **/
+public class ConcurrentDoubleAggregates implements Aggregates.DoubleAccess, Aggregates.Concurrent<Double> {
+	private static final long serialVersionUID = -3236180853420861427L;
+	private final AtomicLongArray values;
+	private final Double defVal;
+	private final int lowX, lowY, highX, highY;
+
+	public ConcurrentDoubleAggregates(int lowX,int lowY, int highX, int highY, double defVal) {
+		this.defVal = defVal;
+		this.lowX = lowX;
+		this.lowY = lowY;
+		this.highX = highX;
+		this.highY = highY;
+		
+		int size = ConcurrentRefAggregates.checkedSize(lowX, lowY, highX, highY);
+		this.values = new AtomicLongArray(size);
+		long bits = Double.doubleToRawLongBits(defVal);
+		if (bits != 0) {for (int i=0; i<size; i++) {values.set(i, bits);}}
+	}
+
+	public Double get(int x, int y) {return getDouble(x,y);}
+	public double getDouble(int x, int y) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return defVal;}
+		return Double.longBitsToDouble(values.get(AggregateUtils.idx(x,y, lowX, lowY, highX, highY)));
+	}
+
+	public void set(int x, int y, Double val) {setDouble(x, y, val.doubleValue());}
+	public void setDouble(int x, int y, double val) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
+		values.set(AggregateUtils.idx(x,y, lowX, lowY, highX, highY), Double.doubleToRawLongBits(val));
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public <I> void update(int x, int y, I v, Aggregator<I, Double> op) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
+		int idx = AggregateUtils.idx(x,y, lowX, lowY, highX, highY);
+		if (op instanceof Aggregator.DoubleAggregator) {
+			Aggregator.DoubleAggregator<I> dop = (Aggregator.DoubleAggregator<I>) op;
+			long current, next;
+			do {
+				current = values.get(idx);
+				next = Double.doubleToRawLongBits(dop.combineDouble(Double.longBitsToDouble(current), v));
+			} while (!values.compareAndSet(idx, current, next));
+		} else {
+			long current, next;
+			do {
+				current = values.get(idx);
+				next = Double.doubleToRawLongBits(op.combine(Double.longBitsToDouble(current), v));
+			} while (!values.compareAndSet(idx, current, next));
+		}
+	}
+
+	public Iterator<Double> iterator() {return new Iterator2D<>(this);}
+	public Double defaultValue() {return defVal;}
+	public int lowX() {return lowX;}
+	public int lowY() {return lowY;}
+	public int highX() {return highX;}
+	public int highY() {return highY;}
+}
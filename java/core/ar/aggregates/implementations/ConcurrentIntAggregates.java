@@ -0,0 +1,69 @@
+package ar.aggregates.implementations;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.Iterator2D;
+
+/**Set of int values that can be updated from many threads at once (backed by an atomic array).**/
+public class ConcurrentIntAggregates implements Aggregates.IntAccess, Aggregates.Concurrent<Integer> {
+	private static final long serialVersionUID = -7426364178399235711L;
+	private final AtomicIntegerArray values;
+	private final Integer defVal;
+	private final int lowX, lowY, highX, highY;
+
+	public ConcurrentIntAggregates(int lowX,int lowY, int highX, int highY, int defVal) {
+		this.defVal = defVal;
+		this.lowX = lowX;
+		this.lowY = lowY;
+		this.highX = highX;
+		this.highY = highY;
+		
+		int size = ConcurrentRefAggregates.checkedSize(lowX, lowY, highX, highY);
+		this.values = new AtomicIntegerArray(size);
+		if (defVal != 0) {for (int i=0; i<size; i++) {values.set(i, defVal);}}
+	}
+
+	public Integer get(int x, int y) {return getInt(x,y);}
+	public int getInt(int x, int y) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return defVal;}
+		return values.get(AggregateUtils.idx(x,y, lowX, lowY, highX, highY));
+	}
+
+	public void set(int x, int y, Integer val) {setInt(x, y, val.intValue());}
+	public void setInt(int x, int y, int val) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
+		values.set(AggregateUtils.idx(x,y, lowX, lowY, highX, highY), val);
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public <I> void update(int x, int y, I v, Aggregator<I, Integer> op) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
+		int idx = AggregateUtils.idx(x,y, lowX, lowY, highX, highY);
+		if (op instanceof Aggregator.IntAggregator) {
+			Aggregator.IntAggregator<I> iop = (Aggregator.IntAggregator<I>) op;
+			int current, next;
+			do {
+				current = values.get(idx);
+				next = iop.combineInt(current, v);
+			} while (!values.compareAndSet(idx, current, next));
+		} else {
+			int current, next;
+			do {
+				current = values.get(idx);
+				next = op.combine(current, v);
+			} while (!values.compareAndSet(idx, current, next));
+		}
+	}
+
+	public Iterator<Integer> iterator() {return new Iterator2D<>(this);}
+	public Integer defaultValue() {return defVal;}
+	public int lowX() {return lowX;}
+	public int lowY() {return lowY;}
+	public int highX() {return highX;}
+	public int highY() {return highY;}
+}
@@ -0,0 +1,69 @@
+package ar.aggregates.implementations;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.Iterator2D;
+
+/**Set of long values that can be updated from many threads at once (backed by an atomic array).**/
+public class ConcurrentLongAggregates implements Aggregates.LongAccess, Aggregates.Concurrent<Long> {
+	private static final long serialVersionUID = 2906209473650395418L;
+	private final AtomicLongArray values;
+	private final Long defVal;
+	private final int lowX, lowY, highX, highY;
+
+	public ConcurrentLongAggregates(int lowX,int lowY, int highX, int highY, long defVal) {
+		this.defVal = defVal;
+		this.lowX = lowX;
+		this.lowY = lowY;
+		this.highX = highX;
+		this.highY = highY;
+		
+		int size = ConcurrentRefAggregates.checkedSize(lowX, lowY, highX, highY);
+		this.values = new AtomicLongArray(size);
+		if (defVal != 0) {for (int i=0; i<size; i++) {values.set(i, defVal);}}
+	}
+
+	public Long get(int x, int y) {return getLong(x,y);}
+	public long getLong(int x, int y) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return defVal;}
+		return values.get(AggregateUtils.idx(x,y, lowX, lowY, highX, highY));
+	}
+
+	public void set(int x, int y, Long val) {setLong(x, y, val.longValue());}
+	public void setLong(int x, int y, long val) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
+		values.set(AggregateUtils.idx(x,y, lowX, lowY, highX, highY), val);
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public <I> void update(int x, int y, I v, Aggregator<I, Long> op) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
+		int idx = AggregateUtils.idx(x,y, lowX, lowY, highX, highY);
+		if (op instanceof Aggregator.LongAggregator) {
+			Aggregator.LongAggregator<I> lop = (Aggregator.LongAggregator<I>) op;
+			long current, next;
+			do {
+				current = values.get(idx);
+				next = lop.combineLong(current, v);
+			} while (!values.compareAndSet(idx, current, next));
+		} else {
+			long current, next;
+			do {
+				current = values.get(idx);
+				next = op.combine(current, v);
+			} while (!values.compareAndSet(idx, current, next));
+		}
+	}
+
+	public Iterator<Long> iterator() {return new Iterator2D<>(this);}
+	public Long defaultValue() {return defVal;}
+	public int lowX() {return lowX;}
+	public int lowY() {return lowY;}
+	public int highX() {return highX;}
+	public int highY() {return highY;}
+}
@@ -0,0 +1,73 @@
+package ar.aggregates.implementations;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.BoundsInversionException;
+import ar.aggregates.Iterator2D;
+
+/**Set of reference values that can be updated from many threads at once.
+ * 
+ * Updates are lock-free (compare-and-set on a reference array).  This relies
+ * on the Aggregator contract that combine does not mutate 'current'.
+ **/
+public class ConcurrentRefAggregates<A> implements Aggregates.Concurrent<A> {
+	private static final long serialVersionUID = -1848411906227395587L;
+	private final AtomicReferenceArray<A> values;
+	private final A defVal;
+	private final int lowX, lowY, highX, highY;
+
+	public ConcurrentRefAggregates(int lowX,int lowY, int highX, int highY, A defVal) {
+		this.defVal = defVal;
+		this.lowX = lowX;
+		this.lowY = lowY;
+		this.highX = highX;
+		this.highY = highY;
+		
+		int size = checkedSize(lowX, lowY, highX, highY);
+		this.values = new AtomicReferenceArray<>(size);
+		if (defVal != null) {for (int i=0; i<size; i++) {values.set(i, defVal);}}
+	}
+
+	public A get(int x, int y) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return defVal;}
+		return values.get(AggregateUtils.idx(x,y, lowX, lowY, highX, highY));
+	}
+
+	public void set(int x, int y, A val) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
+		values.set(AggregateUtils.idx(x,y, lowX, lowY, highX, highY), val);
+	}
+	
+	@Override
+	public <I> void update(int x, int y, I v, Aggregator<I, A> op) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
+		int idx = AggregateUtils.idx(x,y, lowX, lowY, highX, highY);
+		A current, next;
+		do {
+			current = values.get(idx);
+			next = op.combine(current, v);
+		} while (!values.compareAndSet(idx, current, next));
+	}
+
+	public Iterator<A> iterator() {return new Iterator2D<>(this);}
+	public A defaultValue() {return defVal;}
+	public int lowX() {return lowX;}
+	public int lowY() {return lowY;}
+	public int highX() {return highX;}
+	public int highY() {return highY;}
+	
+	/**Number of cells in the region; throws an exception if it cannot be backed by a single array.**/
+	static int checkedSize(int lowX, int lowY, int highX, int highY) {
+		if (lowX > highX) {throw new BoundsInversionException(lowX, highX, "X");}
+		if (lowY > highY) {throw new BoundsInversionException(lowY, highY, "Y");}
+		long size = AggregateUtils.size(lowX, lowY, highX, highY);
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("Aggregates of size %dx%d exceeds the implementation capacity.", (highX-lowX), (highY-lowY)));
+		}
+		return (int) size;
+	}
+}
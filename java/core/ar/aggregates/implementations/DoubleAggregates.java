@@ -2,12 +2,13 @@ package ar.aggregates.implementations;
 
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.function.DoubleBinaryOperator;
 
 import ar.Aggregates;
 import ar.aggregates.Iterator2D;
 
-/**Set of color aggregates backed by a buffered image.**/
-public class DoubleAggregates implements Aggregates<Double> {
+/**Set of double values.**/
+public class DoubleAggregates implements Aggregates.DoubleAccess {
 	private final double[] values;
 	private final Double defVal;
 	private final int lowX, lowY, highX, highY;
@@ -24,16 +25,39 @@ public class DoubleAggregates implements Aggregates<Double> {
 		Arrays.fill(values, defVal);
 	}
 
-	public Double get(int x, int y) {
+	public Double get(int x, int y) {return getDouble(x,y);}
+	public double getDouble(int x, int y) {
 		if (x<lowX || x >=highX || y<lowY || y>=highY) {return defVal;}
 		return values[idx(x,y)];
 	}
 
-	public void set(int x, int y, Double val) {
+	public void set(int x, int y, Double val) {setDouble(x, y, val.doubleValue());}
+	public void setDouble(int x, int y, double val) {
 		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
 		values[idx(x,y)] = val;
 	}
 
+	/**Combine values from the source into this set over the given region (see AggregateUtils.__unsafeMerge).
+	 * Region is clipped to the bounds of both sets; source values equal to identity are skipped.
+	 */
+	public void rollup(DoubleAggregates source, int lowX, int lowY, int highX, int highY, double identity, DoubleBinaryOperator rollup) {
+		lowX = Math.max(lowX, Math.max(this.lowX, source.lowX));
+		lowY = Math.max(lowY, Math.max(this.lowY, source.lowY));
+		highX = Math.min(highX, Math.min(this.highX, source.highX));
+		highY = Math.min(highY, Math.min(this.highY, source.highY));
+		long identityBits = Double.doubleToLongBits(identity);
+		
+		for (int y=lowY; y<highY; y++) {
+			int sourceIdx = source.idx(lowX, y);
+			int targetIdx = idx(lowX, y);
+			for (int x=lowX; x<highX; x++, sourceIdx++, targetIdx++) {
+				double v = source.values[sourceIdx];
+				if (Double.doubleToLongBits(v) == identityBits) {continue;}
+				values[targetIdx] = rollup.applyAsDouble(values[targetIdx], v);
+			}
+		}
+	}
+
 	public Iterator<Double> iterator() {return new Iterator2D<>(this);};
 	public Double defaultValue() {return defVal;}
 	public int lowX() {return lowX;}
@@ -1,12 +1,13 @@
 package ar.aggregates.implementations;
 
 import java.util.Iterator;
+import java.util.function.IntBinaryOperator;
 
 import ar.Aggregates;
 import ar.aggregates.Iterator2D;
 
 /**Set of Integer values.**/
-public class IntAggregates extends IntegerBackingAggregates implements Aggregates<Integer> {
+public class IntAggregates extends IntegerBackingAggregates implements Aggregates.IntAccess {
 	public IntAggregates(int lowX,int lowY, int highX, int highY, int defVal) {
 		super(lowX, lowY, highX, highY, defVal);
 	}
@@ -14,4 +15,9 @@ public class IntAggregates extends IntegerBackingAggregates implements Aggregate
 	@Override public Iterator<Integer> iterator() {return new Iterator2D<>(this);}
 	@Override public Integer get(int x, int y) {return super.getInt(x, y);}
 	@Override public Integer defaultValue() {return super.defaultInt();}
+	
+	/**Combine values from the source into this set over the given region (see AggregateUtils.__unsafeMerge).**/
+	public void rollup(IntAggregates source, int lowX, int lowY, int highX, int highY, int identity, IntBinaryOperator rollup) {
+		rollupInts(source, lowX, lowY, highX, highY, identity, rollup);
+	}
 }
@@ -2,6 +2,7 @@ package ar.aggregates.implementations;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
 
 import ar.aggregates.AggregateUtils;
 
@@ -33,9 +34,31 @@ abstract class IntegerBackingAggregates implements Serializable {
 	}
 
 	
-	public void set(int x, int y, Integer val) {
+	public void set(int x, int y, Integer val) {setInt(x, y, val.intValue());}
+	public void setInt(int x, int y, int val) {
 		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
-		values[AggregateUtils.idx(x,y, lowX, lowY, highX, highY)] = val.intValue();
+		values[AggregateUtils.idx(x,y, lowX, lowY, highX, highY)] = val;
+	}
+
+	/**Combine values from the source into this set over the given region.
+	 * Region is clipped to the bounds of both sets; source values equal to identity are skipped.
+	 * Works directly on the backing arrays, row by row.
+	 */
+	protected void rollupInts(IntegerBackingAggregates source, int lowX, int lowY, int highX, int highY, int identity, IntBinaryOperator rollup) {
+		lowX = Math.max(lowX, Math.max(this.lowX, source.lowX));
+		lowY = Math.max(lowY, Math.max(this.lowY, source.lowY));
+		highX = Math.min(highX, Math.min(this.highX, source.highX));
+		highY = Math.min(highY, Math.min(this.highY, source.highY));
+		
+		for (int y=lowY; y<highY; y++) {
+			int sourceIdx = AggregateUtils.idx(lowX, y, source.lowX, source.lowY, source.highX, source.highY);
+			int targetIdx = AggregateUtils.idx(lowX, y, this.lowX, this.lowY, this.highX, this.highY);
+			for (int x=lowX; x<highX; x++, sourceIdx++, targetIdx++) {
+				int v = source.values[sourceIdx];
+				if (v == identity) {continue;}
+				values[targetIdx] = rollup.applyAsInt(values[targetIdx], v);
+			}
+		}
 	}
 
 	public Integer defaultInt() {return defVal;}
@@ -0,0 +1,51 @@
+package ar.aggregates.implementations;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import ar.Aggregates;
+import ar.aggregates.Iterator2D;
+
+/**Set of long values.**/
+public class LongAggregates implements Aggregates.LongAccess {
+	private static final long serialVersionUID = -7671138279629355585L;
+	private final long[] values;
+	private final Long defVal;
+	private final int lowX, lowY, highX, highY;
+
+	public LongAggregates(int lowX,int lowY, int highX, int highY, long defVal) {
+		this.defVal = defVal;
+		this.lowX = lowX;
+		this.lowY = lowY;
+		this.highX = highX;
+		this.highY = highY;
+		
+		int size = (highX-lowX)*(highY-lowY);
+		this.values = new long[size];
+		Arrays.fill(values, defVal);
+	}
+
+	public Long get(int x, int y) {return getLong(x,y);}
+	public long getLong(int x, int y) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return defVal;}
+		return values[idx(x,y)];
+	}
+
+	public void set(int x, int y, Long val) {setLong(x, y, val.longValue());}
+	public void setLong(int x, int y, long val) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return;}
+		values[idx(x,y)] = val;
+	}
+
+	public Iterator<Long> iterator() {return new Iterator2D<>(this);};
+	public Long defaultValue() {return defVal;}
+	public int lowX() {return lowX;}
+	public int lowY() {return lowY;}
+	public int highX() {return highX;}
+	public int highY() {return highY;}
+
+	private final int idx(int x,int y) {
+		int idx = ((highX-lowX)*(y-lowY))+(x-lowX);
+		return idx;
+	}
+}
@@ -0,0 +1,246 @@
+package ar.aggregates.implementations;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+
+import ar.Aggregates;
+import ar.aggregates.BoundsInversionException;
+import ar.aggregates.Iterator2D;
+import ar.util.memoryMapping.MappedPages;
+
+/**Aggregates stored in a memory-mapped file, for canvases larger than the heap.
+ * 
+ * The file holds a fixed-size header (type, bounds and default value) followed by the cells in row-major order,
+ * so the aggregates persist: 'open' re-maps a file in a later process without re-aggregating. 
+ * Cells are read and written in place through MappedPages; the OS pages data in and out as it is touched. 
+ * Row-major, region-at-a-time operations (like the merges in AggregateUtils) stream through the file.
+ * 
+ * Nested classes provide int, long, double and color (ARGB) cells.
+ * Concurrent writes to distinct cells are safe.  Changes reach the file when the OS writes the pages back, or on 'flush'.
+ * 'close' flushes and unmaps the file; the aggregates must not be used afterwards.
+ * Java serialization is not supported; the file is the persistent form.
+ **/
+public abstract class MappedAggregates<A> implements Aggregates<A>, AutoCloseable {
+	private static final long serialVersionUID = -8119290263617926040L;
+	
+	/**Bytes before the first cell.**/
+	public static final int HEADER_BYTES = 64;
+	private static final int MAGIC = 0x41524D41;	//"ARMA"
+	private static final int VERSION = 1;
+	private static final int INT = 1, LONG = 2, DOUBLE = 3, COLOR = 4;
+	
+	protected final transient MappedPages pages;
+	protected final File file;
+	protected final int lowX, lowY, highX, highY;
+	private final int cellBytes;
+	
+	protected MappedAggregates(File file, MappedPages pages, int lowX, int lowY, int highX, int highY, int cellBytes) {
+		this.file = file;
+		this.pages = pages;
+		this.lowX = lowX;
+		this.lowY = lowY;
+		this.highX = highX;
+		this.highY = highY;
+		this.cellBytes = cellBytes;
+	}
+	
+	/**File offset of the cell at x/y, or -1 if x/y is out of bounds.**/
+	protected final long pos(int x, int y) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return -1;}
+		return HEADER_BYTES + (((long) (y-lowY))*(highX-lowX) + (x-lowX))*cellBytes;
+	}
+	
+	/**The backing file.**/
+	public File file() {return file;}
+	
+	/**Write changes to the backing file.**/
+	public void flush() {pages.force();}
+	
+	/**Write changes to the backing file and unmap it (see MappedPages.close).**/
+	@Override public void close() {pages.close();}
+	
+	@Override public int lowX() {return lowX;}
+	@Override public int lowY() {return lowY;}
+	@Override public int highX() {return highX;}
+	@Override public int highY() {return highY;}
+	@Override public Iterator<A> iterator() {return new Iterator2D<>(this);}
+	@Override public String toString() {return String.format("Mapped aggregates from (%d, %d) to (%d, %d) in %s.", lowX, lowY, highX, highY, file);}
+
+	
+	/**Create a new file of aggregates (replacing any existing file).  
+	 * The cell type is taken from the default value, which must be an Integer, Long, Double or Color.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <A> MappedAggregates<A> create(File file, int lowX, int lowY, int highX, int highY, A defVal) throws IOException {
+		if (lowX > highX) {throw new BoundsInversionException(lowX, highX, "X");}
+		if (lowY > highY) {throw new BoundsInversionException(lowY, highY, "Y");}
+		
+		int type, cellBytes;
+		long defBits;
+		if (defVal instanceof Integer) {type = INT; cellBytes = 4; defBits = (Integer) defVal;}
+		else if (defVal instanceof Long) {type = LONG; cellBytes = 8; defBits = (Long) defVal;}
+		else if (defVal instanceof Double) {type = DOUBLE; cellBytes = 8; defBits = Double.doubleToRawLongBits((Double) defVal);}
+		else if (defVal instanceof Color) {type = COLOR; cellBytes = 4; defBits = ((Color) defVal).getRGB();}
+		else {throw new IllegalArgumentException("Mapped aggregates support int, long, double and color values; recieved " + defVal);}
+		
+		if (file.exists() && !file.delete()) {throw new IOException("Could not replace " + file);}
+		long cells = ((long) highX-lowX)*(highY-lowY);
+		MappedPages pages = new MappedPages(file, HEADER_BYTES + cells*cellBytes, MappedPages.DEFAULT_PAGE_BYTES, FileChannel.MapMode.READ_WRITE);
+		pages.putInt(0, MAGIC);
+		pages.putInt(4, VERSION);
+		pages.putInt(8, type);
+		pages.putInt(12, lowX);
+		pages.putInt(16, lowY);
+		pages.putInt(20, highX);
+		pages.putInt(24, highY);
+		pages.putLong(32, defBits);
+
+		if (defBits != 0) {		//New file content is zero
+			for (long i=0; i<cells; i++) {
+				if (cellBytes == 4) {pages.putInt(HEADER_BYTES + i*4, (int) defBits);}
+				else {pages.putLong(HEADER_BYTES + i*8, defBits);}
+			}
+		}
+		return (MappedAggregates<A>) make(file, pages);
+	}
+	
+	/**Create aggregates in a temporary file (deleted on exit) in the same directory as 'like'.
+	 * Used to keep the results of operations on mapped aggregates (e.g., transfers) off-heap.
+	 * Returns null if the default value is not a supported cell type.
+	 */
+	public static <A> MappedAggregates<A> like(MappedAggregates<?> like, int lowX, int lowY, int highX, int highY, A defVal) {
+		if (!(defVal instanceof Integer || defVal instanceof Long || defVal instanceof Double || defVal instanceof Color)) {return null;}
+		try {
+			File file = File.createTempFile("aggregates", ".bin", like.file().getAbsoluteFile().getParentFile());
+			file.deleteOnExit();
+			return create(file, lowX, lowY, highX, highY, defVal);
+		} catch (IOException e) {throw new RuntimeException("Error creating mapped aggregates", e);}
+	}
+	
+	/**Open a file of aggregates made by 'create' (or 'save').
+	 * @param writable Map the file read/write?  (Otherwise, 'set' will fail.)
+	 */
+	public static MappedAggregates<?> open(File file, boolean writable) throws IOException {
+		MappedPages pages = new MappedPages(file, writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY);
+		if (pages.capacity() < HEADER_BYTES || pages.getInt(0) != MAGIC) {throw new IOException("Not a mapped aggregates file: " + file);}
+		if (pages.getInt(4) != VERSION) {throw new IOException("Unsupported mapped aggregates version: " + pages.getInt(4));}
+		return make(file, pages);
+	}
+	
+	/**Copy a set of int, long, double or color aggregates to a new file (row by row).**/
+	public static <A> MappedAggregates<A> save(Aggregates<A> aggs, File file) throws IOException {
+		MappedAggregates<A> target = create(file, aggs.lowX(), aggs.lowY(), aggs.highX(), aggs.highY(), aggs.defaultValue());
+		for (int y=aggs.lowY(); y<aggs.highY(); y++) {
+			for (int x=aggs.lowX(); x<aggs.highX(); x++) {target.set(x, y, aggs.get(x, y));}
+		}
+		target.flush();
+		return target;
+	}
+	
+	private static MappedAggregates<?> make(File file, MappedPages pages) throws IOException {
+		int type = pages.getInt(8);
+		int lowX = pages.getInt(12), lowY = pages.getInt(16), highX = pages.getInt(20), highY = pages.getInt(24);
+		long defBits = pages.getLong(32);
+		switch (type) {
+			case INT: return new Ints(file, pages, lowX, lowY, highX, highY, (int) defBits);
+			case LONG: return new Longs(file, pages, lowX, lowY, highX, highY, defBits);
+			case DOUBLE: return new Doubles(file, pages, lowX, lowY, highX, highY, Double.longBitsToDouble(defBits));
+			case COLOR: return new Colors(file, pages, lowX, lowY, highX, highY, new Color((int) defBits, true));
+			default: throw new IOException("Unknown cell type in mapped aggregates: " + type);
+		}
+	}
+	
+
+	/**Mapped int values.**/
+	public static final class Ints extends MappedAggregates<Integer> implements Aggregates.IntAccess {
+		private static final long serialVersionUID = -4505532227961429434L;
+		private final int defVal;
+		
+		Ints(File file, MappedPages pages, int lowX, int lowY, int highX, int highY, int defVal) {
+			super(file, pages, lowX, lowY, highX, highY, 4);
+			this.defVal = defVal;
+		}
+		
+		@Override public int getInt(int x, int y) {
+			long pos = pos(x,y);
+			return pos < 0 ? defVal : pages.getInt(pos);
+		}
+		@Override public void setInt(int x, int y, int val) {
+			long pos = pos(x,y);
+			if (pos >= 0) {pages.putInt(pos, val);}
+		}
+		@Override public Integer get(int x, int y) {return getInt(x,y);}
+		@Override public void set(int x, int y, Integer val) {setInt(x, y, val);}
+		@Override public Integer defaultValue() {return defVal;}
+	}
+	
+	/**Mapped long values.**/
+	public static final class Longs extends MappedAggregates<Long> implements Aggregates.LongAccess {
+		private static final long serialVersionUID = 3345219633478851137L;
+		private final long defVal;
+		
+		Longs(File file, MappedPages pages, int lowX, int lowY, int highX, int highY, long defVal) {
+			super(file, pages, lowX, lowY, highX, highY, 8);
+			this.defVal = defVal;
+		}
+		
+		@Override public long getLong(int x, int y) {
+			long pos = pos(x,y);
+			return pos < 0 ? defVal : pages.getLong(pos);
+		}
+		@Override public void setLong(int x, int y, long val) {
+			long pos = pos(x,y);
+			if (pos >= 0) {pages.putLong(pos, val);}
+		}
+		@Override public Long get(int x, int y) {return getLong(x,y);}
+		@Override public void set(int x, int y, Long val) {setLong(x, y, val);}
+		@Override public Long defaultValue() {return defVal;}
+	}
+
+	/**Mapped double values.**/
+	public static final class Doubles extends MappedAggregates<Double> implements Aggregates.DoubleAccess {
+		private static final long serialVersionUID = -1797800531218003785L;
+		private final double defVal;
+		
+		Doubles(File file, MappedPages pages, int lowX, int lowY, int highX, int highY, double defVal) {
+			super(file, pages, lowX, lowY, highX, highY, 8);
+			this.defVal = defVal;
+		}
+		
+		@Override public double getDouble(int x, int y) {
+			long pos = pos(x,y);
+			return pos < 0 ? defVal : pages.getDouble(pos);
+		}
+		@Override public void setDouble(int x, int y, double val) {
+			long pos = pos(x,y);
+			if (pos >= 0) {pages.putDouble(pos, val);}
+		}
+		@Override public Double get(int x, int y) {return getDouble(x,y);}
+		@Override public void set(int x, int y, Double val) {setDouble(x, y, val);}
+		@Override public Double defaultValue() {return defVal;}
+	}
+	
+	/**Mapped colors (stored as ARGB ints).  Setting null stores the default value.**/
+	public static final class Colors extends MappedAggregates<Color> {
+		private static final long serialVersionUID = 7468064010869813542L;
+		private final Color defVal;
+		
+		Colors(File file, MappedPages pages, int lowX, int lowY, int highX, int highY, Color defVal) {
+			super(file, pages, lowX, lowY, highX, highY, 4);
+			this.defVal = defVal;
+		}
+		
+		@Override public Color get(int x, int y) {
+			long pos = pos(x,y);
+			return pos < 0 ? defVal : new Color(pages.getInt(pos), true);
+		}
+		@Override public void set(int x, int y, Color val) {
+			long pos = pos(x,y);
+			if (pos >= 0) {pages.putInt(pos, (val == null ? defVal : val).getRGB());}
+		}
+		@Override public Color defaultValue() {return defVal;}
+	}
+}
@@ -10,6 +10,11 @@ import ar.util.ArrayIterator;
 
 /** Aggregates implementation backed by a single array.
  * This class efficiently supports subset regions.
+ * 
+ * Access is not synchronized: instances are meant to be confined to one thread at a time 
+ * (e.g., the target of a single aggregation task), or written by threads that touch disjoint cells 
+ * (e.g., the regions of a parallel transfer).
+ * For a target shared by many threads, use AggregateUtils.makeConcurrent or wrap with SynchronizedWrapper.
  */
 public class RefFlatAggregates<A> implements Aggregates<A>{
 	private static final long serialVersionUID = 7143994707761884518L;
@@ -59,7 +64,7 @@ public class RefFlatAggregates<A> implements Aggregates<A>{
 	}
 
 	/**Set the value at the given (x,y).**/
-	public synchronized void set(int x, int y, A v) {
+	public void set(int x, int y, A v) {
 		if (x<lowX || x>=highX || y<lowY || y>=highY) {return;} 
 		int idx = AggregateUtils.idx(x,y, lowX, lowY, highX, highY);
 		values[idx] = v;
@@ -67,7 +72,7 @@ public class RefFlatAggregates<A> implements Aggregates<A>{
 	
 	
 	/**Get the value at the given (x,y).**/
-	public synchronized A get(int x, int y) {
+	public A get(int x, int y) {
 		if (x<lowX || x>=highX || y<lowY || y>=highY) {return defaultVal;} 
 		int idx = AggregateUtils.idx(x,y, lowX, lowY, highX, highY);
 		return values[idx];
@@ -82,7 +87,7 @@ public class RefFlatAggregates<A> implements Aggregates<A>{
 	public int highY() {return highY;}
 	
 	/**Iterates over the values in the region defined by (lowX,lowY) and (highX, highY).**/
-	public synchronized Iterator<A> iterator() {return new ArrayIterator<>(values);}
+	public Iterator<A> iterator() {return new ArrayIterator<>(values);}
 	
 	public String toString() {return String.format("Aggregates from %d,%d to %d,%d.", lowX, lowY, highX,highY);}
 }
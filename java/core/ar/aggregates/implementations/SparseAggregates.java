@@ -0,0 +1,256 @@
+package ar.aggregates.implementations;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import ar.Aggregates;
+import ar.aggregates.BoundsInversionException;
+import ar.aggregates.Iterator2D;
+
+/**Aggregates that only store cells that have been set.
+ * 
+ * Cells are kept in an open-addressing hash table (linear probing) keyed by the cell's index in the bounds.
+ * Memory is proportional to the number of cells set instead of the area of the bounds, 
+ * so this is suited to low-occupancy canvases (e.g., scattered points or per-task targets in parallel aggregation).
+ * Each entry costs roughly four times a dense int cell, and access is slower than a dense array,
+ * so dense aggregates are preferred once occupancy is high (see AggregateUtils.make and AggregateUtils.SPARSE_OCCUPANCY).
+ * 
+ * Nested classes provide int, double and reference values.
+ * Not thread safe for updates.
+ */
+public abstract class SparseAggregates<A> implements Aggregates<A> {
+	private static final long serialVersionUID = 8232091440187253745L;
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int EMPTY = -1;
+
+	protected final int lowX, lowY, highX, highY;
+	protected int[] keys;
+	private int entries = 0;
+	
+	protected SparseAggregates(int lowX, int lowY, int highX, int highY) {
+		if (lowX > highX) {throw new BoundsInversionException(lowX, highX, "X");}
+		if (lowY > highY) {throw new BoundsInversionException(lowY, highY, "Y");}
+		if (((long) highX-lowX)*(highY-lowY) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("Aggregates of size %dx%d exceeds the implementation capacity.", (highX-lowX), (highY-lowY)));
+		}
+		this.lowX = lowX;
+		this.lowY = lowY;
+		this.highX = highX;
+		this.highY = highY;
+		this.keys = new int[INITIAL_CAPACITY];
+		Arrays.fill(keys, EMPTY);
+		allocate(INITIAL_CAPACITY);
+	}
+	
+	/**Allocate (default-filled) value storage for the given capacity.  Previous storage (if any) is passed to 'move'.**/
+	protected abstract void allocate(int capacity);
+	
+	/**Copy the value in the old storage at slot 'from' to the current storage at slot 'to'.**/
+	protected abstract void move(Object oldValues, int from, int to);
+	
+	/**The current value storage (handed back to 'move' after a resize).**/
+	protected abstract Object values();
+	
+	/**Bytes per entry of value storage.**/
+	protected abstract int valueBytes();
+	
+	/**Value in the given slot, boxed.**/
+	public abstract A valueAt(int slot);
+	
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	/**Slot of the cell at x/y, or -1 if the cell is out of bounds or not set.**/
+	protected final int find(int x, int y) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return -1;}
+		int key = (highX-lowX)*(y-lowY) + (x-lowX);
+		int mask = keys.length-1;
+		for (int slot = hash(key) & mask; ; slot = (slot+1) & mask) {
+			int k = keys[slot];
+			if (k == key) {return slot;}
+			if (k == EMPTY) {return -1;}
+		}
+	}
+	
+	/**Slot of the cell at x/y, adding it if it is not set (new slots hold the default value).  
+	 * Returns -1 if the cell is out of bounds.**/
+	protected final int slot(int x, int y) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return -1;}
+		int key = (highX-lowX)*(y-lowY) + (x-lowX);
+		int mask = keys.length-1;
+		int slot = hash(key) & mask;
+		for (; ; slot = (slot+1) & mask) {
+			int k = keys[slot];
+			if (k == key) {return slot;}
+			if (k == EMPTY) {break;}
+		}
+		
+		if ((entries+1)*2 > keys.length) {
+			resize(keys.length*2);
+			return slot(x,y);
+		}
+		keys[slot] = key;
+		entries++;
+		return slot;
+	}
+	
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object oldValues = values();
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		allocate(capacity);
+		
+		int mask = capacity-1;
+		for (int from=0; from<oldKeys.length; from++) {
+			int key = oldKeys[from];
+			if (key == EMPTY) {continue;}
+			int to = hash(key) & mask;
+			while (keys[to] != EMPTY) {to = (to+1) & mask;}
+			keys[to] = key;
+			move(oldValues, from, to);
+		}
+	}
+	
+	/**Receives the cells that have been set.**/
+	public static interface EntryConsumer {public void accept(int x, int y, int slot);}
+	
+	/**Visit each cell that has been set (in no particular order) within the given region.**/
+	public void forEach(int lowX, int lowY, int highX, int highY, EntryConsumer consumer) {
+		int width = this.highX-this.lowX;
+		for (int slot=0; slot<keys.length; slot++) {
+			int key = keys[slot];
+			if (key == EMPTY) {continue;}
+			int x = this.lowX + key % width;
+			int y = this.lowY + key / width;
+			if (x < lowX || x >= highX || y < lowY || y >= highY) {continue;}
+			consumer.accept(x, y, slot);
+		}
+	}
+	
+	/**Number of cells that have been set.**/
+	public int entries() {return entries;}
+	
+	/**Approximate memory held (in bytes).**/
+	public long bytes() {return (long) keys.length * (4 + valueBytes());}
+	
+	@Override public boolean empty() {return entries == 0;}
+	@Override public int lowX() {return lowX;}
+	@Override public int lowY() {return lowY;}
+	@Override public int highX() {return highX;}
+	@Override public int highY() {return highY;}
+	@Override public Iterator<A> iterator() {return new Iterator2D<>(this);}
+	
+	
+	/**Sparse int values.**/
+	public static final class Ints extends SparseAggregates<Integer> implements Aggregates.IntAccess {
+		private static final long serialVersionUID = -6164950093914484436L;
+		private final int defVal;
+		private int[] values;
+
+		public Ints(int lowX, int lowY, int highX, int highY, int defVal) {
+			super(lowX, lowY, highX, highY);
+			this.defVal = defVal;
+			Arrays.fill(values, defVal);
+		}
+		
+		@Override protected void allocate(int capacity) {
+			values = new int[capacity];
+			Arrays.fill(values, defVal);
+		}
+		@Override protected void move(Object oldValues, int from, int to) {values[to] = ((int[]) oldValues)[from];}
+		@Override protected Object values() {return values;}
+		@Override protected int valueBytes() {return 4;}
+		@Override public Integer valueAt(int slot) {return values[slot];}
+		public int intAt(int slot) {return values[slot];}
+
+		@Override public int getInt(int x, int y) {
+			int slot = find(x,y);
+			return slot < 0 ? defVal : values[slot];
+		}
+
+		@Override public void setInt(int x, int y, int val) {
+			int slot = slot(x,y);
+			if (slot >= 0) {values[slot] = val;}
+		}
+		
+		@Override public Integer get(int x, int y) {return getInt(x,y);}
+		@Override public void set(int x, int y, Integer val) {setInt(x, y, val);}
+		@Override public Integer defaultValue() {return defVal;}
+	}
+	
+	/**Sparse double values.**/
+	public static final class Doubles extends SparseAggregates<Double> implements Aggregates.DoubleAccess {
+		private static final long serialVersionUID = 2297712582358218069L;
+		private final double defVal;
+		private double[] values;
+
+		public Doubles(int lowX, int lowY, int highX, int highY, double defVal) {
+			super(lowX, lowY, highX, highY);
+			this.defVal = defVal;
+			Arrays.fill(values, defVal);
+		}
+		
+		@Override protected void allocate(int capacity) {
+			values = new double[capacity];
+			Arrays.fill(values, defVal);
+		}
+		@Override protected void move(Object oldValues, int from, int to) {values[to] = ((double[]) oldValues)[from];}
+		@Override protected Object values() {return values;}
+		@Override protected int valueBytes() {return 8;}
+		@Override public Double valueAt(int slot) {return values[slot];}
+		public double doubleAt(int slot) {return values[slot];}
+
+		@Override public double getDouble(int x, int y) {
+			int slot = find(x,y);
+			return slot < 0 ? defVal : values[slot];
+		}
+
+		@Override public void setDouble(int x, int y, double val) {
+			int slot = slot(x,y);
+			if (slot >= 0) {values[slot] = val;}
+		}
+		
+		@Override public Double get(int x, int y) {return getDouble(x,y);}
+		@Override public void set(int x, int y, Double val) {setDouble(x, y, val);}
+		@Override public Double defaultValue() {return defVal;}
+	}
+	
+	/**Sparse reference values.**/
+	public static final class Refs<A> extends SparseAggregates<A> {
+		private static final long serialVersionUID = -1329011390867021315L;
+		private final A defVal;
+		private Object[] values;
+
+		public Refs(int lowX, int lowY, int highX, int highY, A defVal) {
+			super(lowX, lowY, highX, highY);
+			this.defVal = defVal;
+			Arrays.fill(values, defVal);
+		}
+		
+		@Override protected void allocate(int capacity) {
+			values = new Object[capacity];
+			Arrays.fill(values, defVal);
+		}
+		@Override protected void move(Object oldValues, int from, int to) {values[to] = ((Object[]) oldValues)[from];}
+		@Override protected Object values() {return values;}
+		@Override protected int valueBytes() {return 8;}
+		
+		@SuppressWarnings("unchecked")
+		@Override public A valueAt(int slot) {return (A) values[slot];}
+
+		@Override public A get(int x, int y) {
+			int slot = find(x,y);
+			return slot < 0 ? defVal : valueAt(slot);
+		}
+
+		@Override public void set(int x, int y, A val) {
+			int slot = slot(x,y);
+			if (slot >= 0) {values[slot] = val;}
+		}
+		
+		@Override public A defaultValue() {return defVal;}
+	}
+}
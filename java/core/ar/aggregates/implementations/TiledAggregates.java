@@ -0,0 +1,171 @@
+package ar.aggregates.implementations;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import ar.Aggregates;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.BoundsInversionException;
+import ar.aggregates.Iterator2D;
+
+/**Aggregates made of fixed-size square tiles, each allocated when a cell in it is first set.
+ * 
+ * Tiles are laid out from (lowX, lowY) and are ordinary aggregates (see AggregateUtils.make), 
+ * so per-tile work uses the same specialized implementations as small aggregates.
+ * Total size is not limited to Integer.MAX_VALUE cells (only the number of tiles is).
+ * 
+ * The 'tiles' list exposes the allocated tiles so merge, transfer, coarsen and export 
+ * can work tile-by-tile (in parallel) and skip untouched regions.
+ * 
+ * Tile allocation is thread safe; concurrent sets to different cells are safe if 
+ * the tile implementation permits it (true of the array-backed implementations).
+ * 
+ * Use the 'make' method to get an instance that preserves int access (e.g., Aggregates.IntAccess). 
+ */
+public class TiledAggregates<A> implements Aggregates<A> {
+	private static final long serialVersionUID = -3304283575063296516L;
+	
+	/**Default width/height of a tile (in cells).**/
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	protected final int lowX, lowY, highX, highY;
+	protected final int tileSize, tilesWide, tilesHigh;
+	protected final A defVal;
+	private final AtomicReferenceArray<Aggregates<A>> tiles;
+	
+	public TiledAggregates(int lowX, int lowY, int highX, int highY, A defVal) {this(lowX, lowY, highX, highY, defVal, DEFAULT_TILE_SIZE);}
+	public TiledAggregates(int lowX, int lowY, int highX, int highY, A defVal, int tileSize) {
+		if (lowX > highX) {throw new BoundsInversionException(lowX, highX, "X");}
+		if (lowY > highY) {throw new BoundsInversionException(lowY, highY, "Y");}
+		if (tileSize < 1) {throw new IllegalArgumentException("Tile size must be positive, recieved " + tileSize);}
+		
+		this.lowX = lowX;
+		this.lowY = lowY;
+		this.highX = highX;
+		this.highY = highY;
+		this.defVal = defVal;
+		this.tileSize = tileSize;
+		this.tilesWide = (int) ((((long) highX-lowX) + tileSize-1) / tileSize);
+		this.tilesHigh = (int) ((((long) highY-lowY) + tileSize-1) / tileSize);
+		if (((long) tilesWide) * tilesHigh > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("Aggregates of size %dx%d exceeds the implementation capacity for tile size %d.", (highX-lowX), (highY-lowY), tileSize));
+		}
+		this.tiles = new AtomicReferenceArray<>(tilesWide*tilesHigh);
+	}
+	
+	/**The tile at tile-column/row tx/ty.  Null if it has not been allocated and 'create' is false.**/
+	public Aggregates<A> tileAt(int tx, int ty, boolean create) {
+		int idx = ty*tilesWide + tx;
+		Aggregates<A> tile = tiles.get(idx);
+		if (tile == null && create) {
+			int tLowX = lowX + tx*tileSize;
+			int tLowY = lowY + ty*tileSize;
+			tile = AggregateUtils.make(tLowX, tLowY, 
+					(int) Math.min((long) tLowX+tileSize, highX), (int) Math.min((long) tLowY+tileSize, highY), 
+					defVal);
+			if (!tiles.compareAndSet(idx, null, tile)) {tile = tiles.get(idx);}
+		}
+		return tile;
+	}
+	
+	/**The tile holding cell x/y.  Null if x/y is out of bounds or (when 'create' is false) if the tile has not been allocated.**/
+	public Aggregates<A> tile(int x, int y, boolean create) {
+		if (x<lowX || x >=highX || y<lowY || y>=highY) {return null;}
+		return tileAt((int) (((long) x-lowX)/tileSize), (int) (((long) y-lowY)/tileSize), create);
+	}
+	
+	/**The allocated tiles (row-major order).**/
+	public List<Aggregates<A>> tiles() {
+		List<Aggregates<A>> allocated = new ArrayList<>();
+		for (int i=0; i<tiles.length(); i++) {
+			Aggregates<A> tile = tiles.get(i);
+			if (tile != null) {allocated.add(tile);}
+		}
+		return allocated;
+	}
+	
+	/**Do these tiled aggregates have tiles with the same size and origin (so tiles with the same bounds can be worked on together)?**/
+	public boolean sameGrid(TiledAggregates<?> other) {
+		return tileSize == other.tileSize
+				&& (((long) lowX)-other.lowX) % tileSize == 0
+				&& (((long) lowY)-other.lowY) % tileSize == 0;
+	}
+	
+	/**Create empty tiled aggregates on the same grid as this one that cover the given region.
+	 * The low bounds are moved down to the nearest tile boundary, so the result may be slightly larger than the region.
+	 */
+	public <B> TiledAggregates<B> aligned(int lowX, int lowY, int highX, int highY, B defVal) {
+		long alignedX = this.lowX + Math.floorDiv(((long) lowX)-this.lowX, tileSize)*tileSize;
+		long alignedY = this.lowY + Math.floorDiv(((long) lowY)-this.lowY, tileSize)*tileSize;
+		return make((int) alignedX, (int) alignedY, highX, highY, defVal, tileSize);
+	}
+	
+	/**Approximate memory held by the allocated tiles (in bytes).**/
+	public long bytes() {
+		long bytes = 0;
+		for (Aggregates<A> tile: tiles()) {bytes += AggregateUtils.estimateBytes(tile);}
+		return bytes;
+	}
+	
+	public int tileSize() {return tileSize;}
+	public int tilesWide() {return tilesWide;}
+	public int tilesHigh() {return tilesHigh;}
+	
+	@Override 
+	public A get(int x, int y) {
+		Aggregates<A> tile = tile(x, y, false);
+		return tile == null ? defVal : tile.get(x, y);
+	}
+
+	@Override
+	public void set(int x, int y, A val) {
+		Aggregates<A> tile = tile(x, y, true);
+		if (tile != null) {tile.set(x, y, val);}
+	}
+	
+	/**True if no tiles have been allocated.**/
+	@Override public boolean empty() {
+		for (int i=0; i<tiles.length(); i++) {if (tiles.get(i) != null) {return false;}}
+		return true;
+	}
+
+	@Override public A defaultValue() {return defVal;}
+	@Override public int lowX() {return lowX;}
+	@Override public int lowY() {return lowY;}
+	@Override public int highX() {return highX;}
+	@Override public int highY() {return highY;}
+	@Override public Iterator<A> iterator() {return new Iterator2D<>(this);}
+	@Override public String toString() {return String.format("Tiled aggregates from (%d, %d) to (%d, %d), %d of %d tiles allocated.", lowX, lowY, highX, highY, tiles().size(), tiles.length());}
+	
+	/**Create tiled aggregates, retaining int access for integer values.**/
+	@SuppressWarnings("unchecked")
+	public static <A> TiledAggregates<A> make(int lowX, int lowY, int highX, int highY, A defVal, int tileSize) {
+		if (defVal instanceof Integer) {
+			return (TiledAggregates<A>) new Ints(lowX, lowY, highX, highY, (Integer) defVal, tileSize);
+		}
+		return new TiledAggregates<>(lowX, lowY, highX, highY, defVal, tileSize);
+	}
+	
+	/**Tiled int values (tiles are IntAggregates).**/
+	public static final class Ints extends TiledAggregates<Integer> implements Aggregates.IntAccess {
+		private static final long serialVersionUID = 2935866466451728745L;
+		private final int defInt;
+		
+		public Ints(int lowX, int lowY, int highX, int highY, int defVal, int tileSize) {
+			super(lowX, lowY, highX, highY, defVal, tileSize);
+			this.defInt = defVal;
+		}
+
+		@Override public int getInt(int x, int y) {
+			Aggregates<Integer> tile = tile(x, y, false);
+			return tile == null ? defInt : ((Aggregates.IntAccess) tile).getInt(x, y);
+		}
+
+		@Override public void setInt(int x, int y, int val) {
+			Aggregates<Integer> tile = tile(x, y, true);
+			if (tile != null) {((Aggregates.IntAccess) tile).setInt(x, y, val);}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package ar.aggregates.wrappers;
+
+import java.util.Iterator;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.aggregates.Iterator2D;
+
+/**Make any set of aggregates safe to share between threads by locking on every access.
+ * 
+ * Intended for the uncommon case of a shared target whose type has no lock-free
+ * concurrent implementation (see AggregateUtils.makeConcurrent for the ones that do).
+ * Thread-confined aggregates should not be wrapped; the lock is taken per cell.
+ * **/
+public class SynchronizedWrapper<A> implements Aggregates.Concurrent<A> {
+	private static final long serialVersionUID = 6110349281374952870L;
+	private final Aggregates<A> base;
+	
+	public SynchronizedWrapper(Aggregates<A> base) {this.base = base;}
+	
+	/**Return the backing aggregate set that this class wraps.**/
+	public Aggregates<A> base() {return base;}
+
+	@Override public synchronized A get(int x, int y) {return base.get(x, y);}
+	@Override public synchronized void set(int x, int y, A val) {base.set(x, y, val);}
+	@Override public synchronized <I> void update(int x, int y, I v, Aggregator<I, A> op) {base.set(x, y, op.combine(base.get(x, y), v));}
+	@Override public synchronized boolean empty() {return base.empty();}
+	
+	@Override public A defaultValue() {return base.defaultValue();}
+	@Override public int lowX() {return base.lowX();}
+	@Override public int lowY() {return base.lowY();}
+	@Override public int highX() {return base.highX();}
+	@Override public int highY() {return base.highY();}
+	@Override public Iterator<A> iterator() {return new Iterator2D<>(this);}
+}
@@ -4,20 +4,35 @@ import java.util.Iterator;
 
 import ar.Aggregates;
 import ar.aggregates.Iterator2D;
+import ar.util.RunningStats;
 import ar.util.Util;
 
 
-/**Report min/max X/Y based on values set in the set-able region (instead of just the set-able region.)**/
+/**Report min/max X/Y based on values set in the set-able region (instead of just the set-able region.)
+ * 
+ * Use the 'wrap' method to get a wrapper that preserves primitive access (e.g., Aggregates.IntAccess) of the base.
+ * 
+ * Optionally, running statistics of the (numeric) values are kept as values are set (see RunningStats),
+ * so transfers can specialize without scanning the aggregates.
+ * **/
 public class TouchedBoundsWrapper<A> implements Aggregates<A> {
 	private final Aggregates<A> base;
 	private int lowX = Integer.MAX_VALUE;
 	private int lowY = Integer.MAX_VALUE;
 	private int highX = Integer.MIN_VALUE;
 	private int highY = Integer.MIN_VALUE;
+	protected final RunningStats stats;
 	
 	public TouchedBoundsWrapper(Aggregates<A> base) {this(base, true);}
-	public TouchedBoundsWrapper(Aggregates<A> base, boolean discoverTouched) {
+	public TouchedBoundsWrapper(Aggregates<A> base, boolean discoverTouched) {this(base, discoverTouched, null);}
+	
+	/**
+	 * @param discoverTouched Scan the base for non-default values? (Otherwise the base is assumed to hold only default values.)
+	 * @param stats Statistics to maintain as values are set (null for none) 
+	 */
+	public TouchedBoundsWrapper(Aggregates<A> base, boolean discoverTouched, RunningStats stats) {
 		this.base = base;
+		this.stats = stats;
 		if (discoverTouched) {
 			for (int x=base.lowX(); x<base.highX(); x++) {
 				for (int y= base.lowY(); y<base.highY(); y++) {
@@ -26,11 +41,11 @@ public class TouchedBoundsWrapper<A> implements Aggregates<A> {
 						lowY = Math.min(lowY, y);
 						highX = Math.max(highX, x+1);
 						highY = Math.max(highY, y+1);
+						if (stats != null) {stats.record((Number) base.defaultValue(), (Number) base.get(x,y));}
 					}
 				}
 			}
 		}
-		
 	}
 	
 	
@@ -44,9 +59,17 @@ public class TouchedBoundsWrapper<A> implements Aggregates<A> {
 
 	@Override public A get(int x, int y) {return base.get(x, y);}
 
+	/**Running statistics of the values (null if not tracked).**/
+	public RunningStats stats() {return stats;}
+	
 	@Override public void set(int x, int y, A val) {
+		if (stats != null) {stats.record((Number) base.get(x, y), (Number) val);}
 		base.set(x,y, val);
-		
+		touch(x,y);
+	}
+	
+	/**Expand the touched region to include x/y (if x/y is in the region of the base aggregates).**/
+	protected final void touch(int x, int y) {
 		if (x >= base.lowX() && x < base.highX()
 				&& y >= base.lowY() && y < base.highY()) {
 			lowX = Math.min(x, lowX);
@@ -55,6 +78,13 @@ public class TouchedBoundsWrapper<A> implements Aggregates<A> {
 			highY = Math.max(y+1, highY);
 		}
 	}
+	
+	/**Expand the touched region to include a region (for changes made directly to the base).**/
+	public void touch(int lowX, int lowY, int highX, int highY) {
+		if (lowX >= highX || lowY >= highY) {return;}
+		touch(lowX, lowY);
+		touch(highX-1, highY-1);
+	}
 
 	@Override public A defaultValue() {return base.defaultValue();}
 	
@@ -64,4 +94,92 @@ public class TouchedBoundsWrapper<A> implements Aggregates<A> {
 	@Override public int highY() {return Math.min(highY, base.highY());}
 
 	@Override public String toString() {return String.format("Touched Bounds (Wrapped) Aggregates from (%d, %d) to (%d, %d).", lowX, lowY, highX,highY);}
+
+
+	/**Wrap the base aggregates, retaining primitive access if the base provides it.**/
+	public static <A> TouchedBoundsWrapper<A> wrap(Aggregates<A> base, boolean discoverTouched) {return wrap(base, discoverTouched, false);}
+	
+	/**Wrap the base aggregates, retaining primitive access if the base provides it.
+	 * @param trackStats Maintain running statistics? (Only done if the default value is an Integer, Long or Double.)
+	 * **/
+	public static <A> TouchedBoundsWrapper<A> wrap(Aggregates<A> base, boolean discoverTouched, boolean trackStats) {
+		A defVal = base.defaultValue();
+		boolean numeric = defVal instanceof Integer || defVal instanceof Long || defVal instanceof Double;
+		return wrap(base, discoverTouched, trackStats && numeric ? new RunningStats((Number) defVal) : null);
+	}
+	
+	/**Wrap a new base holding the same values as a wrapped set; the touched region and statistics are carried over.**/
+	public static <A> TouchedBoundsWrapper<A> rewrap(Aggregates<A> base, TouchedBoundsWrapper<?> like) {
+		TouchedBoundsWrapper<A> wrapper = wrap(base, false, like.stats);
+		wrapper.touch(like.lowX(), like.lowY(), like.highX(), like.highY());
+		return wrapper;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <A> TouchedBoundsWrapper<A> wrap(Aggregates<A> base, boolean discoverTouched, RunningStats stats) {
+		if (base instanceof Aggregates.IntAccess) {
+			return (TouchedBoundsWrapper<A>) new Ints((Aggregates.IntAccess) base, discoverTouched, stats);
+		} else if (base instanceof Aggregates.LongAccess) {
+			return (TouchedBoundsWrapper<A>) new Longs((Aggregates.LongAccess) base, discoverTouched, stats);
+		} else if (base instanceof Aggregates.DoubleAccess) {
+			return (TouchedBoundsWrapper<A>) new Doubles((Aggregates.DoubleAccess) base, discoverTouched, stats);
+		} else {
+			return new TouchedBoundsWrapper<>(base, discoverTouched, stats);
+		}
+	}
+
+	/**Touched-bounds tracking over int aggregates.**/
+	public static final class Ints extends TouchedBoundsWrapper<Integer> implements Aggregates.IntAccess {
+		private static final long serialVersionUID = -4861844120763800625L;
+		private final Aggregates.IntAccess ints;
+		public Ints(Aggregates.IntAccess base, boolean discoverTouched) {this(base, discoverTouched, null);}
+		public Ints(Aggregates.IntAccess base, boolean discoverTouched, RunningStats stats) {
+			super(base, discoverTouched, stats);
+			this.ints = base;
+		}
+
+		@Override public int getInt(int x, int y) {return ints.getInt(x, y);}
+		@Override public void setInt(int x, int y, int val) {
+			if (stats != null) {stats.record(ints.getInt(x, y), val);}
+			ints.setInt(x, y, val);
+			touch(x,y);
+		}
+	}
+
+	/**Touched-bounds tracking over long aggregates.**/
+	public static final class Longs extends TouchedBoundsWrapper<Long> implements Aggregates.LongAccess {
+		private static final long serialVersionUID = 7299183156733742736L;
+		private final Aggregates.LongAccess longs;
+		public Longs(Aggregates.LongAccess base, boolean discoverTouched) {this(base, discoverTouched, null);}
+		public Longs(Aggregates.LongAccess base, boolean discoverTouched, RunningStats stats) {
+			super(base, discoverTouched, stats);
+			this.longs = base;
+		}
+
+		@Override public long getLong(int x, int y) {return longs.getLong(x, y);}
+		@Override public void setLong(int x, int y, long val) {
+			if (stats != null) {stats.record(longs.getLong(x, y), val);}
+			longs.setLong(x, y, val);
+			touch(x,y);
+		}
+	}
+
+	/**Touched-bounds tracking over double aggregates.**/
+	public static final class Doubles extends TouchedBoundsWrapper<Double> implements Aggregates.DoubleAccess {
+		private static final long serialVersionUID = 8644012787282537874L;
+		private final Aggregates.DoubleAccess doubles;
+		public Doubles(Aggregates.DoubleAccess base, boolean discoverTouched) {this(base, discoverTouched, null);}
+		public Doubles(Aggregates.DoubleAccess base, boolean discoverTouched, RunningStats stats) {
+			super(base, discoverTouched, stats);
+			this.doubles = base;
+		}
+
+		@Override public double getDouble(int x, int y) {return doubles.getDouble(x, y);}
+		@Override public void setDouble(int x, int y, double val) {
+			if (stats != null) {stats.record(doubles.getDouble(x, y), val);}
+			doubles.setDouble(x, y, val);
+			touch(x,y);
+		}
+	}
 }
+
@@ -0,0 +1,45 @@
+package ar.aggregates.wrappers;
+
+import java.util.Iterator;
+
+import ar.Aggregates;
+import ar.Transfer;
+import ar.aggregates.Iterator2D;
+
+/**Lazily apply an item-wise transfer to a set of aggregates (without materializing the result).
+ * 
+ * Each 'get' runs the transfer at that location, so values are recomputed on every read.
+ * Locations outside of the base bounds hold the transfer's empty value 
+ * (as they would in the aggregates produced by Renderer.transfer).
+ * **/
+public class TransferWrapper<IN,OUT> implements Aggregates<OUT> {
+	private static final long serialVersionUID = 1650311945216397046L;
+	private final Aggregates<? extends IN> base;
+	private final Transfer.ItemWise<IN,OUT> transfer;
+	
+	public TransferWrapper(Aggregates<? extends IN> base, Transfer.ItemWise<IN,OUT> transfer) {
+		this.base = base;
+		this.transfer = transfer;
+	}
+	
+	/**Return the backing aggregate set that this class wraps.**/
+	public Aggregates<? extends IN> base() {return base;}
+	
+	/**The transfer applied on each read.**/
+	public Transfer.ItemWise<IN,OUT> transfer() {return transfer;}
+	
+	@Override public OUT get(int x, int y) {
+		if (x < base.lowX() || x >= base.highX() || y < base.lowY() || y >= base.highY()) {return transfer.emptyValue();}
+		return transfer.at(x, y, base);
+	}
+	
+	@Override public void set(int x, int y, OUT val) {throw new UnsupportedOperationException("Cannot set in transfer-wrapped aggregates.");}
+	@Override public Iterator<OUT> iterator() {return new Iterator2D<>(this);}
+	@Override public OUT defaultValue() {return transfer.emptyValue();}
+	@Override public int lowX() {return base.lowX();}
+	@Override public int lowY() {return base.lowY();}
+	@Override public int highX() {return base.highX();}
+	@Override public int highY() {return base.highY();}
+	
+	@Override public String toString() {return String.format("Transfer-wrapped Aggregates from %d,%d to %d,%d.", lowX(), lowY(), highX(), highY());}
+}
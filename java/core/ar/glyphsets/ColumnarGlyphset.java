@@ -0,0 +1,139 @@
+package ar.glyphsets;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import ar.Glyph;
+import ar.Glyphset;
+import ar.util.axis.Axis;
+import ar.util.axis.DescriptorPair;
+
+/**Implicit geometry, sequentially arranged glyphset stored as parallel primitive columns.
+ *
+ * Each glyph is a row: an x, y and value (plus width and height for rectangles).
+ * Glyph objects are only made by 'get' and 'iterator'.
+ * TouchesPixel.Points and TouchesPixel.Rectangles read the columns directly instead,
+ * so aggregation does not allocate per glyph.
+ *
+ * Segments and subsets are views onto the same columns (nothing is copied),
+ * so the columns should not be changed while the glyphset is in use.
+ *
+ * @param <G> Geometry type produced by get/iterator
+ */
+public abstract class ColumnarGlyphset<G> implements Glyphset.RandomAccess<G, Double> {
+	protected final double[] xs, ys, values;
+	protected final int low, high;
+	private DescriptorPair<?,?> axisDescriptor;
+
+	protected ColumnarGlyphset(double[] xs, double[] ys, double[] values, int low, int high) {
+		if (xs.length != ys.length || xs.length != values.length) {
+			throw new IllegalArgumentException("Columns must be the same length.");
+		}
+		if (low < 0 || high > xs.length || low > high) {
+			throw new IllegalArgumentException(String.format("Invalid range %d-%d for columns of length %d", low, high, xs.length));
+		}
+		this.xs = xs;
+		this.ys = ys;
+		this.values = values;
+		this.low = low;
+		this.high = high;
+	}
+
+	/**X column (shared, index with low()/high()).**/
+	public double[] xs() {return xs;}
+
+	/**Y column (shared, index with low()/high()).**/
+	public double[] ys() {return ys;}
+
+	/**Value column (shared, index with low()/high()).**/
+	public double[] values() {return values;}
+
+	/**First row of the columns included in this glyphset.**/
+	public int low() {return low;}
+
+	/**Row after the last row of the columns included in this glyphset.**/
+	public int high() {return high;}
+
+	/**Glyphset over a range of rows (relative to the full columns).**/
+	protected abstract ColumnarGlyphset<G> subset(int low, int high);
+
+	@Override public Iterator<Glyph<G,Double>> iterator() {return new GlyphsetIterator<>(this);}
+	@Override public boolean isEmpty() {return low >= high;}
+	@Override public long size() {return high-low;}
+
+	@Override
+	public List<Glyphset<G,Double>> segment(int count) throws IllegalArgumentException {
+		int stride = (int) (size()/count)+1; //+1 for the round-down
+		List<Glyphset<G,Double>> segments = new ArrayList<>();
+		for (int offset=low; offset<high; offset+=stride) {
+			segments.add(subset(offset, Math.min(offset+stride, high)));
+		}
+		return segments;
+	}
+
+	@Override public DescriptorPair<?,?> axisDescriptors() {return axisDescriptor != null ? axisDescriptor : Axis.coordinantDescriptors(this);}
+	@Override public void axisDescriptors(DescriptorPair<?,?> descriptor) {this.axisDescriptor = descriptor;}
+
+	/**Bounds of the rows, given extents (may be null for zero-size glyphs).**/
+	protected Rectangle2D bounds(double[] widths, double[] heights) {
+		if (isEmpty()) {return new Rectangle2D.Double();}
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i=low; i<high; i++) {
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, widths == null ? xs[i] : xs[i] + widths[i]);
+			maxY = Math.max(maxY, heights == null ? ys[i] : ys[i] + heights[i]);
+		}
+		return new Rectangle2D.Double(minX, minY, maxX-minX, maxY-minY);
+	}
+
+
+	/**Point glyphs at x/y.**/
+	public static final class Points extends ColumnarGlyphset<Point2D> {
+		public Points(double[] xs, double[] ys, double[] values) {this(xs, ys, values, 0, xs.length);}
+		public Points(double[] xs, double[] ys, double[] values, int low, int high) {super(xs, ys, values, low, high);}
+
+		@Override
+		public Glyph<Point2D, Double> get(long l) {
+			int i = low + (int) l;
+			return new SimpleGlyph<>(new Point2D.Double(xs[i], ys[i]), values[i]);
+		}
+
+		@Override public Rectangle2D bounds() {return bounds(null, null);}
+		@Override protected Points subset(int low, int high) {return new Points(xs, ys, values, low, high);}
+	}
+
+	/**Rectangle glyphs with their minimum corner at x/y.**/
+	public static final class Rectangles extends ColumnarGlyphset<Rectangle2D> {
+		protected final double[] widths, heights;
+
+		public Rectangles(double[] xs, double[] ys, double[] widths, double[] heights, double[] values) {this(xs, ys, widths, heights, values, 0, xs.length);}
+		public Rectangles(double[] xs, double[] ys, double[] widths, double[] heights, double[] values, int low, int high) {
+			super(xs, ys, values, low, high);
+			if (widths.length != xs.length || heights.length != xs.length) {
+				throw new IllegalArgumentException("Columns must be the same length.");
+			}
+			this.widths = widths;
+			this.heights = heights;
+		}
+
+		/**Width column (shared, index with low()/high()).**/
+		public double[] widths() {return widths;}
+
+		/**Height column (shared, index with low()/high()).**/
+		public double[] heights() {return heights;}
+
+		@Override
+		public Glyph<Rectangle2D, Double> get(long l) {
+			int i = low + (int) l;
+			return new SimpleGlyph<>(new Rectangle2D.Double(xs[i], ys[i], widths[i], heights[i]), values[i]);
+		}
+
+		@Override public Rectangle2D bounds() {return bounds(widths, heights);}
+		@Override protected Rectangles subset(int low, int high) {return new Rectangles(xs, ys, widths, heights, values, low, high);}
+	}
+}
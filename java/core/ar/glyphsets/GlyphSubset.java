@@ -24,6 +24,9 @@ public abstract class GlyphSubset<G,I> implements Glyphset.RandomAccess<G,I> {
 		}
 	}
 
+	/**Glyphset this is a subset of.**/
+	public Glyphset.RandomAccess<G,I> base() {return base;}
+
 	@Override public GlyphsetIterator<G,I> iterator() {return new GlyphsetIterator<G,I>(this, 0, size());}
 	@Override public boolean isEmpty() {return low >= high;}
 	@Override public long size() {return high - low;}
@@ -34,7 +37,7 @@ public abstract class GlyphSubset<G,I> implements Glyphset.RandomAccess<G,I> {
 		long stride = (size()/count)+1; //+1 for the round-down
 		List<Glyphset<G,I>> segments = new ArrayList<>();
 		for (long offset=low; offset<high; offset+=stride) {
-			segments.add(new Cached<>(base, offset, offset+stride));
+			segments.add(new Cached<>(base, offset, Math.min(offset+stride, high)));
 		}
 		return segments;
 	}
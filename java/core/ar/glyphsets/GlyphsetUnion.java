@@ -0,0 +1,88 @@
+package ar.glyphsets;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import ar.Glyph;
+import ar.Glyphset;
+import ar.util.Util;
+import ar.util.axis.Axis;
+import ar.util.axis.DescriptorPair;
+
+/**Several glyphsets presented as one.
+ *
+ * Iteration visits each part in turn.
+ * Segments never span parts, so spatially compact parts yield spatially compact segments.
+ * **/
+public class GlyphsetUnion<G,I> implements Glyphset<G,I> {
+	protected final List<Glyphset<G,I>> parts;
+	private DescriptorPair<?,?> axisDescriptor;
+	private Rectangle2D bounds;
+
+	public GlyphsetUnion(List<Glyphset<G,I>> parts) {this.parts = parts;}
+
+	@Override public boolean isEmpty() {return parts.stream().allMatch(Glyphset::isEmpty);}
+	@Override public long size() {return parts.stream().mapToLong(Glyphset::size).sum();}
+
+	@Override
+	public Rectangle2D bounds() {
+		if (bounds == null) {
+			bounds = parts.stream().filter(p -> !p.isEmpty())
+					.map(Glyphset::bounds)
+					.reduce((l,r) -> Util.bounds(l,r))
+					.orElse(new Rectangle2D.Double());
+		}
+		return bounds;
+	}
+
+	@Override public DescriptorPair<?,?> axisDescriptors() {return axisDescriptor != null ? axisDescriptor : Axis.coordinantDescriptors(this);}
+	@Override public void axisDescriptors(DescriptorPair<?,?> descriptor) {this.axisDescriptor = descriptor;}
+
+	@Override
+	public Iterator<Glyph<G,I>> iterator() {
+		return new Iterator<Glyph<G,I>>() {
+			private int part = 0;
+			private Iterator<Glyph<G,I>> current = parts.isEmpty() ? null : parts.get(0).iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (current != null && !current.hasNext()) {
+					part++;
+					current = part < parts.size() ? parts.get(part).iterator() : null;
+				}
+				return current != null;
+			}
+
+			@Override
+			public Glyph<G,I> next() {
+				if (!hasNext()) {throw new NoSuchElementException();}
+				return current.next();
+			}
+		};
+	}
+
+	/**With at least as many parts as requested segments, consecutive parts are grouped.
+	 * Otherwise, each part is segmented in proportion to its size.
+	 */
+	@Override
+	public List<Glyphset<G,I>> segment(int count) throws IllegalArgumentException {
+		List<Glyphset<G,I>> segments = new ArrayList<>();
+		if (parts.size() >= count) {
+			int stride = (parts.size()+count-1)/count;
+			for (int low=0; low<parts.size(); low+=stride) {
+				List<Glyphset<G,I>> group = parts.subList(low, Math.min(parts.size(), low+stride));
+				segments.add(group.size() == 1 ? group.get(0) : new GlyphsetUnion<>(group));
+			}
+		} else {
+			long total = Math.max(1, size());
+			for (Glyphset<G,I> part: parts) {
+				int share = (int) Math.max(1, Math.round(count * ((double) part.size()/total)));
+				segments.addAll(part.segment(share));
+			}
+		}
+		return segments;
+	}
+}
@@ -1,5 +1,7 @@
 package ar.glyphsets;
 
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Rectangle2D;
 import java.io.File;
 import java.io.IOException;
@@ -47,6 +49,10 @@ import ar.util.Util;
  *   +   c -- Char (two bytes)
  *   +   b -- Byte (one byte)
  *   
+ *  Files that were spatially sorted (see MemMapEncoder.sort) carry a block index.
+ *  When it is present, segments are made of whole blocks (and are thus spatially compact)
+ *  and 'query' skips blocks that lie outside of the requested region. 
+ *   
  * @author jcottam
  *
  */
@@ -70,7 +76,9 @@ public class MemMapList<G,I> implements Glyphset.RandomAccess<G,I> {
 	private final int[] offsets;
 	private final long dataTableOffset;
 	private final long entryCount;
+	private final MemMapEncoder.BlockIndex blocks;
 	private Rectangle2D bounds;
+	private volatile double reach = -1;
 
 	/**Create a new memory mapped list, types are read from the source.
 	 * @throws IOException **/
@@ -103,6 +111,7 @@ public class MemMapList<G,I> implements Glyphset.RandomAccess<G,I> {
 			} 
 			
 			entryCount = (source.length()-dataTableOffset)/recordLength;
+			blocks = header.blockIndexOffset >= 0 ? MemMapEncoder.BlockIndex.from(buffer, header.blockIndexOffset) : null;
 		} else {
 			this.dataTableOffset = -1;
 			this.buffer = null;
@@ -110,6 +119,7 @@ public class MemMapList<G,I> implements Glyphset.RandomAccess<G,I> {
 			this.offsets = new int[0];
 			this.recordLength = -1;
 			this.entryCount=0;
+			this.blocks = null;
 		}
 		
 	}
@@ -124,6 +134,7 @@ public class MemMapList<G,I> implements Glyphset.RandomAccess<G,I> {
 		this.recordLength = MemMapEncoder.recordLength(types);
 		this.entryCount = buffer.capacity()/recordLength;
 		this.dataTableOffset=dataTableOffset;
+		this.blocks = null;
 	}
 
 	@Override
@@ -147,6 +158,22 @@ public class MemMapList<G,I> implements Glyphset.RandomAccess<G,I> {
 	
 	/**Types array used for conversions on read-out.**/
 	public TYPE[] types() {return types;}
+	
+	/**Block index of a spatially sorted file; null if the file has none (or this is a segment of a file).**/
+	public MemMapEncoder.BlockIndex blockIndex() {return blocks;}
+
+	/**List over the records currently in the source file.
+	 * 
+	 * The record count is fixed when a list is made, so records appended to the file
+	 * afterwards are not seen.  For files that are being appended to, this re-examines the file
+	 * and returns a list that includes any complete records added (or this list if there are none).
+	 * Existing records (and their indices) are unchanged, so the result can be used with IncrementalAggregation.
+	 * Only meaningful for lists made directly from a file (not for segments). 
+	 * **/
+	public MemMapList<G,I> refresh() {
+		if (source == null || (source.length()-dataTableOffset)/recordLength == entryCount) {return this;}
+		return new MemMapList<>(source, shaper, valuer);
+	}
 
 	@Override public boolean isEmpty() {return buffer == null || buffer.capacity() <= 0;}
 	@Override public long size() {return entryCount;}
@@ -154,28 +181,128 @@ public class MemMapList<G,I> implements Glyphset.RandomAccess<G,I> {
 
 	@Override
 	public List<Glyphset<G,I>> segment(int count)  throws IllegalArgumentException {
+		if (blocks != null) {return segment(count, 0, blocks.blocks());}
+		
 		long stride = (size()/count)+1; //+1 for the round-down
 		List<Glyphset<G,I>> segments = new ArrayList<>();
 		for (int segId=0; segId<count; segId++) {
 			long low = stride*segId;
 			long high = segId == count-1 ? size() : Math.min(low+stride, size());
-			long offset = recordOffset(low)+buffer.filePosition();
-			long end = Math.min(recordOffset(high)+buffer.filePosition(), source.length());
-
-			try {
-				MappedFile mf = MappedFile.Util.make(source, FileChannel.MapMode.READ_ONLY, BUFFER_BYTES, offset, end);
-				if (mf == null) {segments.add(new EmptyGlyphset<>());}
-				else {
-					mf.order(buffer.order());
-					segments.add(new MemMapList<>(mf, source, shaper, valuer, types, 0));				
-				}
-			} catch (Exception e) {
-				throw new RuntimeException(String.format("Error segmenting glyphset (parameters %d, %d)", count, segId), e);
+			segments.add(records(low, high));
+		}
+		return segments;
+	}
+	
+	/**Segment a run of blocks; each segment is made of whole blocks.**/
+	private List<Glyphset<G,I>> segment(int count, int lowBlock, int highBlock) {
+		long records = blocks.ends[highBlock-1] - blocks.starts[lowBlock];
+		long stride = (records/count)+1; //+1 for the round-down
+		List<Glyphset<G,I>> segments = new ArrayList<>();
+		int first = lowBlock;
+		for (int b=lowBlock; b<highBlock; b++) {
+			if (b == highBlock-1 || blocks.ends[b]-blocks.starts[first] >= stride) {
+				segments.add(records(blocks.starts[first], blocks.ends[b]));
+				first = b+1;
 			}
 		}
 		return segments;
 	}
 	
+	/**Glyphset over a range of records.**/
+	private Glyphset<G,I> records(long low, long high) {
+		long offset = recordOffset(low)+buffer.filePosition();
+		long end = Math.min(recordOffset(high)+buffer.filePosition(), source.length());
+
+		try {
+			MappedFile mf = MappedFile.Util.make(source, FileChannel.MapMode.READ_ONLY, BUFFER_BYTES, offset, end);
+			if (mf == null) {return new EmptyGlyphset<>();}
+			mf.order(buffer.order());
+			return new MemMapList<>(mf, source, shaper, valuer, types, 0);
+		} catch (Exception e) {
+			throw new RuntimeException(String.format("Error segmenting glyphset (records %d-%d)", low, high), e);
+		}
+	}
+	
+	/**Glyphs that intersect the region.
+	 * 
+	 * With a block index, only blocks whose x/y bounds touch the region are visited.
+	 * Block bounds only cover the indexed x/y fields, 
+	 * so the region should be padded by the glyph extent if glyphs are not points (see reach and visible).
+	 * Without a block index, all glyphs are visited.
+	 */
+	public Glyphset<G,I> query(Rectangle2D region) {
+		if (blocks == null) {return new BoundingWrapper<>(this, region);}
+
+		List<Glyphset<G,I>> runs = new ArrayList<>();
+		int start = -1;
+		for (int b=0; b<=blocks.blocks(); b++) {
+			boolean hit = b < blocks.blocks() && blocks.intersects(b, region);
+			if (hit && start < 0) {start = b;}
+			if (!hit && start >= 0) {
+				runs.add(new Blocks(start, b));
+				start = -1;
+			}
+		}
+		if (runs.isEmpty()) {return new EmptyGlyphset<>();}
+		Glyphset<G,I> glyphs = runs.size() == 1 ? runs.get(0) : new GlyphsetUnion<>(runs);
+		return new BoundingWrapper<>(glyphs, region);
+	}
+	
+	/**Glyphs that intersect the viewport (in screen space) under the given view transform.
+	 * The query region is padded by the reach of the glyphs, so glyphs that straddle the viewport edge are included.
+	 **/
+	public Glyphset<G,I> visible(AffineTransform viewTransform, Rectangle2D viewport) {
+		Rectangle2D region;
+		try {region = viewTransform.createInverse().createTransformedShape(viewport).getBounds2D();}
+		catch (NoninvertibleTransformException e) {throw new IllegalArgumentException("View transform must be invertible.", e);}
+		double pad = reach();
+		region.setRect(region.getX()-pad, region.getY()-pad, region.getWidth()+2*pad, region.getHeight()+2*pad);
+		return query(region);
+	}
+	
+	/**Furthest any glyph's shape extends from the x/y point recorded for it in the block index (zero for points at that point).
+	 * Used to pad regions so block culling does not drop glyphs that only partly overlap a region.
+	 * Taken from the block index if it was recorded when the file was sorted (see MemMapEncoder.sort),
+	 * otherwise computed with a pass over all records on first use.  Zero if there is no block index.
+	 **/
+	public double reach() {
+		if (reach < 0) {
+			double r = 0;
+			if (blocks != null && !Double.isNaN(blocks.reach)) {
+				r = blocks.reach;
+			} else if (blocks != null) {
+				for (long i=0; i<entryCount; i++) {
+					IndexedEncoding entry = entryAt(recordOffset(i));
+					double x = ((Number) entry.get(blocks.xField)).doubleValue();
+					double y = ((Number) entry.get(blocks.yField)).doubleValue();
+					r = Math.max(r, MemMapEncoder.BlockIndex.reach(x, y, shaper.apply(entry)));
+				}
+			}
+			reach = r;
+		}
+		return reach;
+	}
+	
+	/**Run of consecutive blocks.  Segments are made of whole blocks in the run.**/
+	private final class Blocks implements Glyphset<G,I> {
+		private final int low, high;
+		private final Glyphset<G,I> records;
+		
+		public Blocks(int low, int high) {
+			this.low = low;
+			this.high = high;
+			this.records = records(blocks.starts[low], blocks.ends[high-1]);
+		}
+
+		@Override public Iterator<Glyph<G,I>> iterator() {return records.iterator();}
+		@Override public boolean isEmpty() {return records.isEmpty();}
+		@Override public long size() {return records.size();}
+		@Override public Rectangle2D bounds() {return records.bounds();}
+		@Override public DescriptorPair<?,?> axisDescriptors() {return MemMapList.this.axisDescriptors();}
+		@Override public void axisDescriptors(DescriptorPair<?,?> descriptor) {MemMapList.this.axisDescriptors(descriptor);}
+		@Override public List<Glyphset<G,I>> segment(int count) {return MemMapList.this.segment(count, low, high);}
+	}
+	
 	/**Bounds calculation.  Is run in parallel using the tuning parameters of ParallelRenderer.**/
 	public Rectangle2D bounds() {
 		if (bounds == null) {
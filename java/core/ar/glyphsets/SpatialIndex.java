@@ -0,0 +1,355 @@
+package ar.glyphsets;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+import ar.Glyph;
+import ar.Glyphset;
+import ar.util.Util;
+import ar.util.axis.Axis;
+import ar.util.axis.DescriptorPair;
+
+/**Spatial arrangement over a random-access glyphset: a packed, bulk-loaded R-tree.
+ *
+ * Glyphs are ordered by the Hilbert index of their bounding-box centers,
+ * then grouped into nodes of a fixed size (leaves hold glyphs, higher nodes hold nodes).
+ * Contiguous index ranges are therefore spatially coherent,
+ * so 'segment' returns spatially compact partitions.
+ * The 'query' and 'visible' methods only visit nodes that intersect the requested region,
+ * so their cost is proportional to what is visible instead of the full glyphset size.
+ *
+ * The index stores a permutation of the base glyphset and the node bounds (not the glyphs).
+ * It is only valid as long as the base glyphset does not change.
+ * **/
+public class SpatialIndex<G,I> implements Glyphset.RandomAccess<G,I> {
+	/**Default number of entries in each node.**/
+	public static final int DEFAULT_NODE_SIZE = 64;
+
+	/**Resolution of the Hilbert curve used to order glyphs.**/
+	private static final int CURVE_ORDER = 16;
+
+	protected final Glyphset.RandomAccess<G,I> base;
+	protected final int nodeSize;
+
+	/**Index into the base glyphset for each position in this glyphset.**/
+	protected final int[] order;
+
+	/**Node bounds by level (leaves at zero, root last); four values per node: minX, minY, maxX, maxY.**/
+	protected final double[][] levels;
+	private DescriptorPair<?,?> axisDescriptor;
+
+	public SpatialIndex(Glyphset.RandomAccess<G,I> base) {this(base, DEFAULT_NODE_SIZE);}
+	public SpatialIndex(Glyphset.RandomAccess<G,I> base, int nodeSize) {
+		if (base.size() > Integer.MAX_VALUE) {throw new IllegalArgumentException("Can only index up to max-int items.");}
+		if (nodeSize < 2) {throw new IllegalArgumentException("Node size must be at least 2; received " + nodeSize);}
+		this.base = base;
+		this.nodeSize = nodeSize;
+		this.order = hilbertOrder(base);
+		this.levels = pack(base, order, nodeSize);
+	}
+
+	@Override public Iterator<Glyph<G,I>> iterator() {return new GlyphsetIterator<>(this);}
+	@Override public boolean isEmpty() {return order.length == 0;}
+	@Override public long size() {return order.length;}
+
+	@Override
+	public Glyph<G,I> get(long l) {
+		if (l > Integer.MAX_VALUE) {throw new IllegalArgumentException("Cannot access items beyond max int value");}
+		return base.get(order[(int) l]);
+	}
+
+	@Override
+	public Rectangle2D bounds() {
+		if (isEmpty()) {return new Rectangle2D.Double();}
+		double[] root = levels[levels.length-1];
+		return new Rectangle2D.Double(root[0], root[1], root[2]-root[0], root[3]-root[1]);
+	}
+
+	/**Contiguous, leaf-aligned runs of the Hilbert order.**/
+	@Override
+	public List<Glyphset<G,I>> segment(int count) throws IllegalArgumentException {
+		List<Range> all = new ArrayList<>();
+		if (!isEmpty()) {all.add(new Range(0, order.length, false));}
+		return new Selection(all, null).segment(count);
+	}
+
+	@Override public DescriptorPair<?,?> axisDescriptors() {return axisDescriptor != null ? axisDescriptor : Axis.coordinantDescriptors(this);}
+	@Override public void axisDescriptors(DescriptorPair<?,?> descriptor) {this.axisDescriptor = descriptor;}
+
+	/**Glyphs whose bounds intersect the passed region (in glyph space).**/
+	public Selection query(Rectangle2D region) {
+		double[] r = new double[]{region.getMinX(), region.getMinY(), region.getMaxX(), region.getMaxY()};
+		List<Range> ranges = new ArrayList<>();
+		if (!isEmpty()) {collect(levels.length-1, 0, r, ranges);}
+		return new Selection(ranges, region);
+	}
+
+	/**Glyphs that intersect the viewport (in screen space) under the given view transform.**/
+	public Selection visible(AffineTransform viewTransform, Rectangle2D viewport) {
+		try {
+			return query(viewTransform.createInverse().createTransformedShape(viewport).getBounds2D());
+		} catch (NoninvertibleTransformException e) {throw new IllegalArgumentException("View transform must be invertible.", e);}
+	}
+
+	/**Add the ranges in the given node that intersect the region; whole ranges are used where the node is contained.**/
+	private void collect(int level, int node, double[] region, List<Range> ranges) {
+		double[] nodes = levels[level];
+		if (!intersects(nodes, node, region)) {return;}
+
+		long span = span(level);
+		int start = (int) (node * span);
+		int end = (int) Math.min(order.length, start + span);
+
+		if (contains(region, nodes, node)) {
+			add(ranges, new Range(start, end, false));
+		} else if (level == 0) {
+			add(ranges, new Range(start, end, true));
+		} else {
+			int children = levels[level-1].length/4;
+			for (int child=node*nodeSize; child < Math.min(children, (node+1)*nodeSize); child++) {
+				collect(level-1, child, region, ranges);
+			}
+		}
+	}
+
+	/**Number of glyphs covered by a node at the given level.**/
+	private long span(int level) {
+		long span = nodeSize;
+		for (int i=0; i<level && span < order.length; i++) {span *= nodeSize;}
+		return span;
+	}
+
+	/**Add a range, extending the last range if they are adjacent and filtered the same way.**/
+	private static void add(List<Range> ranges, Range r) {
+		if (!ranges.isEmpty()) {
+			Range last = ranges.get(ranges.size()-1);
+			if (last.end == r.start && last.filter == r.filter) {
+				ranges.set(ranges.size()-1, new Range(last.start, r.end, r.filter));
+				return;
+			}
+		}
+		ranges.add(r);
+	}
+
+	/**Bounds of a node as a rectangle.**/
+	private Rectangle2D nodeBounds(int level, int node) {
+		double[] nodes = levels[level];
+		int i = node*4;
+		return new Rectangle2D.Double(nodes[i], nodes[i+1], nodes[i+2]-nodes[i], nodes[i+3]-nodes[i+1]);
+	}
+
+	private static boolean intersects(double[] nodes, int node, double[] r) {
+		int i = node*4;
+		return nodes[i] <= r[2] && nodes[i+2] >= r[0] && nodes[i+1] <= r[3] && nodes[i+3] >= r[1];
+	}
+
+	private static boolean contains(double[] r, double[] nodes, int node) {
+		int i = node*4;
+		return r[0] <= nodes[i] && r[1] <= nodes[i+1] && r[2] >= nodes[i+2] && r[3] >= nodes[i+3];
+	}
+
+	/**Does the shape's bounding box touch the region? (Inclusive of edges, so points on the edge are included.)**/
+	private static boolean touches(Rectangle2D region, Object shape) {
+		Rectangle2D b = Util.boundOne(shape);
+		return b.getMinX() <= region.getMaxX() && b.getMaxX() >= region.getMinX()
+				&& b.getMinY() <= region.getMaxY() && b.getMaxY() >= region.getMinY();
+	}
+
+	/**Order the base glyphset by the Hilbert index of glyph centers.**/
+	private static int[] hilbertOrder(Glyphset.RandomAccess<?,?> base) {
+		int size = (int) base.size();
+		if (size == 0) {return new int[0];}
+
+		Rectangle2D bounds = base.bounds();
+		int cells = 1 << CURVE_ORDER;
+		double sx = bounds.getWidth() > 0 ? (cells-1)/bounds.getWidth() : 0;
+		double sy = bounds.getHeight() > 0 ? (cells-1)/bounds.getHeight() : 0;
+
+		//Pack key and index into one long so a primitive sort orders both
+		long[] keys = new long[size];
+		IntStream.range(0, size).parallel().forEach(i -> {
+			Glyph<?,?> g = base.get(i);
+			long key = 0;
+			if (g != null && g.shape() != null) {
+				Rectangle2D b = Util.boundOne(g.shape());
+				int x = (int) Math.max(0, Math.min(cells-1, (b.getCenterX()-bounds.getMinX())*sx));
+				int y = (int) Math.max(0, Math.min(cells-1, (b.getCenterY()-bounds.getMinY())*sy));
+				key = Util.hilbert(CURVE_ORDER, x, y);
+			}
+			keys[i] = (key << 31) | i;
+		});
+		Arrays.parallelSort(keys);
+
+		int[] order = new int[size];
+		for (int i=0; i<size; i++) {order[i] = (int) (keys[i] & Integer.MAX_VALUE);}
+		return order;
+	}
+
+	/**Compute node bounds, bottom up.**/
+	private static double[][] pack(Glyphset.RandomAccess<?,?> base, int[] order, int nodeSize) {
+		List<double[]> levels = new ArrayList<>();
+		if (order.length == 0) {return new double[0][];}
+
+		int leaves = (order.length + nodeSize-1)/nodeSize;
+		double[] level = new double[leaves*4];
+		IntStream.range(0, leaves).parallel().forEach(n -> {
+			clear(level, n);
+			for (int i=n*nodeSize; i<Math.min(order.length, (n+1)*nodeSize); i++) {
+				Glyph<?,?> g = base.get(order[i]);
+				if (g == null || g.shape() == null) {continue;}
+				Rectangle2D b = Util.boundOne(g.shape());
+				include(level, n, b.getMinX(), b.getMinY(), b.getMaxX(), b.getMaxY());
+			}
+		});
+		levels.add(level);
+
+		double[] children = level;
+		while (children.length > 4) {
+			int count = (children.length/4 + nodeSize-1)/nodeSize;
+			double[] parents = new double[count*4];
+			for (int n=0; n<count; n++) {
+				clear(parents, n);
+				for (int c=n*nodeSize; c<Math.min(children.length/4, (n+1)*nodeSize); c++) {
+					include(parents, n, children[c*4], children[c*4+1], children[c*4+2], children[c*4+3]);
+				}
+			}
+			levels.add(parents);
+			children = parents;
+		}
+		return levels.toArray(new double[levels.size()][]);
+	}
+
+	private static void clear(double[] nodes, int node) {
+		int i = node*4;
+		nodes[i] = Double.POSITIVE_INFINITY;
+		nodes[i+1] = Double.POSITIVE_INFINITY;
+		nodes[i+2] = Double.NEGATIVE_INFINITY;
+		nodes[i+3] = Double.NEGATIVE_INFINITY;
+	}
+
+	private static void include(double[] nodes, int node, double minX, double minY, double maxX, double maxY) {
+		int i = node*4;
+		nodes[i] = Math.min(nodes[i], minX);
+		nodes[i+1] = Math.min(nodes[i+1], minY);
+		nodes[i+2] = Math.max(nodes[i+2], maxX);
+		nodes[i+3] = Math.max(nodes[i+3], maxY);
+	}
+
+
+	/**Run of positions in the index. Filtered runs only partially intersect a query region.**/
+	private static final class Range {
+		final int start, end;
+		final boolean filter;
+		Range(int start, int end, boolean filter) {
+			this.start = start;
+			this.end = end;
+			this.filter = filter;
+		}
+	}
+
+	/**Subset of the index, as runs of leaf-aligned positions.
+	 *
+	 * Size is approximate when a region is given:
+	 * it includes glyphs in leaves that intersect the region, even though only glyphs that touch the region are iterated.
+	 * Bounds are the bounds of the nodes that hold the selection.
+	 * **/
+	public final class Selection implements Glyphset<G,I> {
+		private final List<Range> ranges;
+		private final Rectangle2D region;
+		private Rectangle2D bounds;
+
+		private Selection(List<Range> ranges, Rectangle2D region) {
+			this.ranges = ranges;
+			this.region = region;
+		}
+
+		@Override public boolean isEmpty() {return ranges.isEmpty();}
+		@Override public long size() {return ranges.stream().mapToLong(r -> r.end-r.start).sum();}
+		@Override public DescriptorPair<?,?> axisDescriptors() {return SpatialIndex.this.axisDescriptors();}
+		@Override public void axisDescriptors(DescriptorPair<?,?> descriptor) {SpatialIndex.this.axisDescriptors(descriptor);}
+
+		@Override
+		public Rectangle2D bounds() {
+			if (bounds != null) {return bounds;}
+			Rectangle2D b = null;
+			for (Range r: ranges) {
+				for (int leaf=r.start/nodeSize; leaf<(r.end+nodeSize-1)/nodeSize; leaf++) {
+					Rectangle2D leafBounds = nodeBounds(0, leaf);
+					if (b == null) {b = leafBounds;}
+					else {Util.add(b, leafBounds);}
+				}
+			}
+			bounds = b == null ? new Rectangle2D.Double() : b;
+			return bounds;
+		}
+
+		@Override
+		public Iterator<Glyph<G,I>> iterator() {
+			return new Iterator<Glyph<G,I>>() {
+				private int range = 0;
+				private int at = ranges.isEmpty() ? 0 : ranges.get(0).start;
+				private Glyph<G,I> next;
+
+				@Override
+				public boolean hasNext() {
+					while (next == null && range < ranges.size()) {
+						Range r = ranges.get(range);
+						if (at >= r.end) {
+							range++;
+							if (range < ranges.size()) {at = ranges.get(range).start;}
+							continue;
+						}
+						Glyph<G,I> g = get(at++);
+						if (g != null && (!r.filter || (g.shape() != null && touches(region, g.shape())))) {next = g;}
+					}
+					return next != null;
+				}
+
+				@Override
+				public Glyph<G,I> next() {
+					if (!hasNext()) {throw new NoSuchElementException();}
+					Glyph<G,I> g = next;
+					next = null;
+					return g;
+				}
+			};
+		}
+
+		/**Split into runs of roughly equal size, on leaf boundaries.**/
+		@Override
+		public List<Glyphset<G,I>> segment(int count) throws IllegalArgumentException {
+			if (count < 1) {throw new IllegalArgumentException("Must request at least one segment.");}
+			if (ranges.isEmpty()) {return Collections.singletonList(this);}
+			long stride = Math.max(1, (size()/count) + 1);
+			stride = ((stride + nodeSize-1)/nodeSize)*nodeSize;
+
+			List<Glyphset<G,I>> segments = new ArrayList<>();
+			List<Range> current = new ArrayList<>();
+			long remaining = stride;
+			for (Range r: ranges) {
+				int start = r.start;
+				while (start < r.end) {
+					int end = (int) Math.min(r.end, start + remaining);
+					current.add(new Range(start, end, r.filter));
+					remaining -= end-start;
+					start = end;
+					if (remaining == 0) {
+						segments.add(new Selection(current, region));
+						current = new ArrayList<>();
+						remaining = stride;
+					}
+				}
+			}
+			if (!current.isEmpty()) {segments.add(new Selection(current, region));}
+			return segments;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package ar.glyphsets;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import ar.Glyph;
+import ar.Glyphset;
+import ar.util.axis.Axis;
+import ar.util.axis.DescriptorPair;
+
+/**Every stride-th glyph of a random-access glyphset, for each offset in [low, high) (a stratified sample).
+ * 
+ * Item i of the subset is item (i/width)*stride + low + i%width of the base (where width = high-low),
+ * so the sample is spread evenly through the base, and subsets with the same stride and disjoint offsets
+ * partition the base.
+ * 
+ * Bounds are the bounds of the base (a cover of the sample that the base usually caches).
+ **/
+public class StridedSubset<G,I> implements Glyphset.RandomAccess<G,I> {
+	private final Glyphset.RandomAccess<G,I> base;
+	private final long stride, low, width, size;
+	
+	/**@param stride Distance between consecutive samples with the same offset
+	 * @param low First offset included (inclusive)
+	 * @param high Last offset included (exclusive), at most stride**/
+	public StridedSubset(Glyphset.RandomAccess<G,I> base, long stride, long low, long high) {
+		if (stride < 1 || low < 0 || low > high || high > stride) {
+			throw new IllegalArgumentException(String.format("Invalid stride/offsets: %d [%d, %d)", stride, low, high));
+		}
+		this.base = base;
+		this.stride = stride;
+		this.low = low;
+		this.width = high-low;
+		
+		long rows = base.size()/stride;
+		long rest = base.size()%stride;
+		this.size = rows*width + Math.max(0, Math.min(high, rest)-low);
+	}
+
+	@Override public Glyph<G,I> get(long l) {return base.get((l/width)*stride + low + l%width);}
+	@Override public GlyphsetIterator<G,I> iterator() {return new GlyphsetIterator<G,I>(this);}
+	@Override public boolean isEmpty() {return size == 0;}
+	@Override public long size() {return size;}
+	@Override public Rectangle2D bounds() {return base.bounds();}
+	@Override public DescriptorPair<?,?> axisDescriptors() {return Axis.coordinantDescriptors(this);}
+	@Override public void axisDescriptors(DescriptorPair<?,?> descriptor) {base.axisDescriptors(descriptor);}
+
+	/**Contiguous (uncached) ranges of the sample.**/
+	@Override 
+	public List<Glyphset<G,I>> segment(int count) throws IllegalArgumentException {
+		long step = (size/count)+1;
+		List<Glyphset<G,I>> segments = new ArrayList<>();
+		for (long offset=0; offset<size; offset+=step) {
+			segments.add(new GlyphSubset.Uncached<>(this, offset, Math.min(offset+step, size)));
+		}
+		return segments;
+	}
+}
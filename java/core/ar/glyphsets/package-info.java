@@ -2,7 +2,7 @@
  * 
  * Glyphsets are categorized as either Spatial or Sequential arrangements and as either Explicit or Implicit  geometries.
  * 
- * Spatial arrangements glyphsets are the quad-trees and the matrix glyphset.  
+ * Spatial arrangements glyphsets are the quad-trees, the matrix glyphset and the SpatialIndex (a packed R-tree).  
  * These divide the logical canvas space into regions and store glyph elements 
  * in their corresponding regions. Sequential arrangements keep lists of the 
  * glyphs without regard to the location of those glyphs.  Generally speaking,
@@ -0,0 +1,301 @@
+package ar.renderers;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.Glyphset;
+import ar.Renderer;
+import ar.Selector;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.wrappers.TouchedBoundsWrapper;
+import ar.glyphsets.MemMapList;
+import ar.glyphsets.SpatialIndex;
+import ar.util.Util;
+
+/**Multi-resolution cache of aggregates for interactive zoom/pan.
+ *
+ * Aggregates are kept as square tiles on a fixed grid per zoom level.
+ * Level z has a scale of 2^z (cells per data unit) with the origin at the minimum corner of the dataset bounds,
+ * so each cell at level z is exactly four cells at level z+1.
+ * A request for a view is served at the smallest level at least as fine as the view's scale:
+ *  * Cached tiles are re-used as-is (so revisiting a view costs only assembling the tiles).
+ *  * Missing tiles are rolled up (with Aggregator.rollup) from cached tiles at finer levels when all of them are present (zoom-out).
+ *  * Remaining tiles are aggregated by the renderer in one pass over the region they cover (pans only aggregate newly exposed tiles).
+ *
+ * Tiles are keyed by dataset and aggregator (by identity) and zoom level; the selector is assumed to be determined by the dataset.
+ * Datasets are assumed to be unchanged while cached (call clear if they change).
+ * Least-recently used tiles are evicted when the (estimated) size of all tiles exceeds the memory budget.
+ *
+ * Rollup is exact for point glyphs.  For glyphs that cover several cells, a rolled-up cell combines
+ * each finer cell the glyph touches (the same semantics as AggregateUtils.coarsen).
+ * **/
+public class AggregatePyramid {
+	/**Width and height (in cells) of a tile.**/
+	public static final int TILE_SIZE = 256;
+
+	/**How many levels finer to look for tiles to roll up.**/
+	public static final int ROLLUP_DEPTH = 3;
+
+	private final Renderer renderer;
+	private final long budget;
+	private final LinkedHashMap<Key, Aggregates<?>> tiles = new LinkedHashMap<>(16, .75f, true);
+	private long bytes = 0;
+
+	/**@param budget Memory budget (in bytes, as estimated by AggregateUtils.estimateBytes) for all cached tiles.**/
+	public AggregatePyramid(Renderer renderer, long budget) {
+		this.renderer = renderer;
+		this.budget = budget;
+	}
+
+	/**Aggregates for a view along with the transform they were rendered with.**/
+	public static final class View<A> {
+		public final Aggregates<A> aggregates;
+		public final AffineTransform renderTransform;
+		public View(Aggregates<A> aggregates, AffineTransform renderTransform) {
+			this.aggregates = aggregates;
+			this.renderTransform = renderTransform;
+		}
+	}
+
+	/**Aggregates for the visible part of a dataset.
+	 *
+	 * The returned aggregates start at 0,0 and cover the part of the dataset visible in the viewport
+	 * at the pyramid level for the view (which may be up to twice as fine as the view).
+	 *
+	 * @param view Data to screen transform (scale and translate only)
+	 * @param viewport Visible screen region
+	 */
+	public <G,I,A> View<A> aggregate(
+			Glyphset<? extends G, ? extends I> glyphs,
+			Selector<G> selector,
+			Aggregator<I,A> op,
+			AffineTransform view,
+			Rectangle viewport) {
+
+		Rectangle2D bounds = glyphs.bounds();
+		int zx = level(Math.abs(view.getScaleX()));
+		int zy = level(Math.abs(view.getScaleY()));
+		AffineTransform levelTransform = levelTransform(bounds, zx, zy);
+
+		Rectangle2D visible;
+		try {visible = view.createInverse().createTransformedShape(viewport).getBounds2D().createIntersection(bounds);}
+		catch (NoninvertibleTransformException e) {visible = bounds;}
+
+		Rectangle extent = extent(bounds, zx, zy);
+		Rectangle cells = levelTransform.createTransformedShape(visible).getBounds();
+		cells = new Rectangle(cells.x, cells.y, cells.width+1, cells.height+1).intersection(extent);	//+1 so glyphs on the far edge are included
+		if (visible.isEmpty() || cells.isEmpty()) {cells = new Rectangle(extent.x, extent.y, 0, 0);}
+
+		int tx0 = cells.x/TILE_SIZE, ty0 = cells.y/TILE_SIZE;
+		int tx1 = (cells.x+cells.width-1)/TILE_SIZE, ty1 = (cells.y+cells.height-1)/TILE_SIZE;
+
+		//Find (or roll up) cached tiles; remember the rest
+		List<Key> missing = new ArrayList<>();
+		Map<Key, Aggregates<A>> found = new LinkedHashMap<>();
+		for (int tx=tx0; tx<=tx1 && !cells.isEmpty(); tx++) {
+			for (int ty=ty0; ty<=ty1; ty++) {
+				Key key = new Key(glyphs, op, zx, zy, tx, ty);
+				Aggregates<A> tile = cached(key, op, ROLLUP_DEPTH, bounds);
+				if (tile == null) {missing.add(key);}
+				else {found.put(key, tile);}
+			}
+		}
+
+		if (!missing.isEmpty()) {found.putAll(render(missing, glyphs, selector, op, levelTransform));}
+
+		//Assemble the visible cells
+		Aggregates<A> result = AggregateUtils.make(0, 0, cells.width, cells.height, op.identity());
+		for (Map.Entry<Key, Aggregates<A>> e: found.entrySet()) {
+			Aggregates<A> tile = e.getValue();
+			Rectangle overlap = AggregateUtils.bounds(tile).intersection(cells);
+			for (int x=overlap.x; x<overlap.x+overlap.width; x++) {
+				for (int y=overlap.y; y<overlap.y+overlap.height; y++) {
+					result.set(x-cells.x, y-cells.y, tile.get(x, y));
+				}
+			}
+		}
+
+		AffineTransform renderTransform = AffineTransform.getTranslateInstance(-cells.x, -cells.y);
+		renderTransform.concatenate(levelTransform);
+		return new View<>(result, renderTransform);
+	}
+
+	/**Remove all cached tiles.**/
+	public synchronized void clear() {
+		tiles.clear();
+		bytes = 0;
+	}
+
+	/**Remove all cached tiles for a dataset.**/
+	public synchronized void clear(Glyphset<?,?> dataset) {
+		Iterator<Map.Entry<Key, Aggregates<?>>> it = tiles.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, Aggregates<?>> e = it.next();
+			if (e.getKey().dataset == dataset) {
+				bytes -= AggregateUtils.estimateBytes(e.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	/**Estimated size of all cached tiles (in bytes).**/
+	public synchronized long bytes() {return bytes;}
+
+	/**Number of cached tiles.**/
+	public synchronized int tiles() {return tiles.size();}
+
+	/**Aggregate the missing tiles in one pass, cache and return them.**/
+	private <G,I,A> Map<Key, Aggregates<A>> render(
+			List<Key> missing, Glyphset<? extends G, ? extends I> glyphs,
+			Selector<G> selector, Aggregator<I,A> op, AffineTransform levelTransform) {
+
+		Rectangle region = null;
+		for (Key key: missing) {region = region == null ? key.cells() : region.union(key.cells());}
+		final Rectangle r = region;
+
+		Glyphset<? extends G, ? extends I> subset = glyphs;
+		if (glyphs instanceof SpatialIndex) {
+			subset = ((SpatialIndex<? extends G, ? extends I>) glyphs).visible(levelTransform, r);
+		} else if (glyphs instanceof MemMapList && ((MemMapList<?,?>) glyphs).blockIndex() != null) {
+			subset = ((MemMapList<? extends G, ? extends I>) glyphs).visible(levelTransform, r);
+		}
+
+		Aggregates<A> aggs = renderer.aggregate(subset, selector, op, levelTransform,
+				(defVal) -> TouchedBoundsWrapper.wrap(AggregateUtils.make(r.x, r.y, r.x+r.width, r.y+r.height, defVal), false),
+				ThreadpoolRenderer.defaultMerge(op));
+
+		Map<Key, Aggregates<A>> rendered = new LinkedHashMap<>();
+		for (Key key: missing) {
+			Rectangle cells = key.cells();
+			Aggregates<A> tile = AggregateUtils.make(cells.x, cells.y, cells.x+cells.width, cells.y+cells.height, op.identity());
+			if (aggs != null) {
+				for (int x=cells.x; x<cells.x+cells.width; x++) {
+					for (int y=cells.y; y<cells.y+cells.height; y++) {tile.set(x, y, aggs.get(x, y));}
+				}
+			}
+			put(key, tile);
+			rendered.put(key, tile);
+		}
+		return rendered;
+	}
+
+	/**Get a tile from the cache or by rolling up cached tiles from finer levels.  Null if neither is possible.**/
+	@SuppressWarnings("unchecked")
+	private <A> Aggregates<A> cached(Key key, Aggregator<?,A> op, int depth, Rectangle2D bounds) {
+		synchronized(this) {
+			Aggregates<?> tile = tiles.get(key);
+			if (tile != null) {return (Aggregates<A>) tile;}
+		}
+		if (depth <= 0) {return null;}
+
+		Rectangle finerExtent = extent(bounds, key.zx+1, key.zy+1);
+		List<Aggregates<A>> children = new ArrayList<>();
+		for (Key child: key.children()) {
+			if (!child.cells().intersects(finerExtent)) {continue;}	//Entirely outside of the data, so empty
+			Aggregates<A> c = cached(child, op, depth-1, bounds);
+			if (c == null) {return null;}
+			children.add(c);
+		}
+
+		Rectangle cells = key.cells();
+		A identity = op.identity();
+		Aggregates<A> tile = AggregateUtils.make(cells.x, cells.y, cells.x+cells.width, cells.y+cells.height, identity);
+		for (Aggregates<A> child: children) {
+			for (int x=child.lowX(); x<child.highX(); x++) {
+				for (int y=child.lowY(); y<child.highY(); y++) {
+					A v = child.get(x, y);
+					if (Util.isEqual(v, identity)) {continue;}
+					int px = x >> 1, py = y >> 1;
+					tile.set(px, py, op.rollup(tile.get(px, py), v));
+				}
+			}
+		}
+		put(key, tile);
+		return tile;
+	}
+
+	private synchronized void put(Key key, Aggregates<?> tile) {
+		Aggregates<?> old = tiles.put(key, tile);
+		if (old != null) {bytes -= AggregateUtils.estimateBytes(old);}
+		bytes += AggregateUtils.estimateBytes(tile);
+
+		Iterator<Aggregates<?>> it = tiles.values().iterator();
+		while (bytes > budget && tiles.size() > 1 && it.hasNext()) {
+			Aggregates<?> eldest = it.next();
+			if (eldest == tile) {continue;}
+			bytes -= AggregateUtils.estimateBytes(eldest);
+			it.remove();
+		}
+	}
+
+	/**Smallest level whose scale is at least the given scale.**/
+	public static int level(double scale) {
+		int exp = Math.getExponent(scale);
+		return Math.scalb(1d, exp) == scale ? exp : exp+1;
+	}
+
+	/**Data to cell transform for a level.**/
+	public static AffineTransform levelTransform(Rectangle2D bounds, int zx, int zy) {
+		AffineTransform t = AffineTransform.getScaleInstance(Math.scalb(1d, zx), Math.scalb(1d, zy));
+		t.translate(-bounds.getMinX(), -bounds.getMinY());
+		return t;
+	}
+
+	/**Cells a dataset covers at a level.**/
+	private static Rectangle extent(Rectangle2D bounds, int zx, int zy) {
+		return new Rectangle(0, 0,
+				(int) (bounds.getWidth() * Math.scalb(1d, zx)) + 1,
+				(int) (bounds.getHeight() * Math.scalb(1d, zy)) + 1);
+	}
+
+	private static final class Key {
+		final Object dataset, aggregator;
+		final int zx, zy, tx, ty;
+
+		Key(Object dataset, Object aggregator, int zx, int zy, int tx, int ty) {
+			this.dataset = dataset;
+			this.aggregator = aggregator;
+			this.zx = zx;
+			this.zy = zy;
+			this.tx = tx;
+			this.ty = ty;
+		}
+
+		Rectangle cells() {return new Rectangle(tx*TILE_SIZE, ty*TILE_SIZE, TILE_SIZE, TILE_SIZE);}
+
+		Key[] children() {
+			return new Key[]{
+					new Key(dataset, aggregator, zx+1, zy+1, tx*2,   ty*2),
+					new Key(dataset, aggregator, zx+1, zy+1, tx*2+1, ty*2),
+					new Key(dataset, aggregator, zx+1, zy+1, tx*2,   ty*2+1),
+					new Key(dataset, aggregator, zx+1, zy+1, tx*2+1, ty*2+1)};
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {return false;}
+			Key o = (Key) other;
+			return dataset == o.dataset && aggregator == o.aggregator
+					&& zx == o.zx && zy == o.zy && tx == o.tx && ty == o.ty;
+		}
+
+		@Override
+		public int hashCode() {
+			int h = System.identityHashCode(dataset);
+			h = 31*h + System.identityHashCode(aggregator);
+			h = 31*h + zx;
+			h = 31*h + zy;
+			h = 31*h + tx;
+			return 31*h + ty;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package ar.renderers;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**Cooperative cancellation (and deadline) for a render.
+ * 
+ * Renderers capture the current token of the calling thread (see 'during') when a render starts
+ * and hand it to their tasks.  Tasks check it between units of work (segments, chunks, blocks)
+ * and install it on their own thread while running selectors, which check it every few
+ * thousand glyphs (see 'check(long)').  A cancelled (or expired) render stops by throwing
+ * a CancellationException out of the Renderer method.
+ * 
+ * Cancelling is thread safe and may be done from any thread.  Once cancelled, a token stays cancelled.
+ * **/
+public final class Cancellation {
+	/**Never cancelled; the current token of a thread that has not installed one.**/
+	public static final Cancellation NONE = new Cancellation(Long.MAX_VALUE);
+	
+	private static final ThreadLocal<Cancellation> CURRENT = ThreadLocal.withInitial(() -> NONE);
+	
+	private final long deadline;		//In System.nanoTime units; Long.MAX_VALUE for none
+	private volatile boolean cancelled = false;
+	
+	/**Token without a deadline.**/
+	public Cancellation() {this(Long.MAX_VALUE);}
+	private Cancellation(long deadline) {this.deadline = deadline;}
+	
+	/**Token that expires after the given time has elapsed (or when cancelled).**/
+	public static Cancellation deadline(long timeout, TimeUnit unit) {
+		return new Cancellation(System.nanoTime() + unit.toNanos(timeout));
+	}
+	
+	/**Request that work using this token stop.  No effect on NONE.**/
+	public void cancel() {if (this != NONE) {cancelled = true;}}
+	
+	/**Has this token been cancelled or passed its deadline?**/
+	public boolean cancelled() {
+		return cancelled || (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0);
+	}
+	
+	/**@throws CancellationException if cancelled.**/
+	public void check() throws CancellationException {
+		if (cancelled()) {throw new CancellationException(cancelled ? "Render cancelled" : "Render deadline passed");}
+	}
+	
+	/**Check on every 1024th count (for use in tight loops, pass the loop counter).**/
+	public void check(long count) throws CancellationException {
+		if ((count & 1023) == 0) {check();}
+	}
+	
+	/**Run the action with this token as the current token of the calling thread.**/
+	public <T> T during(Supplier<T> action) {
+		Cancellation prior = CURRENT.get();
+		CURRENT.set(this);
+		try {return action.get();}
+		finally {CURRENT.set(prior);}
+	}
+	
+	/**Token installed on the calling thread (NONE if there is none).**/
+	public static Cancellation current() {return CURRENT.get();}
+}
@@ -1,7 +1,11 @@
 package ar.renderers;
 
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -12,6 +16,9 @@ import ar.Renderer;
 import ar.Selector;
 import ar.Transfer;
 import ar.aggregates.AggregateUtils;
+import ar.aggregates.implementations.ConstantAggregates;
+import ar.aggregates.implementations.TiledAggregates;
+import ar.aggregates.wrappers.TouchedBoundsWrapper;
 import ar.renderers.tasks.GlyphParallelAggregation;
 import ar.renderers.tasks.PixelParallelTransfer;
 
@@ -61,9 +68,11 @@ public class ForkJoinRenderer implements Renderer {
 	
 	private final ForkJoinPool pool;
 	private final ProgressRecorder recorder;
+	private final RenderMetrics metrics;
 	private final long transferTaskSize;
 	
 	private final int threadLoad;
+	private final boolean sharedTarget;
 
 
 	public ForkJoinRenderer() {this(null, RENDER_THREAD_LOAD, DEFAULT_TRANSFER_TASK_SIZE, null);}
@@ -75,10 +84,31 @@ public class ForkJoinRenderer implements Renderer {
 	 * @param pool -- Thread pool to use.  Null to create a pool
 	 * **/
 	public ForkJoinRenderer(ForkJoinPool pool, int threadLoad, long transferTaskSize, ProgressRecorder recorder) {
+		this(pool, threadLoad, transferTaskSize, false, recorder);
+	}
+
+	/**Render that uses the given thread pool for parallel operations.
+	 * 
+	 * @param pool -- Thread pool to use.  Null to create a pool
+	 * @param sharedTarget -- If true, the default aggregation aggregates all segments into one shared, concurrent target
+	 *                         (see ThreadpoolRenderer.sharedAllocator) instead of allocating and merging a target per task.
+	 * **/
+	public ForkJoinRenderer(ForkJoinPool pool, int threadLoad, long transferTaskSize, boolean sharedTarget, ProgressRecorder recorder) {
+		this(pool, threadLoad, transferTaskSize, sharedTarget, recorder, null);
+	}
+
+	/**Render that uses the given thread pool for parallel operations.
+	 * 
+	 * @param pool -- Thread pool to use.  Null to create a pool
+	 * @param metrics -- Receives phase timings and task statistics.  Null to not record metrics.
+	 * **/
+	public ForkJoinRenderer(ForkJoinPool pool, int threadLoad, long transferTaskSize, boolean sharedTarget, ProgressRecorder recorder, RenderMetrics metrics) {
 		this.pool = pool != null ? pool : new ForkJoinPool(RENDER_POOL_SIZE);
 		this.threadLoad = threadLoad > 0 ? threadLoad : RENDER_THREAD_LOAD;
 		this.transferTaskSize = transferTaskSize > 0 ? transferTaskSize : DEFAULT_TRANSFER_TASK_SIZE;
+		this.sharedTarget = sharedTarget;
 		this.recorder = recorder == null ? new ProgressRecorder.Counter() : recorder;
+		this.metrics = metrics == null ? new RenderMetrics.NOP() : metrics;
 	}
 
 
@@ -100,7 +130,12 @@ public class ForkJoinRenderer implements Renderer {
 			Selector<G> selector,
 			Aggregator<I,A> op,
 			AffineTransform view) {
-		return aggregate(glyphs, selector, op, view, ThreadpoolRenderer.defaultAllocator(glyphs, view), ThreadpoolRenderer.defaultMerge(op.identity(), op::rollup));
+		if (sharedTarget) {
+			return aggregate(glyphs, selector, op, view, ThreadpoolRenderer.sharedAllocator(glyphs, view), ThreadpoolRenderer.sharedMerge());
+		}
+		return aggregate(glyphs, selector, op, view, 
+				ThreadpoolRenderer.defaultAllocator(glyphs, view, ThreadpoolRenderer.AGGREGATE_STATS, threadLoad*pool.getParallelism()), 
+				ThreadpoolRenderer.defaultMerge(op));
 	}
 	
 	private <I,G,A, GG extends G, II extends I> Aggregates<A> innerAggregate(
@@ -115,33 +150,75 @@ public class ForkJoinRenderer implements Renderer {
 		long ticks = GlyphParallelAggregation.ticks(taskCount);
 		recorder.reset(ticks);
 
+		long start = System.nanoTime();
+		List<Glyphset<GG,II>> segments = glyphs.segment(taskCount);
+		Rectangle2D bounds = glyphs.bounds();
+		metrics.phase(RenderMetrics.Phase.SEGMENT, System.nanoTime()-start);
+
 		GlyphParallelAggregation<GG,II,A> t = new GlyphParallelAggregation<GG,II,A>(
-				glyphs.segment(taskCount), 
-				glyphs.bounds(), 
+				segments, 
+				bounds, 
 				selector,
 				op, 
 				view, 
-				allocator,
-				merge,
-				recorder);
+				RenderMetrics.allocator(metrics, allocator),
+				RenderMetrics.merge(metrics, merge),
+				recorder,
+				metrics);
 		
+		start = System.nanoTime();
 		Aggregates<A> a= pool.invoke(t);
+		metrics.phase(RenderMetrics.Phase.AGGREGATE, System.nanoTime()-start);
 		return a;
 	}
 	
 	
 	public <IN,OUT> Aggregates<OUT> transfer(Aggregates<? extends IN> aggregates, Transfer.ItemWise<IN,OUT> t) {
+		Aggregates<?> base = aggregates instanceof TouchedBoundsWrapper ? ((TouchedBoundsWrapper<?>) aggregates).base() : aggregates;
+		if (base instanceof TiledAggregates && t instanceof Transfer.CellWise) {return transferTiles(aggregates, (TiledAggregates<?>) base, t);}
+		
 		Aggregates<OUT> result = AggregateUtils.make(aggregates, t.emptyValue());		
 		long taskSize = Math.max(transferTaskSize, AggregateUtils.size(aggregates)/pool.getParallelism());
 		
 		recorder.reset(0);
-		PixelParallelTransfer<IN, OUT> task = new PixelParallelTransfer<>(aggregates, result, t, taskSize, aggregates.lowX(),aggregates.lowY(), aggregates.highX(), aggregates.highY());
+		long start = System.nanoTime();
+		PixelParallelTransfer<IN, OUT> task = new PixelParallelTransfer<>(aggregates, result, t, taskSize, metrics, aggregates.lowX(),aggregates.lowY(), aggregates.highX(), aggregates.highY());
 		pool.invoke(task);
+		metrics.phase(RenderMetrics.Phase.TRANSFER, System.nanoTime()-start);
 		recorder.reset(1);
 		recorder.update(1);
 		return result;		
 	}
 	
+	/**Transfer only the allocated tiles of tiled aggregates (one task per tile); the result is also tiled.
+	 * Cells in untouched tiles hold the input's default value, so the result's default value
+	 * is the transfer of the default value.  Only valid for cell-wise transfers (see Transfer.CellWise); 
+	 * transfers that look at neighbors are done over the whole region, since untouched cells next to touched ones may differ.
+	 */
+	@SuppressWarnings("unchecked")
+	private <IN,OUT> Aggregates<OUT> transferTiles(Aggregates<? extends IN> aggregates, TiledAggregates<?> tiled, Transfer.ItemWise<IN,OUT> t) {
+		recorder.reset(0);
+		long start = System.nanoTime();
+		Aggregates<IN> defaults = new ConstantAggregates<>(aggregates.lowX(), aggregates.lowY(), aggregates.highX(), aggregates.highY(), (IN) tiled.defaultValue());
+		OUT empty = t.at(aggregates.lowX(), aggregates.lowY(), defaults);
+		Aggregates<OUT> result = TiledAggregates.make(aggregates.lowX(), aggregates.lowY(), aggregates.highX(), aggregates.highY(), empty, tiled.tileSize());
+		
+		List<PixelParallelTransfer<IN,OUT>> tasks = new ArrayList<>();
+		for (Aggregates<?> tile: tiled.tiles()) {
+			int lowX = Math.max(tile.lowX(), aggregates.lowX());
+			int lowY = Math.max(tile.lowY(), aggregates.lowY());
+			int highX = Math.min(tile.highX(), aggregates.highX());
+			int highY = Math.min(tile.highY(), aggregates.highY());
+			if (lowX >= highX || lowY >= highY) {continue;}
+			tasks.add(new PixelParallelTransfer<>(aggregates, result, t, transferTaskSize, metrics, lowX, lowY, highX, highY));
+		}
+		pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+		metrics.phase(RenderMetrics.Phase.TRANSFER, System.nanoTime()-start);
+		recorder.reset(1);
+		recorder.update(1);
+		return result;
+	}
+	
 	public <IN,OUT> Aggregates<OUT> transfer(Aggregates<? extends IN> aggregates, Transfer.Specialized<IN,OUT> t) {
 		if (t instanceof Transfer.ItemWise) {
 			return transfer(aggregates, (Transfer.ItemWise<IN, OUT>) t);
@@ -151,5 +228,6 @@ public class ForkJoinRenderer implements Renderer {
 	}	
 	
 	public ProgressRecorder recorder() {return recorder;}
+	public RenderMetrics metrics() {return metrics;}
 
 }
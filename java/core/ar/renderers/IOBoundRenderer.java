@@ -0,0 +1,287 @@
+package ar.renderers;
+
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.Glyph;
+import ar.Glyphset;
+import ar.Renderer;
+import ar.Selector;
+import ar.Transfer;
+import ar.glyphsets.ColumnarGlyphset;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.GlyphSubset;
+import ar.glyphsets.MemMapList;
+import ar.util.NamedThreadFactory;
+
+
+/**Renderer for glyph sources that block on I/O (e.g., delimited files, Avro files, remote sources).
+ * 
+ * Aggregation runs many more segments than cores, each on its own thread, so reading some segments
+ * overlaps with aggregating others.  Each segment is first read into memory (READ phase), 
+ * then aggregated while holding one of a fixed number of CPU slots.
+ * Read-ahead is bounded: at most READ_AHEAD segments per CPU slot are read (or waiting to aggregate) at once,
+ * so the copies held in memory do not grow with the number of segments.
+ * Segments of glyphsets that are already in memory or memory-mapped (GlyphList, ColumnarGlyphset, MemMapList 
+ * and subsets of them) are not copied; they are aggregated directly.
+ * Each slot keeps a single aggregates target that every segment aggregated in that slot adds to,
+ * so at most 'cpuSlots' targets exist at once, regardless of the number of segments.
+ * The slot targets are merged when all segments are done.
+ * 
+ * Threads are virtual when the runtime provides them (Java 21 and later), otherwise daemon platform threads.
+ * Each aggregate call is one scope: it returns only after all of its segment tasks have finished, 
+ * and if one fails the others are cancelled and the failure is rethrown.
+ * The calling thread's cancellation token (see Cancellation.current) is checked by each segment before reading and aggregating.
+ * 
+ * Transfer is CPU-bound and is done with a ForkJoinRenderer.
+ */
+public class IOBoundRenderer implements Renderer {
+	private static final long serialVersionUID = -3389043325622542581L;
+
+	/**Default number of segments per core used in aggregation.
+	 * May be set as a system parameter (-DIO_SEGMENTS_PER_CORE=x) but will default to 8 if any value less than 1 is given.**/ 
+	public static final int IO_SEGMENTS_PER_CORE;
+	static{
+		int size = -1;
+		if (System.getProperties().containsKey("IO_SEGMENTS_PER_CORE")) {
+			size = Integer.parseInt(System.getProperty("IO_SEGMENTS_PER_CORE"));
+		}
+		if (size < 1) {size = 8;}
+		IO_SEGMENTS_PER_CORE = size;	
+	}
+
+	/**Number of segments per CPU slot that may be read ahead of aggregation.
+	 * May be set as a system parameter (-DIO_READ_AHEAD=x) but will default to 2 if any value less than 1 is given.**/ 
+	public static final int READ_AHEAD;
+	static{
+		int size = -1;
+		if (System.getProperties().containsKey("IO_READ_AHEAD")) {
+			size = Integer.parseInt(System.getProperty("IO_READ_AHEAD"));
+		}
+		if (size < 1) {size = 2;}
+		READ_AHEAD = size;	
+	}
+
+	private final ExecutorService executor;
+	private final int segments, cpuSlots;
+	private final ProgressRecorder recorder;
+	private final RenderMetrics metrics;
+	private final ForkJoinRenderer transfers;
+	
+	public IOBoundRenderer() {this(null, ThreadpoolRenderer.RENDER_POOL_SIZE*IO_SEGMENTS_PER_CORE, ThreadpoolRenderer.RENDER_POOL_SIZE, null, null);}
+	
+	/**
+	 * @param executor -- Runs the segment tasks; needs at least as many threads as there are segments for reads to fully overlap.  Null for the default (see class comment).
+	 * @param segments -- How many segments to divide the glyphs into.
+	 * @param cpuSlots -- How many segments may aggregate at once (i.e., the most aggregate targets allocated at once).
+	 * @param metrics -- Receives phase timings and task statistics.  Null to not record metrics.
+	 */
+	public IOBoundRenderer(ExecutorService executor, int segments, int cpuSlots, ProgressRecorder recorder, RenderMetrics metrics) {
+		this.executor = executor != null ? executor : defaultExecutor();
+		this.segments = Math.max(1, segments);
+		this.cpuSlots = Math.max(1, cpuSlots);
+		this.recorder = recorder == null ? new ProgressRecorder.Counter() : recorder;
+		this.metrics = metrics == null ? new RenderMetrics.NOP() : metrics;
+		this.transfers = new ForkJoinRenderer(null, ThreadpoolRenderer.RENDER_THREAD_LOAD, ForkJoinRenderer.DEFAULT_TRANSFER_TASK_SIZE, false, this.recorder, this.metrics);
+	}
+	
+	/**Virtual thread per task if available, otherwise a cached pool of daemon threads.**/
+	private static ExecutorService defaultExecutor() {
+		try {return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);}
+		catch (ReflectiveOperationException e) {return Executors.newCachedThreadPool(new NamedThreadFactory("AR IO Renderer", true));}
+	}
+
+	@Override
+	public <I,G,A> Aggregates<A> aggregate(
+			Glyphset<? extends G, ? extends I> glyphs, 
+			Selector<G> selector,
+			Aggregator<I,A> op,
+			AffineTransform view) {
+		return aggregate(glyphs, selector, op, view, 
+				ThreadpoolRenderer.defaultAllocator(glyphs, view, ThreadpoolRenderer.AGGREGATE_STATS, cpuSlots), 
+				ThreadpoolRenderer.defaultMerge(op));
+	}
+
+	@Override
+	public <I,G,A> Aggregates<A> aggregate(
+			Glyphset<? extends G, ? extends I> glyphs, 
+			Selector<G> selector,
+			Aggregator<I,A> op, 
+			AffineTransform view,
+			Function<A, Aggregates<A>> allocator,
+			BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge) {
+		return innerAggregate(glyphs, selector, op, view, allocator, merge);
+	}
+	
+	//Exists to make the types work out right
+	private <I,G,A, GG extends G, II extends I> Aggregates<A> innerAggregate(
+			Glyphset<GG,II> glyphs, 
+			Selector<G> selector,
+			Aggregator<I,A> op,
+			AffineTransform view,
+			Function<A, Aggregates<A>> allocator,
+			BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge) {
+		
+		allocator = RenderMetrics.allocator(metrics, allocator);
+		merge = RenderMetrics.merge(metrics, merge);
+
+		long start = System.nanoTime();
+		List<Glyphset<GG,II>> parts = glyphs.segment(segments);
+		metrics.phase(RenderMetrics.Phase.SEGMENT, System.nanoTime()-start);
+		recorder.reset(parts.size());
+
+		BlockingQueue<Slot<A>> slots = new ArrayBlockingQueue<>(cpuSlots);
+		for (int i=0; i<cpuSlots; i++) {slots.add(new Slot<>());}
+		Semaphore reads = new Semaphore(READ_AHEAD*cpuSlots);
+
+		start = System.nanoTime();
+		ExecutorCompletionService<Void> service = new ExecutorCompletionService<>(executor);
+		List<Future<Void>> tasks = new ArrayList<>();
+		Cancellation cancel = Cancellation.current();
+		try {
+			for (Glyphset<GG,II> part: parts) {
+				SegmentTask<G,I,A> task = new SegmentTask<>(part, selector, op, view, allocator, slots, reads, recorder, metrics, cancel);
+				tasks.add(service.submit(task, null));
+			}
+			for (int i=0; i<tasks.size(); i++) {service.take().get();}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted during aggregation", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CancellationException) {throw (CancellationException) e.getCause();}
+			throw new RuntimeException("Error completing aggregation", e.getCause());
+		} finally {
+			for (Future<Void> task: tasks) {task.cancel(true);}		//No-op for finished tasks
+		}
+		metrics.phase(RenderMetrics.Phase.AGGREGATE, System.nanoTime()-start);
+
+		Aggregates<A> result = null;
+		for (Slot<A> slot: slots) {result = result == null ? slot.target : merge.apply(result, slot.target);}
+		return result != null ? result : allocator.apply(op.identity());
+	}
+
+	@Override
+	public <IN,OUT> Aggregates<OUT> transfer(Aggregates<? extends IN> aggregates, Transfer.Specialized<IN,OUT> t) {
+		return transfers.transfer(aggregates, t);
+	}
+
+	@Override
+	public <IN,OUT> Aggregates<OUT> transfer(Aggregates<? extends IN> aggregates, Transfer.ItemWise<IN,OUT> t) {
+		return transfers.transfer(aggregates, t);
+	}
+
+	@Override public ProgressRecorder recorder() {return recorder;}
+	@Override public RenderMetrics metrics() {return metrics;}
+
+	
+	/**Aggregation target shared by all segments that aggregate in it (one at a time).  Allocated on first use.**/
+	private static final class Slot<A> {
+		Aggregates<A> target;
+	}
+	
+	private static final class SegmentTask<G,I,A> implements Runnable {
+		private final Glyphset<? extends G, ? extends I> glyphs;
+		private final Selector<G> selector;
+		private final Aggregator<I,A> op;
+		private final AffineTransform view;
+		private final Function<A, Aggregates<A>> allocator;
+		private final BlockingQueue<Slot<A>> slots;
+		private final Semaphore reads;
+		private final ProgressRecorder recorder;
+		private final RenderMetrics metrics;
+		private final Cancellation cancel;
+		
+		public SegmentTask(
+				Glyphset<? extends G, ? extends I> glyphs, 
+				Selector<G> selector, 
+				Aggregator<I,A> op, 
+				AffineTransform view,
+				Function<A, Aggregates<A>> allocator, 
+				BlockingQueue<Slot<A>> slots, 
+				Semaphore reads,
+				ProgressRecorder recorder, 
+				RenderMetrics metrics,
+				Cancellation cancel) {
+			this.glyphs = glyphs;
+			this.selector = selector;
+			this.op = op;
+			this.view = view;
+			this.allocator = allocator;
+			this.slots = slots;
+			this.reads = reads;
+			this.recorder = recorder;
+			this.metrics = metrics;
+			this.cancel = cancel;
+		}
+
+		@Override
+		public void run() {
+			cancel.check();
+			boolean copy = !resident(glyphs);
+			if (copy) {
+				try {reads.acquire();}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			
+			try {
+				long start = System.nanoTime();
+				Glyphset<? extends G, ? extends I> local = copy ? read(glyphs, cancel) : glyphs;
+				metrics.task(RenderMetrics.Phase.READ, local.size(), System.nanoTime()-start);
+				
+				Slot<A> slot;
+				try {slot = slots.take();}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				
+				try {
+					start = System.nanoTime();
+					cancel.check();
+					if (slot.target == null) {slot.target = allocator.apply(op.identity());}
+					Aggregates<A> target = slot.target;
+					cancel.during(() -> selector.processSubset(local, view, target, op));
+					metrics.task(RenderMetrics.Phase.AGGREGATE, local.size(), System.nanoTime()-start);
+				} finally {slots.add(slot);}
+			} finally {if (copy) {reads.release();}}
+			recorder.update(1);
+		}
+		
+		/**Are the glyphs already in memory (or memory-mapped), so copying them gains nothing?**/
+		private static boolean resident(Glyphset<?,?> glyphs) {
+			if (glyphs instanceof GlyphList 
+					|| glyphs instanceof ColumnarGlyphset 
+					|| glyphs instanceof MemMapList
+					|| glyphs instanceof GlyphSubset.Cached) {return true;}
+			return glyphs instanceof GlyphSubset && resident(((GlyphSubset<?,?>) glyphs).base());
+		}
+		
+		/**Copy the glyphs into memory.**/
+		private static <G,I> Glyphset<G,I> read(Glyphset<G,I> glyphs, Cancellation cancel) {
+			GlyphList<G,I> local = new GlyphList<>(new ArrayList<>((int) Math.min(Integer.MAX_VALUE, glyphs.size())));
+			long count = 0;
+			for (Glyph<G,I> g: glyphs) {
+				cancel.check(count++);
+				local.add(g);
+			}
+			return local;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package ar.renderers;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.Glyphset;
+import ar.Renderer;
+import ar.Selector;
+import ar.Transfer;
+import ar.aggregates.AggregateUtils;
+import ar.glyphsets.GlyphSubset;
+import ar.util.Util;
+
+/**Aggregates for an append-only glyphset, kept current by folding in only new glyphs.
+ *
+ * The watermark is the number of glyphs already aggregated.
+ * Each update aggregates the glyphs past the watermark (the "delta") and advances the watermark,
+ * so the cost of an update scales with the delta instead of with the whole glyphset.
+ * Glyphs below the watermark must not change (e.g., a GlyphList that is only appended to or
+ * a MemMapList over a file that is only appended to, see MemMapList.refresh).
+ *
+ * Small deltas are combined directly into the current aggregates with the selector/aggregator
+ * (when they fall inside the current aggregates' bounds).
+ * Large deltas (or those that extend the bounds) are aggregated with the renderer and merged in.
+ *
+ * The view transform is fixed; a new view requires a new instance.
+ * This class is not thread safe: updates should come from one thread at a time.
+ *
+ * @param <G> Geometry type of the glyphs
+ * @param <I> Info type of the glyphs
+ * @param <A> Aggregate type
+ * **/
+public class IncrementalAggregation<G,I,A> {
+	/**Largest delta (in glyphs) combined serially into the current aggregates.
+	 * Larger deltas are aggregated in parallel by the renderer and merged.
+	 * May be set as a system parameter (-DINCREMENTAL_SERIAL_LIMIT=x).
+	 * **/
+	public static final long SERIAL_LIMIT;
+	static {
+		long limit = 100_000;
+		if (System.getProperties().containsKey("INCREMENTAL_SERIAL_LIMIT")) {
+			limit = Long.parseLong(System.getProperty("INCREMENTAL_SERIAL_LIMIT"));
+		}
+		SERIAL_LIMIT = limit;
+	}
+
+	private final Renderer renderer;
+	private final Selector<G> selector;
+	private final Aggregator<I,A> op;
+	private final AffineTransform view;
+
+	private Aggregates<A> aggregates;
+	private long watermark = 0;
+	private long version = 0;
+
+	private Transfer<? super A, ?> lastTransfer;
+	private Object lastStatistic;
+	private Transfer.Specialized<? super A, ?> lastSpecialized;
+	private long lastVersion = -1;
+
+	public IncrementalAggregation(Renderer renderer, Selector<G> selector, Aggregator<I,A> op, AffineTransform view) {
+		this.renderer = renderer;
+		this.selector = selector;
+		this.op = op;
+		this.view = view;
+	}
+
+	/**Fold glyphs past the watermark into the aggregates.
+	 *
+	 * @param glyphs The full glyphset (including glyphs already aggregated)
+	 * @return The current aggregates (may be null if nothing has been aggregated yet)
+	 * @throws IllegalArgumentException If the glyphset is smaller than the watermark (i.e., it is not append-only)
+	 */
+	public Aggregates<A> update(Glyphset.RandomAccess<? extends G, ? extends I> glyphs) {
+		long size = glyphs.size();
+		if (size < watermark) {
+			throw new IllegalArgumentException(String.format("Glyphset shrank below the watermark (%,d < %,d)", size, watermark));
+		}
+		if (size == watermark) {return aggregates;}
+
+		Glyphset.RandomAccess<? extends G, ? extends I> delta = watermark == 0 ? glyphs : subset(glyphs, watermark, size);
+		if (aggregates == null) {
+			aggregates = renderer.aggregate(delta, selector, op, view);
+		} else {
+			Rectangle deltaBounds = view.createTransformedShape(delta.bounds()).getBounds();
+			if (delta.size() <= SERIAL_LIMIT && AggregateUtils.bounds(aggregates).contains(deltaBounds)) {
+				selector.processSubset(delta, view, aggregates, op);
+			} else {
+				aggregates = AggregateUtils.__unsafeMerge(aggregates, renderer.aggregate(delta, selector, op, view), op);
+			}
+		}
+
+		watermark = size;
+		version++;
+		return aggregates;
+	}
+
+	/**Specialize a transfer for the current aggregates, re-using the previous specialization when possible.
+	 *
+	 * The transfer is re-specialized only if it is a different transfer than last time, or
+	 * if the aggregates have changed AND the statistic of the aggregates differs from last time.
+	 * The statistic should capture everything the specialization depends on (see extrema for a common case).
+	 *
+	 * @param statistic Summary of the aggregates that the specialization depends on (compared with equals)
+	 */
+	@SuppressWarnings("unchecked")
+	public <OUT> Transfer.Specialized<? super A, OUT> specialize(Transfer<? super A, OUT> transfer, Function<? super Aggregates<A>, ?> statistic) {
+		if (transfer != lastTransfer || lastSpecialized == null) {
+			lastStatistic = statistic.apply(aggregates);
+			lastSpecialized = specialize(transfer);
+			lastTransfer = transfer;
+			lastVersion = version;
+		} else if (lastVersion != version) {
+			Object stat = statistic.apply(aggregates);
+			if (!Util.isEqual(stat, lastStatistic)) {
+				lastStatistic = stat;
+				lastSpecialized = specialize(transfer);
+			}
+			lastVersion = version;
+		}
+		return (Transfer.Specialized<? super A, OUT>) lastSpecialized;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Transfer.Specialized<? super A, ?> specialize(Transfer<? super A, ?> transfer) {
+		return renderer.metrics().specialize((Transfer) transfer, aggregates);
+	}
+
+	/**Transfer the current aggregates (specializing as described in 'specialize').**/
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public <OUT> Aggregates<OUT> transfer(Transfer<? super A, OUT> transfer, Function<? super Aggregates<A>, ?> statistic) {
+		Transfer.Specialized spec = specialize(transfer, statistic);
+		return renderer.transfer(aggregates, spec);
+	}
+
+	/**Current aggregates (null if nothing has been aggregated yet).**/
+	public Aggregates<A> aggregates() {return aggregates;}
+
+	/**Number of glyphs aggregated so far.**/
+	public long watermark() {return watermark;}
+
+	/**Statistic for numeric aggregates: the minimum and maximum values (as used by Numbers.Interpolate and similar).**/
+	public static <N extends Number> Function<Aggregates<? extends N>, Object> extrema() {
+		return (aggs) -> {
+			if (aggs == null) {return null;}
+			Util.Stats<N> stats = Util.stats(aggs, false, false, false, false);
+			return Arrays.asList(stats.min, stats.max);
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <G,I> Glyphset.RandomAccess<? extends G, ? extends I> subset(Glyphset.RandomAccess<? extends G, ? extends I> glyphs, long low, long high) {
+		return GlyphSubset.make((Glyphset.RandomAccess<G,I>) glyphs, low, high, false);
+	}
+}
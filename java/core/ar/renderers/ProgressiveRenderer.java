@@ -0,0 +1,223 @@
+package ar.renderers;
+
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.Glyphset;
+import ar.Renderer;
+import ar.Selector;
+import ar.Transfer;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.wrappers.TransferWrapper;
+import ar.glyphsets.GlyphsetUnion;
+import ar.glyphsets.StridedSubset;
+
+
+/**Renderer that produces a rough result quickly and then refines it to the exact result (anytime rendering).
+ * 
+ * Glyphs are aggregated in passes: the first pass is one in every SAMPLE_STRIDE glyphs, 
+ * and each later pass doubles the number of glyphs aggregated so far until every glyph has been aggregated once.
+ * Random-access glyphsets are sampled with a stride (see StridedSubset).  Other glyphsets are divided into
+ * SAMPLE_STRIDE segments that are taken in a (fixed) random order.
+ * 
+ * Each pass is aggregated by the base renderer, with the same allocator for every pass,
+ * and merged with the running result by the same merge function.
+ * The final result is therefore that of a normal render, at the cost of one merge per pass (and a copy per published estimate).
+ * 
+ * Between passes, a copy of the running result is published to a listener, scaled up to estimate the full result.
+ * Merges may update either argument (or return one unchanged), so the running result itself is never published;
+ * the copy is not modified by later passes and may be handed to other threads.
+ * Until a pass touches some cell, an empty target from the allocator is published instead.
+ * Listeners are called on the rendering thread, with the calling thread's cancellation token current.
+ * 
+ * Aggregation without a listener (the Renderer methods) is a normal render with the base renderer,
+ * as is all transfer.
+ */
+public class ProgressiveRenderer implements Renderer {
+	private static final long serialVersionUID = 7260411458233012915L;
+
+	/**Inverse of the fraction of glyphs in the first pass.  
+	 * May be set as a system parameter (-DSAMPLE_STRIDE=x) but will default to 64 if any value less than 2 is given.**/ 
+	public static final int SAMPLE_STRIDE;
+	static{
+		int size = -1;
+		if (System.getProperties().containsKey("SAMPLE_STRIDE")) {
+			size = Integer.parseInt(System.getProperty("SAMPLE_STRIDE"));
+		}
+		if (size < 2) {size = 64;}
+		SAMPLE_STRIDE = size;	
+	}
+	
+	/**Receives estimates of the result as a render proceeds.**/
+	@FunctionalInterface
+	public static interface Listener<A> {
+		/**@param aggregates Estimate of the full result (scaled from the glyphs aggregated so far)
+		 * @param fraction Fraction of the glyphs aggregated so far (less than one)**/
+		public void partial(Aggregates<A> aggregates, double fraction);
+	}
+	
+	private final Renderer base;
+	private final int stride;
+
+	public ProgressiveRenderer() {this(new ForkJoinRenderer(), SAMPLE_STRIDE);}
+	
+	/**@param base Renderer used for each pass (and for transfer)
+	 * @param stride Inverse of the fraction of glyphs in the first pass**/
+	public ProgressiveRenderer(Renderer base, int stride) {
+		this.base = base;
+		this.stride = Math.max(2, stride);
+	}
+	
+	@Override
+	public <I,G,A> Aggregates<A> aggregate(
+			Glyphset<? extends G, ? extends I> glyphs, 
+			Selector<G> selector,
+			Aggregator<I,A> op,
+			AffineTransform view) {
+		return base.aggregate(glyphs, selector, op, view);
+	}
+
+	@Override
+	public <I,G,A> Aggregates<A> aggregate(
+			Glyphset<? extends G, ? extends I> glyphs, 
+			Selector<G> selector,
+			Aggregator<I,A> op, 
+			AffineTransform view,
+			Function<A, Aggregates<A>> allocator,
+			BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge) {
+		return base.aggregate(glyphs, selector, op, view, allocator, merge);
+	}
+	
+	/**Progressive aggregation with the default allocator and merge (see ThreadpoolRenderer).**/
+	public <I,G,A> Aggregates<A> aggregate(
+			Glyphset<? extends G, ? extends I> glyphs, 
+			Selector<G> selector,
+			Aggregator<I,A> op, 
+			AffineTransform view,
+			BiFunction<A, Double, A> scale,
+			Listener<A> listener) {
+		return aggregate(glyphs, selector, op, view, ThreadpoolRenderer.defaultAllocator(glyphs, view), ThreadpoolRenderer.defaultMerge(op), scale, listener);
+	}
+
+	/**Progressive aggregation.
+	 * 
+	 * @param scale Estimates a full-render value from a partial one and a scale factor (the inverse of the fraction sampled).
+	 *              Applied lazily as the published aggregates are read.  Null to publish unscaled aggregates.
+	 * @param listener Receives the estimate after each pass but the last
+	 * @return The aggregates of all glyphs (as with a normal render)
+	 */
+	public <I,G,A> Aggregates<A> aggregate(
+			Glyphset<? extends G, ? extends I> glyphs, 
+			Selector<G> selector,
+			Aggregator<I,A> op, 
+			AffineTransform view,
+			Function<A, Aggregates<A>> allocator,
+			BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge,
+			BiFunction<A, Double, A> scale,
+			Listener<A> listener) {
+		return innerAggregate(glyphs, selector, op, view, allocator, merge, scale, listener);
+	}
+	
+	//Exists to make the types work out right
+	private <I,G,A, GG extends G, II extends I> Aggregates<A> innerAggregate(
+			Glyphset<GG,II> glyphs, 
+			Selector<G> selector,
+			Aggregator<I,A> op,
+			AffineTransform view,
+			Function<A, Aggregates<A>> allocator,
+			BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge,
+			BiFunction<A, Double, A> scale,
+			Listener<A> listener) {
+		
+		List<Glyphset<GG,II>> passes = passes(glyphs, stride);
+		Cancellation cancel = Cancellation.current();
+		long total = glyphs.size();
+		long done = 0;
+		Aggregates<A> result = null;
+		for (int i=0; i<passes.size(); i++) {
+			Glyphset<GG,II> pass = passes.get(i);
+			Aggregates<A> aggs = base.aggregate(pass, selector, op, view, allocator, merge);
+			result = result == null ? aggs : merge.apply(aggs, result);
+			done += pass.size();
+			
+			if (listener != null && i < passes.size()-1 && done > 0) {
+				cancel.check();
+				double fraction = done/(double) total;
+				Aggregates<A> snapshot = result == null ? allocator.apply(op.identity()) : AggregateUtils.copy(result, result.defaultValue());
+				listener.partial(scale == null ? snapshot : new TransferWrapper<>(snapshot, new Scale<>(scale, 1/fraction, scale.apply(snapshot.defaultValue(), 1/fraction))), fraction);
+			}
+		}
+		return result != null ? result : allocator.apply(op.identity());
+	}
+
+	/**Divide the glyphs into passes: the first is about 1/stride of the glyphs, each later pass is as large as all before it.
+	 * Random-access glyphsets are sampled with the stride, others by taking segments in a random order.**/
+	public static <G,I> List<Glyphset<G,I>> passes(Glyphset<G,I> glyphs, int stride) {
+		List<Glyphset<G,I>> passes = new ArrayList<>();
+		if (glyphs instanceof Glyphset.RandomAccess) {
+			Glyphset.RandomAccess<G,I> source = (Glyphset.RandomAccess<G,I>) glyphs;
+			for (int low=0, high=1; low<stride; low=high, high=Math.min(stride, high*2)) {
+				passes.add(new StridedSubset<>(source, stride, low, high));
+			}
+		} else {
+			List<Glyphset<G,I>> segments = new ArrayList<>(glyphs.segment(stride));
+			Collections.shuffle(segments, new Random(stride));
+			int count = segments.size();
+			for (int low=0, high=1; low<stride; low=high, high=Math.min(stride, high*2)) {
+				List<Glyphset<G,I>> group = segments.subList(low*count/stride, high*count/stride);
+				if (!group.isEmpty()) {passes.add(group.size() == 1 ? group.get(0) : new GlyphsetUnion<>(new ArrayList<>(group)));}
+			}
+		}
+		return passes;
+	}
+	
+	/**Scale numeric values, rounding to the nearest value of the same type; non-numeric values are unchanged.**/
+	@SuppressWarnings("unchecked")
+	public static <A> BiFunction<A, Double, A> numbers() {
+		return (v, factor) -> {
+			if (v instanceof Integer) {return (A) (Integer) (int) Math.round(((Integer) v)*factor);}
+			if (v instanceof Long) {return (A) (Long) Math.round(((Long) v)*factor);}
+			if (v instanceof Double) {return (A) (Double) (((Double) v)*factor);}
+			if (v instanceof Float) {return (A) (Float) (float) (((Float) v)*factor);}
+			return v;
+		};
+	}
+	
+	@Override
+	public <IN,OUT> Aggregates<OUT> transfer(Aggregates<? extends IN> aggregates, Transfer.Specialized<IN,OUT> t) {
+		return base.transfer(aggregates, t);
+	}
+
+	@Override
+	public <IN,OUT> Aggregates<OUT> transfer(Aggregates<? extends IN> aggregates, Transfer.ItemWise<IN,OUT> t) {
+		return base.transfer(aggregates, t);
+	}
+
+	@Override public ProgressRecorder recorder() {return base.recorder();}
+	@Override public RenderMetrics metrics() {return base.metrics();}
+	
+	
+	/**Item-wise scaling of partial aggregates.**/
+	private static final class Scale<A> implements Transfer.CellWise<A,A> {
+		private static final long serialVersionUID = -2954400567331474013L;
+		private final BiFunction<A, Double, A> scale;
+		private final double factor;
+		private final A empty;
+		
+		public Scale(BiFunction<A, Double, A> scale, double factor, A empty) {
+			this.scale = scale;
+			this.factor = factor;
+			this.empty = empty;
+		}
+		
+		@Override public A emptyValue() {return empty;}
+		@Override public A at(int x, int y, Aggregates<? extends A> input) {return scale.apply(input.get(x, y), factor);}
+	}
+}
@@ -0,0 +1,304 @@
+package ar.renderers;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import javax.management.ObjectName;
+
+import ar.Aggregates;
+import ar.Transfer;
+import ar.aggregates.AggregateUtils;
+
+/**Instrumentation for the phases of a render.
+ *
+ * Where ProgressRecorder answers "how far along is it?", this answers "where did the time go?".
+ * Renderers report wall time for each phase and the size/duration of each task they run.
+ * Consumers pull a Snapshot (or register a Recorder as a JMX bean).
+ *
+ * Producer Side:
+ * Call "phase" once per phase per render with the elapsed wall time.
+ * Call "task" once per unit of (possibly parallel) work with the number of items
+ * it handled (glyphs for aggregation, cells for merge and transfer) and its duration.
+ * Phases may be reported several times (e.g., once per render); times and counts accumulate until reset.
+ *
+ * All methods must be thread safe.
+ * **/
+public interface RenderMetrics {
+	/**Parts of a render that are timed separately.
+	 * READ is loading glyphs from their source ahead of aggregation (only reported by renderers that do so, e.g., IOBoundRenderer).**/
+	public static enum Phase {SEGMENT, AGGREGATE, MERGE, SPECIALIZE, TRANSFER, READ}
+
+	/**Record wall time (in nanoseconds) spent in a phase.**/
+	public void phase(Phase phase, long nanos);
+
+	/**Record one task of a phase: how many items it processed and how long it took (in nanoseconds).**/
+	public void task(Phase phase, long items, long nanos);
+
+	/**Record bytes allocated for aggregates.**/
+	public void allocated(long bytes);
+
+	/**Current values.**/
+	public Snapshot snapshot();
+
+	/**Clear all values.**/
+	public void reset();
+
+	/**Specialize a transfer, recording the time taken as the SPECIALIZE phase.**/
+	public default <IN,OUT> Transfer.Specialized<IN,OUT> specialize(Transfer<IN,OUT> transfer, Aggregates<? extends IN> aggregates) {
+		long start = System.nanoTime();
+		Transfer.Specialized<IN,OUT> specialized = transfer.specialize(aggregates);
+		phase(Phase.SPECIALIZE, System.nanoTime()-start);
+		return specialized;
+	}
+
+	/**Wrap an aggregates allocator so (estimated) bytes allocated are recorded.
+	 * Repeated returns of the same instance (e.g., ThreadpoolRenderer.sharedAllocator) are only counted once.**/
+	public static <A> Function<A, Aggregates<A>> allocator(RenderMetrics metrics, Function<A, Aggregates<A>> allocator) {
+		if (metrics instanceof NOP) {return allocator;}
+		AtomicReference<Aggregates<A>> last = new AtomicReference<>();
+		return (defVal) -> {
+			Aggregates<A> aggs = allocator.apply(defVal);
+			if (aggs != null && last.getAndSet(aggs) != aggs) {metrics.allocated(AggregateUtils.estimateBytes(aggs));}
+			return aggs;
+		};
+	}
+
+	/**Wrap an aggregates merge so each merge is recorded as a MERGE task.
+	 * The items of the task are the cells merged in (i.e., of the second argument).
+	 * Merges that don't combine two distinct sets (e.g., ThreadpoolRenderer.sharedMerge) are not recorded.**/
+	public static <A> BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge(RenderMetrics metrics, BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge) {
+		if (metrics instanceof NOP) {return merge;}
+		return (left, right) -> {
+			if (left == null || right == null || left == right) {return merge.apply(left, right);}
+			long start = System.nanoTime();
+			Aggregates<A> result = merge.apply(left, right);
+			metrics.task(Phase.MERGE, AggregateUtils.size(right), System.nanoTime()-start);
+			return result;
+		};
+	}
+
+
+	/**Immutable copy of the metrics at a point in time.
+	 *
+	 * Task durations are also kept as a histogram with power-of-two buckets:
+	 * bucket i counts tasks that took [2^(i-1), 2^i) nanoseconds (bucket 0 is for zero-length tasks).
+	 * **/
+	public static final class Snapshot {
+		private static final int PHASES = Phase.values().length;
+		public static final int BUCKETS = 64;
+
+		private final long[] wall, tasks, items, taskTime, minTask, maxTask;
+		private final double[] taskSquares;
+		private final long[][] histograms;
+		private final long allocated;
+
+		/**@param taskSquares Sum of the squared task durations (nanoseconds squared) for each phase.**/
+		public Snapshot(long[] wall, long[] tasks, long[] items, long[] taskTime, double[] taskSquares, long[] minTask, long[] maxTask, long[][] histograms, long allocated) {
+			this.wall = wall;
+			this.tasks = tasks;
+			this.items = items;
+			this.taskTime = taskTime;
+			this.taskSquares = taskSquares;
+			this.minTask = minTask;
+			this.maxTask = maxTask;
+			this.histograms = histograms;
+			this.allocated = allocated;
+		}
+
+		/**Snapshot with nothing recorded.**/
+		public static Snapshot empty() {
+			return new Snapshot(new long[PHASES], new long[PHASES], new long[PHASES], new long[PHASES], new double[PHASES], new long[PHASES], new long[PHASES], new long[PHASES][BUCKETS], 0);
+		}
+
+		/**Wall time recorded for a phase (nanoseconds).**/
+		public long wallNanos(Phase phase) {return wall[phase.ordinal()];}
+
+		/**Number of tasks recorded for a phase.**/
+		public long tasks(Phase phase) {return tasks[phase.ordinal()];}
+
+		/**Items (glyphs or cells) processed by all tasks in a phase.**/
+		public long items(Phase phase) {return items[phase.ordinal()];}
+
+		/**Sum of the durations of all tasks in a phase (nanoseconds).  Exceeds wall time when tasks run in parallel.**/
+		public long taskNanos(Phase phase) {return taskTime[phase.ordinal()];}
+
+		/**Shortest task in a phase (nanoseconds); zero if there were no tasks.**/
+		public long minTaskNanos(Phase phase) {return minTask[phase.ordinal()];}
+
+		/**Longest task in a phase (nanoseconds); zero if there were no tasks.**/
+		public long maxTaskNanos(Phase phase) {return maxTask[phase.ordinal()];}
+
+		/**Longest task over mean task duration.  1 is perfectly balanced; NaN if there were no tasks.**/
+		public double skew(Phase phase) {
+			long count = tasks(phase);
+			if (count == 0) {return Double.NaN;}
+			double mean = taskNanos(phase)/(double) count;
+			return mean == 0 ? 1 : maxTaskNanos(phase)/mean;
+		}
+
+		/**Variance of the task durations in a phase (nanoseconds squared); NaN if there were no tasks.**/
+		public double taskVariance(Phase phase) {
+			long count = tasks(phase);
+			if (count == 0) {return Double.NaN;}
+			double mean = taskNanos(phase)/(double) count;
+			return Math.max(0, taskSquares[phase.ordinal()]/count - mean*mean);
+		}
+
+		/**Standard deviation of the task durations in a phase (nanoseconds); zero if there were no tasks.**/
+		public long stdevTaskNanos(Phase phase) {
+			double variance = taskVariance(phase);
+			return Double.isNaN(variance) ? 0 : (long) Math.sqrt(variance);
+		}
+
+		/**Histogram of task durations for a phase (see class comment for buckets).**/
+		public long[] histogram(Phase phase) {return Arrays.copyOf(histograms[phase.ordinal()], BUCKETS);}
+
+		/**Estimated bytes allocated for aggregates.**/
+		public long allocatedBytes() {return allocated;}
+
+		/**Flat view of the snapshot (e.g., for logging or JMX).  Keys are of the form "phase.metric".**/
+		public Map<String, Long> asMap() {
+			Map<String, Long> map = new LinkedHashMap<>();
+			for (Phase p: Phase.values()) {
+				String name = p.name().toLowerCase();
+				map.put(name + ".wallNanos", wallNanos(p));
+				map.put(name + ".tasks", tasks(p));
+				map.put(name + ".items", items(p));
+				map.put(name + ".taskNanos", taskNanos(p));
+				map.put(name + ".minTaskNanos", minTaskNanos(p));
+				map.put(name + ".maxTaskNanos", maxTaskNanos(p));
+				map.put(name + ".stdevTaskNanos", stdevTaskNanos(p));
+			}
+			map.put("allocatedBytes", allocatedBytes());
+			return map;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder b = new StringBuilder();
+			for (Phase p: Phase.values()) {
+				if (wallNanos(p) == 0 && tasks(p) == 0) {continue;}
+				b.append(String.format("%s: %,d ms wall; %,d tasks, %,d items, skew %.2f, task stdev %,d us%n",
+						p, wallNanos(p)/1_000_000, tasks(p), items(p), skew(p), stdevTaskNanos(p)/1_000));
+			}
+			b.append(String.format("Allocated: %,d bytes", allocatedBytes()));
+			return b.toString();
+		}
+	}
+
+	/**Management interface for Recorder.**/
+	public static interface MetricsMXBean {
+		public Map<String, Long> getMetrics();
+		public void reset();
+	}
+
+
+	/**Ignores everything, snapshots are always empty.  Default for renderers.**/
+	public static final class NOP implements RenderMetrics {
+		public NOP() {}
+
+		@Override public void phase(Phase phase, long nanos) {}
+		@Override public void task(Phase phase, long items, long nanos) {}
+		@Override public void allocated(long bytes) {}
+		@Override public Snapshot snapshot() {return Snapshot.empty();}
+		@Override public void reset() {}
+	}
+
+	/**Thread-safe accumulating metrics.**/
+	public static final class Recorder implements RenderMetrics, MetricsMXBean {
+		private static final int PHASES = Phase.values().length;
+
+		private final LongAdder[] wall = adders(), tasks = adders(), items = adders(), taskTime = adders();
+		private final DoubleAdder[] taskSquares = new DoubleAdder[PHASES];
+		private final AtomicLong[] minTask = atomics(Long.MAX_VALUE), maxTask = atomics(0);
+		private final AtomicLongArray[] histograms = new AtomicLongArray[PHASES];
+		private final LongAdder allocated = new LongAdder();
+
+		public Recorder() {
+			for (int i=0; i<PHASES; i++) {
+				histograms[i] = new AtomicLongArray(Snapshot.BUCKETS);
+				taskSquares[i] = new DoubleAdder();
+			}
+		}
+
+		@Override public void phase(Phase phase, long nanos) {wall[phase.ordinal()].add(nanos);}
+		@Override public void allocated(long bytes) {allocated.add(bytes);}
+
+		@Override
+		public void task(Phase phase, long count, long nanos) {
+			int p = phase.ordinal();
+			tasks[p].increment();
+			items[p].add(count);
+			taskTime[p].add(nanos);
+			taskSquares[p].add((double) nanos*nanos);
+			minTask[p].accumulateAndGet(nanos, Math::min);
+			maxTask[p].accumulateAndGet(nanos, Math::max);
+			histograms[p].incrementAndGet(bucket(nanos));
+		}
+
+		@Override
+		public Snapshot snapshot() {
+			long[] min = new long[PHASES];
+			long[][] hist = new long[PHASES][Snapshot.BUCKETS];
+			for (int p=0; p<PHASES; p++) {
+				min[p] = minTask[p].get() == Long.MAX_VALUE ? 0 : minTask[p].get();
+				for (int b=0; b<Snapshot.BUCKETS; b++) {hist[p][b] = histograms[p].get(b);}
+			}
+			double[] squares = Arrays.stream(taskSquares).mapToDouble(DoubleAdder::sum).toArray();
+			return new Snapshot(sums(wall), sums(tasks), sums(items), sums(taskTime), squares, min, values(maxTask), hist, allocated.sum());
+		}
+
+		@Override
+		public void reset() {
+			for (int p=0; p<PHASES; p++) {
+				wall[p].reset();
+				tasks[p].reset();
+				items[p].reset();
+				taskTime[p].reset();
+				taskSquares[p].reset();
+				minTask[p].set(Long.MAX_VALUE);
+				maxTask[p].set(0);
+				for (int b=0; b<Snapshot.BUCKETS; b++) {histograms[p].set(b, 0);}
+			}
+			allocated.reset();
+		}
+
+		@Override public Map<String, Long> getMetrics() {return snapshot().asMap();}
+
+		/**Register with the platform MBean server as "ar.renderers:type=RenderMetrics,name=<name>".
+		 * @throws RuntimeException if registration fails (e.g., the name is already taken)
+		 * **/
+		public Recorder register(String name) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("ar.renderers:type=RenderMetrics,name=" + name));
+				return this;
+			} catch (Exception e) {throw new RuntimeException("Error registering render metrics as " + name, e);}
+		}
+
+		private static int bucket(long nanos) {return 64-Long.numberOfLeadingZeros(Math.max(0, nanos));}
+
+		private static LongAdder[] adders() {
+			LongAdder[] adders = new LongAdder[PHASES];
+			for (int i=0; i<PHASES; i++) {adders[i] = new LongAdder();}
+			return adders;
+		}
+
+		private static AtomicLong[] atomics(long init) {
+			AtomicLong[] atomics = new AtomicLong[PHASES];
+			for (int i=0; i<PHASES; i++) {atomics[i] = new AtomicLong(init);}
+			return atomics;
+		}
+
+		private static long[] sums(LongAdder[] adders) {return Arrays.stream(adders).mapToLong(LongAdder::sum).toArray();}
+		private static long[] values(AtomicLong[] atomics) {return Arrays.stream(atomics).mapToLong(AtomicLong::get).toArray();}
+	}
+}
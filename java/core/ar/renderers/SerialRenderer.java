@@ -22,6 +22,7 @@ import ar.aggregates.AggregateUtils;
 public final class SerialRenderer implements Renderer {
 	private static final long serialVersionUID = -377145195943991994L;
 	private final ProgressRecorder recorder = new ProgressRecorder.Counter();
+	private final RenderMetrics metrics = new RenderMetrics.NOP();
 	
 	
 
@@ -55,8 +56,10 @@ public final class SerialRenderer implements Renderer {
 		Rectangle viewport = view.createTransformedShape(glyphs.bounds()).getBounds();
 		recorder.reset(viewport.height*viewport.width);
 		Aggregates<A> aggregates = allocator.apply(op.identity());
+		Cancellation cancel = Cancellation.current();
 		
 		for (int x=aggregates.lowX(); x<aggregates.highX(); x++) {
+			cancel.check();
 			for (int y=aggregates.lowY(); y<aggregates.highY(); y++) {
 				A acc = aggregates.get(x, y);
 				Collection<Glyph<? extends G, ? extends I>>  subset = new ArrayList<>();
@@ -81,7 +84,9 @@ public final class SerialRenderer implements Renderer {
 		recorder.reset(AggregateUtils.size(aggregates));
 		
 		Aggregates<OUT> out = AggregateUtils.make(aggregates, t.emptyValue());
+		Cancellation cancel = Cancellation.current();
 		for (int x=aggregates.lowX(); x<aggregates.highX(); x++) {
+			cancel.check();
 			for (int y=aggregates.lowY(); y<aggregates.highY(); y++) {
 				OUT val = t.at(x, y, aggregates);
 				out.set(x,y,val);
@@ -101,5 +106,6 @@ public final class SerialRenderer implements Renderer {
 	}
 	
 	@Override public ProgressRecorder recorder() {return recorder;}
+	@Override public RenderMetrics metrics() {return metrics;}
 
 }
@@ -1,15 +1,22 @@
 package ar.renderers;
 
 import java.awt.Rectangle;
+import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -22,6 +29,8 @@ import ar.Transfer;
 import ar.aggregates.AggregateUtils;
 import ar.aggregates.wrappers.TouchedBoundsWrapper;
 import ar.renderers.tasks.GlyphParallelAggregation;
+import ar.renderers.tasks.PixelParallelTransfer;
+import ar.util.Util;
 
 
 /**Task-stealing renderer that works on a per-glyph basis, designed for use with a linear stored glyph-set.
@@ -61,13 +70,29 @@ public class ThreadpoolRenderer implements Renderer {
 		if (size < 1) {size = 2;}
 		RENDER_THREAD_LOAD = size;	
 	}
+	
+	/**Should the default allocator track running statistics of numeric aggregates (see TouchedBoundsWrapper.stats)?
+	 * Tracking lets transfers specialize without scanning the aggregates (see Util.stats), 
+	 * but every set records the change and merges into tracked targets go cell-by-cell (instead of the array merges).
+	 * Once every cell holding the minimum (or maximum) has changed, the statistics are invalid and specialization scans anyway,
+	 * which is common when many glyphs touch each cell.  Off by default; may be set as a system parameter (-DAGGREGATE_STATS=true).**/
+	public static final boolean AGGREGATE_STATS;
+	static {
+		boolean track = false;
+		if (System.getProperties().containsKey("AGGREGATE_STATS")) {
+			track = Boolean.parseBoolean(System.getProperty("AGGREGATE_STATS"));
+		}
+		AGGREGATE_STATS = track;
+	}
 
 	//-------------------------------------------------------------------------------------
 	
 	private final ExecutorService pool;
 	private final ProgressRecorder recorder;
+	private final RenderMetrics metrics;
 	
 	private final int threadLoad;
+	private final boolean sharedTarget;
 
 
 	public ThreadpoolRenderer() {this(null, RENDER_THREAD_LOAD, null);}
@@ -80,6 +105,25 @@ public class ThreadpoolRenderer implements Renderer {
 	 * @param pool -- Thread pool to use.  Null to create a pool
 	 * **/
 	public ThreadpoolRenderer(ExecutorService pool, int threadLoad, ProgressRecorder recorder) {
+		this(pool, threadLoad, false, recorder);
+	}
+
+	/**Render that uses the given thread pool for parallel operations.
+	 * 
+	 * @param pool -- Thread pool to use.  Null to create a pool
+	 * @param sharedTarget -- If true, the default aggregation aggregates all segments into one shared, concurrent target
+	 *                         (see sharedAllocator) instead of allocating and merging a target per task.
+	 * **/
+	public ThreadpoolRenderer(ExecutorService pool, int threadLoad, boolean sharedTarget, ProgressRecorder recorder) {
+		this(pool, threadLoad, sharedTarget, recorder, null);
+	}
+
+	/**Render that uses the given thread pool for parallel operations.
+	 * 
+	 * @param pool -- Thread pool to use.  Null to create a pool
+	 * @param metrics -- Receives phase timings and task statistics.  Null to not record metrics.
+	 * **/
+	public ThreadpoolRenderer(ExecutorService pool, int threadLoad, boolean sharedTarget, ProgressRecorder recorder, RenderMetrics metrics) {
 		this.pool = pool != null ? pool : Executors.newFixedThreadPool(RENDER_POOL_SIZE,
 				(Runnable r) -> {
 					Thread t = new Thread(r, "AR Renderer Pool -- " + threadCounter.getAndIncrement());
@@ -87,7 +131,9 @@ public class ThreadpoolRenderer implements Renderer {
 			        return t;
 			    });
 		this.threadLoad = threadLoad > 0 ? threadLoad : RENDER_THREAD_LOAD;
+		this.sharedTarget = sharedTarget;
 		this.recorder = recorder == null ? new ProgressRecorder.Counter() : recorder;
+		this.metrics = metrics == null ? new RenderMetrics.NOP() : metrics;
 	}
 
 
@@ -107,9 +153,15 @@ public class ThreadpoolRenderer implements Renderer {
 			Aggregator<I,A> aggregator,
 			AffineTransform viewTransform) {
 
+		if (sharedTarget) {
+			return aggregate(glyphs, selector, aggregator, viewTransform, 
+					sharedAllocator(glyphs, viewTransform),
+					sharedMerge());
+		}
+		
 		return aggregate(glyphs, selector, aggregator, viewTransform, 
-				defaultAllocator(glyphs, viewTransform),
-				defaultMerge(aggregator.identity(), aggregator::rollup)
+				defaultAllocator(glyphs, viewTransform, AGGREGATE_STATS, threadLoad * RENDER_POOL_SIZE),
+				defaultMerge(aggregator)
 				);
 	}
 	
@@ -127,11 +179,18 @@ public class ThreadpoolRenderer implements Renderer {
 		long ticks = GlyphParallelAggregation.ticks(taskCount);
 		recorder.reset(ticks);
 		ExecutorCompletionService<Aggregates<A>> service = new ExecutorCompletionService<>(pool);
+		allocator = RenderMetrics.allocator(metrics, allocator);
+		merge = RenderMetrics.merge(metrics, merge);
 		
+		long start = System.nanoTime();
 		Collection<Glyphset<GG, II>> segments = glyphs.segment(taskCount);
+		metrics.phase(RenderMetrics.Phase.SEGMENT, System.nanoTime()-start);
+
+		start = System.nanoTime();
+		Cancellation cancel = Cancellation.current();
 		for (Glyphset<GG, II> segment: segments) {
 			AggregateTask<G,I,A> task = new AggregateTask<>(
-					recorder, view,
+					recorder, metrics, cancel, view,
 					segment, selector, op, allocator);
 			service.submit(task);
 		}
@@ -142,10 +201,14 @@ public class ThreadpoolRenderer implements Renderer {
 				Aggregates<A> from = service.take().get();
 				result = merge.apply(result, from);
 			}
-		}  catch (Exception e) {
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CancellationException) {throw (CancellationException) e.getCause();}
+			throw new RuntimeException("Error completing aggregation", e);
+		} catch (Exception e) {
 			throw new RuntimeException("Error completing aggregation", e);
 		} 
 		
+		metrics.phase(RenderMetrics.Phase.AGGREGATE, System.nanoTime()-start);
 		return result;
 	}
 	
@@ -155,20 +218,28 @@ public class ThreadpoolRenderer implements Renderer {
 		int taskCount = threadLoad * RENDER_POOL_SIZE;
 		recorder.reset(taskCount);
 
-		int span = (aggregates.highX() - aggregates.lowX())/taskCount;
+		//Row-bands, to match the row-major layout of flat aggregates
+		int height = Math.max(0, aggregates.highY() - aggregates.lowY());
 		List<TransferTask<IN,OUT>> tasks = new ArrayList<>();
+		Cancellation cancel = Cancellation.current();
 		for (int i=0; i<taskCount; i++) {
-			int lowX = aggregates.lowX() + (span*i);
-			int lowY = aggregates.lowY();
-			int highX = Math.max(aggregates.highX(), aggregates.lowX() + (span*(i+1)));
-			int highY = aggregates.highY();
+			int lowX = aggregates.lowX();
+			int lowY = aggregates.lowY() + (int) (((long) height*i)/taskCount);
+			int highX = aggregates.highX();
+			int highY = aggregates.lowY() + (int) (((long) height*(i+1))/taskCount);
 					
-			TransferTask<IN,OUT> task = new TransferTask<>(recorder, t, lowX, lowY, highX, highY, aggregates, result);
+			TransferTask<IN,OUT> task = new TransferTask<>(recorder, metrics, cancel, t, lowX, lowY, highX, highY, aggregates, result);
 			tasks.add(task);
 		}
 		
-		try {pool.invokeAll(tasks);}
-		catch (InterruptedException e) {throw new RuntimeException("Error completing transfer", e);}
+		long start = System.nanoTime();
+		try {
+			for (Future<Aggregates<OUT>> f: pool.invokeAll(tasks)) {f.get();}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CancellationException) {throw (CancellationException) e.getCause();}
+			throw new RuntimeException("Error completing transfer", e);
+		} catch (InterruptedException e) {throw new RuntimeException("Error completing transfer", e);}
+		metrics.phase(RenderMetrics.Phase.TRANSFER, System.nanoTime()-start);
 		return result;
 	}
 	
@@ -181,6 +252,7 @@ public class ThreadpoolRenderer implements Renderer {
 	}	
 	
 	public ProgressRecorder recorder() {return recorder;}
+	public RenderMetrics metrics() {return metrics;}
 	
 	
 	/**Merge operation using the aggregator/rollup.  Assumes the first argument to the merge can be safely mutated.**/
@@ -189,18 +261,89 @@ public class ThreadpoolRenderer implements Renderer {
 
 	}
 	
-	/**Allocate for full-bounds in the current view.**/
+	/**Merge operation using the aggregator's rollup (without boxing for primitive-specialized aggregators).  
+	 * Assumes the first argument to the merge can be safely mutated.**/
+	public static <A> BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> defaultMerge(Aggregator<?,A> op) {
+		return (result, from) -> AggregateUtils.__unsafeMerge(result, from, op);
+	}
+	
+	/**Allocate for full-bounds in the current view.
+	 * 
+	 * Scattered data in a large view gets sparse aggregates (see expectedCells and AggregateUtils.SPARSE_OCCUPANCY).
+	 * Numeric aggregates carry running statistics if AGGREGATE_STATS is set.
+	 * **/
 	public static <A> Function<A, Aggregates<A>> defaultAllocator(Glyphset<?,?> glyphs, AffineTransform viewTransform) {
+		return defaultAllocator(glyphs, viewTransform, AGGREGATE_STATS);
+	}
+	
+	/**Allocate for full-bounds in the current view, with running statistics of numeric aggregates if requested.**/
+	public static <A> Function<A, Aggregates<A>> defaultAllocator(Glyphset<?,?> glyphs, AffineTransform viewTransform, boolean stats) {
+		return defaultAllocator(glyphs, viewTransform, stats, 1);
+	}
+	
+	/**Allocate for full-bounds in the current view, for targets that each receive about 1/tasks of the glyphs.
+	 * The expected occupancy (see expectedCells) is divided among the tasks, so per-task targets are sparse when their share is.
+	 * Merges densify as the merged targets fill.**/
+	public static <A> Function<A, Aggregates<A>> defaultAllocator(Glyphset<?,?> glyphs, AffineTransform viewTransform, boolean stats, int tasks) {
 		Rectangle bounds = viewTransform.createTransformedShape(glyphs.bounds()).getBounds();
+		long expected = expectedCells(glyphs, viewTransform)/Math.max(1, tasks);
 		return (defVal) ->
-			new TouchedBoundsWrapper<>(
+			TouchedBoundsWrapper.wrap(
 					AggregateUtils.make(
 							bounds.x, bounds.y,
 							bounds.x+bounds.width, bounds.y+bounds.height,
-							defVal),
-					false);		
+							defVal, expected),
+					false, stats);		
 	}	
 	
+	/**Estimate of the number of cells the glyphs will touch in the view (an over-estimate when glyphs overlap).
+	 * 
+	 * The glyph count times the average cells per glyph, where the average is taken from 
+	 * a few glyphs spread through the glyphset (random access glyphsets only, otherwise one cell per glyph is assumed).  
+	 */
+	public static long expectedCells(Glyphset<?,?> glyphs, AffineTransform viewTransform) {
+		long size = glyphs.size();
+		if (!(glyphs instanceof Glyphset.RandomAccess) || size == 0) {return size;}
+
+		Glyphset.RandomAccess<?,?> ra = (Glyphset.RandomAccess<?,?>) glyphs;
+		int samples = (int) Math.min(16, size);
+		double cells = 0;
+		for (int i=0; i<samples; i++) {
+			Object shape = ra.get(i*(size/samples)).shape();
+			if (!(shape instanceof Point2D || shape instanceof Shape)) {return size;}
+			Rectangle2D v = viewTransform.createTransformedShape(Util.boundOne(shape)).getBounds2D();
+			cells += (Math.floor(v.getWidth())+1) * (Math.floor(v.getHeight())+1);
+		}
+		return (long) Math.min(Long.MAX_VALUE, size * (cells/samples));
+	}
+	
+	/**Allocate a single concurrent target for the full bounds in the current view.
+	 * 
+	 * Every invocation of the returned function yields the same Aggregates.Concurrent instance,
+	 * so all aggregation tasks update one target.  Memory use is independent of the number of tasks
+	 * and no merge is required (use with sharedMerge).  
+	 */
+	public static <A> Function<A, Aggregates<A>> sharedAllocator(Glyphset<?,?> glyphs, AffineTransform viewTransform) {
+		Rectangle bounds = viewTransform.createTransformedShape(glyphs.bounds()).getBounds();
+		AtomicReference<Aggregates<A>> shared = new AtomicReference<>();
+		return (defVal) -> {
+			synchronized(shared) {
+				if (shared.get() == null) {
+					shared.set(AggregateUtils.makeConcurrent(
+							bounds.x, bounds.y,
+							bounds.x+bounds.width, bounds.y+bounds.height,
+							defVal));
+				}
+				return shared.get();
+			}
+		};
+	}
+	
+	/**Merge for use with sharedAllocator.  Both arguments are the shared target (or null), so no work is done.**/
+	public static <A> BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> sharedMerge() {
+		return (result, from) -> result != null ? result : from;
+	}
+	
 	
 	
 	
@@ -211,10 +354,14 @@ public class ThreadpoolRenderer implements Renderer {
 		private final Aggregates<OUT> out;
 		private final Transfer.ItemWise<IN,OUT> t;
 		private final ProgressRecorder recorder;
+		private final RenderMetrics metrics;
+		private final Cancellation cancel;
 
 		
-		public TransferTask(ProgressRecorder recorder, Transfer.ItemWise<IN,OUT> t, int lowX, int lowY, int highX, int highY, Aggregates<? extends IN> in, Aggregates<OUT> out) {
+		public TransferTask(ProgressRecorder recorder, RenderMetrics metrics, Cancellation cancel, Transfer.ItemWise<IN,OUT> t, int lowX, int lowY, int highX, int highY, Aggregates<? extends IN> in, Aggregates<OUT> out) {
 			this.recorder = recorder;
+			this.metrics = metrics;
+			this.cancel = cancel;
 			this.lowX=lowX;
 			this.lowY = lowY;
 			this.highX = highX;
@@ -225,19 +372,19 @@ public class ThreadpoolRenderer implements Renderer {
 		}
 		
 		public Aggregates<OUT> call() throws Exception {
+			cancel.check();
 			recorder.update(1);
-			for (int x=lowX; x<highX; x++) {
-				for (int y=lowY; y<highY; y++) {
-					OUT val = t.at(x, y, in);
-					out.set(x, y, val);
-				}
-			}
+			long start = System.nanoTime();
+			PixelParallelTransfer.transfer(in, out, t, lowX, lowY, highX, highY);
+			metrics.task(RenderMetrics.Phase.TRANSFER, AggregateUtils.size(lowX, lowY, highX, highY), System.nanoTime()-start);
 			return out;
 		}
 	}
 	
 	private static final class AggregateTask<G,I,A> implements Callable<Aggregates<A>> {
 		private final ProgressRecorder recorder;
+		private final RenderMetrics metrics;
+		private final Cancellation cancel;
 		private final Glyphset<? extends G, ? extends I> glyphset;
 		private final Selector<G> selector;
 		private final AffineTransform viewTransform;
@@ -246,6 +393,8 @@ public class ThreadpoolRenderer implements Renderer {
 		
 		public AggregateTask(
 				ProgressRecorder recorder, 
+				RenderMetrics metrics,
+				Cancellation cancel,
 				AffineTransform viewTransform,
 				Glyphset<? extends G, ? extends I> glyphs,
 				Selector<G> selector,
@@ -253,6 +402,8 @@ public class ThreadpoolRenderer implements Renderer {
 				Function<A, Aggregates<A>> allocator
 				) {
 			this.recorder = recorder;
+			this.metrics = metrics;
+			this.cancel = cancel;
 			this.glyphset = glyphs;
 			this.selector = selector;
 			this.viewTransform = viewTransform;
@@ -263,9 +414,12 @@ public class ThreadpoolRenderer implements Renderer {
 		
 		@Override
 		public Aggregates<A> call() throws Exception {
+			cancel.check();
+			long start = System.nanoTime();
 			Aggregates<A> target = allocator.apply(op.identity());
 			recorder.update(1);
-			selector.processSubset(glyphset, viewTransform, target, op);
+			cancel.during(() -> selector.processSubset(glyphset, viewTransform, target, op));
+			metrics.task(RenderMetrics.Phase.AGGREGATE, glyphset.size(), System.nanoTime()-start);
 						
 			if (target.empty()) {return null;}
 			else {return target;}
@@ -2,8 +2,14 @@ package ar.renderers.tasks;
 
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveTask;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -14,12 +20,41 @@ import ar.Glyphset;
 import ar.Selector;
 import ar.aggregates.AggregateUtils;
 import ar.aggregates.wrappers.TouchedBoundsWrapper;
+import ar.glyphsets.GlyphSubset;
+import ar.renderers.Cancellation;
 import ar.renderers.ProgressRecorder;
+import ar.renderers.RenderMetrics;
 import ar.util.Util;
 
+/**Aggregate a list of glyph segments, splitting the list in half until single segments remain.
+ * 
+ * Segments are not all equally costly (dense regions, large glyphs), so splitting is also adaptive:
+ * a segment larger than SPLIT_SIZE is processed in chunks of about that size, and between chunks
+ * half of the remaining chunks are split off as a new task if a worker in the pool is idle.
+ * A split-off task aggregates its chunks serially into one target (splitting again only if a worker is idle),
+ * so adaptive splitting allocates one target per split rather than one per chunk.
+ * Tasks split off this way do not report progress (their glyphs are counted when the originating task completes).
+ * 
+ * The calling thread's cancellation token (see Cancellation.current) is captured at construction,
+ * checked between segments and chunks, and installed while the selector runs.
+ **/
 public class GlyphParallelAggregation<G,I,A> extends RecursiveTask<Aggregates<A>> {
 	private static final long serialVersionUID = 705015978061576950L;
 	
+	/**Approximate number of glyphs processed between checks for idle workers; zero disables adaptive splitting.
+	 * May be set as a system parameter (-DAGGREGATE_SPLIT_SIZE=x).**/
+	public static final long SPLIT_SIZE;
+	static {
+		long size = 16384;
+		if (System.getProperties().containsKey("AGGREGATE_SPLIT_SIZE")) {
+			size = Long.parseLong(System.getProperty("AGGREGATE_SPLIT_SIZE"));
+		}
+		SPLIT_SIZE = Math.max(0, size);
+	}
+	
+	/**Fewest chunks split off as a task; smaller remainders are not worth a target allocation and merge.**/
+	public static final int FORK_CHUNKS = 4;
+	
 	protected final List<Glyphset<G, I>> glyphs;
 	
 	/**To save (potentially costly) multiple calculations of the overall bounds, the full bounds are passed around as a parameter.**/
@@ -27,10 +62,15 @@ public class GlyphParallelAggregation<G,I,A> extends RecursiveTask<Aggregates<A>
 	protected final AffineTransform view;
 	protected final Aggregator<? super I,A> op;
 	protected final ProgressRecorder recorder;
+	protected final RenderMetrics metrics;
 	protected final Selector<? super G> selector;
 	protected final int low, high;
 	protected final Function<A, Aggregates<A>> allocator;
 	protected final BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge;
+	protected final Cancellation cancel;
+	
+	/**Are the glyphs chunks of a single segment (to be aggregated into one target) instead of segments?**/
+	protected final boolean chunked;
 
 	public GlyphParallelAggregation(List<Glyphset<G, I>> glyphs, 
 			Rectangle2D glyphBounds,
@@ -40,7 +80,20 @@ public class GlyphParallelAggregation<G,I,A> extends RecursiveTask<Aggregates<A>
 			Function<A, Aggregates<A>> allocator,
 			BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge,
 			ProgressRecorder recorder) {
-		this(glyphs, glyphBounds, selector, op, view, allocator, merge, recorder, 0, glyphs.size());
+		this(glyphs, glyphBounds, selector, op, view, allocator, merge, recorder, new RenderMetrics.NOP());
+	}
+	
+	/**@param metrics Receives an AGGREGATE task (glyph count and duration) for each segment processed.**/
+	public GlyphParallelAggregation(List<Glyphset<G, I>> glyphs, 
+			Rectangle2D glyphBounds,
+			Selector<? super G> selector,
+			Aggregator<? super I, A> op,
+			AffineTransform view,
+			Function<A, Aggregates<A>> allocator,
+			BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge,
+			ProgressRecorder recorder,
+			RenderMetrics metrics) {
+		this(glyphs, glyphBounds, selector, op, view, allocator, merge, recorder, metrics, Cancellation.current(), false, 0, glyphs.size());
 	}
 	
 	private GlyphParallelAggregation(
@@ -52,6 +105,9 @@ public class GlyphParallelAggregation<G,I,A> extends RecursiveTask<Aggregates<A>
 		Function<A, Aggregates<A>> allocator,
 		BiFunction<Aggregates<A>, Aggregates<A>, Aggregates<A>> merge,
 		ProgressRecorder recorder,
+		RenderMetrics metrics,
+		Cancellation cancel,
+		boolean chunked,
 		int low,
 		int high) {
 
@@ -63,24 +119,29 @@ public class GlyphParallelAggregation<G,I,A> extends RecursiveTask<Aggregates<A>
 		this.allocator = allocator;
 		this.merge = merge;
 		this.recorder = recorder;
+		this.metrics = metrics;
+		this.cancel = cancel;
+		this.chunked = chunked;
 		this.low = low;
 		this.high = high;
 	}
 	
 	protected Aggregates<A> compute() {
 		try {
+			cancel.check();
 			Aggregates<A> rslt;
-			if (high-low > 1) {rslt=split();}
+			if (chunked) {rslt=chunked(glyphs, low, high);}
+			else if (high-low > 1) {rslt=split();}
 			else {rslt=local();}
 			recorder.update(UP_MULT);
 
 			if (rslt instanceof TouchedBoundsWrapper) {
 				TouchedBoundsWrapper<A> tbr = (TouchedBoundsWrapper<A>) rslt;
-				if (AggregateUtils.bounds(tbr).equals(AggregateUtils.bounds(tbr.base()))) {return tbr.base();}
+				if (tbr.stats() == null && AggregateUtils.bounds(tbr).equals(AggregateUtils.bounds(tbr.base()))) {return tbr.base();}
 			} 
 	
 			return rslt;
-		} catch (AggregationException e) {
+		} catch (AggregationException | CancellationException e) {
 			throw e;
 		} catch (Throwable t) {
 			recorder.message("Error");
@@ -89,19 +150,63 @@ public class GlyphParallelAggregation<G,I,A> extends RecursiveTask<Aggregates<A>
 	}
 	
 	protected final Aggregates<A> local() {
-		Aggregates<A> target = allocator.apply(op.identity());
+		List<Glyphset<G,I>> chunks = chunks(glyphs.get(low));
 		recorder.update(DOWN_MULT);
-		selector.processSubset(glyphs.get(low), view, target, op);
+		return chunked(chunks, 0, chunks.size());
+	}
+	
+	/**Aggregate chunks [begin, end) into a single target.  
+	 * When a worker is idle, the later half of the remaining chunks is forked as a task that 
+	 * does the same (so each forked task also allocates only one target).
+	 * Forked tasks have at least FORK_CHUNKS chunks, so a segment never costs more than chunks/FORK_CHUNKS extra targets (and merges).**/
+	private Aggregates<A> chunked(List<Glyphset<G,I>> chunks, int begin, int end) {
+		Aggregates<A> target = allocator.apply(op.identity());
+		Deque<GlyphParallelAggregation<G,I,A>> forked = new ArrayDeque<>();
+		for (int i=begin; i<end; i++) {
+			if (end-i >= 2*FORK_CHUNKS && idleWorkers()) {
+				int mid = Util.mean(i, end);
+				GlyphParallelAggregation<G,I,A> rest = new GlyphParallelAggregation<>(chunks, glyphBounds, selector, op, view, allocator, merge, new ProgressRecorder.NOP(), metrics, cancel, true, mid, end);
+				rest.fork();
+				forked.push(rest);
+				end = mid;
+			}
+			
+			cancel.check();
+			long start = System.nanoTime();
+			Glyphset<G,I> chunk = chunks.get(i);
+			cancel.during(() -> selector.processSubset(chunk, view, target, op));
+			metrics.task(RenderMetrics.Phase.AGGREGATE, chunk.size(), System.nanoTime()-start);
+		}
+
+		Aggregates<A> result = target.empty() ? null : target;
+		while (!forked.isEmpty()) {result = merge.apply(result, forked.pop().join());}	//Most recently forked covers the lowest chunks
+		return result;
+	}
+	
+	/**Split a segment into chunks of about SPLIT_SIZE glyphs (random access segments are split by index range).**/
+	private static <G,I> List<Glyphset<G,I>> chunks(Glyphset<G,I> segment) {
+		long size = segment.size();
+		if (SPLIT_SIZE == 0 || size < SPLIT_SIZE*2) {return Collections.singletonList(segment);}
+		if (!(segment instanceof Glyphset.RandomAccess)) {return segment.segment((int) Math.min(Integer.MAX_VALUE, size/SPLIT_SIZE));}
 		
-		if (target.empty()) {return null;}
-		else {return target;}
+		Glyphset.RandomAccess<G,I> source = (Glyphset.RandomAccess<G,I>) segment;
+		long count = size/SPLIT_SIZE;
+		List<Glyphset<G,I>> chunks = new ArrayList<>();
+		for (long i=0; i<count; i++) {chunks.add(GlyphSubset.make(source, (size*i)/count, (size*(i+1))/count, false));}
+		return chunks;
+	}
+	
+	/**Is there a worker in this task's pool with nothing to do (and nothing already queued here for it to take)?**/
+	private static boolean idleWorkers() {
+		ForkJoinPool pool = getPool();
+		return pool != null && getQueuedTaskCount() == 0 && pool.getActiveThreadCount() < pool.getParallelism();
 	}
 	
 	protected final Aggregates<A> split() {
 		int midTask = Util.mean(low, high);
 		
-		GlyphParallelAggregation<G,I,A> top = new GlyphParallelAggregation<>(glyphs, glyphBounds, selector, op, view, allocator, merge, recorder, low, midTask);
-		GlyphParallelAggregation<G,I,A> bottom = new GlyphParallelAggregation<>(glyphs, glyphBounds, selector, op, view, allocator, merge, recorder, midTask, high);
+		GlyphParallelAggregation<G,I,A> top = new GlyphParallelAggregation<>(glyphs, glyphBounds, selector, op, view, allocator, merge, recorder, metrics, cancel, false, low, midTask);
+		GlyphParallelAggregation<G,I,A> bottom = new GlyphParallelAggregation<>(glyphs, glyphBounds, selector, op, view, allocator, merge, recorder, metrics, cancel, false, midTask, high);
 		invokeAll(top, bottom);
 		Aggregates<A> aggs;
 		
@@ -4,51 +4,133 @@ import java.util.concurrent.RecursiveAction;
 
 import ar.Aggregates;
 import ar.Transfer;
-import ar.util.Util;
+import ar.aggregates.implementations.ColorAggregates;
+import ar.aggregates.implementations.IntAggregates;
+import ar.aggregates.wrappers.TouchedBoundsWrapper;
+import ar.renderers.Cancellation;
+import ar.renderers.RenderMetrics;
 
+/**Item-wise transfer over a region, in parallel.
+ * 
+ * The region is divided into fixed-size blocks (BLOCK_WIDTH x BLOCK_HEIGHT, sized to stay in cache).
+ * Tasks take runs of whole blocks (in row-major block order), splitting the run in half until it holds fewer than taskSize cells.
+ * Within a block, cells are visited row-major to match the layout of the flat aggregates.
+ * 
+ * Int aggregates transferred to color aggregates by a Transfer.IntToColor are processed a row-segment at a time 
+ * on the backing arrays (see ColorAggregates.transfer).
+ * 
+ * The calling thread's cancellation token (see Cancellation.current) is captured at construction and checked before each block.
+ */
 public final class PixelParallelTransfer<IN, OUT> extends RecursiveAction {
 	private static final long serialVersionUID = 7512448648194530526L;
 	
+	/**Width of a transfer block (in cells).  May be set as a system parameter (-DTRANSFER_BLOCK_WIDTH=x).**/
+	public static final int BLOCK_WIDTH;
+	
+	/**Height of a transfer block (in cells).  May be set as a system parameter (-DTRANSFER_BLOCK_HEIGHT=x).**/
+	public static final int BLOCK_HEIGHT;
+	static {
+		int width = 256, height = 32;
+		if (System.getProperties().containsKey("TRANSFER_BLOCK_WIDTH")) {
+			width = Integer.parseInt(System.getProperty("TRANSFER_BLOCK_WIDTH"));
+		}
+		if (System.getProperties().containsKey("TRANSFER_BLOCK_HEIGHT")) {
+			height = Integer.parseInt(System.getProperty("TRANSFER_BLOCK_HEIGHT"));
+		}
+		BLOCK_WIDTH = Math.max(1, width);
+		BLOCK_HEIGHT = Math.max(1, height);
+	}
+	
 	private final int lowx, lowy, highx, highy;
+	private final int blocksWide, lowBlock, highBlock;
 	private final Aggregates<OUT> out;
 	private final Aggregates<? extends IN> in;
 	private final Transfer.ItemWise<IN, OUT> t;
 	private final long taskSize;
+	private final RenderMetrics metrics;
+	private final Cancellation cancel;
 	
 	public PixelParallelTransfer(
 			Aggregates<? extends IN> input, Aggregates<OUT> result, 
 			Transfer.ItemWise<IN, OUT> t,
 			long taskSize,
 			int lowX, int lowY, int highX, int highY) {
-		
+		this(input, result, t, taskSize, new RenderMetrics.NOP(), lowX, lowY, highX, highY);
+	}
+
+	/**@param metrics Receives a TRANSFER task (cell count and duration) for each run of blocks transferred without further subdivision.**/
+	public PixelParallelTransfer(
+			Aggregates<? extends IN> input, Aggregates<OUT> result, 
+			Transfer.ItemWise<IN, OUT> t,
+			long taskSize,
+			RenderMetrics metrics,
+			int lowX, int lowY, int highX, int highY) {
+		this(input, result, t, taskSize, metrics, Cancellation.current(), lowX, lowY, highX, highY, 
+				0, blocks(lowX, highX, BLOCK_WIDTH)*blocks(lowY, highY, BLOCK_HEIGHT));
+	}
+	
+	private PixelParallelTransfer(
+			Aggregates<? extends IN> input, Aggregates<OUT> result, 
+			Transfer.ItemWise<IN, OUT> t,
+			long taskSize,
+			RenderMetrics metrics,
+			Cancellation cancel,
+			int lowX, int lowY, int highX, int highY,
+			int lowBlock, int highBlock) {
 		this.lowx=lowX;
 		this.lowy=lowY;
 		this.highx=highX;
 		this.highy=highY;
+		this.blocksWide = blocks(lowX, highX, BLOCK_WIDTH);
+		this.lowBlock = lowBlock;
+		this.highBlock = highBlock;
 		this.out = result;
 		this.in = input;
 		this.t = t;
 		this.taskSize = taskSize;
+		this.metrics = metrics;
+		this.cancel = cancel;
 	}
+	
+	private static int blocks(int low, int high, int size) {return high <= low ? 0 : (high-low+size-1)/size;}
 
 	protected void compute() {
-		int width = highx-lowx;
-		int height = highy-lowy;
-		if (width * height >= taskSize) {
-			int centerx = Util.mean(lowx, highx);
-			int centery = Util.mean(lowy, highy);
-			PixelParallelTransfer<IN, OUT> SW = new PixelParallelTransfer<>(in, out, t, taskSize, lowx,    lowy,    centerx, centery);
-			PixelParallelTransfer<IN, OUT> NW = new PixelParallelTransfer<>(in, out, t, taskSize, lowx,    centery, centerx, highy);
-			PixelParallelTransfer<IN, OUT> SE = new PixelParallelTransfer<>(in, out, t, taskSize, centerx, lowy,    highx,   centery);
-			PixelParallelTransfer<IN, OUT> NE = new PixelParallelTransfer<>(in, out, t, taskSize, centerx, centery, highx,   highy);
-			invokeAll(SW,NW,SE,NE);
+		long blockCells = ((long) BLOCK_WIDTH)*BLOCK_HEIGHT;
+		if (highBlock-lowBlock > 1 && (highBlock-lowBlock)*blockCells > taskSize) {
+			int mid = lowBlock + (highBlock-lowBlock)/2;
+			invokeAll(
+				new PixelParallelTransfer<>(in, out, t, taskSize, metrics, cancel, lowx, lowy, highx, highy, lowBlock, mid),
+				new PixelParallelTransfer<>(in, out, t, taskSize, metrics, cancel, lowx, lowy, highx, highy, mid, highBlock));
 		} else {
-			for (int x=lowx; x<highx; x++) {
-				for (int y=lowy; y<highy; y++) {
-					OUT val = t.at(x, y, in);
-					out.set(x, y, val);
-				}
+			long start = System.nanoTime();
+			long cells = 0;
+			for (int block=lowBlock; block<highBlock; block++) {
+				cancel.check();
+				int bx = lowx + (block % blocksWide)*BLOCK_WIDTH;
+				int by = lowy + (block / blocksWide)*BLOCK_HEIGHT;
+				int bhx = Math.min(bx+BLOCK_WIDTH, highx);
+				int bhy = Math.min(by+BLOCK_HEIGHT, highy);
+				transfer(in, out, t, bx, by, bhx, bhy);
+				cells += ((long) bhx-bx)*(bhy-by);
+			}
+			metrics.task(RenderMetrics.Phase.TRANSFER, cells, System.nanoTime()-start);
+		}
+	}
+	
+	/**Transfer a region (in the calling thread), row-major.
+	 * Uses the backing arrays when transferring int aggregates to color aggregates with a Transfer.IntToColor.**/
+	public static <IN,OUT> void transfer(Aggregates<? extends IN> in, Aggregates<OUT> out, Transfer.ItemWise<IN, OUT> t, int lowX, int lowY, int highX, int highY) {
+		Aggregates<?> base = in instanceof TouchedBoundsWrapper ? ((TouchedBoundsWrapper<?>) in).base() : in;
+		if (t instanceof Transfer.IntToColor && base instanceof IntAggregates && out instanceof ColorAggregates) {
+			((ColorAggregates) out).transfer((IntAggregates) base, lowX, lowY, highX, highY, (Transfer.IntToColor<?>) t);
+			return;
+		}
+		
+		for (int y=lowY; y<highY; y++) {
+			for (int x=lowX; x<highX; x++) {
+				OUT val = t.at(x, y, in);
+				out.set(x, y, val);
 			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -8,6 +8,7 @@ import ar.Aggregates;
 import ar.Renderer;
 import ar.Transfer;
 import ar.aggregates.wrappers.SubsetWrapper;
+import ar.util.AggregateStats;
 import ar.util.Util;
 
 /**Advise methods provide information about where to look in a visualization.
@@ -362,22 +363,7 @@ public class Advise {
 	 * @param comp Comparator used in the search
 	 * @return The location of the first "smallest" value 
 	 */
-	public static <A> Point min(Aggregates<? extends A> aggs, Comparator<A> comp) {
-		A min = aggs.get(aggs.lowX(), aggs.lowY());
-		Point p = new Point(aggs.lowX(), aggs.lowY());
-		for (int x=aggs.lowX(); x<aggs.highX(); x++) {
-			for (int y=aggs.lowY(); y<aggs.highY(); y++) {
-				A val = aggs.get(x,y);
-				int v = comp.compare(val, min);
-				if (v < 0) {
-					min = val;
-					p.setLocation(x, y);
-				}
-				
-			}
-		}
-		return p;
-	}
+	public static <A> Point min(Aggregates<? extends A> aggs, Comparator<A> comp) {return AggregateStats.min(aggs, comp);}
 	
 	/**Find the largest value.  
 	 * 
@@ -385,19 +371,5 @@ public class Advise {
 	 * @param comp Comparator used in the search
 	 * @return The location of the first "largest" value 
 	 */
-	public static <A> Point max(Aggregates<? extends A> aggs, Comparator<A> comp) {
-		A max = aggs.get(aggs.lowX(), aggs.lowY());
-		Point p = new Point(aggs.lowX(), aggs.lowY());
-		for (int x=aggs.lowX(); x<aggs.highX(); x++) {
-			for (int y=aggs.lowY(); y<aggs.highY(); y++) {
-				A val = aggs.get(x,y);
-				int v = comp.compare(val, max);
-				if (v > 0) {
-					max = val;
-					p.setLocation(x, y);
-				} 
-			}
-		}
-		return p;
-	}
+	public static <A> Point max(Aggregates<? extends A> aggs, Comparator<A> comp) {return AggregateStats.max(aggs, comp);}
 }
@@ -131,6 +131,16 @@ public class CategoricalCounts<T> implements Serializable {
 		}
 	}
 	
+	/**Create categorical counts from parallel arrays of labels and counts.
+	 * The labels must be distinct and already in comparator order (this is not checked).
+	 * The arrays are used directly (not copied).
+	 */
+	public static <T> CategoricalCounts<T> fromSorted(Comparator<T> comp, T[] labels, int[] counts) {
+		int fullSize = 0;
+		for (int c: counts) {fullSize += c;}
+		return new CategoricalCounts<>(comp, labels, counts, fullSize);
+	}
+	
 	public static <T> CategoricalCounts<T> make(final Iterable<T> labels, final Iterable<Integer> counts, Comparator<T> comp) {
 		CategoricalCounts<T> cc = new CategoricalCounts<T>(comp);
 		Iterator<T> labs = labels.iterator();
@@ -12,6 +12,8 @@ import java.util.TreeSet;
 import ar.Aggregates;
 import ar.Aggregator;
 import ar.Transfer;
+import ar.aggregates.implementations.CategoricalCountsAggregates;
+import ar.util.AggregateStats;
 import ar.util.Util;
 
 /**Tools for working with categorical entries.**/
@@ -26,6 +28,7 @@ public class Categories {
 		
 		@Override
 		public Integer at(int x, int y,Aggregates<? extends CategoricalCounts<IN>> aggregates) {
+			if (aggregates instanceof CategoricalCountsAggregates) {return ((CategoricalCountsAggregates<?>) aggregates).present(x, y);}
 			return aggregates.get(x,y).size();
 		}
 	}
@@ -42,6 +45,7 @@ public class Categories {
 
 		@Override
 		public Integer at(int x, int y,Aggregates<? extends CategoricalCounts<IN>> aggregates) {
+			if (aggregates instanceof CategoricalCountsAggregates) {return ((CategoricalCountsAggregates<?>) aggregates).total(x, y);}
 			return aggregates.get(x,y).fullSize();
 		}
 	}
@@ -461,8 +465,13 @@ public class Categories {
 
 		@Override
 		public HighDefAlpha.Specialized specialize(Aggregates<? extends CategoricalCounts<Color>> aggregates) {
-			int max=Integer.MIN_VALUE;
-			for (CategoricalCounts<Color> cats:aggregates) {max = Math.max(max,cats.fullSize());}
+			int max;
+			if (aggregates instanceof CategoricalCountsAggregates) {
+				CategoricalCountsAggregates<?> cats = (CategoricalCountsAggregates<?>) (Aggregates<?>) aggregates;
+				max = AggregateStats.maxInt(cats, (a, x, y) -> cats.total(x, y));
+			} else {
+				max = AggregateStats.<CategoricalCounts<Color>>maxInt(aggregates, (a, x, y) -> a.get(x, y).fullSize());
+			}
 			return new Specialized(max, background, omin, log);
 		}
 
@@ -96,7 +96,7 @@ public class General {
 	 * 
 	 * (Note: Replaces the 'ValuerTransfer' since valuers are now Function instances.)
 	 * **/
-	public static final class TransferFn<IN,OUT> implements Transfer.ItemWise<IN, OUT> {
+	public static final class TransferFn<IN,OUT> implements Transfer.CellWise<IN, OUT> {
 		private final Function<IN,OUT> valuer;
 		private final OUT empty;
 		
@@ -117,7 +117,7 @@ public class General {
 	 * Specified values are replaced, others as passed through.
 	 * For more control or type-converting replace, use MapWrapper instead.
 	 * **/
-	public static class Replace<T> implements Transfer.ItemWise<T,T> {
+	public static class Replace<T> implements Transfer.CellWise<T,T> {
 		private final Map<T,T> mapping;
 		private final T empty;
 		
@@ -368,7 +368,7 @@ public class General {
 	
 	/**Aggregator/Transfer that always returns the same value.
 	 **/
-	public static final class Const<A,OUT> implements Aggregator<A,OUT>, Transfer.ItemWise<A, OUT> {
+	public static final class Const<A,OUT> implements Aggregator<A,OUT>, Transfer.CellWise<A, OUT> {
 		private static final long serialVersionUID = 2274344808417248367L;
 		private final OUT val;
 		
@@ -390,7 +390,7 @@ public class General {
 
 
 	/**Return what is found at the given location.**/
-	public static final class Echo<T> implements Transfer.ItemWise<T,T> {
+	public static final class Echo<T> implements Transfer.CellWise<T,T> {
 		private static final long serialVersionUID = -7963684190506107639L;
 		private final T empty;
 		
@@ -408,7 +408,7 @@ public class General {
 	}
 
 	/**Return the given value when presented with a non-empty value.**/
-	public static final class Present<IN, OUT> implements Transfer.ItemWise<IN,OUT> {
+	public static final class Present<IN, OUT> implements Transfer.CellWise<IN,OUT> {
 		private static final long serialVersionUID = -7511305102790657835L;
 		private final OUT present, absent;
 		
@@ -434,7 +434,7 @@ public class General {
 	/**Transfer function that wraps a java.util.map.
 	 * The empty value is returned if the input value is not found in the mapping.
 	 * **/
-	public static class MapWrapper<IN,OUT> implements Transfer.ItemWise<IN,OUT> {
+	public static class MapWrapper<IN,OUT> implements Transfer.CellWise<IN,OUT> {
 		private static final long serialVersionUID = -4326656735271228944L;
 		private final Map<IN, OUT> mappings;
 		private final OUT other; 
@@ -1,11 +1,13 @@
 package ar.rules;
 
 import java.awt.Color;
+import java.util.Arrays;
 
 import ar.Aggregates;
 import ar.Aggregator;
 import ar.Transfer;
 import ar.glyphsets.implicitgeometry.Valuer;
+import ar.util.ColorKernels;
 import ar.util.Util;
 
 /**Aggregators and Transfers that work with scalar numbers.**/
@@ -16,13 +18,14 @@ public final class Numbers {
 	 * 
 	 * Input type does not matter, always produces integer outputs.
 	 ***/
-	public static final class Count<V> implements Aggregator<V, Integer> {
+	public static final class Count<V> implements Aggregator.IntFromDouble<V> {
 		private static final long serialVersionUID = 5984959309743633510L;
 		
-		public Integer combine(Integer left, V update) {return left+1;}
-		public Integer rollup(Integer left, Integer right) {return left+right;}
+		public int combineInt(int left, V update) {return left+1;}
+		public int combineInt(int left, double update) {return left+1;}
+		public int rollupInt(int left, int right) {return left+right;}
 		
-		public Integer identity() {return 0;}
+		public int identityInt() {return 0;}
 		public boolean equals(Object other) {return other instanceof Count;}
 		public int hashCode() {return Count.class.hashCode();}
 	}
@@ -43,10 +46,11 @@ public final class Numbers {
 			throw new IllegalArgumentException("No support for sum over " + clss.getName());
 		}
 		
-		public static final class Double implements Aggregator<java.lang.Double, java.lang.Double> {
-			@Override public java.lang.Double combine(java.lang.Double current, java.lang.Double update) {return current.doubleValue() + update.doubleValue();}
-			@Override public java.lang.Double rollup(java.lang.Double left, java.lang.Double right) {return combine(left,right);}
-			@Override public java.lang.Double identity() {return 0d;}
+		public static final class Double implements Aggregator.DoubleFromDouble<java.lang.Double> {
+			@Override public double combineDouble(double current, java.lang.Double update) {return current + update.doubleValue();}
+			@Override public double combineDouble(double current, double update) {return current + update;}
+			@Override public double rollupDouble(double left, double right) {return left + right;}
+			@Override public double identityDouble() {return 0d;}
 		}
 		
 		public static final class Float implements Aggregator<java.lang.Float, java.lang.Float> {
@@ -55,16 +59,16 @@ public final class Numbers {
 			@Override public java.lang.Float identity() {return 0f;}
 		}
 		
-		public static final class Integer implements Aggregator<java.lang.Integer , java.lang.Integer > {
-			@Override public java.lang.Integer combine(java.lang.Integer current, java.lang.Integer update) {return current.intValue() + update.intValue();}
-			@Override public java.lang.Integer rollup(java.lang.Integer left, java.lang.Integer right) {return combine(left,right);}
-			@Override public java.lang.Integer identity() {return 0;}
+		public static final class Integer implements Aggregator.IntAggregator<java.lang.Integer> {
+			@Override public int combineInt(int current, java.lang.Integer update) {return current + update.intValue();}
+			@Override public int rollupInt(int left, int right) {return left + right;}
+			@Override public int identityInt() {return 0;}
 		}
 		
-		public static final class Long implements Aggregator<java.lang.Long, java.lang.Long> {
-			@Override public java.lang.Long combine(java.lang.Long current, java.lang.Long update) {return current.longValue() + update.longValue();}
-			@Override public java.lang.Long rollup(java.lang.Long left, java.lang.Long right) {return combine(left,right);}
-			@Override public java.lang.Long identity() {return 0L;}
+		public static final class Long implements Aggregator.LongAggregator<java.lang.Long> {
+			@Override public long combineLong(long current, java.lang.Long update) {return current + update.longValue();}
+			@Override public long rollupLong(long left, long right) {return left + right;}
+			@Override public long identityLong() {return 0L;}
 		}		
 	}
 	
@@ -92,33 +96,52 @@ public final class Numbers {
 	 * 
 	 * @author jcottam
 	 */
-	public static final class FixedInterpolate<IN extends Number> implements Transfer.ItemWise<IN,Color> {
+	public static final class FixedInterpolate<IN extends Number> implements Transfer.IntToColor<IN> {
 		private static final long serialVersionUID = -2583391379423930420L;
 		final Color low, high, background;
 		final double lowv, highv;
+		final ColorKernels.Scale scale;
+		private transient ColorKernels.Table table;
 
 		public FixedInterpolate(Color low, Color high, double lowV, double highV) {
 			this(low, high, lowV, highV, Color.white);
 		}
 		
+		public FixedInterpolate(Color low, Color high, double lowV, double highV, Color background) {
+			this(low, high, lowV, highV, background, ColorKernels.Scale.LINEAR);
+		}
+		
 		/**
 		 * @param low Color to associated with lowV
 		 * @param high Color to associate with highV
 		 * @param lowV Expected lowest input value
 		 * @param highV Expected highest input value
 		 * @param background Background color (used for no-value)
+		 * @param scale Mapping applied to values (and lowV/highV) before interpolation
 		 */
-		public FixedInterpolate(Color low, Color high, double lowV, double highV, Color background) {
+		public FixedInterpolate(Color low, Color high, double lowV, double highV, Color background, ColorKernels.Scale scale) {
 			this.low = low;
 			this.high = high;
 			this.lowv = lowV;
 			this.highv = highV;
 			this.background = background;
+			this.scale = scale;
 		}
 
 		@Override
 		public Color at(int x, int y, Aggregates<? extends IN> aggregates) {
-			return Util.interpolate(low, high, lowv, highv, aggregates.get(x, y).doubleValue());
+			return new Color(ColorKernels.interpolate(low, high, lowv, highv, scale, aggregates.get(x, y).doubleValue()), true);
+		}
+		
+		@Override
+		public void argb(int[] in, int inOffset, int[] out, int outOffset, int length, int inDefault) {
+			int defaultRGB = ColorKernels.interpolate(low, high, lowv, highv, scale, inDefault);	//Defaults are interpolated like any other value
+			if (table == null) {table = ColorKernels.Table.make(low, high, lowv, highv, scale);}
+			if (table != null) {
+				table.apply(in, inOffset, out, outOffset, length, inDefault, defaultRGB);
+			} else {
+				ColorKernels.interpolate(in, inOffset, out, outOffset, length, inDefault, defaultRGB, low, high, lowv, highv, scale);
+			}
 		}
 		
 		@Override public Color emptyValue() {return background;}
@@ -128,6 +151,7 @@ public final class Numbers {
 	public static class Interpolate<A extends Number> implements Transfer<A, Color> {
 		private static final long serialVersionUID = 2878901447280244237L;
 		protected final Color low, high, empty;
+		protected final ColorKernels.Scale scale;
 		
 		/**
 		 * @param low Color to associate with lowest input value
@@ -140,25 +164,35 @@ public final class Numbers {
 		 * @param high Color to associate with highest input value
 		 * @param empty Color to return when the default aggregate value is encountered
 		 */
-		public Interpolate(Color low, Color high, Color empty) {
+		public Interpolate(Color low, Color high, Color empty) {this(low, high, empty, ColorKernels.Scale.LINEAR);}
+		
+		/**
+		 * @param low Color to associate with lowest input value
+		 * @param high Color to associate with highest input value
+		 * @param empty Color to return when the default aggregate value is encountered
+		 * @param scale Mapping applied to values (and the extrema) before interpolation
+		 */
+		public Interpolate(Color low, Color high, Color empty, ColorKernels.Scale scale) {
 			this.low = low;
 			this.high = high;
 			this.empty = empty;
+			this.scale = scale;
 		}
 		
 		@Override 
 		public Transfer.ItemWise<A,Color> specialize(Aggregates<? extends A> aggregates) {
-			return new Specialized<>(aggregates, low, high, empty);
+			return new Specialized<>(aggregates, low, high, empty, scale);
 		}
 		
 		@Override public Color emptyValue() {return empty;}
 		
-		private static class Specialized<A extends Number> extends Interpolate<A> implements Transfer.ItemWise<A, Color> {
+		private static class Specialized<A extends Number> extends Interpolate<A> implements Transfer.IntToColor<A> {
 			private static final long serialVersionUID = 1106343839501609604L;
 			protected final Util.Stats<? extends Number> extrema;
+			private transient ColorKernels.Table table;
 
-			public Specialized(Aggregates<? extends A> aggregates, Color low, Color high, Color empty) {
-				super(low, high, empty);
+			public Specialized(Aggregates<? extends A> aggregates, Color low, Color high, Color empty, ColorKernels.Scale scale) {
+				super(low, high, empty, scale);
 				this.extrema = Util.stats(aggregates, false, false, false, false);
 			}
 
@@ -166,7 +200,23 @@ public final class Numbers {
 			public Color at(int x, int y, Aggregates<? extends A> aggregates) {
 				Number v = aggregates.get(x,y);
 				if (Util.isEqual(v, aggregates.defaultValue())) {return empty;}
-				return Util.interpolate(low, high, extrema.min.doubleValue(), extrema.max.doubleValue(), v.doubleValue());
+				return new Color(ColorKernels.interpolate(low, high, extrema.min.doubleValue(), extrema.max.doubleValue(), scale, v.doubleValue()), true);
+			}
+			
+			@Override
+			public void argb(int[] in, int inOffset, int[] out, int outOffset, int length, int inDefault) {
+				int emptyRGB = empty.getRGB();
+				if (extrema.min == null) {		//Nothing but defaults
+					Arrays.fill(out, outOffset, outOffset+length, emptyRGB);
+					return;
+				}
+				if (table == null) {table = ColorKernels.Table.make(low, high, extrema.min.doubleValue(), extrema.max.doubleValue(), scale);}
+				if (table != null) {
+					table.apply(in, inOffset, out, outOffset, length, inDefault, emptyRGB);
+				} else {
+					ColorKernels.interpolate(in, inOffset, out, outOffset, length, inDefault, emptyRGB, 
+							low, high, extrema.min.doubleValue(), extrema.max.doubleValue(), scale);
+				}
 			}
 		}
 	}
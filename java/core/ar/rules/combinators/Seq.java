@@ -3,11 +3,15 @@ package ar.rules.combinators;
 import ar.Aggregates;
 import ar.Renderer;
 import ar.Transfer;
+import ar.aggregates.wrappers.TransferWrapper;
 import ar.renderers.ForkJoinRenderer;
 import ar.rules.General;
 
 /**Do one transfer, then pipe its results into another.
  * The first transfer finishes before the second one starts.
+ * 
+ * If both transfers specialize to item-wise transfers, they are fused into a single item-wise transfer
+ * (see Fused): the whole chain runs in one pass, without intermediate aggregates.
  *
  * @param <IN> The expected input type
  * @param <MID> The result type of the first transfer and input type of the second 
@@ -15,6 +19,17 @@ import ar.rules.General;
  */
 public class Seq<IN,MID,OUT> implements Transfer<IN,OUT> {
 	public static final Renderer SHARED_RENDERER = new ForkJoinRenderer(); 
+
+	/**Fuse item-wise stages?  May be set as a system parameter (-DFUSE_TRANSFERS=false).**/
+	public static final boolean FUSE;
+	static {
+		boolean fuse = true;
+		if (System.getProperties().containsKey("FUSE_TRANSFERS")) {
+			fuse = Boolean.parseBoolean(System.getProperty("FUSE_TRANSFERS"));
+		}
+		FUSE = fuse;
+	}
+	
     protected final Transfer<IN,MID> first;
     protected final Transfer<MID,OUT> second;
     protected final Renderer rend;
@@ -32,6 +47,14 @@ public class Seq<IN,MID,OUT> implements Transfer<IN,OUT> {
     public Transfer.Specialized<IN, OUT> specialize(Aggregates<? extends IN> aggregates) {
         Transfer.Specialized<IN, MID> f = first.specialize(aggregates);
 
+        if (FUSE && f instanceof Transfer.ItemWise) {
+        	//Specialize against the intermediate values computed on demand, instead of a materialized intermediate
+        	Transfer.ItemWise<IN,MID> fi = (Transfer.ItemWise<IN,MID>) f;
+        	Transfer.Specialized<MID,OUT> s = second.specialize(new TransferWrapper<>(aggregates, fi));
+        	if (s instanceof Transfer.ItemWise) {return new Fused<>(fi, (Transfer.ItemWise<MID,OUT>) s);}
+        	return new Specialized<>(f,s);
+        }
+        
         Aggregates<MID> tempAggs = rend.transfer(aggregates, f); 
         Transfer.Specialized<MID,OUT> s = second.specialize(tempAggs);
 
@@ -57,6 +80,38 @@ public class Seq<IN,MID,OUT> implements Transfer<IN,OUT> {
 		}
     }
     
+    /**Two item-wise transfers composed into one.
+     * 
+     * The second transfer sees the first one's results through a TransferWrapper,
+     * so a stage that looks at neighboring locations recomputes the first stage there.
+     * Stages that only look at their own location (the common case) compute each value exactly once.
+     */
+    public static class Fused<IN,MID,OUT> extends Specialized<IN,MID,OUT> implements Transfer.ItemWise<IN,OUT> {
+        private static final long serialVersionUID = 2175347819066341880L;
+        protected final Transfer.ItemWise<IN,MID> first;
+        protected final Transfer.ItemWise<MID,OUT> second;
+        private transient volatile TransferWrapper<IN,MID> last;
+
+        public Fused(Transfer.ItemWise<IN,MID> first, Transfer.ItemWise<MID,OUT> second) {
+            super(first, second);
+            this.first = first;
+            this.second = second;
+        }
+        
+        @Override public OUT at(int x, int y, Aggregates<? extends IN> input) {return second.at(x, y, view(input));}
+        @Override public Aggregates<OUT> process(Aggregates<? extends IN> aggs, Renderer rend) {return rend.transfer(aggs, this);}
+
+        /**Intermediate values over the input; cached since the same input is presented for every location.**/
+        private TransferWrapper<IN,MID> view(Aggregates<? extends IN> input) {
+        	TransferWrapper<IN,MID> view = last;
+        	if (view == null || view.base() != input) {
+        		view = new TransferWrapper<>(input, first);
+        		last = view;
+        	}
+        	return view;
+        }
+    }
+    
     /**Extend the sequence of transfers with a new step.**/ 
     public <OUT2> Seq<IN,?,OUT2> then(Transfer<OUT,OUT2> next) {return new Seq<>(this, next);}
     
@@ -0,0 +1,169 @@
+package ar.selectors;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+import ar.selectors.TouchesPixel.Updater;
+
+/**Scanline rasterizer for polygons (shapes whose paths have only straight segments).
+ * 
+ * Updates the integer points contained in a shape row by row.  The path is transformed
+ * once into a reusable edge buffer, edges are ordered by the first row they cross, 
+ * and each row is filled in spans between the edges that cross it.
+ * 
+ * Crossings are computed as in Path2D.contains (same ray, same half-open edge ranges, same arithmetic
+ * and winding rule), so the points updated are exactly those for which the transformed shape's 
+ * 'contains' is true.  
+ * 
+ * Instances reuse their buffers, so they are not thread safe.
+ **/
+final class PolygonRasterizer {
+	private static final int X0 = 0, Y0 = 1, X1 = 2, Y1 = 3;
+
+	private final double[] coords = new double[6];
+	private double[] edges = new double[64];	//x0, y0, x1, y1 for each edge, in path order 
+	private int[] firstRow = new int[16];		//First row each edge crosses
+	private int[] endRow = new int[16];			//Row after the last row each edge crosses 
+	private long[] order = new long[16];		//First row and index of each edge, sorted
+	private int[] active = new int[16];
+	private long[] crossings = new long[16];	//Crossing column and direction of each active edge, sorted
+	private int edgeCount;
+	private double minX, maxX;
+
+	/**Update every point of the view-transformed shape (as Shape.contains would select them) with the value.
+	 * @return False if the shape was not rasterized (it has curves or non-finite coordinates)**/ 
+	public <I> boolean fill(Shape shape, AffineTransform view, Updater<I> updater, I v) {
+		PathIterator path = shape.getPathIterator(view);
+		int mask = path.getWindingRule() == PathIterator.WIND_NON_ZERO ? -1 : 1;
+		if (!edges(path)) {return false;}
+		if (edgeCount == 0) {return true;}
+
+		int lowx = (int) Math.floor(minX);
+		int highx = (int) Math.ceil(maxX);
+		
+		for (int i=0; i<edgeCount; i++) {order[i] = ((long) firstRow[i] << 32) | i;}
+		Arrays.sort(order, 0, edgeCount);
+		
+		int next = 0, activeCount = 0;
+		int y = firstRow[(int) order[0]];
+		while (next < edgeCount || activeCount > 0) {
+			int kept = 0;
+			for (int i=0; i<activeCount; i++) {
+				if (endRow[active[i]] > y) {active[kept++] = active[i];}
+			}
+			activeCount = kept;
+			while (next < edgeCount && firstRow[(int) order[next]] <= y) {active[activeCount++] = (int) order[next++];}
+			if (activeCount == 0) {
+				if (next < edgeCount) {y = firstRow[(int) order[next]];}
+				continue;
+			}
+			
+			double py = y;
+			for (int i=0; i<activeCount; i++) {
+				int e = active[i]*4;
+				double x0 = edges[e+X0], y0 = edges[e+Y0], x1 = edges[e+X1], y1 = edges[e+Y1];
+				//Curve.pointCrossingsForLine: points left of the intercept cross (clamped to the edge, as it short-circuits there)
+				double intercept = x0 + (py - y0) * (x1 - x0) / (y1 - y0);
+				double low = x0 < x1 ? x0 : x1, high = x0 < x1 ? x1 : x0;
+				intercept = intercept < low ? low : intercept > high ? high : intercept;
+				long column = (long) Math.ceil(intercept) - lowx;		//Integer x crosses iff x < ceil(intercept)
+				column = column < 0 ? 0 : column > highx-lowx ? highx-lowx : column;
+				crossings[i] = (column << 1) | (y0 < y1 ? 1 : 0);
+			}
+			sort(crossings, activeCount);
+			
+			int winding = 0;
+			for (int i=0; i<activeCount; i++) {winding += direction(crossings[i]);}
+			int c = 0, x = lowx;
+			while (c < activeCount && lowx + (crossings[c] >> 1) <= x) {winding -= direction(crossings[c++]);}
+			while (x < highx) {
+				int end = c < activeCount ? lowx + (int) (crossings[c] >> 1) : highx;
+				if ((winding & mask) != 0) {
+					for (; x<end; x++) {updater.update(x, y, v);}
+				}
+				x = end;
+				while (c < activeCount && lowx + (crossings[c] >> 1) <= x) {winding -= direction(crossings[c++]);}
+			}
+			y++;
+		}
+		return true;
+	}
+	
+	/**Most rows of most polygons cross only a few edges, so insertion sort is usually faster than Arrays.sort.**/
+	private static void sort(long[] values, int length) {
+		if (length > 32) {Arrays.sort(values, 0, length); return;}
+		for (int i=1; i<length; i++) {
+			long v = values[i];
+			int j = i-1;
+			for (; j>=0 && values[j] > v; j--) {values[j+1] = values[j];}
+			values[j+1] = v;
+		}
+	}
+	
+	private static int direction(long crossing) {return (crossing & 1) == 1 ? 1 : -1;}
+	
+	/**Load the path's edges (including the implied closing edges of each sub-path), skipping those that cross no rows.**/
+	private boolean edges(PathIterator path) {
+		edgeCount = 0;
+		minX = Double.POSITIVE_INFINITY;
+		maxX = Double.NEGATIVE_INFINITY;
+		boolean started = false;
+		double movx = 0, movy = 0, curx = 0, cury = 0;
+		for (; !path.isDone(); path.next()) {
+			switch (path.currentSegment(coords)) {
+				case PathIterator.SEG_MOVETO:
+					if (!Double.isFinite(coords[0]) || !Double.isFinite(coords[1])) {return false;}
+					if (started && cury != movy) {edge(curx, cury, movx, movy);}
+					movx = curx = coords[0];
+					movy = cury = coords[1];
+					started = true;
+					break;
+				case PathIterator.SEG_LINETO:
+					if (!started || !Double.isFinite(coords[0]) || !Double.isFinite(coords[1])) {return false;}
+					edge(curx, cury, coords[0], coords[1]);
+					curx = coords[0];
+					cury = coords[1];
+					break;
+				case PathIterator.SEG_CLOSE:
+					if (!started) {return false;}
+					if (cury != movy) {edge(curx, cury, movx, movy);}
+					curx = movx;
+					cury = movy;
+					break;
+				default: 
+					return false;
+			}
+		}
+		if (started && cury != movy) {edge(curx, cury, movx, movy);}
+		return true;
+	}
+	
+	/**Record an edge if it crosses an integer row (y0 <= row < y1 or y1 <= row < y0).**/
+	private void edge(double x0, double y0, double x1, double y1) {
+		int first = (int) Math.ceil(Math.min(y0, y1));
+		int end = (int) Math.ceil(Math.max(y0, y1));
+		if (first >= end) {return;}
+		
+		if (edgeCount == firstRow.length) {
+			int size = edgeCount*2;
+			edges = Arrays.copyOf(edges, size*4);
+			firstRow = Arrays.copyOf(firstRow, size);
+			endRow = Arrays.copyOf(endRow, size);
+			order = Arrays.copyOf(order, size);
+			active = Arrays.copyOf(active, size);
+			crossings = Arrays.copyOf(crossings, size);
+		}
+		int e = edgeCount*4;
+		edges[e+X0] = x0;
+		edges[e+Y0] = y0;
+		edges[e+X1] = x1;
+		edges[e+Y1] = y1;
+		firstRow[edgeCount] = first;
+		endRow[edgeCount] = end;
+		edgeCount++;
+		minX = Math.min(minX, Math.min(x0, x1));
+		maxX = Math.max(maxX, Math.max(x0, x1));
+	}
+}
@@ -11,8 +11,14 @@ import ar.Aggregator;
 import ar.Glyph;
 import ar.Glyphset;
 import ar.Selector;
+import ar.aggregates.implementations.CategoricalCountsAggregates;
+import ar.glyphsets.ColumnarGlyphset;
+import ar.renderers.Cancellation;
+import ar.rules.Categories;
 
 /**Collection of selectors that modify bins that a shape touches.
+ * 
+ * Selectors check the calling thread's cancellation token (see Cancellation.current) every 1024 glyphs.
  * **/
 public abstract class TouchesPixel {
 	
@@ -23,6 +29,74 @@ public abstract class TouchesPixel {
 		target.set(x, y, update);
 	}
 	
+	/**Destructive update of a single aggregates cell with a single value.
+	 * Selected once per subset so primitive aggregator/aggregates pairs can be
+	 * updated without boxing.
+	 **/
+	protected static interface Updater<I> {public void update(int x, int y, I v);}
+	
+	/**Get an updater for the target/op pair.
+	 * 
+	 * If the op is a primitive-specialized aggregator (e.g., Aggregator.IntAggregator) and 
+	 * the target supports the matching primitive access (e.g., Aggregates.IntAccess)
+	 * then the returned updater does not box values.
+	 * Categories.CountCategories into CategoricalCountsAggregates increments in place.
+	 * Concurrent targets (Aggregates.Concurrent) are always updated atomically.
+	 * Otherwise, it defers to TouchesPixel.update. 
+	 */
+	@SuppressWarnings("unchecked")
+	protected static final <A,I> Updater<I> updater(Aggregates<A> target, Aggregator<I,A> op) {
+		if (target instanceof Aggregates.Concurrent) {
+			final Aggregates.Concurrent<A> t = (Aggregates.Concurrent<A>) target;
+			return (x,y,v) -> t.update(x, y, v, op);
+		} else if (op instanceof Aggregator.IntAggregator && target instanceof Aggregates.IntAccess) {
+			final Aggregator.IntAggregator<I> iop = (Aggregator.IntAggregator<I>) op;
+			final Aggregates.IntAccess t = (Aggregates.IntAccess) target;
+			return (x,y,v) -> t.setInt(x, y, iop.combineInt(t.getInt(x, y), v));
+		} else if (op instanceof Aggregator.LongAggregator && target instanceof Aggregates.LongAccess) {
+			final Aggregator.LongAggregator<I> lop = (Aggregator.LongAggregator<I>) op;
+			final Aggregates.LongAccess t = (Aggregates.LongAccess) target;
+			return (x,y,v) -> t.setLong(x, y, lop.combineLong(t.getLong(x, y), v));
+		} else if (op instanceof Aggregator.DoubleAggregator && target instanceof Aggregates.DoubleAccess) {
+			final Aggregator.DoubleAggregator<I> dop = (Aggregator.DoubleAggregator<I>) op;
+			final Aggregates.DoubleAccess t = (Aggregates.DoubleAccess) target;
+			return (x,y,v) -> t.setDouble(x, y, dop.combineDouble(t.getDouble(x, y), v));
+		} else if (op instanceof Categories.CountCategories && target instanceof CategoricalCountsAggregates) {
+			final CategoricalCountsAggregates<I> t = (CategoricalCountsAggregates<I>) target;
+			return (x,y,v) -> t.increment(x, y, v, 1);
+		} else {
+			return (x,y,v) -> update(target, v, x, y, op);
+		}
+	}
+	
+	/**Destructive update of a single aggregates cell with the value in one row of a value column.**/
+	protected static interface ColumnUpdater {public void update(int x, int y, int row);}
+	
+	/**Get an updater that reads from the value column.
+	 * 
+	 * Aggregator.IntFromDouble and Aggregator.DoubleFromDouble ops (paired with matching primitive access)
+	 * are updated without boxing.  Otherwise, values are boxed and passed to an Updater.
+	 */
+	@SuppressWarnings("unchecked")
+	protected static final <A,I> ColumnUpdater columnUpdater(double[] values, Aggregates<A> target, Aggregator<I,A> op) {
+		if (!(target instanceof Aggregates.Concurrent)) {
+			if (op instanceof Aggregator.IntFromDouble && target instanceof Aggregates.IntAccess) {
+				final Aggregator.IntFromDouble<I> iop = (Aggregator.IntFromDouble<I>) op;
+				final Aggregates.IntAccess t = (Aggregates.IntAccess) target;
+				return (x,y,row) -> t.setInt(x, y, iop.combineInt(t.getInt(x, y), values[row]));
+			} else if (op instanceof Aggregator.DoubleFromDouble && target instanceof Aggregates.DoubleAccess) {
+				final Aggregator.DoubleFromDouble<I> dop = (Aggregator.DoubleFromDouble<I>) op;
+				final Aggregates.DoubleAccess t = (Aggregates.DoubleAccess) target;
+				return (x,y,row) -> t.setDouble(x, y, dop.combineDouble(t.getDouble(x, y), values[row]));
+			}
+		}
+		final Updater<I> updater = updater(target, op);
+		return (x,y,row) -> updater.update(x, y, (I) (Double) values[row]);
+	}
+	
+	/**Is the view only scale and translate?  If so, columns can be transformed with simple arithmetic.**/
+	private static boolean scaleTranslate(AffineTransform view) {return view.getShearX() == 0 && view.getShearY() == 0;}
+	
 	
 	
 	public static final class Points implements Selector<Point2D> {
@@ -33,15 +107,33 @@ public abstract class TouchesPixel {
 				Aggregates<A> target, 
 				Aggregator<I, A> op) {
 			
+			if (subset instanceof ColumnarGlyphset.Points && scaleTranslate(view)) {
+				ColumnarGlyphset.Points cols = (ColumnarGlyphset.Points) subset;
+				ColumnUpdater updater = columnUpdater(cols.values(), target, op);
+				double[] xs = cols.xs(), ys = cols.ys();
+				double sx = view.getScaleX(), sy = view.getScaleY();
+				double tx = view.getTranslateX(), ty = view.getTranslateY();
+				Cancellation cancel = Cancellation.current();
+				for (int i=cols.low(); i<cols.high(); i++) {
+					cancel.check(i);
+					updater.update((int) (xs[i]*sx + tx), (int) (ys[i]*sy + ty), i);
+				}
+				return target;
+			}
+			
+			Updater<I> updater = updater(target, op);
 			Point2D scratch = new Point2D.Double();
+			Cancellation cancel = Cancellation.current();
+			long count = 0;
 			for (Glyph<? extends Point2D, ? extends I> g: subset) {
+				cancel.check(count++);
 				Point2D p = g.shape();	//A point has no bounding box...so life is easy
 				view.transform(p, scratch);
 				int x = (int) scratch.getX();
 				int y = (int) scratch.getY();
 				I v = g.info();
 				
-				TouchesPixel.update(target, v, x, y, op);
+				updater.update(x, y, v);
 			}
 
 			return target;		
@@ -64,14 +156,18 @@ public abstract class TouchesPixel {
 				Aggregates<A> 
 				target, Aggregator<I, A> op) {
 
+			Updater<I> updater = updater(target, op);
 			Point2D p1 = new Point2D.Double();
 			Point2D p2 = new Point2D.Double();
+			Cancellation cancel = Cancellation.current();
+			long count = 0;
 			for (Glyph<? extends Line2D, ? extends I> g: subset) {
+				cancel.check(count++);
 				Line2D l = g.shape();	
 				view.transform(l.getP1(), p1);
 				view.transform(l.getP2(), p2);
 
-				bressenham(target, op, p1,p2, g.info());
+				bressenham(updater, p1,p2, g.info());
 			}
 			
 			return target;
@@ -85,7 +181,7 @@ public abstract class TouchesPixel {
 		}
 		
 		//based on 'optimized' version at http://en.wikipedia.org/wiki/Bresenham's_line_algorithm
-		private static <I,A> void bressenham(Aggregates<A> canvas, Aggregator<I,A> aggregator, Point2D start, Point2D end, I val) {
+		private static <I> void bressenham(Updater<I> updater, Point2D start, Point2D end, I val) {
 			int x0 = (int) start.getX(); 
 			int y0 = (int) start.getY();
 			int x1 = (int) end.getX();
@@ -119,9 +215,9 @@ public abstract class TouchesPixel {
 			  int y = y0;
 			  for (int x=x0; x <= x1; x++) {
 			    if (steep) {
-			      TouchesPixel.update(canvas, val, x,y, aggregator);
+			      updater.update(x,y, val);
 			    } else {
-			      TouchesPixel.update(canvas, val, x,y, aggregator);
+			      updater.update(x,y, val);
 			    }
 
 			    error = error - deltay;
@@ -142,10 +238,36 @@ public abstract class TouchesPixel {
 				Aggregates<A> target, 
 				Aggregator<I, A> op) {
 
+			if (subset instanceof ColumnarGlyphset.Rectangles && scaleTranslate(view)) {
+				ColumnarGlyphset.Rectangles cols = (ColumnarGlyphset.Rectangles) subset;
+				ColumnUpdater updater = columnUpdater(cols.values(), target, op);
+				double[] xs = cols.xs(), ys = cols.ys(), ws = cols.widths(), hs = cols.heights();
+				double sx = view.getScaleX(), sy = view.getScaleY();
+				double tx = view.getTranslateX(), ty = view.getTranslateY();
+				Cancellation cancel = Cancellation.current();
+				for (int i=cols.low(); i<cols.high(); i++) {
+					cancel.check(i);
+					int lowx = (int) Math.floor(xs[i]*sx + tx);
+					int lowy = (int) Math.floor(ys[i]*sy + ty);
+					int highx = (int) Math.ceil((xs[i]+ws[i])*sx + tx);
+					int highy = (int) Math.ceil((ys[i]+hs[i])*sy + ty);
+					for (int x=lowx; x<highx; x++){
+						for (int y=lowy; y<highy; y++) {
+							updater.update(x,y, i);
+						}
+					}
+				}
+				return target;
+			}
+
+			Updater<I> updater = updater(target, op);
 			Point2D lowP = new Point2D.Double();
 			Point2D highP = new Point2D.Double();
+			Cancellation cancel = Cancellation.current();
+			long count = 0;
 
 			for (Glyph<? extends Rectangle2D, ? extends I> g: subset) {
+				cancel.check(count++);
 				Rectangle2D b = g.shape();	//A rectangle is its own bounding box!
 				lowP.setLocation(b.getMinX(), b.getMinY());
 				highP.setLocation(b.getMaxX(), b.getMaxY());
@@ -162,7 +284,7 @@ public abstract class TouchesPixel {
 
 				for (int x=lowx; x<highx; x++){
 					for (int y=lowy; y<highy; y++) {
-						update(target, v, x,y, op);
+						updater.update(x,y, v);
 					}
 				}
 			}
@@ -177,7 +299,9 @@ public abstract class TouchesPixel {
 	}
 
 	public static final class Shapes implements Selector<Shape> {
-		/**Iterates the bounds, with a hit-test to only set values inside of the shape.
+		/**Polygons are filled a row at a time (see PolygonRasterizer).
+		 * Other shapes iterate the bounds, with a hit-test to only set values inside of the shape.
+		 * Either way, the bins set are those whose corner the transformed shape contains.
 		 **/
 		public <I,A> Aggregates<A> processSubset(
 				Iterable<? extends Glyph<? extends Shape, ? extends I>> subset,
@@ -185,11 +309,18 @@ public abstract class TouchesPixel {
 				Aggregates<A> target, 
 				Aggregator<I, A> op) {
 
+			Updater<I> updater = updater(target, op);
 			Point2D lowP = new Point2D.Double();
 			Point2D highP = new Point2D.Double();
 			Point2D testP = new Point2D.Double();
+			PolygonRasterizer polygons = new PolygonRasterizer();
+			Cancellation cancel = Cancellation.current();
+			long count = 0;
 
 			for (Glyph<? extends Shape, ? extends I> g: subset) {
+				cancel.check(count++);
+				if (polygons.fill(g.shape(), view, updater, g.info())) {continue;}
+				
 				Shape transformedShape = view.createTransformedShape(g.shape()); 	//Full new transformed shape to support hit-testing
 				Rectangle2D b = transformedShape.getBounds();
 				lowP.setLocation(b.getMinX(), b.getMinY());
@@ -205,7 +336,7 @@ public abstract class TouchesPixel {
 					for (int y=lowy; y<highy; y++) { 
 						testP.setLocation(x, y);
 						if (transformedShape.contains(testP)) {
-							update(target, v, x,y, op);
+							updater.update(x,y, v);
 						}
 					}
 				}
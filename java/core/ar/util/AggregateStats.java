@@ -0,0 +1,294 @@
+package ar.util;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+import ar.Aggregates;
+import ar.rules.CategoricalCounts;
+
+/**Parallel reductions over aggregates: the statistics that Transfer.specialize implementations need 
+ * (extrema, mean, stdev, percentiles, category totals), computed without a serial scan.
+ * 
+ * Aggregates are split into row-bands (as in AggregateUtils' merges) and scanned as fork/join tasks.
+ * When called from inside a fork/join pool (e.g., a renderer's pool) that pool is used; otherwise the common pool is used.
+ * Small aggregates are scanned directly in the calling thread.
+ * 
+ * Partial results are combined in row order, so reductions are deterministic.
+ * **/
+public final class AggregateStats {
+	/**How many cells may a region have before it is split for parallel processing?
+	 * May be set as a system parameter (-DSTATS_TASK_SIZE=x).
+	 */
+	public static final long TASK_SIZE;
+	static {
+		long size = 100000;
+		if (System.getProperties().containsKey("STATS_TASK_SIZE")) {
+			size = Long.parseLong(System.getProperty("STATS_TASK_SIZE"));
+		}
+		TASK_SIZE = Math.max(1, size);
+	}
+	
+	private AggregateStats() {}
+	
+	/**Summarize one region of a set of aggregates.**/
+	public static interface Scan<A,R> {public R scan(Aggregates<? extends A> aggs, int lowX, int lowY, int highX, int highY);}
+	
+	/**Scan all regions of the aggregates and combine the results.
+	 * @param combine Combines the results of two regions; the left argument always comes from lower rows (or columns).
+	 */
+	public static <A,R> R reduce(Aggregates<? extends A> aggs, Scan<A,R> scan, BinaryOperator<R> combine) {
+		long cells = ((long) aggs.highX()-aggs.lowX())*(aggs.highY()-aggs.lowY());
+		if (cells <= TASK_SIZE) {return scan.scan(aggs, aggs.lowX(), aggs.lowY(), aggs.highX(), aggs.highY());}
+		
+		ReduceTask<A,R> task = new ReduceTask<>(aggs, scan, combine, aggs.lowX(), aggs.lowY(), aggs.highX(), aggs.highY());
+		if (ForkJoinTask.inForkJoinPool()) {return task.invoke();}
+		return ForkJoinPool.commonPool().invoke(task);
+	}
+	
+	private static final class ReduceTask<A,R> extends RecursiveTask<R> {
+		private static final long serialVersionUID = 6045214380232874447L;
+		private final Aggregates<? extends A> aggs;
+		private final Scan<A,R> scan;
+		private final BinaryOperator<R> combine;
+		private final int lowX, lowY, highX, highY;
+		
+		public ReduceTask(Aggregates<? extends A> aggs, Scan<A,R> scan, BinaryOperator<R> combine, int lowX, int lowY, int highX, int highY) {
+			this.aggs = aggs;
+			this.scan = scan;
+			this.combine = combine;
+			this.lowX = lowX;
+			this.lowY = lowY;
+			this.highX = highX;
+			this.highY = highY;
+		}
+
+		@Override
+		protected R compute() {
+			long cells = ((long) highX-lowX)*(highY-lowY);
+			if (cells <= TASK_SIZE) {return scan.scan(aggs, lowX, lowY, highX, highY);}
+
+			ReduceTask<A,R> top, bottom;
+			if (highY-lowY > 1) {
+				int midY = lowY + (highY-lowY)/2;
+				top = new ReduceTask<>(aggs, scan, combine, lowX, lowY, highX, midY);
+				bottom = new ReduceTask<>(aggs, scan, combine, lowX, midY, highX, highY);
+			} else {
+				int midX = lowX + (highX-lowX)/2;
+				top = new ReduceTask<>(aggs, scan, combine, lowX, lowY, midX, highY);
+				bottom = new ReduceTask<>(aggs, scan, combine, midX, lowY, highX, highY);
+			}
+			bottom.fork();
+			R first = top.compute();
+			return combine.apply(first, bottom.join());
+		}
+	}
+	
+	
+	/**Numeric statistics; see Util.stats for the treatment of defaults, nulls, NaNs and infinities.**/
+	public static <N extends Number> Util.Stats<N> numeric(
+			Aggregates<? extends N> aggs, 
+			boolean ignoreDefault, 
+			boolean ignoreNulls, 
+			boolean ignoreNaNs, 
+			boolean ignoreInfinity) {
+
+		//Squares are taken relative to a representative value to reduce cancellation error in the variance
+		N first = aggs.lowX() < aggs.highX() && aggs.lowY() < aggs.highY() ? aggs.get(aggs.lowX(), aggs.lowY()) : null;
+		double shift = first == null || Double.isNaN(first.doubleValue()) || Double.isInfinite(first.doubleValue()) ? 0 : first.doubleValue();
+		
+		Moments<N> m = reduce(aggs, (a, lowX, lowY, highX, highY) -> Moments.scan(a, shift, lowX, lowY, highX, highY), Moments::combine);
+		
+		final long extra = (ignoreDefault ? 0 : m.defCount) 
+				+ (ignoreNulls ? 0 : m.nullCount) 
+				+ (ignoreNaNs ? 0 : m.nanCount) 
+				+ (ignoreInfinity ? 0 : m.infCount);
+		final long fullCount = m.count + extra;
+		
+		//Values that are counted but not summed contribute zero (as they do to the mean)
+		final double mean = m.sum/fullCount;
+		double shiftedSum = m.shiftedSum - extra*shift;
+		double shiftedSquares = m.shiftedSquares + extra*shift*shift;
+		double variance = Math.max(0, (shiftedSquares - (shiftedSum*shiftedSum)/fullCount)/fullCount);
+		
+		return new Util.Stats<>(m.min, m.max, mean, Math.sqrt(variance), m.defCount, m.nullCount, m.nanCount);
+	}
+	
+	/**Partial numeric statistics of a region.**/
+	private static final class Moments<N extends Number> {
+		N min, max;
+		long count, nullCount, nanCount, infCount, defCount;
+		double sum, shiftedSum, shiftedSquares;
+		
+		@SuppressWarnings("unchecked")
+		static <N extends Number> Moments<N> scan(Aggregates<? extends N> aggs, double shift, int lowX, int lowY, int highX, int highY) {
+			Moments<N> m = new Moments<>();
+			N def = aggs.defaultValue();
+			
+			if (aggs instanceof Aggregates.IntAccess && def != null) {
+				Aggregates.IntAccess ints = (Aggregates.IntAccess) aggs;
+				int intDef = def.intValue();
+				int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+				for (int y=lowY; y<highY; y++) {
+					for (int x=lowX; x<highX; x++) {
+						int v = ints.getInt(x, y);
+						if (v == intDef) {m.defCount++; continue;}
+						if (v < min) {min = v;}
+						if (v > max) {max = v;}
+						m.add(v, shift);
+					}
+				}
+				if (m.count > 0) {
+					m.min = (N) Integer.valueOf(min);
+					m.max = (N) Integer.valueOf(max);
+				}
+				return m;
+			}
+			
+			for (int y=lowY; y<highY; y++) {
+				for (int x=lowX; x<highX; x++) {
+					N n = aggs.get(x, y);
+					if (n == null) {m.nullCount++; continue;}
+					
+					double v = n.doubleValue();
+					if (Double.isNaN(v)) {m.nanCount++; continue;}
+					if (Double.isInfinite(v)) {m.infCount++; continue;}
+					if (def.equals(n)) {m.defCount++; continue;}
+					
+					if (m.min == null || m.min.doubleValue() > v) {m.min = n;}
+					if (m.max == null || m.max.doubleValue() < v) {m.max = n;}
+					m.add(v, shift);
+				}
+			}
+			return m;
+		}
+		
+		private void add(double v, double shift) {
+			sum += v;
+			shiftedSum += v-shift;
+			shiftedSquares += (v-shift)*(v-shift);
+			count++;
+		}
+		
+		static <N extends Number> Moments<N> combine(Moments<N> left, Moments<N> right) {
+			Moments<N> m = new Moments<>();
+			m.min = right.min != null && (left.min == null || right.min.doubleValue() < left.min.doubleValue()) ? right.min : left.min;
+			m.max = right.max != null && (left.max == null || right.max.doubleValue() > left.max.doubleValue()) ? right.max : left.max;
+			m.count = left.count + right.count;
+			m.nullCount = left.nullCount + right.nullCount;
+			m.nanCount = left.nanCount + right.nanCount;
+			m.infCount = left.infCount + right.infCount;
+			m.defCount = left.defCount + right.defCount;
+			m.sum = left.sum + right.sum;
+			m.shiftedSum = left.shiftedSum + right.shiftedSum;
+			m.shiftedSquares = left.shiftedSquares + right.shiftedSquares;
+			return m;
+		}
+	}
+	
+	/**Percentiles (nearest-rank) of the finite values in a set of aggregates.
+	 * 
+	 * @param ignoreDefault Skip the default value?
+	 * @param ps Percentiles to find, each in the range [0,1]
+	 * @return Value for each requested percentile (NaN if there are no values)
+	 */
+	public static double[] percentiles(Aggregates<? extends Number> aggs, boolean ignoreDefault, double... ps) {
+		Number def = aggs.defaultValue();
+		double[] values = reduce(aggs, (a, lowX, lowY, highX, highY) -> {
+			double[] vals = new double[(highX-lowX)*(highY-lowY)];
+			int i=0;
+			for (int y=lowY; y<highY; y++) {
+				for (int x=lowX; x<highX; x++) {
+					Number n = a.get(x, y);
+					if (n == null || (ignoreDefault && n.equals(def))) {continue;}
+					double v = n.doubleValue();
+					if (!Double.isNaN(v) && !Double.isInfinite(v)) {vals[i++] = v;}
+				}
+			}
+			return Arrays.copyOf(vals, i);
+		}, (l,r) -> {
+			double[] both = Arrays.copyOf(l, l.length + r.length);
+			System.arraycopy(r, 0, both, l.length, r.length);
+			return both;
+		});
+		Arrays.parallelSort(values);
+		
+		double[] rslt = new double[ps.length];
+		for (int i=0; i<ps.length; i++) {
+			if (values.length == 0) {rslt[i] = Double.NaN; continue;}
+			int rank = (int) Math.ceil(ps[i]*values.length)-1;
+			rslt[i] = values[Math.max(0, Math.min(values.length-1, rank))];
+		}
+		return rslt;
+	}
+	
+	/**Total count of each category across a set of aggregates.**/
+	public static <T> Map<T, Long> categoryTotals(Aggregates<? extends CategoricalCounts<T>> aggs) {
+		return reduce(aggs, (a, lowX, lowY, highX, highY) -> {
+			Map<T, Long> totals = new HashMap<>();
+			for (int y=lowY; y<highY; y++) {
+				for (int x=lowX; x<highX; x++) {
+					CategoricalCounts<T> cats = a.get(x, y);
+					for (int i=0; i<cats.size(); i++) {totals.merge(cats.key(i), (long) cats.count(i), Long::sum);}
+				}
+			}
+			return totals;
+		}, (l,r) -> {
+			r.forEach((k,v) -> l.merge(k, v, Long::sum));
+			return l;
+		});
+	}
+	
+	/**Largest value of an int-valued function of the cells (Integer.MIN_VALUE for empty aggregates).**/
+	public static <A> int maxInt(Aggregates<? extends A> aggs, CellInt<A> f) {
+		return reduce(aggs, (a, lowX, lowY, highX, highY) -> {
+			int max = Integer.MIN_VALUE;
+			for (int y=lowY; y<highY; y++) {
+				for (int x=lowX; x<highX; x++) {max = Math.max(max, f.at(a, x, y));}
+			}
+			return max;
+		}, Math::max);
+	}
+	
+	/**An int derived from the cell at x/y.**/
+	public static interface CellInt<A> {public int at(Aggregates<? extends A> aggs, int x, int y);}
+	
+	/**Location of the largest value; on ties, the location with the lowest x (then lowest y).**/
+	public static <A> Point max(Aggregates<? extends A> aggs, Comparator<A> comp) {return extreme(aggs, comp, 1);}
+	
+	/**Location of the smallest value; on ties, the location with the lowest x (then lowest y).**/
+	public static <A> Point min(Aggregates<? extends A> aggs, Comparator<A> comp) {return extreme(aggs, comp, -1);}
+	
+	private static <A> Point extreme(Aggregates<? extends A> aggs, Comparator<A> comp, int sign) {
+		Point p = reduce(aggs, (a, lowX, lowY, highX, highY) -> {
+			Point best = null;
+			A bestVal = null;
+			for (int y=lowY; y<highY; y++) {
+				for (int x=lowX; x<highX; x++) {
+					A val = a.get(x, y);
+					if (best == null || better(val, bestVal, x, y, best, comp, sign)) {
+						best = new Point(x,y);
+						bestVal = val;
+					}
+				}
+			}
+			return best;
+		}, (l, r) -> {
+			if (l == null) {return r;}
+			if (r == null) {return l;}
+			return better(aggs.get(r.x, r.y), aggs.get(l.x, l.y), r.x, r.y, l, comp, sign) ? r : l;
+		});
+		return p == null ? new Point(aggs.lowX(), aggs.lowY()) : p;
+	}
+	
+	private static <A> boolean better(A val, A bestVal, int x, int y, Point best, Comparator<A> comp, int sign) {
+		int c = Integer.signum(comp.compare(val, bestVal))*sign;
+		return c > 0 || (c == 0 && (x < best.x || (x == best.x && y < best.y)));
+	}
+}
@@ -3,8 +3,10 @@ package ar.util;
 import java.io.File; 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.List;
 
 import ar.Aggregates;
+import ar.aggregates.implementations.TiledAggregates;
 import static java.lang.String.format;
 
 /**Utilities for creating a CSV encoding of a set of aggregates.**/
@@ -27,6 +29,23 @@ public class AggregatesToCSV {
 		} catch (IOException e) {throw new RuntimeException("Error writing JSON.", e);}
 	}
 	
+	/**Export each allocated tile to its own file (tiles are written in parallel, untouched tiles are skipped).
+	 * 
+	 * @param aggs Tiled aggregate set to export
+	 * @param pattern File name pattern with two integer format variables (tile column and row)
+	 * @return Number of files written
+	 */
+	@SuppressWarnings("unchecked")
+	public static int exportTiles(TiledAggregates<?> aggs, String pattern) {
+		List<Aggregates<?>> tiles = (List<Aggregates<?>>) (List<?>) aggs.tiles();
+		tiles.parallelStream().forEach(tile -> {
+			int tx = (tile.lowX()-aggs.lowX())/aggs.tileSize();
+			int ty = (tile.lowY()-aggs.lowY())/aggs.tileSize();
+			export(tile, new File(format(pattern, tx, ty)));
+		});
+		return tiles.size();
+	}
+	
 	/**
 	 * @param aggs Aggregate set to encode
 	 * @return Aggregates encoded as a CSV string 
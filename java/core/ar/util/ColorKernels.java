@@ -0,0 +1,138 @@
+package ar.util;
+
+import java.awt.Color;
+
+/**Color interpolation on packed ARGB ints (as Color.getRGB()), without allocating a Color per value.
+ * 
+ * The row kernels are straight-line loops (clamps as selects, defaults masked with bit operations)
+ * so the JIT is free to unroll and vectorize them.  When the input is ints over a modest range, 
+ * a Table of the packed colors replaces the arithmetic entirely (including the log/cube-root).
+ * With the linear scale the results are identical to Util.interpolate.
+ * **/
+public final class ColorKernels {
+	/**Largest int range that will be interpolated via a Table.  May be set as a system parameter (-DCOLOR_TABLE_SIZE=x).**/
+	public static final int TABLE_SIZE;
+	static {
+		int size = 1 << 16;
+		if (System.getProperties().containsKey("COLOR_TABLE_SIZE")) {
+			size = Integer.parseInt(System.getProperty("COLOR_TABLE_SIZE"));
+		}
+		TABLE_SIZE = size;
+	}
+	
+	private ColorKernels() {}
+	
+	/**How input values are mapped before interpolation.
+	 * Values are clamped to the [min, max] range before the scale is applied.
+	 **/
+	public static enum Scale {
+		LINEAR {public double apply(double v) {return v;}},
+		/**log(1+v), so zero counts stay at the low end.**/
+		LOG {public double apply(double v) {return Math.log1p(v);}},
+		CUBE_ROOT {public double apply(double v) {return Math.cbrt(v);}};
+		
+		public abstract double apply(double v);
+	}
+
+	/**Interpolate a single value; matches the row kernel.**/
+	public static int interpolate(Color low, Color high, double min, double max, Scale scale, double v) {
+		if (degenerate(min, max, scale) || Double.isNaN(v)) {return high.getRGB();}
+		double smax = scale.apply(max), span = smax-scale.apply(min);
+		v = scale.apply(Math.min(Math.max(v, min), max));
+		double d = 1-((smax-v)/span);
+		return pack(
+				(int) ((high.getAlpha()-low.getAlpha())*d + low.getAlpha()), 
+				(int) ((high.getRed()-low.getRed())*d + low.getRed()), 
+				(int) ((high.getGreen()-low.getGreen())*d + low.getGreen()), 
+				(int) ((high.getBlue()-low.getBlue())*d + low.getBlue()));
+	}
+
+	/**Interpolate in[inOffset ... inOffset+length) into packed colors at out[outOffset ... outOffset+length).
+	 * Cells equal to inDefault get emptyRGB.
+	 **/
+	public static void interpolate(
+			int[] in, int inOffset, int[] out, int outOffset, int length, 
+			int inDefault, int emptyRGB, 
+			Color low, Color high, double min, double max, Scale scale) {
+
+		if (degenerate(min, max, scale)) {
+			int highRGB = high.getRGB();
+			for (int i=0; i<length; i++) {out[outOffset+i] = mask(in[inOffset+i], inDefault, highRGB, emptyRGB);}
+			return;
+		}
+		
+		double smin = scale.apply(min), smax = scale.apply(max), span = smax-smin;
+		int la = low.getAlpha(), lr = low.getRed(), lg = low.getGreen(), lb = low.getBlue();
+		double da = high.getAlpha()-la, dr = high.getRed()-lr, dg = high.getGreen()-lg, db = high.getBlue()-lb;
+
+		if (scale == Scale.LINEAR) {
+			for (int i=0; i<length; i++) {
+				int raw = in[inOffset+i];
+				double v = raw < min ? min : raw;
+				v = v > max ? max : v;
+				double d = 1-((smax-v)/span);
+				int rgb = pack((int) (da*d + la), (int) (dr*d + lr), (int) (dg*d + lg), (int) (db*d + lb));
+				out[outOffset+i] = mask(raw, inDefault, rgb, emptyRGB);
+			}
+		} else {
+			for (int i=0; i<length; i++) {
+				int raw = in[inOffset+i];
+				double v = raw < min ? min : raw;
+				v = scale.apply(v > max ? max : v);
+				double d = 1-((smax-v)/span);
+				int rgb = pack((int) (da*d + la), (int) (dr*d + lr), (int) (dg*d + lg), (int) (db*d + lb));
+				out[outOffset+i] = mask(raw, inDefault, rgb, emptyRGB);
+			}
+		}
+	}
+	
+	/**Packed colors for every int in a range, for interpolating int inputs by lookup.
+	 * Inputs outside the range are clamped (so get the low/high color).
+	 **/
+	public static final class Table {
+		private final int[] colors;
+		private final int first, last;
+		
+		/**@return A table for interpolating ints over [min, max], or null if that range would need more than TABLE_SIZE entries.**/
+		public static Table make(Color low, Color high, double min, double max, Scale scale) {
+			if (Double.isNaN(min) || Double.isNaN(max) || max-min >= TABLE_SIZE) {return null;}
+			int first = (int) Math.floor(min), last = (int) Math.ceil(max);
+			int[] colors = new int[last-first+1];
+			for (int i=0; i<colors.length; i++) {colors[i] = interpolate(low, high, min, max, scale, first+i);}
+			return new Table(colors, first, last);
+		}
+		
+		private Table(int[] colors, int first, int last) {
+			this.colors = colors;
+			this.first = first;
+			this.last = last;
+		}
+		
+		/**Interpolate in[inOffset ... inOffset+length) into out[outOffset ... outOffset+length).
+		 * Cells equal to inDefault get emptyRGB.
+		 **/
+		public void apply(int[] in, int inOffset, int[] out, int outOffset, int length, int inDefault, int emptyRGB) {
+			for (int i=0; i<length; i++) {
+				int raw = in[inOffset+i];
+				int v = raw < first ? first : raw;
+				v = v > last ? last : v;
+				out[outOffset+i] = mask(raw, inDefault, colors[v-first], emptyRGB);
+			}
+		}
+	}
+	
+	/**Util.interpolate returns the high color when the distance is not finite (e.g., min == max).**/
+	private static boolean degenerate(double min, double max, Scale scale) {
+		double span = scale.apply(max)-scale.apply(min);
+		return span == 0 || Double.isNaN(span) || Double.isInfinite(span);
+	}
+	
+	public static int pack(int a, int r, int g, int b) {return (a << 24) | (r << 16) | (g << 8) | b;}
+	
+	/**'value' unless raw == def, in which case 'empty' (without a branch).**/
+	private static int mask(int raw, int def, int value, int empty) {
+		int diff = raw ^ def;
+		int keep = (diff | -diff) >> 31;		//All ones if raw != def
+		return (value & keep) | (empty & ~keep);
+	}
+}
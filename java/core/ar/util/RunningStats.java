@@ -0,0 +1,188 @@
+package ar.util;
+
+import java.io.Serializable;
+
+import ar.Aggregates;
+import ar.aggregates.wrappers.TouchedBoundsWrapper;
+
+/**Statistics of the non-default values in a set of numeric aggregates, maintained as cells change
+ * (see TouchedBoundsWrapper.wrap and AggregateUtils.__unsafeMerge), so they are known when aggregation finishes.
+ * 
+ * Count, sum and sum of squares are exact under any sequence of changes.
+ * Min and max are tracked with the number of cells that hold them; they stay exact unless every
+ * cell holding an extreme is changed to a less extreme value.  The statistics are then unknown and 'valid' is false 
+ * (as it is once a null, NaN or infinite value is recorded).  
+ * 
+ * Recording single changes is not thread safe.  Concurrent changes are recorded in Deltas and applied together.
+ **/
+public final class RunningStats implements Serializable {
+	private static final long serialVersionUID = -3062719458223611024L;
+	private final Number defVal;
+	private final double def;
+	private long count, minCount, maxCount;
+	private double sum, squares;
+	private double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+	private boolean valid = true;
+	
+	/**@param defVal Default value of the aggregates (not counted); must be an Integer, Long or Double.**/
+	public RunningStats(Number defVal) {
+		if (!(defVal instanceof Integer || defVal instanceof Long || defVal instanceof Double)) {
+			throw new IllegalArgumentException("Running statistics require an int, long or double default value; recieved " + defVal);
+		}
+		this.defVal = defVal;
+		this.def = defVal.doubleValue();
+	}
+	
+	/**Are the statistics known?**/
+	public synchronized boolean valid() {return valid;}
+	
+	/**Number of non-default cells.**/
+	public synchronized long count() {return count;}
+	
+	/**Record a change in one cell.**/
+	public void record(double old, double now) {
+		if (old == now) {return;}
+		if (old != def) {
+			count--;
+			sum -= old;
+			squares -= old*old;
+			if (old == min) {minCount--;}
+			if (old == max) {maxCount--;}
+		}
+		if (now != def) {
+			if (Double.isNaN(now) || Double.isInfinite(now)) {valid = false;}
+			count++;
+			sum += now;
+			squares += now*now;
+			if (now < min) {min = now; minCount = 1;}
+			else if (now == min) {minCount++;}
+			if (now > max) {max = now; maxCount = 1;}
+			else if (now == max) {maxCount++;}
+		}
+		settle();
+	}
+	
+	/**Record a change in one cell.**/
+	public void record(Number old, Number now) {
+		if (old == null || now == null) {valid = false; return;}
+		record(old.doubleValue(), now.doubleValue());
+	}
+
+	private void settle() {
+		if (count == 0) {
+			min = Double.POSITIVE_INFINITY;
+			max = Double.NEGATIVE_INFINITY;
+			minCount = 0;
+			maxCount = 0;
+		} else if (minCount <= 0 || maxCount <= 0) {
+			valid = false;
+		}
+	}
+	
+	/**Start recording concurrent changes.  
+	 * Deltas are relative to the current min/max, so no other changes may be applied until the delta is.**/
+	public synchronized Delta delta() {return new Delta(def, min, max);}
+	
+	/**Apply changes recorded in a delta.**/
+	public synchronized void apply(Delta d) {
+		if (!d.valid) {valid = false;}
+		count += d.count;
+		sum += d.sum;
+		squares += d.squares;
+		minCount -= d.removedMin;
+		maxCount -= d.removedMax;
+		if (d.addedMin < min) {min = d.addedMin; minCount = d.addedMinCount;}
+		else if (d.addedMin == min) {minCount += d.addedMinCount;}
+		if (d.addedMax > max) {max = d.addedMax; maxCount = d.addedMaxCount;}
+		else if (d.addedMax == max) {maxCount += d.addedMaxCount;}
+		settle();
+	}
+	
+	/**The statistics in the form computed by Util.stats (with the same treatment of defaults); null if not valid.
+	 * @param cells Number of cells the statistics cover (used to count default values)
+	 **/
+	@SuppressWarnings("unchecked")
+	public synchronized <N extends Number> Util.Stats<N> stats(long cells, boolean ignoreDefault) {
+		if (!valid) {return null;}
+		long defCount = cells - count;
+		long fullCount = count + (ignoreDefault ? 0 : defCount);
+		double mean = sum/fullCount;
+		double stdev = Math.sqrt(Math.max(0, squares/fullCount - mean*mean));
+		return new Util.Stats<>((N) box(min), (N) box(max), mean, stdev, defCount, 0, 0);
+	}
+	
+	private Number box(double v) {
+		if (count == 0) {return null;}
+		if (defVal instanceof Integer) {return (int) v;}
+		if (defVal instanceof Long) {return (long) v;}
+		return v;
+	}
+	
+	/**Valid running statistics of the aggregates (if they carry any), otherwise null.**/
+	public static RunningStats of(Aggregates<?> aggs) {
+		if (!(aggs instanceof TouchedBoundsWrapper)) {return null;}
+		RunningStats stats = ((TouchedBoundsWrapper<?>) aggs).stats();
+		return stats != null && stats.valid() ? stats : null;
+	}
+	
+	/**Changes recorded by concurrent tasks.  
+	 * Each task records into its own delta (see local) and adds it to a shared one when done.**/
+	public static final class Delta {
+		private final double def, min, max;
+		private long count, removedMin, removedMax, addedMinCount, addedMaxCount;
+		private double sum, squares;
+		private double addedMin = Double.POSITIVE_INFINITY, addedMax = Double.NEGATIVE_INFINITY;
+		private boolean valid = true;
+		
+		private Delta(double def, double min, double max) {
+			this.def = def;
+			this.min = min;
+			this.max = max;
+		}
+		
+		/**New (empty) delta relative to the same statistics.**/
+		public Delta local() {return new Delta(def, min, max);}
+		
+		/**Record a change in one cell.**/
+		public void record(double old, double now) {
+			if (old == now) {return;}
+			if (old != def) {
+				count--;
+				sum -= old;
+				squares -= old*old;
+				if (old == min) {removedMin++;}
+				if (old == max) {removedMax++;}
+			}
+			if (now != def) {
+				if (Double.isNaN(now) || Double.isInfinite(now)) {valid = false;}
+				count++;
+				sum += now;
+				squares += now*now;
+				if (now < addedMin) {addedMin = now; addedMinCount = 1;}
+				else if (now == addedMin) {addedMinCount++;}
+				if (now > addedMax) {addedMax = now; addedMaxCount = 1;}
+				else if (now == addedMax) {addedMaxCount++;}
+			}
+		}
+		
+		/**Record a change in one cell.**/
+		public void record(Number old, Number now) {
+			if (old == null || now == null) {valid = false; return;}
+			record(old.doubleValue(), now.doubleValue());
+		}
+		
+		/**Add the changes in another delta (relative to the same statistics) to this one.**/
+		public synchronized void add(Delta other) {
+			valid = valid && other.valid;
+			count += other.count;
+			sum += other.sum;
+			squares += other.squares;
+			removedMin += other.removedMin;
+			removedMax += other.removedMax;
+			if (other.addedMin < addedMin) {addedMin = other.addedMin; addedMinCount = other.addedMinCount;}
+			else if (other.addedMin == addedMin) {addedMinCount += other.addedMinCount;}
+			if (other.addedMax > addedMax) {addedMax = other.addedMax; addedMaxCount = other.addedMaxCount;}
+			else if (other.addedMax == addedMax) {addedMaxCount += other.addedMaxCount;}
+		}
+	}
+}
@@ -19,6 +19,7 @@ import javax.imageio.ImageIO;
 import ar.Aggregates;
 import ar.Glyph;
 import ar.Glyphset;
+import ar.aggregates.AggregateUtils;
 import ar.glyphsets.SimpleGlyph;
 import ar.glyphsets.implicitgeometry.Indexed;
 import ar.glyphsets.implicitgeometry.Shaper;
@@ -122,6 +123,41 @@ public class Util {
 	public static final int mean(int low, int high) {return low+((high-low)/2);}
 	public static final long mean(long low, long high) {return low+((high-low)/2);}
 
+	/**Position of x/y along a Hilbert curve filling a 2^order by 2^order grid.
+	 * Cells close on the curve are close in space, so sorting by this index clusters spatially.**/
+	public static final long hilbert(int order, int x, int y) {
+		int n = 1 << order;
+		long d = 0;
+		for (int s=n/2; s>0; s/=2) {
+			int rx = (x & s) > 0 ? 1 : 0;
+			int ry = (y & s) > 0 ? 1 : 0;
+			d += (long) s * s * ((3 * rx) ^ ry);
+			if (ry == 0) {
+				if (rx == 1) {
+					x = n-1-x;
+					y = n-1-y;
+				}
+				int t = x;
+				x = y;
+				y = t;
+			}
+		}
+		return d;
+	}
+	
+	/**Position of x/y along a Z-order (Morton) curve: bits of x and y interleaved (x in the even bits).**/
+	public static final long zOrder(int x, int y) {return spread(x) | (spread(y) << 1);}
+	
+	private static long spread(int v) {
+		long x = v & 0xFFFFFFFFL;
+		x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+		x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+		x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+		x = (x | (x << 2)) & 0x3333333333333333L;
+		x = (x | (x << 1)) & 0x5555555555555555L;
+		return x;
+	}
+
 	
 	/**Load a set of glyphs from a delimited reader, using the provided shaper and valuer.
 	 * 
@@ -240,6 +276,8 @@ public class Util {
 	 * By default default values, NaNs, Nulls and infinity are fully skipped.  
 	 * However, if the relevant parameters set to false they will be included in the "count" basis and thus influence the mean.
 	 * 
+	 * Computed in parallel (see AggregateStats), or taken directly from running statistics 
+	 * if the aggregates carry valid ones (see RunningStats).
 	 * **/
 	public static <N extends Number> Stats<N> stats(
 			Aggregates<? extends N> aggregates, 
@@ -247,50 +285,9 @@ public class Util {
 			boolean ignoreNulls, 
 			boolean ignoreNaNs, 
 			boolean ignoreInfinity) {
-		
-		//For a single-pass std. dev is based on: http://en.wikipedia.org/wiki/Standard_deviation#Rapid_calculation_methods
-		long count=0;
-		long nullCount=0;
-		long nanCount=0;
-		long infCount=0;
-		long defCount=0;
-		N min = null;
-		N max = null;
-		double sum=0;
-
-		for (N n: aggregates) {
-			if (n == null) {nullCount++; continue;}
-			
-			double v = n.doubleValue();
-			if (Double.isNaN(v)) {nanCount++; continue;}
-			if (Double.isInfinite(v)) {infCount++; continue;}
-			if (aggregates.defaultValue().equals(n)) {
-				defCount++; continue;
-			}
-			
-			if (min == null || min.doubleValue() > v) {min = n;}
-			if (max == null || max.doubleValue() < v) {max = n;}
-			
-			sum += v;
-			count++;
-		}
-		
-		final long fullCount = count
-				+ (ignoreDefault ? 0 : defCount)
-				+ (ignoreNulls ? 0 : nullCount) 
-				+ (ignoreNaNs ? 0 : nanCount) 
-				+ (ignoreInfinity ? 0 : infCount);
-
-		final double mean = sum/fullCount;
-		double acc =0;
-
-		for (Number n: aggregates) {
-			if (n == null || Double.isNaN(n.doubleValue())) {continue;}
-			acc = Math.pow((n.doubleValue()-mean),2);
-		}
-		double stdev = Math.sqrt(acc/fullCount);
-		
-		return new Stats<>(min,max,mean,stdev,defCount, nullCount,nanCount);
+		RunningStats running = RunningStats.of(aggregates);
+		if (running != null && !aggregates.empty()) {return running.stats(AggregateUtils.size(aggregates), ignoreDefault);}
+		return AggregateStats.numeric(aggregates, ignoreDefault, ignoreNulls, ignoreNaNs, ignoreInfinity);
 	}
 
 
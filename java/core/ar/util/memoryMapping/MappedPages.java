@@ -0,0 +1,153 @@
+package ar.util.memoryMapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**Memory map of an entire file as a series of fixed-size pages, supporting reads and writes.
+ * 
+ * Like BigFileByteBuffer, this gets around the int-limit of a single memory map.  
+ * Unlike BigFileByteBuffer, all pages are mapped up-front and never moved,
+ * so absolute (position-taking) reads and writes are suitable for random access
+ * and may be made from many threads (for distinct positions).
+ * The relative (cursor-based) reads required by MappedFile are NOT thread safe.
+ * 
+ * Values must not straddle a page boundary.  This is guaranteed if the page size is a multiple 
+ * of the value size and values are stored at multiples of their size.
+ * 
+ * The OS pages data in and out as it is touched, so files may be much larger than the heap.
+ * 
+ * Mappings otherwise last until the pages are garbage collected; 'close' releases them promptly.
+ * **/
+public class MappedPages implements MappedFile, AutoCloseable {
+	/**Default bytes per page.  May be set as a system parameter (-DMAPPED_PAGE_BYTES=x).**/
+	public static final int DEFAULT_PAGE_BYTES;
+	static {
+		int bytes = 1 << 28;
+		if (System.getProperties().containsKey("MAPPED_PAGE_BYTES")) {
+			bytes = Integer.parseInt(System.getProperty("MAPPED_PAGE_BYTES"));
+		}
+		DEFAULT_PAGE_BYTES = bytes - (bytes % 8);
+	}
+	
+	private volatile MappedByteBuffer[] pages;
+	private final int pageBytes;
+	private final long size;
+	private long position = 0;
+	
+	/**Map an existing file (read-only or read/write).**/
+	public MappedPages(File file, FileChannel.MapMode mode) throws IOException {this(file, -1, DEFAULT_PAGE_BYTES, mode);}
+	
+	/**
+	 * @param file File to map
+	 * @param size Bytes to map; the file is extended if it is shorter (for READ_WRITE).  Negative to map the whole file.
+	 * @param pageBytes Bytes per page (should be a multiple of 8)
+	 * @param mode Mapping mode
+	 */
+	public MappedPages(File file, long size, int pageBytes, FileChannel.MapMode mode) throws IOException {
+		String fileMode = mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw";
+		try (RandomAccessFile raf = new RandomAccessFile(file, fileMode); 
+			 FileChannel channel = raf.getChannel()) {
+			if (size < 0) {size = channel.size();}
+			if (mode != FileChannel.MapMode.READ_ONLY && channel.size() < size) {raf.setLength(size);}
+			
+			this.size = size;
+			this.pageBytes = pageBytes;
+			long pageCount = (size + pageBytes-1)/pageBytes;
+			if (pageCount > Integer.MAX_VALUE) {throw new IllegalArgumentException("Too many pages for file of size " + size);}
+			
+			pages = new MappedByteBuffer[(int) pageCount];
+			for (int i=0; i<pages.length; i++) {
+				long start = ((long) i)*pageBytes;
+				pages[i] = channel.map(mode, start, Math.min(pageBytes, size-start));		//Mappings remain valid after the channel closes
+			}
+		}
+	}
+	
+	private MappedByteBuffer page(long pos) {return open()[(int) (pos/pageBytes)];}
+	
+	private MappedByteBuffer[] open() {
+		MappedByteBuffer[] pages = this.pages;
+		if (pages == null) {throw new IllegalStateException("Mapped pages have been closed.");}
+		return pages;
+	}
+	private int offset(long pos) {return (int) (pos%pageBytes);}
+	
+	public byte get(long pos) {return page(pos).get(offset(pos));}
+	public short getShort(long pos) {return page(pos).getShort(offset(pos));}
+	public int getInt(long pos) {return page(pos).getInt(offset(pos));}
+	public long getLong(long pos) {return page(pos).getLong(offset(pos));}
+	public char getChar(long pos) {return page(pos).getChar(offset(pos));}
+	public float getFloat(long pos) {return page(pos).getFloat(offset(pos));}
+	public double getDouble(long pos) {return page(pos).getDouble(offset(pos));}
+	
+	public void put(long pos, byte v) {page(pos).put(offset(pos), v);}
+	public void putInt(long pos, int v) {page(pos).putInt(offset(pos), v);}
+	public void putLong(long pos, long v) {page(pos).putLong(offset(pos), v);}
+	public void putDouble(long pos, double v) {page(pos).putDouble(offset(pos), v);}
+
+	public byte get() {byte v = get(position); position += 1; return v;}
+	public short getShort() {short v = getShort(position); position += 2; return v;}
+	public int getInt() {int v = getInt(position); position += 4; return v;}
+	public long getLong() {long v = getLong(position); position += 8; return v;}
+	public char getChar() {char v = getChar(position); position += 2; return v;}
+	public float getFloat() {float v = getFloat(position); position += 4; return v;}
+	public double getDouble() {double v = getDouble(position); position += 8; return v;}
+	public void get(byte[] target, long offset, int length) {
+		for (int i=0; i<length; i++) {target[i] = get(offset+i);}
+	}
+	
+	/**Write any changes to the backing file.**/
+	public void force() {for (MappedByteBuffer page: open()) {page.force();}}
+	
+	/**Write any changes to the backing file and release the mappings.
+	 * 
+	 * Pages are unmapped immediately where the runtime allows it (sun.misc.Unsafe.invokeCleaner, Java 9 and later),
+	 * otherwise they are unmapped when collected.  The pages must not be used (by any thread) once closed;
+	 * access through this object fails with an IllegalStateException.
+	 * Closing more than once has no effect.
+	 */
+	@Override
+	public void close() {
+		MappedByteBuffer[] pages;
+		synchronized (this) {
+			pages = this.pages;
+			this.pages = null;
+		}
+		if (pages == null) {return;}
+		for (MappedByteBuffer page: pages) {
+			if (!page.isReadOnly()) {page.force();}
+			unmap(page);
+		}
+	}
+	
+	/**Unmap a buffer now, if the runtime provides a way to do so.**/
+	private static void unmap(ByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			invokeCleaner.invoke(field.get(null), buffer);
+		} catch (ReflectiveOperationException | RuntimeException e) {}		//Unmapped when collected instead
+	}
+
+	/**Number of bytes in the map (page boundaries are at multiples of this).**/
+	public int pageBytes() {return pageBytes;}
+	
+	@Override public long capacity() {return size;}
+	@Override public long position() {return position;}
+	public void position(long position) {this.position = position;}
+	@Override public long filePosition() {return 0;}
+	@Override public ByteOrder order() {
+		MappedByteBuffer[] pages = open();
+		return pages.length == 0 ? ByteOrder.BIG_ENDIAN : pages[0].order();
+	}
+	@Override public void order(ByteOrder order) {for (MappedByteBuffer page: open()) {page.order(order);}}
+}
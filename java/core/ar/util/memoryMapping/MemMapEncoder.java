@@ -1,12 +1,17 @@
 package ar.util.memoryMapping;
 
+import java.awt.geom.Rectangle2D;
 import java.nio.*;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.io.*;
 
+import ar.glyphsets.implicitgeometry.Indexed;
 import ar.glyphsets.implicitgeometry.IndexedEncoding;
+import ar.glyphsets.implicitgeometry.Shaper;
 import ar.util.DelimitedReader;
+import ar.util.Util;
 
 /**Utility for encoding delimited files into a binary format that
  * can be read by the included memory mapped list.  
@@ -29,21 +34,42 @@ import ar.util.DelimitedReader;
  * 
  * NOTE: 'v' does not work yet. 
  * 
- * File format: header + info + strings + data
+ * File format: header + info + block index + data
  * 
  * Header:
  * 
  * + Version Number (Int): Decoders should verify that they are ready for files encoded with the given version
  * + Data Offset (Long): Where is the first data record
- * + String Offset (Long): Where is the string table? (negative if there is no string table)
+ * + Block Index Offset (Long): Where is the block index? (negative if there is no block index; this slot was previously reserved for a string table)
  * + Record Size (Int): How many fields are in each record
  * + Record Types ([Char]): Type characters (described above), one for each field.  Cannot include 'x'
  * + Info Records: Metadata not be required to interpret the file.  Currently two data records to provide max/min values for columns.  
+ * 
+ * Block Index (only in spatially sorted files, see 'sort'):
+ * 
+ * + X Field, Y Field (Int, Int): Fields used to sort the records and compute block bounds
+ * + Block Count (Int): How many blocks follow
+ * + Blocks: For each block, first record (Long), end record (Long, exclusive) then bounds of the x/y fields as min x, min y, max x, max y (Doubles)
+ * 
+ * Since the data offset skips the block index, readers that ignore the block index can still read sorted files.
  */
 public class MemMapEncoder {
 	/**(Magic) Number as the first value in the file to indicate what version of the format was used.*/
 	public static final int VERSION_ID = -1;
 	
+	/**Space-filling curves that can be used to spatially sort records.**/
+	public enum CURVE {
+		HILBERT, ZORDER;
+		
+		/**Position of x/y along the curve (x and y must be in [0, 2^16)).**/
+		public long key(int x, int y) {
+			return this == HILBERT ? Util.hilbert(CURVE_ORDER, x, y) : Util.zOrder(x, y);
+		}
+	}
+	
+	/**Resolution of the grid used to sort records along a curve.**/
+	private static final int CURVE_ORDER = 16;
+	
 	/**Types the encoder understands.
 	 * The "X" type is used to indicate that the field is being skipped.
 	 */
@@ -77,14 +103,20 @@ public class MemMapEncoder {
 		public final int recordLength;
 		public final long maximaRecordOffset;
 		public final long minimaRecordOffset;
+		public final long blockIndexOffset;
 		
 		public Header(int version, TYPE[] types, long dataTableOffset, long infoRecordOffset) {
+			this(version, types, dataTableOffset, infoRecordOffset, -1);
+		}
+		
+		public Header(int version, TYPE[] types, long dataTableOffset, long infoRecordOffset, long blockIndexOffset) {
 			this.version = version;
 			this.dataTableOffset = dataTableOffset;
 			this.types = types;
 			this.recordLength = recordLength(types);
 			this.maximaRecordOffset = infoRecordOffset;
 			this.minimaRecordOffset = infoRecordOffset+recordLength;
+			this.blockIndexOffset = blockIndexOffset;
 		}
 		
 		/**Parse a given file, return a Header object.**/
@@ -95,9 +127,7 @@ public class MemMapEncoder {
 			}
 
 			long dataTableOffset = buffer.getLong();
-			
-			@SuppressWarnings("unused")
-			long stringTableOffset = buffer.getLong(); //Ignored; placed for future expansion
+			long blockIndexOffset = buffer.getLong();
 			
 			int recordEntries = buffer.getInt();
 
@@ -110,7 +140,7 @@ public class MemMapEncoder {
 			long infoRecordOffset = buffer.position();
 			
 			
-			return new Header(version, types, dataTableOffset, infoRecordOffset);
+			return new Header(version, types, dataTableOffset, infoRecordOffset, blockIndexOffset);
 		}
 		
 		/**Parse a given file, return a Header object.**/
@@ -121,9 +151,7 @@ public class MemMapEncoder {
 			}
 
 			long dataTableOffset = stream.readLong();
-			
-			@SuppressWarnings("unused")
-			long stringTableOffset = stream.readLong(); //Ignored; placed for future expansion
+			long blockIndexOffset = stream.readLong();
 			
 			int recordEntries = stream.readInt();
 
@@ -133,7 +161,92 @@ public class MemMapEncoder {
 				types[i] = TYPE.typeFor(t);
 			}
 			
-			return new Header(version, types, dataTableOffset, -1);
+			return new Header(version, types, dataTableOffset, -1, blockIndexOffset);
+		}
+	}
+	
+	/**Block index of a spatially sorted file: record range and x/y bounds of each block of records,
+	 * and (if known) the reach of the glyphs.**/
+	@SuppressWarnings("javadoc")
+	public static final class BlockIndex {
+		/**Bytes per block entry.**/
+		private static final int BLOCK_BYTES = 2*TYPE.LONG.bytes + 4*TYPE.DOUBLE.bytes;
+		
+		public final int xField, yField;
+		
+		/**Furthest a glyph's shape extends from its x/y point (see reach(double,double,Object)); NaN if not recorded.**/
+		public final double reach;
+		
+		/**First record of each block, and end record (exclusive).**/
+		public final long[] starts, ends;
+		
+		/**Bounds of each block (four values per block: min x, min y, max x, max y).**/
+		private final double[] bounds;
+		
+		public BlockIndex(int xField, int yField, double reach, long[] starts, long[] ends, double[] bounds) {
+			this.xField = xField;
+			this.yField = yField;
+			this.reach = reach;
+			this.starts = starts;
+			this.ends = ends;
+			this.bounds = bounds;
+		}
+		
+		/**How many blocks are in the index?**/
+		public int blocks() {return starts.length;}
+		
+		/**Bounds of the x/y fields in a block.**/
+		public Rectangle2D bounds(int block) {
+			int i = block*4;
+			return new Rectangle2D.Double(bounds[i], bounds[i+1], bounds[i+2]-bounds[i], bounds[i+3]-bounds[i+1]);
+		}
+		
+		/**Does the block touch the region? (Edges inclusive.)**/
+		public boolean intersects(int block, Rectangle2D region) {
+			int i = block*4;
+			return bounds[i] <= region.getMaxX() && bounds[i+2] >= region.getMinX()
+					&& bounds[i+1] <= region.getMaxY() && bounds[i+3] >= region.getMinY();
+		}
+		
+		/**How many bytes does this index take in a file?**/
+		public long byteSize() {return 3*TYPE.INT.bytes + TYPE.DOUBLE.bytes + (long) blocks()*BLOCK_BYTES;}
+		
+		public byte[] bytes() {
+			ByteBuffer b = ByteBuffer.allocate((int) byteSize());
+			b.putInt(xField).putInt(yField).putInt(blocks()).putDouble(reach);
+			for (int i=0; i<blocks(); i++) {
+				b.putLong(starts[i]).putLong(ends[i]);
+				for (int j=0; j<4; j++) {b.putDouble(bounds[i*4+j]);}
+			}
+			return b.array();
+		}
+		
+		/**Read the block index at the given offset.**/
+		public static BlockIndex from(MappedFile buffer, long offset) {
+			int xField = buffer.getInt(offset);
+			int yField = buffer.getInt(offset+TYPE.INT.bytes);
+			int blocks = buffer.getInt(offset+2*TYPE.INT.bytes);
+			double reach = buffer.getDouble(offset+3*TYPE.INT.bytes);
+			long[] starts = new long[blocks];
+			long[] ends = new long[blocks];
+			double[] bounds = new double[blocks*4];
+			long at = offset+3*TYPE.INT.bytes+TYPE.DOUBLE.bytes;
+			for (int i=0; i<blocks; i++) {
+				starts[i] = buffer.getLong(at);
+				ends[i] = buffer.getLong(at+TYPE.LONG.bytes);
+				at += 2*TYPE.LONG.bytes;
+				for (int j=0; j<4; j++) {
+					bounds[i*4+j] = buffer.getDouble(at);
+					at += TYPE.DOUBLE.bytes;
+				}
+			}
+			return new BlockIndex(xField, yField, reach, starts, ends, bounds);
+		}
+		
+		/**How far a shape (or point) extends from the x/y point, in any direction.**/
+		public static double reach(double x, double y, Object shape) {
+			Rectangle2D b = Util.boundOne(shape);
+			return Math.max(Math.max(x-b.getMinX(), b.getMaxX()-x), Math.max(y-b.getMinY(), b.getMaxY()-y));
 		}
 	}
 	
@@ -279,6 +392,114 @@ public class MemMapEncoder {
 	}
 
 
+	/**Write a copy of an encoded file with records sorted along a space-filling curve, including a block index.
+	 * 
+	 * Records are ordered by the curve position of their x/y fields (field indices count only kept fields).
+	 * Consecutive runs of 'blockSize' records form the blocks of the index.
+	 * Sorted files can be segmented into spatially compact parts, and blocks outside of a region can be skipped
+	 * (see MemMapList).
+	 * 
+	 * @param source Encoded (hbin) file to read 
+	 * @param target File to write
+	 * @param xField Field of the x value
+	 * @param yField Field of the y value
+	 * @param curve Curve to sort by
+	 * @param blockSize Number of records per block
+	 */
+	public static void sort(File source, File target, int xField, int yField, CURVE curve, int blockSize) throws IOException {
+		sort(source, target, xField, yField, curve, blockSize, null, Double.NaN);
+	}
+	
+	/**Sort (see above), recording the reach of the glyphs in the block index,
+	 * so regions can be padded for culling (see MemMapList.visible) without a pass over the records when the file is opened.
+	 * 
+	 * @param reach Furthest any glyph's shape extends from its x/y point (in data units)
+	 */
+	public static void sort(File source, File target, int xField, int yField, CURVE curve, int blockSize, double reach) throws IOException {
+		sort(source, target, xField, yField, curve, blockSize, null, reach);
+	}
+	
+	/**Sort (see above), recording the reach of the glyphs made by the shaper in the block index.
+	 * The recorded reach is only exact for lists read with the same shaper.
+	 */
+	public static void sort(File source, File target, int xField, int yField, CURVE curve, int blockSize, Shaper<Indexed,?> shaper) throws IOException {
+		sort(source, target, xField, yField, curve, blockSize, shaper, 0);
+	}
+
+	private static void sort(File source, File target, int xField, int yField, CURVE curve, int blockSize, Shaper<Indexed,?> shaper, double reach) throws IOException {
+		if (blockSize < 1) {throw new IllegalArgumentException("Block size must be positive; received " + blockSize);}
+		MappedFile buffer = MappedFile.Util.make(source, FileChannel.MapMode.READ_ONLY, Integer.MAX_VALUE);
+		Header header = Header.from(buffer);
+		long entries = (source.length()-header.dataTableOffset)/header.recordLength;
+		if (entries > Integer.MAX_VALUE) {throw new IllegalArgumentException("Can only sort up to max-int records.");}
+		int size = (int) entries;
+		
+		IndexedEncoding max = new IndexedEncoding(header.types, header.maximaRecordOffset, buffer);
+		IndexedEncoding min = new IndexedEncoding(header.types, header.minimaRecordOffset, buffer);
+		double minX = ((Number) min.get(xField)).doubleValue();
+		double minY = ((Number) min.get(yField)).doubleValue();
+		double maxX = ((Number) max.get(xField)).doubleValue();
+		double maxY = ((Number) max.get(yField)).doubleValue();
+		int cells = 1 << CURVE_ORDER;
+		double sx = maxX > minX ? (cells-1)/(maxX-minX) : 0;
+		double sy = maxY > minY ? (cells-1)/(maxY-minY) : 0;
+		
+		//Pack key and record number into one long so a primitive sort orders both
+		long[] keys = new long[size];
+		for (int i=0; i<size; i++) {
+			IndexedEncoding enc = new IndexedEncoding(header.types, header.dataTableOffset + (long) i*header.recordLength, buffer);
+			int x = (int) Math.max(0, Math.min(cells-1, (((Number) enc.get(xField)).doubleValue()-minX)*sx));
+			int y = (int) Math.max(0, Math.min(cells-1, (((Number) enc.get(yField)).doubleValue()-minY)*sy));
+			keys[i] = (curve.key(x, y) << 31) | i;
+		}
+		Arrays.parallelSort(keys);
+		
+		int blocks = (size + blockSize-1)/blockSize;
+		long[] starts = new long[blocks];
+		long[] ends = new long[blocks];
+		double[] bounds = new double[blocks*4];
+		for (int b=0; b<blocks; b++) {
+			starts[b] = (long) b*blockSize;
+			ends[b] = Math.min(size, starts[b]+blockSize);
+			bounds[b*4] = Double.POSITIVE_INFINITY;
+			bounds[b*4+1] = Double.POSITIVE_INFINITY;
+			bounds[b*4+2] = Double.NEGATIVE_INFINITY;
+			bounds[b*4+3] = Double.NEGATIVE_INFINITY;
+			for (long i=starts[b]; i<ends[b]; i++) {
+				IndexedEncoding enc = new IndexedEncoding(header.types, recordAt(header, keys[(int) i]), buffer);
+				double x = ((Number) enc.get(xField)).doubleValue();
+				double y = ((Number) enc.get(yField)).doubleValue();
+				bounds[b*4] = Math.min(bounds[b*4], x);
+				bounds[b*4+1] = Math.min(bounds[b*4+1], y);
+				bounds[b*4+2] = Math.max(bounds[b*4+2], x);
+				bounds[b*4+3] = Math.max(bounds[b*4+3], y);
+				if (shaper != null) {reach = Math.max(reach, BlockIndex.reach(x, y, shaper.apply(enc)));}
+			}
+		}
+		BlockIndex index = new BlockIndex(xField, yField, reach, starts, ends, bounds);
+		
+		//Header and info records are copied, then offsets patched to account for the block index 
+		byte[] head = new byte[(int) header.dataTableOffset];
+		buffer.get(head, 0, head.length);
+		long indexOffset = header.dataTableOffset;
+		ByteBuffer.wrap(head).putInt(VERSION_ID).putLong(indexOffset+index.byteSize()).putLong(indexOffset);
+		
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+			out.write(head);
+			out.write(index.bytes());
+			byte[] record = new byte[header.recordLength];
+			for (int i=0; i<size; i++) {
+				buffer.get(record, recordAt(header, keys[i]), record.length);
+				out.write(record);
+			}
+		}
+	}
+	
+	/**File offset of the record packed into a sort key.**/
+	private static long recordAt(Header header, long key) {
+		return header.dataTableOffset + (key & Integer.MAX_VALUE)*header.recordLength;
+	}
+
 	@SuppressWarnings("resource")
 	private static void copy(File source, File target) throws Exception {
 		if (!target.exists()) {target.createNewFile();}
@@ -382,6 +603,7 @@ public class MemMapEncoder {
 	public static void main(String[] args) throws Exception {
 		System.out.println("Usage: MemMapEncoder -in <file> -out <file> -skip <int> -types <string>");
 		System.out.println("Type string is a string made up of s/i/l/f/d/c for short/int/long/float/double/char.");
+		System.out.println("Optional spatial sort: -sort <HILBERT|ZORDER> -x <field> -y <field> -block <int> -reach <glyph reach>");
 		System.out.println();
 		
 		File temp;
@@ -412,6 +634,20 @@ public class MemMapEncoder {
 			
 			write(in, skip, temp, types);
 			
+			String sort = entry(args, "-sort", null);
+			if (sort != null) {
+				File sorted = File.createTempFile("hbinEncoder", "sorted.hbin");
+				sorted.deleteOnExit();
+				sort(temp, sorted, 
+						Integer.parseInt(entry(args, "-x", "0")), 
+						Integer.parseInt(entry(args, "-y", "1")), 
+						CURVE.valueOf(sort.toUpperCase()),
+						Integer.parseInt(entry(args, "-block", "65536")),
+						Double.parseDouble(entry(args, "-reach", "NaN")));
+				if (direct) {copy(sorted, out);}
+				else {temp = sorted;}
+			}
+			
 			if (!direct) {
 				try {
 					out.delete();
@@ -10,6 +10,8 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
 import ar.Aggregates;
 import ar.Aggregator;
@@ -24,6 +26,7 @@ import ar.glyphsets.implicitgeometry.Indexed;
 import ar.glyphsets.implicitgeometry.Indexed.Converter.TYPE;
 import ar.glyphsets.implicitgeometry.MathValuers;
 import ar.glyphsets.implicitgeometry.Valuer;
+import ar.renderers.Cancellation;
 import ar.renderers.ForkJoinRenderer;
 import ar.rules.Categories;
 import ar.rules.Debug;
@@ -99,6 +102,7 @@ public class ARServer extends NanoHTTPD {
 			int width = Integer.parseInt(safeGet(parms, "width", "500"));
 			int height = Integer.parseInt(safeGet(parms, "format", "500"));
 			String viewTransTXT = safeGet(parms, "vt", null);
+			long timeout = Long.parseLong(safeGet(parms, "timeout", "0"));		//Milliseconds; zero for none
 			
 			if (!format.equals("json") && !format.equals("binary")) {throw new RuntimeException("Invalid return format: " + format);}
 			
@@ -107,7 +111,8 @@ public class ARServer extends NanoHTTPD {
 			List<Transfer<?,?>> transfers = getTransfers(transferIDS);
 			AffineTransform vt = viewTransform(viewTransTXT, dataset, width, height);
 			
-			Aggregates<?> aggs = execute(dataset, agg, transfers, vt);
+			Cancellation cancel = timeout > 0 ? Cancellation.deadline(timeout, TimeUnit.MILLISECONDS) : Cancellation.NONE;
+			Aggregates<?> aggs = execute(dataset, agg, transfers, vt, cancel);
 			ByteArrayOutputStream baos = new ByteArrayOutputStream();
 			AggregateSerializer.serialize(aggs, baos, AggregateSerializer.FORMAT.JSON);
 			Response response = new Response(Status.OK, "avro/" + format, new String(baos.toByteArray(), "UTF-8"));
@@ -122,11 +127,18 @@ public class ARServer extends NanoHTTPD {
 	/**Execute the passed aggregator and list of transfers.
 	 * This is inherently not statically type-safe, so it may produce type errors at runtime.  
 	 */
+	public Aggregates<?> execute(Glyphset<?,?> glyphs, Aggregator<?,?> agg, List<Transfer<?,?>> transfers, AffineTransform view) {
+		return execute(glyphs, agg, transfers, view, Cancellation.NONE);
+	}
+	
+	/**Execute the passed aggregator and list of transfers, abandoning the work if the token is cancelled (or times out).
+	 * @throws CancellationException if abandoned
+	 */
 	@SuppressWarnings({ "rawtypes", "unchecked" }) 
-	public Aggregates<?> execute(Glyphset<?,?> glyphs, Aggregator agg, List<Transfer<?,?>> transfers, AffineTransform view) {
+	public Aggregates<?> execute(Glyphset<?,?> glyphs, Aggregator agg, List<Transfer<?,?>> transfers, AffineTransform view, Cancellation cancel) {
 		Renderer r = new ForkJoinRenderer();
 		Selector s = TouchesPixel.make(glyphs);
-		Aggregates aggs = r.aggregate(glyphs, s, agg, view);
+		Aggregates aggs = r.aggregate(glyphs, s, agg, view, cancel);
 
 		Transfer transfer;
 		if (transfers.size() >= 2) {
@@ -137,8 +149,8 @@ public class ARServer extends NanoHTTPD {
 			transfer = transfers.get(0);
 		}
 		
-		Transfer.Specialized ts = transfer.specialize(aggs);
-		Aggregates<?> rslt = r.transfer(aggs, ts);
+		Transfer.Specialized ts = r.metrics().specialize(transfer, aggs);
+		Aggregates<?> rslt = r.transfer(aggs, ts, cancel);
 		return rslt;
 	}
 	
@@ -3,14 +3,27 @@ package ar.test.aggregates;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.BiFunction;
 
 import org.junit.Test;
 
 import ar.Aggregates;
 import ar.Aggregator;
 import ar.aggregates.AggregateUtils;
+import ar.aggregates.implementations.ColorAggregates;
 import ar.aggregates.implementations.ConstantAggregates;
+import ar.aggregates.implementations.DoubleAggregates;
+import ar.aggregates.implementations.IntAggregates;
 import ar.aggregates.implementations.RefFlatAggregates;
+import ar.aggregates.wrappers.TouchedBoundsWrapper;
 import ar.rules.Numbers;
 import ar.test.AllEqual;
 
@@ -76,4 +89,91 @@ public class TestAggregateUtils {
 		Aggregates<Integer> c2 = AggregateUtils.__unsafeMerge(id, ten, red.identity(), red::rollup);
 		assertThat("Error with left-side id", c2, is(ten));
 	}
+	
+	@Test
+	public void parallelPrimitiveMerge() {
+		int width = 700;
+		int height = 400;
+		Aggregator<Object,Integer> count = new Numbers.Count<>();
+		Aggregates<Integer> ints = new IntAggregates(0,0,width,height,0);
+		Aggregates<Integer> moreInts = TouchedBoundsWrapper.wrap(new IntAggregates(0,0,width,height,0), false);
+		Aggregates<Double> doubles = new DoubleAggregates(0,0,width,height,0d);
+		Aggregates<Double> moreDoubles = new DoubleAggregates(0,0,width,height,0d);
+		Aggregates<Color> colors = new ColorAggregates(0,0,width,height,Color.white);
+		Aggregates<Color> moreColors = new ColorAggregates(0,0,width,height,Color.white);
+		
+		for (int x=0; x<width; x++) {
+			for (int y=0; y<height; y++) {
+				ints.set(x, y, x);
+				doubles.set(x, y, (double) y);
+				if (x%2 == 0) {colors.set(x, y, Color.red);}
+				if (y >= 100 && y < 300) {
+					moreInts.set(x, y, y);
+					moreDoubles.set(x, y, (double) x);
+					if (x%3 == 0) {moreColors.set(x, y, Color.blue);}
+				}
+			}
+		}
+		
+		assertThat("Touched region", moreInts.lowY(), is(100));
+		Aggregates<Integer> intResult = AggregateUtils.__unsafeMerge(ints, moreInts, count);
+		Aggregates<Double> doubleResult = AggregateUtils.__unsafeMerge(doubles, moreDoubles, 0d, (a,b) -> a+b);
+		Aggregates<Color> colorResult = AggregateUtils.__unsafeMerge(colors, moreColors, Color.white, (a,b) -> b);
+		
+		for (int x=0; x<width; x++) {
+			for (int y=0; y<height; y++) {
+				boolean touched = y >= 100 && y < 300;
+				String msg = String.format("Error at %d,%d", x, y);
+				assertEquals(msg, (Integer) (touched ? x+y : x), intResult.get(x, y));
+				assertEquals(msg, (Double) (touched ? (double) x+y : (double) y), doubleResult.get(x, y));
+				Color expected = touched && x%3 == 0 ? Color.blue : x%2 == 0 ? Color.red : Color.white;
+				assertEquals(msg, expected, colorResult.get(x, y));
+			}
+		}
+	}
+	
+	@Test
+	public void mergeRunsInCallersPool() throws Exception {
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		BiFunction<Double, Double, Double> sum = (a,b) -> {threads.add(Thread.currentThread()); return a+b;};
+		
+		AggregateUtils.__unsafeMerge(new DoubleAggregates(0,0,700,400,1d), new DoubleAggregates(0,0,700,400,1d), 0d, sum);
+		assertThat("Off-pool merge left the calling thread", threads, is(Collections.singleton(Thread.currentThread())));
+		
+		threads.clear();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			pool.submit(() -> AggregateUtils.__unsafeMerge(new DoubleAggregates(0,0,700,400,1d), new DoubleAggregates(0,0,700,400,1d), 0d, sum)).get();
+		} finally {pool.shutdown();}
+		for (Thread t: threads) {
+			assertTrue("Merged outside of the calling pool", t instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) t).getPool() == pool);
+		}
+	}
+	
+	@Test
+	public void negativeBoundsMergeSameInPool() throws Exception {
+		Aggregator<Object,Integer> count = new Numbers.Count<>();
+		Aggregates<Integer> serial = AggregateUtils.__unsafeMerge(offsetOnes(), new IntAggregates(0,0,700,400,0), count);
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Aggregates<Integer> pooled;
+		try {pooled = pool.submit(() -> AggregateUtils.__unsafeMerge(offsetOnes(), new IntAggregates(0,0,700,400,0), count)).get();}
+		finally {pool.shutdown();}
+		
+		assertThat(serial.get(-3, -3), is(1));
+		for (int x=-50; x<700; x++) {
+			for (int y=-50; y<400; y++) {
+				assertEquals(String.format("Error at %d,%d", x, y), serial.get(x, y), pooled.get(x, y));
+			}
+		}
+	}
+	
+	/**Ones over a region that extends to negative coordinates (large enough to split when merged in a pool).**/
+	private static Aggregates<Integer> offsetOnes() {
+		Aggregates<Integer> aggs = new IntAggregates(-50,-50,650,350,0);
+		for (int x=aggs.lowX(); x<aggs.highX(); x++) {
+			for (int y=aggs.lowY(); y<aggs.highY(); y++) {aggs.set(x, y, 1);}
+		}
+		return aggs;
+	}
 }
@@ -0,0 +1,103 @@
+package ar.test.aggregates;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Renderer;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.implementations.CategoricalCountsAggregates;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SimpleGlyph;
+import ar.renderers.ForkJoinRenderer;
+import ar.rules.CategoricalCounts;
+import ar.rules.Categories;
+import ar.selectors.TouchesPixel;
+import ar.util.Util;
+
+public class TestCategoricalCountsAggregates {
+	private static final Color[] CATEGORIES = {Color.red, Color.blue, Color.green, Color.black};
+
+	@Test
+	public void makeSelectsImplementation() {
+		Categories.CountCategories<Color> op = new Categories.CountCategories<>(Util.COLOR_SORTER);
+		assertThat(AggregateUtils.make(0,0,10,10, op.identity(), 100), is(instanceOf(CategoricalCountsAggregates.class)));
+		assertThat(AggregateUtils.make(0,0,10,10, new CategoricalCounts<>("One", 1), 100), is(not(instanceOf(CategoricalCountsAggregates.class))));
+		
+		//Not for transfer results (written concurrently)
+		assertThat(AggregateUtils.make(0,0,10,10, op.identity()), is(not(instanceOf(CategoricalCountsAggregates.class))));
+	}
+
+	@Test
+	public void matchesExtend() {
+		Random r = new Random(11);
+		GlyphList<Point2D, Color> glyphs = new GlyphList<>();
+		for (int i=0; i<20000; i++) {
+			glyphs.add(new SimpleGlyph<>(new Point2D.Double(r.nextDouble()*50, r.nextDouble()*50), CATEGORIES[r.nextInt(CATEGORIES.length)]));
+		}
+		Categories.CountCategories<Color> op = new Categories.CountCategories<>(Util.COLOR_SORTER);
+		AffineTransform vt = new AffineTransform();
+
+		Renderer renderer = new ForkJoinRenderer(null, 8, 0, false, null);
+		Aggregates<CategoricalCounts<Color>> actual = renderer.aggregate(glyphs, new TouchesPixel.Points(), op, vt);
+
+		//Reference: immutable extend into generic (reference) aggregates
+		Aggregates<CategoricalCounts<Color>> expected = AggregateUtils.make(0,0,50,50, new CategoricalCounts<>(Util.COLOR_SORTER, Color.white, 0));
+		for (int x=0; x<50; x++) {for (int y=0; y<50; y++) {expected.set(x, y, op.identity());}}
+		for (int i=0; i<glyphs.size(); i++) {
+			Point2D p = glyphs.get(i).shape();
+			int x = (int) p.getX(), y = (int) p.getY();
+			expected.set(x, y, op.combine(expected.get(x, y), glyphs.get(i).info()));
+		}
+
+		Categories.ToCount<Color> toCount = new Categories.ToCount<>();
+		Categories.NumCategories<Color> numCats = new Categories.NumCategories<>();
+		for (int x=0; x<50; x++) {
+			for (int y=0; y<50; y++) {
+				assertThat(String.format("Mismatch at %d,%d", x, y), actual.get(x, y), is(expected.get(x, y)));
+				assertThat(toCount.at(x, y, actual), is(expected.get(x, y).fullSize()));
+				assertThat(numCats.at(x, y, actual), is(expected.get(x, y).size()));
+			}
+		}
+	}
+
+	@Test
+	public void mergeAlignsDictionaries() {
+		CategoricalCountsAggregates<String> left = new CategoricalCountsAggregates<>(0,0,4,4, null);
+		CategoricalCountsAggregates<String> right = new CategoricalCountsAggregates<>(2,2,6,6, null);
+		left.increment(2, 2, "b", 1);
+		left.increment(0, 0, "a", 2);
+		right.increment(2, 2, "c", 3);
+		right.increment(2, 2, "a", 4);
+		right.increment(5, 5, "b", 5);
+
+		Aggregates<CategoricalCounts<String>> merged = AggregateUtils.__unsafeMerge(left, right, new Categories.CountCategories<String>());
+		assertThat(merged, is(instanceOf(CategoricalCountsAggregates.class)));
+		assertThat(merged.get(2, 2), is(CategoricalCounts.make(Arrays.asList("a", "b", "c"), Arrays.asList(4, 1, 3), null)));
+		assertThat(merged.get(0, 0).count("a"), is(2));
+		assertThat(merged.get(5, 5).count("b"), is(5));
+		assertThat(merged.get(1, 5).size(), is(0));
+		assertThat(((CategoricalCountsAggregates<String>) merged).categories(), is(Arrays.asList("a", "b", "c")));
+	}
+
+	@Test
+	public void setReplaces() {
+		CategoricalCountsAggregates<String> aggs = new CategoricalCountsAggregates<>(0,0,2,2, null);
+		aggs.increment(0, 0, "a", 2);
+		aggs.set(0, 0, new CategoricalCounts<String>(null).extend("b", 3));
+		aggs.set(5, 5, new CategoricalCounts<String>(null).extend("b", 3));		//Out of bounds: no-op
+		assertThat(aggs.get(0, 0).size(), is(1));
+		assertThat(aggs.count(0, 0, "b"), is(3));
+		assertThat(aggs.count(0, 0, "a"), is(0));
+		assertThat(aggs.get(5, 5), is(aggs.defaultValue()));
+		assertThat(AggregateUtils.estimateBytes(aggs), is(2*4*4L));
+	}
+}
@@ -0,0 +1,95 @@
+package ar.test.aggregates;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.Glyphset;
+import ar.Renderer;
+import ar.Selector;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.implementations.RefFlatAggregates;
+import ar.aggregates.wrappers.SynchronizedWrapper;
+import ar.renderers.ForkJoinRenderer;
+import ar.renderers.SerialRenderer;
+import ar.renderers.ThreadpoolRenderer;
+import ar.rules.General;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+import ar.test.rules.GeneralTests;
+import ar.util.Util;
+
+public class TestConcurrentAggregates {
+
+	@Test
+	public void parallelUpdates() {
+		int updates = 10000;
+		Aggregator<Object, Integer> count = new Numbers.Count<>();
+		Aggregator<Double, Double> sum = new General.AggregatorFn<>(0d, (a,b) -> a+b);
+		Aggregates.Concurrent<Integer> counts = AggregateUtils.makeConcurrent(0,0,4,4, count.identity());
+		Aggregates.Concurrent<Double> sums = AggregateUtils.makeConcurrent(0,0,4,4, sum.identity());
+		Aggregates.Concurrent<String> refs = AggregateUtils.makeConcurrent(0,0,4,4, "");
+		Aggregator<String, String> concat = new General.AggregatorFn<>("", (a,b) -> a+b);
+
+		IntStream.range(0, updates).parallel().forEach(i -> {
+			counts.update(i%4, i%3, null, count);
+			sums.update(i%4, i%3, 1d, sum);
+			refs.update(0, 0, "a", concat);
+		});
+
+		int total = 0;
+		for (int x=0; x<4; x++) {
+			for (int y=0; y<4; y++) {
+				total += counts.get(x,y);
+				assertThat(sums.get(x, y), is((double) counts.get(x,y)));
+			}
+		}
+		assertThat(total, is(updates));
+		assertThat(refs.get(0, 0).length(), is(updates));
+	}
+	
+	@Test
+	public void synchronizedWrapper() {
+		int updates = 10000;
+		Aggregator<String, String> concat = new General.AggregatorFn<>("", (a,b) -> a+b);
+		Aggregates.Concurrent<String> refs = new SynchronizedWrapper<>(new RefFlatAggregates<>(0,0,4,4, ""));
+		IntStream.range(0, updates).parallel().forEach(i -> refs.update(i%4, 0, "a", concat));
+		
+		int total = 0;
+		for (int x=0; x<4; x++) {total += refs.get(x, 0).length();}
+		assertThat(total, is(updates));
+		assertThat(refs.get(10, 10), is(""));
+	}
+
+	@Test
+	public void sharedTargetRenderers() {
+		int size = 100;
+		Glyphset<Rectangle2D, Double> glyphs = GeneralTests.glyphset(size);
+		Selector<Rectangle2D> selector = TouchesPixel.make(glyphs);
+		AffineTransform vt = Util.zoomFit(glyphs.bounds(), 10, 10);
+		Aggregator<Object, Integer> op = new Numbers.Count<>();
+
+		Aggregates<Integer> ref = new SerialRenderer().aggregate(glyphs, selector, op, vt);
+
+		Renderer[] renderers = new Renderer[]{
+				new ForkJoinRenderer(null, 0, 0, true, null),
+				new ThreadpoolRenderer(null, 0, true, null)};
+
+		for (Renderer r: renderers) {
+			Aggregates<Integer> res = r.aggregate(glyphs, selector, op, vt);
+			assertThat(r.getClass().getSimpleName(), res, instanceOf(Aggregates.Concurrent.class));
+			for (int x=ref.lowX(); x<ref.highX(); x++) {
+				for (int y=ref.lowY(); y<ref.highY(); y++) {
+					assertThat(String.format("%s mismatch at %d,%d", r.getClass().getSimpleName(), x,y), res.get(x, y), is(ref.get(x, y)));
+				}
+			}
+		}
+	}
+}
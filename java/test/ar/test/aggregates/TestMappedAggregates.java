@@ -0,0 +1,148 @@
+package ar.test.aggregates;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.implementations.IntAggregates;
+import ar.aggregates.implementations.MappedAggregates;
+import ar.renderers.ForkJoinRenderer;
+import ar.rules.General;
+import ar.rules.Numbers;
+import ar.util.memoryMapping.MappedPages;
+
+public class TestMappedAggregates {
+	private static File temp() throws IOException {
+		File f = File.createTempFile("mappedAggregates", ".bin");
+		f.deleteOnExit();
+		return f;
+	}
+
+	@Test
+	public void getSetAndReopen() throws IOException {
+		File file = temp();
+		MappedAggregates<Integer> aggs = MappedAggregates.create(file, -5, -5, 95, 45, 3);
+		assertThat(aggs, instanceOf(MappedAggregates.Ints.class));
+		assertThat(aggs.get(0, 0), is(3));
+		assertThat(aggs.get(500, 0), is(3));
+		for (int x=aggs.lowX(); x<aggs.highX(); x++) {aggs.set(x, x%50-5, x*10);}
+		aggs.set(500, 500, 1);		//Out of bounds: no-op
+		aggs.flush();
+		
+		MappedAggregates<?> reopened = MappedAggregates.open(file, false);
+		assertThat(reopened, instanceOf(MappedAggregates.Ints.class));
+		assertThat(reopened.lowX(), is(-5));
+		assertThat(reopened.highY(), is(45));
+		assertThat(reopened.defaultValue(), is((Object) 3));
+		for (int x=aggs.lowX(); x<aggs.highX(); x++) {
+			for (int y=aggs.lowY(); y<aggs.highY(); y++) {
+				assertThat(reopened.get(x, y), is((Object) aggs.get(x,y)));
+			}
+		}
+		
+		MappedAggregates<Color> colors = MappedAggregates.create(temp(), 0, 0, 10, 10, new Color(0,0,0,0));
+		colors.set(2, 3, Color.red);
+		assertThat(MappedAggregates.open(colors.file(), false).get(2, 3), is((Object) Color.red));
+		assertThat(colors.get(3, 2), is(new Color(0,0,0,0)));
+		
+		MappedAggregates<Double> doubles = MappedAggregates.create(temp(), 0, 0, 10, 10, .5);
+		doubles.set(1, 1, 2.25);
+		assertThat(MappedAggregates.open(doubles.file(), false).get(1, 1), is((Object) 2.25));
+		
+		MappedAggregates<Long> longs = MappedAggregates.create(temp(), 0, 0, 10, 10, 0L);
+		longs.set(9, 9, Long.MAX_VALUE);
+		assertThat(MappedAggregates.open(longs.file(), false).get(9, 9), is((Object) Long.MAX_VALUE));
+	}
+
+	@Test
+	public void closeFlushesAndUnmaps() throws IOException {
+		MappedAggregates<Integer> aggs = MappedAggregates.create(temp(), 0, 0, 10, 10, 0);
+		aggs.set(4, 5, 45);
+		aggs.close();
+		aggs.close();		//No effect
+		try {
+			aggs.get(4, 5);
+			fail("Expected closed aggregates to be unusable");
+		} catch (IllegalStateException e) {}
+		
+		try (MappedAggregates<?> reopened = MappedAggregates.open(aggs.file(), false)) {
+			assertThat(reopened.get(4, 5), is((Object) 45));
+		}
+	}
+	
+	@Test
+	public void colorsAcceptNull() throws IOException {
+		Color background = new Color(0,0,0,0);
+		MappedAggregates<Color> colors = MappedAggregates.create(temp(), 0, 0, 10, 10, background);
+		colors.set(1, 1, Color.red);
+		colors.set(1, 1, null);
+		assertThat(colors.get(1, 1), is(background));
+	}
+	
+	@Test
+	public void transferStaysMapped() throws IOException {
+		MappedAggregates<Integer> counts = MappedAggregates.create(temp(), 0, 0, 30, 20, 0);
+		for (int x=0; x<30; x++) {counts.set(x, x%20, x);}
+		
+		Aggregates<Double> out = new ForkJoinRenderer().transfer(counts, new General.TransferFn<Integer, Double>(v -> v/2d, 0d));
+		assertThat(out, instanceOf(MappedAggregates.Doubles.class));
+		assertThat(((MappedAggregates<?>) out).file().getParentFile(), is(counts.file().getAbsoluteFile().getParentFile()));
+		for (int x=0; x<30; x++) {
+			for (int y=0; y<20; y++) {
+				assertThat(out.get(x, y), is(counts.get(x, y)/2d));
+			}
+		}
+		
+		Aggregates<Boolean> unsupported = AggregateUtils.make(counts, false);
+		assertThat(unsupported, not(instanceOf(MappedAggregates.class)));
+	}
+
+	@Test(expected=IOException.class)
+	public void rejectsOtherFiles() throws IOException {
+		MappedPages pages = new MappedPages(temp(), 100, 64, FileChannel.MapMode.READ_WRITE);
+		pages.force();
+		MappedAggregates.open(temp(), false);
+	}
+	
+	@Test
+	public void pagesCrossBoundaries() throws IOException {
+		MappedPages pages = new MappedPages(temp(), 1000, 64, FileChannel.MapMode.READ_WRITE);
+		for (int i=0; i<1000/8; i++) {pages.putLong(i*8, i*7L);}
+		for (int i=0; i<1000/8; i++) {assertThat(pages.getLong(i*8), is(i*7L));}
+		pages.position(60);		//Low half of the long at 56, then the long at 64 (on the next page)
+		assertThat(pages.getInt(), is(7*7));
+		assertThat(pages.getInt(), is(0));
+		assertThat(pages.getInt(), is(7*8));
+	}
+
+	@Test
+	public void mergeAndSave() throws IOException {
+		IntAggregates left = new IntAggregates(0, 0, 300, 400, 0);
+		IntAggregates right = new IntAggregates(100, 100, 300, 400, 0);
+		for (int x=0; x<300; x++) {
+			for (int y=0; y<400; y++) {
+				left.set(x, y, x+y);
+				right.set(x, y, 1);
+			}
+		}
+		
+		MappedAggregates<Integer> mapped = MappedAggregates.save(left, temp());
+		Aggregates<Integer> merged = AggregateUtils.__unsafeMerge(mapped, right, new Numbers.Count<>());
+		assertThat(merged, is(sameInstance((Aggregates<Integer>) mapped)));
+		for (int x=0; x<300; x++) {
+			for (int y=0; y<400; y++) {
+				int expected = x+y + (x>=100 && y>=100 ? 1 : 0);
+				assertThat(String.format("Mismatch at %d,%d", x, y), merged.get(x, y), is(expected));
+			}
+		}
+		assertThat(AggregateUtils.estimateBytes(mapped), is(0L));
+	}
+}
@@ -0,0 +1,118 @@
+package ar.test.aggregates;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Renderer;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.implementations.IntAggregates;
+import ar.aggregates.implementations.SparseAggregates;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SimpleGlyph;
+import ar.renderers.ForkJoinRenderer;
+import ar.renderers.ThreadpoolRenderer;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+
+public class TestSparseAggregates {
+
+	@Test
+	public void getSetAndGrow() {
+		SparseAggregates.Ints ints = new SparseAggregates.Ints(-10, -10, 990, 990, 7);
+		assertTrue(ints.empty());
+		for (int i=0; i<1000; i++) {ints.setInt(i-10, (i*31)%1000-10, i);}
+		ints.set(5000, 5000, 1);		//Out of bounds: no-op
+		assertThat(ints.entries(), is(1000));
+		for (int i=0; i<1000; i++) {assertThat(ints.getInt(i-10, (i*31)%1000-10), is(i));}
+		assertThat(ints.get(0, 1), is(7));
+		assertThat(ints.get(5000, 5000), is(7));
+		
+		SparseAggregates.Refs<String> refs = new SparseAggregates.Refs<>(0, 0, 10, 10, "");
+		refs.set(3, 4, "a");
+		assertThat(refs.get(3, 4), is("a"));
+		assertThat(refs.get(4, 3), is(""));
+	}
+	
+	@Test
+	public void makeByOccupancy() {
+		assertThat(AggregateUtils.make(0, 0, 1000, 1000, 0, 100), is(instanceOf(SparseAggregates.Ints.class)));
+		assertThat(AggregateUtils.make(0, 0, 1000, 1000, 0d, 100), is(instanceOf(SparseAggregates.Doubles.class)));
+		assertThat(AggregateUtils.make(0, 0, 1000, 1000, 0, 1000000), is(instanceOf(IntAggregates.class)));
+		assertThat(AggregateUtils.make(0, 0, 1000, 1000, 0), is(instanceOf(IntAggregates.class)));
+		
+		GlyphList<Rectangle2D, Integer> rects = new GlyphList<>();
+		for (int i=0; i<100; i++) {rects.add(new SimpleGlyph<>(new Rectangle2D.Double(i*10, 0, 9, 999), 1));}
+		assertThat(ThreadpoolRenderer.expectedCells(rects, new AffineTransform()), is(100*10*1000L));
+	}
+
+	@Test
+	public void scatteredRender() {
+		Random r = new Random(13);
+		GlyphList<Point2D, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<2000; i++) {glyphs.add(new SimpleGlyph<>(new Point2D.Double(r.nextDouble()*1000, r.nextDouble()*1000), 1));}
+		AffineTransform vt = new AffineTransform();
+		
+		Renderer renderer = new ForkJoinRenderer(null, 8, 0, false, null);
+		Aggregates<Integer> actual = renderer.aggregate(glyphs, new TouchesPixel.Points(), new Numbers.Count<>(), vt);
+		
+		Aggregates<Integer> expected = AggregateUtils.make(0, 0, 1000, 1000, 0);
+		for (int i=0; i<glyphs.size(); i++) {
+			Point2D p = glyphs.get(i).shape();
+			expected.set((int) p.getX(), (int) p.getY(), expected.get((int) p.getX(), (int) p.getY())+1);
+		}
+		for (int x=0; x<1000; x++) {
+			for (int y=0; y<1000; y++) {
+				assertThat(String.format("Mismatch at %d,%d", x, y), actual.get(x, y), is(expected.get(x, y)));
+			}
+		}
+	}
+	
+	@Test
+	public void mergeDensifies() {
+		Numbers.Count<Object> op = new Numbers.Count<>();
+		SparseAggregates.Ints left = new SparseAggregates.Ints(0, 0, 100, 100, 0);
+		SparseAggregates.Ints right = new SparseAggregates.Ints(0, 0, 100, 100, 0);
+		left.setInt(1, 1, 2);
+		right.setInt(1, 1, 3);
+		right.setInt(50, 60, 1);
+		Aggregates<Integer> merged = AggregateUtils.__unsafeMerge(left, right, op);
+		assertThat(merged, is(sameInstance((Aggregates<Integer>) left)));
+		assertThat(merged.get(1, 1), is(5));
+		assertThat(merged.get(50, 60), is(1));
+		
+		for (int i=0; i<5000; i++) {right.setInt(i%100, i/100, 1);}
+		merged = AggregateUtils.__unsafeMerge(merged, right, op);
+		assertThat(merged, is(instanceOf(IntAggregates.class)));
+		assertThat(merged.get(1, 1), is(6));
+		assertThat(merged.get(50, 60), is(2));
+		assertThat(merged.get(3, 3), is(1));
+	}
+	
+	@Test
+	public void parallelMergeIntoSparse() throws Exception {
+		Numbers.Count<Object> op = new Numbers.Count<>();
+		SparseAggregates.Ints target = new SparseAggregates.Ints(0, 0, 10000, 10000, 0);
+		target.setInt(5, 5, 3);
+		IntAggregates source = new IntAggregates(0, 0, 500, 500, 0);
+		for (int x=0; x<500; x++) {
+			for (int y=0; y<500; y++) {source.setInt(x, y, 1);}
+		}
+		
+		//Still sparse after the merge (250,000 of 100,000,000 cells), and larger than a merge task
+		Aggregates<Integer> merged = new ForkJoinPool(4).submit(() -> AggregateUtils.__unsafeMerge((Aggregates<Integer>) target, (Aggregates<Integer>) source, op)).get();
+		assertThat(merged, is(sameInstance((Aggregates<Integer>) target)));
+		assertThat(target.entries(), is(500*500));
+		for (int x=0; x<500; x++) {
+			for (int y=0; y<500; y++) {assertThat(merged.get(x, y), is(x == 5 && y == 5 ? 4 : 1));}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package ar.test.aggregates;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.Renderer;
+import ar.Transfer;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.implementations.TiledAggregates;
+import ar.aggregates.wrappers.TouchedBoundsWrapper;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SimpleGlyph;
+import ar.renderers.ForkJoinRenderer;
+import ar.renderers.ThreadpoolRenderer;
+import ar.rules.General;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+
+public class TestTiledAggregates {
+	
+	@Test
+	public void lazyTiles() {
+		TiledAggregates<Integer> aggs = TiledAggregates.make(-10, -10, 1000, 500, 3, 100);
+		assertThat(aggs, is(instanceOf(Aggregates.IntAccess.class)));
+		assertThat(aggs.tilesWide(), is(11));
+		assertThat(aggs.tilesHigh(), is(6));
+		assertTrue(aggs.empty());
+		
+		aggs.set(-10, -10, 1);
+		aggs.set(999, 499, 2);
+		aggs.set(1000, 499, 5);		//Out of bounds: no-op
+		assertThat(aggs.tiles().size(), is(2));
+		assertThat(aggs.get(-10, -10), is(1));
+		assertThat(aggs.get(999, 499), is(2));
+		assertThat(aggs.get(500, 200), is(3));
+		assertThat(aggs.get(1000, 499), is(3));
+		assertThat(aggs.tiles().get(1).highX(), is(1000));
+		assertThat(AggregateUtils.estimateBytes(aggs), is(4L*(100*100 + 10*10)));
+		
+		assertThat(AggregateUtils.make(0, 0, 100000, 100000, 0), is(instanceOf(TiledAggregates.class)));
+	}
+	
+	@Test
+	public void renderMergeTransferCoarsen() {
+		Random r = new Random(17);
+		GlyphList<Point2D, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<20000; i++) {
+			double cx = r.nextBoolean() ? 100 : 700;		//Two clusters, so some tiles stay empty
+			glyphs.add(new SimpleGlyph<>(new Point2D.Double(cx + r.nextGaussian()*50, cx + r.nextGaussian()*50), 1));
+		}
+		AffineTransform vt = new AffineTransform();
+		Renderer renderer = new ForkJoinRenderer(null, 8, 0, false, null);
+		Numbers.Count<Object> op = new Numbers.Count<>();
+		
+		Rectangle bounds = vt.createTransformedShape(glyphs.bounds()).getBounds();
+		Aggregates<Integer> tiled = renderer.aggregate(glyphs, new TouchesPixel.Points(), op, vt, 
+				(defVal) -> TouchedBoundsWrapper.wrap(TiledAggregates.make(bounds.x, bounds.y, (int) bounds.getMaxX(), (int) bounds.getMaxY(), defVal, 64), false),
+				ThreadpoolRenderer.defaultMerge(op));
+		Aggregates<Integer> dense = renderer.aggregate(glyphs, new TouchesPixel.Points(), op, vt);
+		
+		Aggregates<?> base = tiled instanceof TouchedBoundsWrapper ? ((TouchedBoundsWrapper<?>) tiled).base() : tiled;
+		assertThat(base, is(instanceOf(TiledAggregates.class)));
+		TiledAggregates<?> tiles = (TiledAggregates<?>) base;
+		assertTrue(tiles.tiles().size() < tiles.tilesWide()*tiles.tilesHigh());
+		assertSame(dense, tiled);
+		
+		Transfer.Specialized<Number, Color> t = new Numbers.FixedInterpolate<>(Color.white, Color.red, 0, 10).specialize(dense);
+		assertSame(renderer.transfer(dense, t), renderer.transfer(tiled, t));
+		
+		@SuppressWarnings("unchecked")
+		Aggregates<Integer> counts = (Aggregates<Integer>) base;
+		assertSame(AggregateUtils.coarsen(AggregateUtils.copy(counts, 0), op, 4), AggregateUtils.coarsen(counts, op, 4));
+	}
+	
+	private static <A> void assertSame(Aggregates<A> expected, Aggregates<A> actual) {
+		for (int x=expected.lowX(); x<expected.highX(); x++) {
+			for (int y=expected.lowY(); y<expected.highY(); y++) {
+				assertThat(String.format("Mismatch at %d,%d", x, y), actual.get(x, y), is(expected.get(x, y)));
+			}
+		}
+	}
+	
+	/**Value of the left-hand neighbor.**/
+	private static final class ShiftRight implements Transfer.ItemWise<Integer, Integer> {
+		private static final long serialVersionUID = 1L;
+		@Override public Integer at(int x, int y, Aggregates<? extends Integer> input) {return input.get(x-1, y);}
+		@Override public Integer emptyValue() {return 0;}
+	}
+	
+	@Test
+	public void neighborTransferCoversUntouchedTiles() {
+		TiledAggregates<Integer> tiled = TiledAggregates.make(0, 0, 256, 64, 0, 64);
+		for (int y=0; y<64; y++) {tiled.set(63, y, y+1);}		//Right edge of the first tile only
+		assertThat(tiled.tiles().size(), is(1));
+		
+		Renderer renderer = new ForkJoinRenderer();
+		Aggregates<Integer> shifted = renderer.transfer(tiled, new ShiftRight());
+		for (int y=0; y<64; y++) {
+			assertThat(String.format("Mismatch at 64,%d", y), shifted.get(64, y), is(y+1));
+			assertThat(shifted.get(63, y), is(0));
+		}
+		
+		Aggregates<Integer> echoed = renderer.transfer(tiled, new General.Echo<>(0));
+		assertThat(((TiledAggregates<?>) echoed).tiles().size(), is(1));
+		assertSame(tiled, echoed);
+	}
+	
+	@Test
+	public void coarsenStaysOnCallingThread() {
+		TiledAggregates<Integer> tiled = TiledAggregates.make(0, 0, 256, 256, 0, 64);
+		for (int i=0; i<256; i++) {tiled.set(i, i, 1);}
+		
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		Aggregator<Object, Integer> sum = new Aggregator<Object, Integer>() {
+			private static final long serialVersionUID = 1L;
+			@Override public Integer combine(Integer current, Object update) {return current+1;}
+			@Override public Integer rollup(Integer left, Integer right) {threads.add(Thread.currentThread()); return left+right;}
+			@Override public Integer identity() {return 0;}
+		};
+		Aggregates<Integer> coarse = AggregateUtils.coarsen(tiled, sum, 4);
+		assertThat(coarse.get(10, 10), is(4));
+		assertThat(threads, is(Collections.singleton(Thread.currentThread())));
+	}
+}
@@ -0,0 +1,103 @@
+package ar.test.glyphsets;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.Glyph;
+import ar.Glyphset;
+import ar.Selector;
+import ar.aggregates.AggregateUtils;
+import ar.glyphsets.ColumnarGlyphset;
+import ar.glyphsets.GlyphList;
+import ar.rules.General;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+
+public class ColumnarGlyphsetTests {
+	private static double[] column(Random r, int size, double scale) {
+		double[] values = new double[size];
+		for (int i=0; i<size; i++) {values[i] = r.nextDouble()*scale;}
+		return values;
+	}
+
+	private static <G> GlyphList<G, Double> copy(Glyphset<G, Double> glyphs) {
+		GlyphList<G, Double> list = new GlyphList<>();
+		for (Glyph<G, Double> g: glyphs) {list.add(g);}
+		return list;
+	}
+
+	private static <G, A> void assertSameAggregates(
+			Glyphset<G, Double> columns, Selector<G> selector, Aggregator<Double, A> op, AffineTransform view) {
+		GlyphList<G, Double> reference = copy(columns);
+		Aggregates<A> expected = selector.processSubset(reference, view, AggregateUtils.make(0,0,60,60, op.identity()), op);
+		Aggregates<A> actual = AggregateUtils.make(0,0,60,60, op.identity());
+		for (Glyphset<G, Double> segment: columns.segment(3)) {
+			actual = selector.processSubset(segment, view, actual, op);
+		}
+
+		for (int x=0; x<60; x++) {
+			for (int y=0; y<60; y++) {
+				assertEquals(String.format("Mismatch at %d,%d with %s", x, y, op.getClass().getSimpleName()), expected.get(x, y), actual.get(x, y));
+			}
+		}
+	}
+
+	@Test
+	public void points() {
+		Random r = new Random(10);
+		int size = 5000;
+		ColumnarGlyphset.Points points = new ColumnarGlyphset.Points(column(r, size, 10), column(r, size, 10), column(r, size, 3));
+		assertEquals(size, points.size());
+		assertEquals(copy(points).bounds(), points.bounds());
+
+		AffineTransform view = AffineTransform.getTranslateInstance(2, 3);
+		view.scale(5, 5);
+		AffineTransform shear = AffineTransform.getShearInstance(.1, 0);
+		shear.scale(5, 5);
+
+		for (AffineTransform vt: new AffineTransform[]{view, shear}) {
+			assertSameAggregates(points, new TouchesPixel.Points(), new Numbers.Count<>(), vt);
+			assertSameAggregates(points, new TouchesPixel.Points(), new Numbers.Sum.Double(), vt);
+			assertSameAggregates(points, new TouchesPixel.Points(), new General.AggregatorFn<Double>(0d, (a,b) -> Math.max(a, b)), vt);
+		}
+	}
+
+	@Test
+	public void rectangles() {
+		Random r = new Random(11);
+		int size = 500;
+		ColumnarGlyphset.Rectangles rects = new ColumnarGlyphset.Rectangles(
+				column(r, size, 10), column(r, size, 10), column(r, size, 1), column(r, size, 1), column(r, size, 3));
+		assertEquals(copy(rects).bounds(), rects.bounds());
+
+		AffineTransform view = AffineTransform.getTranslateInstance(1, 1);
+		view.scale(4, 4);
+		assertSameAggregates(rects, new TouchesPixel.Rectangles(), new Numbers.Count<>(), view);
+		assertSameAggregates(rects, new TouchesPixel.Rectangles(), new Numbers.Sum.Double(), view);
+	}
+
+	@Test
+	public void segments() {
+		double[] xs = new double[]{0,1,2,3,4,5,6};
+		ColumnarGlyphset.Points points = new ColumnarGlyphset.Points(xs, xs, xs);
+		long total = 0;
+		double sum = 0;
+		for (Glyphset<Point2D, Double> segment: points.segment(3)) {
+			for (Glyph<Point2D, Double> g: segment) {
+				total++;
+				sum += g.info();
+			}
+		}
+		assertEquals(xs.length, total);
+		assertEquals(21, sum, 0);
+		assertEquals(new Rectangle2D.Double(0,0,6,6), points.bounds());
+	}
+}
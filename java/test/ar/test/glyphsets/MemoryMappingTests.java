@@ -2,13 +2,17 @@ package ar.test.glyphsets;
 
 import static org.junit.Assert.*;
 
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import ar.Glyph;
 import ar.Glyphset;
 import ar.glyphsets.GlyphList;
 import ar.glyphsets.MemMapList;
@@ -24,6 +28,7 @@ import static ar.test.RectNear.rectNear;
 public class MemoryMappingTests {
 	private static String csvName = "../data/circlepoints.csv";
 	private static String hbinName = "../data/circlepointsTests.hbin";
+	private static String sortedName = "../data/circlepointsSortedTests.hbin";
 
 	private static Glyphset.RandomAccess<Rectangle2D, Integer> mm = null;
 	private static Glyphset.RandomAccess<Rectangle2D, Integer> ref = null;
@@ -50,6 +55,8 @@ public class MemoryMappingTests {
 	public static void removeTemps() throws Exception {
 		File hbin = new File(hbinName);
 		if (hbin.exists()) {hbin.delete();}
+		File sorted = new File(sortedName);
+		if (sorted.exists()) {sorted.delete();}
 	}
 	
 	@Test
@@ -105,4 +112,77 @@ public class MemoryMappingTests {
 		assertThat(glyphsB.bounds(), rectNear(glyphsA.bounds(), 0.1));
 	}
 	
+	@Test
+	public void spatialSort() throws Exception {
+		File sorted = new File(sortedName);
+		MemMapEncoder.sort(new File(hbinName), sorted, 0, 1, MemMapEncoder.CURVE.HILBERT, 100);
+		MemMapList<Rectangle2D, Integer> list = new MemMapList<>(sorted, new Indexed.ToRect(.01, 0, 1), new Indexed.ToValue<Integer,Integer>(2));
+
+		assertNotNull("Block index not found", list.blockIndex());
+		assertEquals("Sizes don't match.", mm.size(), list.size());
+		assertEquals(sum(mm), sum(list));
+
+		long seen = 0;
+		for (Glyphset<Rectangle2D, Integer> segment: list.segment(7)) {
+			assertTrue("Segment not block-aligned", segment.size() % 100 == 0 || seen + segment.size() == list.size());
+			seen += segment.size();
+		}
+		assertEquals("Segments do not cover glyphset", list.size(), seen);
+
+		Rectangle2D region = new Rectangle2D.Double(-1, -1, .5, .5);
+		List<Integer> expected = new ArrayList<>();
+		for (Glyph<Rectangle2D, Integer> g: list) {
+			if (g.shape().intersects(region)) {expected.add(g.info());}
+		}
+		
+		//Block bounds cover glyph centers, so the query region is padded by the half-width of the glyphs
+		Glyphset<Rectangle2D, Integer> found = list.query(new Rectangle2D.Double(-1.005, -1.005, .51, .51));
+		List<Integer> actual = new ArrayList<>();
+		for (Glyphset<Rectangle2D, Integer> segment: found.segment(3)) {
+			for (Glyph<Rectangle2D, Integer> g: segment) {
+				if (g.shape().intersects(region)) {actual.add(g.info());}
+			}
+		}
+		assertFalse("Test region is empty", expected.isEmpty());
+		assertEquals(expected.size(), actual.size());
+		assertTrue("Query did not skip blocks", found.size() < list.size());
+	}
+	
+	@Test
+	public void visibleIncludesStraddlingGlyphs() throws Exception {
+		File sorted = new File(sortedName);
+		MemMapEncoder.sort(new File(hbinName), sorted, 0, 1, MemMapEncoder.CURVE.HILBERT, 100);
+		MemMapList<Rectangle2D, Integer> list = new MemMapList<>(sorted, new Indexed.ToRect(.2, 0, 1), new Indexed.ToValue<Integer,Integer>(2));
+		assertTrue("Reach recorded without a shaper", Double.isNaN(list.blockIndex().reach));
+		assertEquals(.1, list.reach(), 1e-9);
+		
+		MemMapEncoder.sort(new File(hbinName), sorted, 0, 1, MemMapEncoder.CURVE.HILBERT, 100, new Indexed.ToRect(.2, 0, 1));
+		list = new MemMapList<>(sorted, new Indexed.ToRect(.2, 0, 1), new Indexed.ToValue<Integer,Integer>(2));
+		assertEquals(.1, list.blockIndex().reach, 1e-9);
+		assertEquals(.1, list.reach(), 1e-9);
+
+		//Region (-1,-1 to -.5,-.5) in screen space scaled by 10
+		AffineTransform vt = AffineTransform.getScaleInstance(10, 10);
+		Rectangle2D viewport = new Rectangle2D.Double(-10, -10, 5, 5);
+		Rectangle2D region = new Rectangle2D.Double(-1, -1, .5, .5);
+		long expected = 0;
+		for (Glyph<Rectangle2D, Integer> g: list) {
+			if (g.shape().intersects(region)) {expected++;}
+		}
+
+		long actual = 0;
+		Glyphset<Rectangle2D, Integer> found = list.visible(vt, viewport);
+		for (Glyph<Rectangle2D, Integer> g: found) {
+			if (g.shape().intersects(region)) {actual++;}
+		}
+		assertTrue("Test region is empty", expected > 0);
+		assertEquals(expected, actual);
+		assertTrue("Visible did not skip blocks", found.size() < list.size());
+	}
+	
+	private static long sum(Glyphset<Rectangle2D, Integer> glyphs) {
+		long sum = 0;
+		for (Glyph<Rectangle2D, Integer> g: glyphs) {sum += g.info();}
+		return sum;
+	}
 }
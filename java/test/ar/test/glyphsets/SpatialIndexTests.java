@@ -0,0 +1,77 @@
+package ar.test.glyphsets;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ar.Glyph;
+import ar.Glyphset;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SimpleGlyph;
+import ar.glyphsets.SpatialIndex;
+
+public class SpatialIndexTests {
+	private static GlyphList<Point2D, Integer> points(int size) {
+		Random r = new Random(42);
+		GlyphList<Point2D, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<size; i++) {
+			glyphs.add(new SimpleGlyph<>(new Point2D.Double(r.nextDouble()*100, r.nextDouble()*50), i));
+		}
+		return glyphs;
+	}
+
+	@Test
+	public void segmentsPartition() {
+		GlyphList<Point2D, Integer> base = points(10000);
+		SpatialIndex<Point2D, Integer> index = new SpatialIndex<>(base, 16);
+
+		assertThat(index.size(), is(base.size()));
+		assertThat(index.bounds(), is(base.bounds()));
+
+		Set<Integer> seen = new HashSet<>();
+		for (Glyphset<Point2D, Integer> segment: index.segment(7)) {
+			for (Glyph<Point2D, Integer> g: segment) {
+				assertTrue("Duplicate glyph " + g.info(), seen.add(g.info()));
+				Rectangle2D b = segment.bounds();
+				assertTrue("Outside segment bounds", g.shape().getX() >= b.getMinX() && g.shape().getX() <= b.getMaxX());
+				assertTrue("Outside segment bounds", g.shape().getY() >= b.getMinY() && g.shape().getY() <= b.getMaxY());
+			}
+		}
+		assertThat(seen.size(), is(10000));
+	}
+
+	@Test
+	public void query() {
+		GlyphList<Point2D, Integer> base = points(10000);
+		SpatialIndex<Point2D, Integer> index = new SpatialIndex<>(base, 8);
+		Rectangle2D region = new Rectangle2D.Double(10, 20, 15, 5);
+
+		Set<Integer> expected = new HashSet<>();
+		for (Glyph<Point2D, Integer> g: base) {
+			if (region.contains(g.shape())) {expected.add(g.info());}
+		}
+
+		Set<Integer> found = new HashSet<>();
+		for (Glyphset<Point2D, Integer> segment: index.query(region).segment(5)) {
+			for (Glyph<Point2D, Integer> g: segment) {found.add(g.info());}
+		}
+		assertThat(found, is(expected));
+		assertTrue("Query visited too much", index.query(region).size() < base.size()/5);
+
+		AffineTransform vt = AffineTransform.getScaleInstance(10, 10);
+		vt.translate(-10, -20);
+		Set<Integer> visible = new HashSet<>();
+		for (Glyph<Point2D, Integer> g: index.visible(vt, new Rectangle2D.Double(0,0,150,50))) {visible.add(g.info());}
+		assertThat(visible, is(expected));
+
+		assertTrue(index.query(new Rectangle2D.Double(500, 500, 1, 1)).isEmpty());
+	}
+}
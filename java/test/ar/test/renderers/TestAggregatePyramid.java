@@ -0,0 +1,115 @@
+package ar.test.renderers;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Renderer;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SimpleGlyph;
+import ar.renderers.AggregatePyramid;
+import ar.renderers.ForkJoinRenderer;
+import ar.renderers.RenderMetrics;
+import ar.renderers.RenderMetrics.Phase;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+
+public class TestAggregatePyramid {
+	private static GlyphList<Point2D, Integer> glyphs() {
+		Random r = new Random(5);
+		GlyphList<Point2D, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<20000; i++) {glyphs.add(new SimpleGlyph<>(new Point2D.Double(r.nextDouble()*100, r.nextDouble()*60), 1));}
+		return glyphs;
+	}
+
+	/**Compare to a direct aggregation at the level of the view (the view is offset from the level's origin).**/
+	private static void assertMatches(Renderer renderer, GlyphList<Point2D, Integer> glyphs, AggregatePyramid.View<Integer> view) {
+		int z = AggregatePyramid.level(view.renderTransform.getScaleX());
+		AffineTransform level = AggregatePyramid.levelTransform(glyphs.bounds(), z, z);
+		int dx = (int) Math.round(level.getTranslateX()-view.renderTransform.getTranslateX());
+		int dy = (int) Math.round(level.getTranslateY()-view.renderTransform.getTranslateY());
+
+		Aggregates<Integer> expected = renderer.aggregate(glyphs, new TouchesPixel.Points(), new Numbers.Count<>(), level);
+		Aggregates<Integer> actual = view.aggregates;
+		assertThat(actual.lowX(), is(0));
+		assertThat(actual.lowY(), is(0));
+		for (int x=actual.lowX(); x<actual.highX(); x++) {
+			for (int y=actual.lowY(); y<actual.highY(); y++) {
+				assertThat(String.format("Mismatch at %d,%d", x, y), actual.get(x, y), is(expected.get(x+dx, y+dy)));
+			}
+		}
+	}
+
+	@Test
+	public void levels() {
+		assertThat(AggregatePyramid.level(1), is(0));
+		assertThat(AggregatePyramid.level(3), is(2));
+		assertThat(AggregatePyramid.level(4), is(2));
+		assertThat(AggregatePyramid.level(.3), is(-1));
+	}
+
+	@Test
+	public void cacheRollupAndPan() {
+		GlyphList<Point2D, Integer> glyphs = glyphs();
+		RenderMetrics.Recorder metrics = new RenderMetrics.Recorder();
+		Renderer renderer = new ForkJoinRenderer(null, 2, 0, false, null, metrics);
+		AggregatePyramid pyramid = new AggregatePyramid(renderer, Long.MAX_VALUE);
+		Numbers.Count<Integer> op = new Numbers.Count<>();
+		TouchesPixel.Points selector = new TouchesPixel.Points();
+		Rectangle viewport = new Rectangle(0, 0, 400, 300);
+
+		AffineTransform fine = AffineTransform.getScaleInstance(7, 7);		//Level 3 (scale 8)
+		AggregatePyramid.View<Integer> first = pyramid.aggregate(glyphs, selector, op, fine, viewport);
+		assertThat(first.renderTransform.getScaleX(), is(8d));
+		assertMatches(new ForkJoinRenderer(), glyphs, first);
+		long rendered = metrics.snapshot().tasks(Phase.AGGREGATE);
+		int tiles = pyramid.tiles();
+		assertTrue(tiles > 0);
+
+		//Revisit: no new aggregation
+		AggregatePyramid.View<Integer> again = pyramid.aggregate(glyphs, selector, op, fine, viewport);
+		assertThat(metrics.snapshot().tasks(Phase.AGGREGATE), is(rendered));
+		assertMatches(new ForkJoinRenderer(), glyphs, again);
+
+		//Whole dataset at the fine level, then zoom out: rolled up, no new aggregation
+		pyramid.aggregate(glyphs, selector, op, fine, new Rectangle(0, 0, 700, 420));
+		rendered = metrics.snapshot().tasks(Phase.AGGREGATE);
+		AggregatePyramid.View<Integer> coarse = pyramid.aggregate(glyphs, selector, op, AffineTransform.getScaleInstance(2, 2), new Rectangle(0, 0, 200, 120));
+		assertThat(metrics.snapshot().tasks(Phase.AGGREGATE), is(rendered));
+		assertThat(coarse.renderTransform.getScaleX(), is(2d));
+		assertMatches(new ForkJoinRenderer(), glyphs, coarse);
+
+		//Pan at a new level: only new tiles are aggregated
+		AffineTransform mid = AffineTransform.getScaleInstance(16, 16);
+		pyramid.aggregate(glyphs, selector, op, mid, viewport);
+		tiles = pyramid.tiles();
+		AffineTransform panned = new AffineTransform(mid);
+		panned.preConcatenate(AffineTransform.getTranslateInstance(-300, 0));
+		AggregatePyramid.View<Integer> pan = pyramid.aggregate(glyphs, selector, op, panned, viewport);
+		assertMatches(new ForkJoinRenderer(), glyphs, pan);
+		assertTrue(pyramid.tiles() > tiles);
+		assertTrue(pyramid.tiles() < tiles*2);
+	}
+
+	@Test
+	public void evictsToBudget() {
+		GlyphList<Point2D, Integer> glyphs = glyphs();
+		long tileBytes = 4L*AggregatePyramid.TILE_SIZE*AggregatePyramid.TILE_SIZE;
+		AggregatePyramid pyramid = new AggregatePyramid(new ForkJoinRenderer(), tileBytes*2);
+		AggregatePyramid.View<Integer> view = pyramid.aggregate(glyphs, new TouchesPixel.Points(), new Numbers.Count<>(), AffineTransform.getScaleInstance(20, 20), new Rectangle(0, 0, 1000, 1000));
+		assertTrue(pyramid.bytes() <= tileBytes*2);
+		assertThat(pyramid.tiles(), is(2));
+		assertMatches(new ForkJoinRenderer(), glyphs, view);
+
+		pyramid.clear(glyphs);
+		assertThat(pyramid.tiles(), is(0));
+		assertThat(pyramid.bytes(), is(0L));
+	}
+}
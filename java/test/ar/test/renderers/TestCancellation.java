@@ -0,0 +1,104 @@
+package ar.test.renderers;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Renderer;
+import ar.Transfer;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SimpleGlyph;
+import ar.renderers.Cancellation;
+import ar.renderers.ForkJoinRenderer;
+import ar.renderers.SerialRenderer;
+import ar.renderers.ThreadpoolRenderer;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+
+public class TestCancellation {
+	/**Many overlapping rectangles: slow enough to cancel part way through.**/
+	private static GlyphList<Rectangle2D, Integer> glyphs() {
+		GlyphList<Rectangle2D, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<200000; i++) {glyphs.add(new SimpleGlyph<>(new Rectangle2D.Double(i%191, i%157, 20, 20), 1));}
+		return glyphs;
+	}
+	
+	@Test
+	public void token() {
+		Cancellation c = new Cancellation();
+		assertFalse(c.cancelled());
+		c.check();
+		c.cancel();
+		assertTrue(c.cancelled());
+		try {c.check(); fail();} catch (CancellationException e) {/*Expected*/}
+		c.check(3);		//Only checked on multiples of 1024
+		
+		Cancellation.NONE.cancel();
+		assertFalse(Cancellation.NONE.cancelled());
+		assertThat(Cancellation.current(), is(Cancellation.NONE));
+		assertThat(c.during(Cancellation::current), is(c));
+		assertThat(Cancellation.current(), is(Cancellation.NONE));
+		
+		assertTrue(Cancellation.deadline(0, TimeUnit.MILLISECONDS).cancelled());
+		assertFalse(Cancellation.deadline(1, TimeUnit.HOURS).cancelled());
+	}
+	
+	private static void assertStopsEarly(Renderer renderer) {
+		GlyphList<Rectangle2D, Integer> glyphs = glyphs();
+		Numbers.Count<Object> op = new Numbers.Count<>();
+		AffineTransform vt = new AffineTransform();
+
+		long start = System.nanoTime();
+		renderer.aggregate(glyphs, new TouchesPixel.Rectangles(), op, vt);
+		long full = System.nanoTime()-start;
+		
+		Cancellation cancel = new Cancellation();
+		cancel.cancel();
+		start = System.nanoTime();
+		try {
+			renderer.aggregate(glyphs, new TouchesPixel.Rectangles(), op, vt, cancel);
+			fail("Expected cancellation");
+		} catch (CancellationException e) {/*Expected*/}
+		assertTrue(String.format("Cancelled took %d ns, full render %d ns", System.nanoTime()-start, full), System.nanoTime()-start < full);
+		
+		//Deadline part way through
+		try {
+			renderer.aggregate(glyphs, new TouchesPixel.Rectangles(), op, vt, Cancellation.deadline(full/10, TimeUnit.NANOSECONDS));
+			fail("Expected deadline to pass");
+		} catch (CancellationException e) {/*Expected*/}
+		
+		//Renderer still works afterwards
+		Aggregates<Integer> counts = renderer.aggregate(glyphs, new TouchesPixel.Rectangles(), op, vt, new Cancellation());
+		assertTrue(counts.get(100, 100) > 0);
+	}
+	
+	@Test
+	public void forkJoinAggregate() {assertStopsEarly(new ForkJoinRenderer());}
+
+	@Test
+	public void threadpoolAggregate() {assertStopsEarly(new ThreadpoolRenderer());}
+
+	@Test
+	public void transfer() {
+		GlyphList<Rectangle2D, Integer> glyphs = glyphs();
+		Aggregates<Integer> counts = new ForkJoinRenderer().aggregate(glyphs, new TouchesPixel.Rectangles(), new Numbers.Count<>(), new AffineTransform());
+		Transfer.Specialized<Integer, Color> t = new Numbers.Interpolate<Integer>(Color.white, Color.red).specialize(counts);
+		Cancellation cancel = new Cancellation();
+		cancel.cancel();
+		for (Renderer r: new Renderer[]{new ForkJoinRenderer(), new ThreadpoolRenderer(), new SerialRenderer()}) {
+			try {
+				r.transfer(counts, t, cancel);
+				fail("Expected cancellation from " + r.getClass().getSimpleName());
+			} catch (CancellationException e) {/*Expected*/}
+			assertThat(r.transfer(counts, t, new Cancellation()).get(100, 100), is(notNullValue()));
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package ar.test.renderers;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Glyphset;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SimpleGlyph;
+import ar.renderers.ProgressRecorder;
+import ar.renderers.RenderMetrics;
+import ar.renderers.RenderMetrics.Phase;
+import ar.renderers.ThreadpoolRenderer;
+import ar.renderers.tasks.GlyphParallelAggregation;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+
+public class TestGlyphParallelAggregation {
+	private static GlyphList<Point2D, Integer> points(int count, int seed) {
+		Random r = new Random(seed);
+		GlyphList<Point2D, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<count; i++) {glyphs.add(new SimpleGlyph<>(new Point2D.Double(r.nextDouble()*100, r.nextDouble()*100), 1));}
+		return glyphs;
+	}
+
+	@Test
+	public void skewedSegments() {
+		GlyphList<Point2D, Integer> all = new GlyphList<>();
+		List<Glyphset<Point2D, Integer>> segments = new ArrayList<>();
+		GlyphList<Point2D, Integer> big = points((int) GlyphParallelAggregation.SPLIT_SIZE*20, 1);
+		segments.add(big);
+		all.addAll(big);
+		for (int i=0; i<7; i++) {
+			GlyphList<Point2D, Integer> small = points(100, i+2);
+			segments.add(small);
+			all.addAll(small);
+		}
+		
+		Numbers.Count<Object> op = new Numbers.Count<>();
+		AffineTransform vt = new AffineTransform();
+		RenderMetrics.Recorder metrics = new RenderMetrics.Recorder();
+		ProgressRecorder.Counter progress = new ProgressRecorder.Counter();
+		long ticks = GlyphParallelAggregation.ticks(segments.size());
+		progress.reset(ticks);
+		
+		GlyphParallelAggregation<Point2D, Integer, Integer> task = new GlyphParallelAggregation<>(
+				segments, all.bounds(), new TouchesPixel.Points(), op, vt, 
+				ThreadpoolRenderer.defaultAllocator(all, vt), ThreadpoolRenderer.defaultMerge(op), progress, metrics);
+		Aggregates<Integer> actual = new ForkJoinPool(4).invoke(task);
+		
+		RenderMetrics.Snapshot s = metrics.snapshot();
+		assertThat(s.items(Phase.AGGREGATE), is(all.size()));
+		assertTrue(s.tasks(Phase.AGGREGATE) >= 20+7);		//Large segment processed in chunks
+		assertTrue(s.stdevTaskNanos(Phase.AGGREGATE) > 0);
+		assertTrue(progress.percent() <= 1);		//Tasks split off adaptively don't report progress
+
+		int[][] expected = new int[100][100];
+		for (int i=0; i<all.size(); i++) {
+			Point2D p = all.get(i).shape();
+			expected[(int) p.getX()][(int) p.getY()]++;
+		}
+		for (int x=0; x<100; x++) {
+			for (int y=0; y<100; y++) {assertThat(String.format("Mismatch at %d,%d", x, y), actual.get(x, y), is(expected[x][y]));}
+		}
+	}
+	
+	@Test
+	public void allocationsPerSplit() {
+		List<Glyphset<Point2D, Integer>> segments = new ArrayList<>();
+		GlyphList<Point2D, Integer> all = new GlyphList<>();
+		for (int i=0; i<16; i++) {
+			GlyphList<Point2D, Integer> segment = points((int) GlyphParallelAggregation.SPLIT_SIZE*(i == 0 ? 64 : 2), i);
+			segments.add(segment);
+			all.addAll(segment);
+		}
+		
+		Numbers.Count<Object> op = new Numbers.Count<>();
+		AffineTransform vt = new AffineTransform();
+		AtomicInteger allocations = new AtomicInteger();
+		Function<Integer, Aggregates<Integer>> allocator = ThreadpoolRenderer.defaultAllocator(all, vt);
+		GlyphParallelAggregation<Point2D, Integer, Integer> task = new GlyphParallelAggregation<>(
+				segments, all.bounds(), new TouchesPixel.Points(), op, vt, 
+				v -> {allocations.incrementAndGet(); return allocator.apply(v);}, ThreadpoolRenderer.defaultMerge(op), new ProgressRecorder.NOP());
+		ForkJoinPool pool = new ForkJoinPool(8);
+		Aggregates<Integer> actual = pool.invoke(task);
+		
+		//One per segment, plus one per split (only the large segment has enough chunks to split)
+		assertTrue("Allocations: " + allocations.get(), allocations.get() <= segments.size() + 64/GlyphParallelAggregation.FORK_CHUNKS);
+		int total = 0;
+		for (int x=0; x<100; x++) {
+			for (int y=0; y<100; y++) {total += actual.get(x, y);}
+		}
+		assertThat((long) total, is(all.size()));
+	}
+}
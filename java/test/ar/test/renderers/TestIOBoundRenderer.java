@@ -0,0 +1,186 @@
+package ar.test.renderers;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Aggregator;
+import ar.Glyph;
+import ar.Glyphset;
+import ar.Renderer;
+import ar.Selector;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.GlyphSubset;
+import ar.glyphsets.SimpleGlyph;
+import ar.renderers.ForkJoinRenderer;
+import ar.renderers.IOBoundRenderer;
+import ar.renderers.RenderMetrics;
+import ar.renderers.RenderMetrics.Phase;
+import ar.renderers.ThreadpoolRenderer;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+import ar.util.axis.DescriptorPair;
+
+public class TestIOBoundRenderer {
+	/**Glyphs that take a while to 'read' (and optionally fail part way through).
+	 * Not held in a GlyphList, so the renderer copies each segment before aggregating it.
+	 **/
+	private static final class SlowGlyphs<G,I> implements Glyphset.RandomAccess<G,I> {
+		private final GlyphList<G,I> glyphs = new GlyphList<>();
+		private final long failAt;
+		/**Glyphs read so far; updated by every get.**/
+		final AtomicLong read = new AtomicLong();
+		public SlowGlyphs(long failAt) {this.failAt = failAt;}
+		
+		public void add(Glyph<G,I> g) {glyphs.add(g);}
+
+		@Override
+		public Glyph<G,I> get(long i) {
+			if (i == failAt) {throw new IllegalStateException("Read failed");}
+			if (i % 100 == 0) {
+				try {Thread.sleep(1);}
+				catch (InterruptedException e) {throw new RuntimeException(e);}
+			}
+			read.incrementAndGet();
+			return glyphs.get(i);
+		}
+
+		@Override
+		public List<Glyphset<G,I>> segment(int count) {
+			long stride = (size()/count)+1;
+			List<Glyphset<G,I>> segments = new ArrayList<>();
+			for (long offset=0; offset<size(); offset+=stride) {
+				segments.add(new GlyphSubset.Uncached<>(this, offset, Math.min(offset+stride, size())));
+			}
+			return segments;
+		}
+
+		@Override public Iterator<Glyph<G,I>> iterator() {return glyphs.iterator();}
+		@Override public boolean isEmpty() {return glyphs.isEmpty();}
+		@Override public Rectangle2D bounds() {return glyphs.bounds();}
+		@Override public long size() {return glyphs.size();}
+		@Override public DescriptorPair<?,?> axisDescriptors() {return glyphs.axisDescriptors();}
+		@Override public void axisDescriptors(DescriptorPair<?,?> descriptor) {glyphs.axisDescriptors(descriptor);}
+	}
+	
+	/**Counts the glyphs aggregated, taking a while per subset; flags when reads happen during aggregation.**/
+	private static final class SlowSelector implements Selector<Point2D> {
+		private static final long serialVersionUID = 1L;
+		private final Selector<Point2D> base = new TouchesPixel.Points();
+		private final SlowGlyphs<?,?> source;
+		final AtomicLong aggregated = new AtomicLong();
+		final AtomicBoolean overlapped = new AtomicBoolean();
+		public SlowSelector(SlowGlyphs<?,?> source) {this.source = source;}
+
+		@Override
+		public <I, A> Aggregates<A> processSubset(
+				Iterable<? extends Glyph<? extends Point2D, ? extends I>> subset,
+				AffineTransform view, Aggregates<A> target, Aggregator<I, A> op) {
+			long before = source.read.get();
+			try {Thread.sleep(5);}
+			catch (InterruptedException e) {throw new RuntimeException(e);}
+			if (source.read.get() != before) {overlapped.set(true);}
+			base.processSubset(subset, view, target, op);
+			for (Iterator<?> it = subset.iterator(); it.hasNext(); it.next()) {aggregated.incrementAndGet();}
+			return target;
+		}
+
+		@Override 
+		public boolean hitsBin(Glyph<? extends Point2D, ?> glyph, AffineTransform view, int x, int y) {
+			return base.hitsBin(glyph, view, x, y);
+		}
+	}
+	
+	private static SlowGlyphs<Point2D, Integer> glyphs(long failAt) {
+		Random r = new Random(11);
+		SlowGlyphs<Point2D, Integer> glyphs = new SlowGlyphs<>(failAt);
+		for (int i=0; i<20000; i++) {glyphs.add(new SimpleGlyph<>(new Point2D.Double(r.nextDouble()*100, r.nextDouble()*100), 1));}
+		return glyphs;
+	}
+
+	@Test
+	public void matchesAndCapsTargets() {
+		SlowGlyphs<Point2D, Integer> glyphs = glyphs(-1);
+		AffineTransform vt = new AffineTransform();
+		Numbers.Count<Object> op = new Numbers.Count<>();
+		RenderMetrics.Recorder metrics = new RenderMetrics.Recorder();
+		Renderer renderer = new IOBoundRenderer(null, 32, 3, null, metrics);
+		
+		AtomicInteger allocated = new AtomicInteger();
+		Function<Integer, Aggregates<Integer>> base = ThreadpoolRenderer.defaultAllocator(glyphs, vt);
+		Aggregates<Integer> actual = renderer.aggregate(glyphs, new TouchesPixel.Points(), op, vt, 
+				(defVal) -> {allocated.incrementAndGet(); return base.apply(defVal);}, 
+				ThreadpoolRenderer.defaultMerge(op));
+		Aggregates<Integer> expected = new ForkJoinRenderer().aggregate(glyphs, new TouchesPixel.Points(), op, vt);
+		
+		assertTrue(allocated.get() <= 3);
+		assertThat(renderer.recorder().percent(), is(1d));
+		RenderMetrics.Snapshot s = metrics.snapshot();
+		assertThat(s.tasks(Phase.READ), is(32L));
+		assertThat(s.items(Phase.READ), is(glyphs.size()));
+		assertThat(s.items(Phase.AGGREGATE), is(glyphs.size()));
+		for (int x=expected.lowX(); x<expected.highX(); x++) {
+			for (int y=expected.lowY(); y<expected.highY(); y++) {
+				assertThat(String.format("Mismatch at %d,%d", x, y), actual.get(x, y), is(expected.get(x, y)));
+			}
+		}
+	}
+	
+	@Test
+	public void boundedReadAhead() throws Exception {
+		SlowGlyphs<Point2D, Integer> glyphs = glyphs(-1);
+		SlowSelector selector = new SlowSelector(glyphs);
+		Renderer renderer = new IOBoundRenderer(null, 32, 1, null, null);
+		long segment = glyphs.size()/32+1;
+		AffineTransform vt = new AffineTransform();
+		Numbers.Count<Object> op = new Numbers.Count<>();
+		Function<Integer, Aggregates<Integer>> allocator = ThreadpoolRenderer.defaultAllocator(glyphs, vt);
+		glyphs.read.set(0);	//Allocator samples the glyphs
+		
+		AtomicLong ahead = new AtomicLong();
+		Thread watcher = new Thread(() -> {
+			while (!Thread.currentThread().isInterrupted()) {
+				ahead.accumulateAndGet(glyphs.read.get() - selector.aggregated.get(), Math::max);
+				Thread.yield();
+			}
+		});
+		watcher.start();
+		Aggregates<Integer> counts;
+		try {counts = renderer.aggregate(glyphs, selector, op, vt, allocator, ThreadpoolRenderer.defaultMerge(op));}
+		finally {watcher.interrupt(); watcher.join();}
+		
+		assertThat(counts, is(notNullValue()));
+		assertThat(selector.aggregated.get(), is(glyphs.size()));
+		assertTrue("Reads did not overlap aggregation", selector.overlapped.get());
+		assertTrue("Read ahead " + ahead.get() + " glyphs", ahead.get() <= IOBoundRenderer.READ_AHEAD*segment);
+	}
+	
+	@Test
+	public void failureCancelsScope() {
+		Renderer renderer = new IOBoundRenderer(null, 16, 2, null, null);
+		try {
+			renderer.aggregate(glyphs(12345), new TouchesPixel.Points(), new Numbers.Count<>(), new AffineTransform());
+			fail("Expected the read failure to propagate");
+		} catch (RuntimeException e) {
+			assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+		}
+		
+		//Renderer is still usable
+		Aggregates<Integer> counts = renderer.aggregate(glyphs(-1), new TouchesPixel.Points(), new Numbers.Count<>(), new AffineTransform());
+		assertThat(counts, is(notNullValue()));
+	}
+}
@@ -0,0 +1,91 @@
+package ar.test.renderers;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Renderer;
+import ar.Transfer;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SimpleGlyph;
+import ar.renderers.ForkJoinRenderer;
+import ar.renderers.IncrementalAggregation;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+
+public class TestIncrementalAggregation {
+	private static void append(GlyphList<Point2D, Integer> glyphs, Random r, int count, double span) {
+		for (int i=0; i<count; i++) {glyphs.add(new SimpleGlyph<>(new Point2D.Double(r.nextDouble()*span, r.nextDouble()*span), 1));}
+	}
+
+	private static void assertSame(Aggregates<Integer> expected, Aggregates<Integer> actual) {
+		for (int x=expected.lowX(); x<expected.highX(); x++) {
+			for (int y=expected.lowY(); y<expected.highY(); y++) {
+				assertThat(String.format("Mismatch at %d,%d", x, y), actual.get(x, y), is(expected.get(x, y)));
+			}
+		}
+	}
+
+	@Test
+	public void matchesFullAggregation() {
+		Random r = new Random(7);
+		Renderer renderer = new ForkJoinRenderer();
+		AffineTransform view = AffineTransform.getScaleInstance(2, 2);
+		GlyphList<Point2D, Integer> glyphs = new GlyphList<>();
+		IncrementalAggregation<Point2D, Integer, Integer> inc = new IncrementalAggregation<>(renderer, new TouchesPixel.Points(), new Numbers.Count<>(), view);
+
+		assertThat(inc.update(glyphs), is(nullValue()));
+		append(glyphs, r, 1000, 50);
+		inc.update(glyphs);
+		assertThat(inc.watermark(), is(1000L));
+
+		append(glyphs, r, 100, 50);		//Inside the current bounds
+		inc.update(glyphs);
+		append(glyphs, r, 100, 80);		//Extends the bounds
+		inc.update(glyphs);
+		append(glyphs, r, (int) IncrementalAggregation.SERIAL_LIMIT+1, 50);	//Large delta
+		Aggregates<Integer> actual = inc.update(glyphs);
+		assertThat(inc.watermark(), is(glyphs.size()));
+
+		Aggregates<Integer> expected = renderer.aggregate(glyphs, new TouchesPixel.Points(), new Numbers.Count<>(), view);
+		assertSame(expected, actual);
+		assertSame(expected, inc.update(glyphs));
+	}
+
+	@Test
+	public void respecializeOnlyOnChange() {
+		Renderer renderer = new ForkJoinRenderer();
+		GlyphList<Point2D, Integer> glyphs = new GlyphList<>();
+		IncrementalAggregation<Point2D, Integer, Integer> inc = new IncrementalAggregation<>(renderer, new TouchesPixel.Points(), new Numbers.Count<>(), new AffineTransform());
+		Transfer<Number, Color> transfer = new Numbers.Interpolate<>(Color.white, Color.red);
+
+		for (int i=0; i<10; i++) {glyphs.add(new SimpleGlyph<>(new Point2D.Double(i, i), 1));}
+		inc.update(glyphs);
+		Transfer.Specialized<?, Color> first = inc.specialize(transfer, IncrementalAggregation.extrema());
+		assertThat(inc.specialize(transfer, IncrementalAggregation.extrema()), is(sameInstance(first)));
+
+		glyphs.add(new SimpleGlyph<>(new Point2D.Double(20, 20), 1));	//New cell, same extrema
+		inc.update(glyphs);
+		assertThat(inc.specialize(transfer, IncrementalAggregation.extrema()), is(sameInstance(first)));
+
+		glyphs.add(new SimpleGlyph<>(new Point2D.Double(3, 3), 1));		//New maximum
+		inc.update(glyphs);
+		Transfer.Specialized<?, Color> second = inc.specialize(transfer, IncrementalAggregation.extrema());
+		assertThat(second, is(not(sameInstance(first))));
+
+		Aggregates<Color> colors = inc.transfer(transfer, IncrementalAggregation.extrema());
+		assertThat(colors.get(3, 3), is(Color.red));
+
+		try {
+			inc.update(new GlyphList<>());
+			fail("Shrinking glyphset accepted");
+		} catch (IllegalArgumentException e) {}
+	}
+}
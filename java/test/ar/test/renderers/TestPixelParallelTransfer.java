@@ -0,0 +1,81 @@
+package ar.test.renderers;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Transfer;
+import ar.aggregates.AggregateUtils;
+import ar.aggregates.implementations.ColorAggregates;
+import ar.aggregates.implementations.IntAggregates;
+import ar.aggregates.implementations.RefFlatAggregates;
+import ar.aggregates.wrappers.TouchedBoundsWrapper;
+import ar.renderers.ThreadpoolRenderer;
+import ar.renderers.tasks.PixelParallelTransfer;
+import ar.rules.General;
+import ar.rules.Numbers;
+
+public class TestPixelParallelTransfer {
+	private static IntAggregates counts() {
+		IntAggregates counts = new IntAggregates(-13, 7, 1000, 460, 0);		//Not a multiple of the block size
+		for (int x=counts.lowX(); x<counts.highX(); x++) {
+			for (int y=counts.lowY(); y<counts.highY(); y++) {counts.setInt(x, y, (x*31+y*17)%11 == 0 ? 0 : Math.abs(x*y)%97);}
+		}
+		return counts;
+	}
+	
+	private static <IN,OUT> void assertMatches(Aggregates<? extends IN> in, Aggregates<OUT> out, Transfer.ItemWise<IN,OUT> t) {
+		for (int x=in.lowX(); x<in.highX(); x++) {
+			for (int y=in.lowY(); y<in.highY(); y++) {
+				assertThat(String.format("Mismatch at %d,%d", x, y), out.get(x, y), is(t.at(x, y, in)));
+			}
+		}
+	}
+	
+	private static <IN,OUT> Aggregates<OUT> transfer(Aggregates<? extends IN> in, Transfer.ItemWise<IN,OUT> t, long taskSize) {
+		Aggregates<OUT> out = AggregateUtils.make(in, t.emptyValue());
+		new ForkJoinPool(4).invoke(new PixelParallelTransfer<>(in, out, t, taskSize, in.lowX(), in.lowY(), in.highX(), in.highY()));
+		return out;
+	}
+	
+	@Test
+	public void everyCellOnce() {
+		IntAggregates counts = counts();
+		RefFlatAggregates<Integer> visits = new RefFlatAggregates<>(counts.lowX(), counts.lowY(), counts.highX(), counts.highY(), 0);
+		Transfer.ItemWise<Integer, Integer> t = new General.TransferFn<>(v -> v+1, 0);
+		for (long taskSize: new long[]{1, 5000, Long.MAX_VALUE}) {
+			Aggregates<Integer> out = transfer(counts, t, taskSize);
+			assertMatches(counts, out, t);
+			for (int x=counts.lowX(); x<counts.highX(); x++) {
+				for (int y=counts.lowY(); y<counts.highY(); y++) {visits.set(x, y, visits.get(x, y) + (out.get(x, y) == counts.get(x, y)+1 ? 1 : 0));}
+			}
+		}
+		for (Integer v: visits) {assertThat(v, is(3));}
+	}
+	
+	@Test
+	public void bulkColors() {
+		IntAggregates counts = counts();
+		Transfer.ItemWise<Integer, Color> interpolate = new Numbers.Interpolate<Integer>(Color.white, Color.red, Color.blue).specialize(counts);
+		Transfer.ItemWise<Integer, Color> fixed = new Numbers.FixedInterpolate<>(Color.white, Color.red, 10, 50);
+		
+		List<Transfer.ItemWise<Integer, Color>> transfers = Arrays.asList(interpolate, fixed);
+		for (Transfer.ItemWise<Integer, Color> t: transfers) {
+			assertThat(t, instanceOf(Transfer.IntToColor.class));
+			Aggregates<Color> out = transfer(counts, t, 10000);
+			assertThat(out, instanceOf(ColorAggregates.class));
+			assertMatches(counts, out, t);
+			
+			Aggregates<Integer> wrapped = TouchedBoundsWrapper.wrap(counts, true);
+			assertMatches(wrapped, transfer(wrapped, t, 10000), t);
+			assertMatches(counts, new ThreadpoolRenderer().transfer(counts, t), t);
+		}
+	}
+}
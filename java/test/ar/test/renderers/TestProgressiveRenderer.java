@@ -0,0 +1,133 @@
+package ar.test.renderers;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Glyph;
+import ar.Glyphset;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.GlyphsetUnion;
+import ar.glyphsets.SimpleGlyph;
+import ar.glyphsets.StridedSubset;
+import ar.renderers.ForkJoinRenderer;
+import ar.renderers.ProgressiveRenderer;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+
+public class TestProgressiveRenderer {
+	/**Uniformly overlapping rectangles, so the scaled estimates are close to the full counts.**/
+	private static GlyphList<Rectangle2D, Integer> glyphs(int count) {
+		GlyphList<Rectangle2D, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<count; i++) {glyphs.add(new SimpleGlyph<>(new Rectangle2D.Double(i%10, i%7, 20, 20), i));}
+		return glyphs;
+	}
+	
+	@Test
+	public void stridedPartition() {
+		GlyphList<Rectangle2D, Integer> glyphs = glyphs(1003);
+		Set<Integer> seen = new HashSet<>();
+		long total = 0;
+		for (Glyphset<Rectangle2D, Integer> pass: ProgressiveRenderer.passes(glyphs, 64)) {
+			assertThat(pass, is(instanceOf(StridedSubset.class)));
+			for (Glyphset<Rectangle2D, Integer> segment: pass.segment(3)) {
+				for (Glyph<Rectangle2D, Integer> g: segment) {assertTrue("Duplicate " + g.info(), seen.add(g.info()));}
+			}
+			total += pass.size();
+		}
+		assertThat(total, is(1003L));
+		assertThat(seen.size(), is(1003));
+		
+		StridedSubset<Rectangle2D, Integer> first = new StridedSubset<>(glyphs, 64, 0, 1);
+		assertThat(first.size(), is(16L));
+		assertThat(first.get(2).info(), is(128));
+	}
+	
+	@Test
+	public void exactResult() {
+		GlyphList<Rectangle2D, Integer> glyphs = glyphs(10000);
+		AffineTransform vt = new AffineTransform();
+		
+		List<Glyphset<Rectangle2D, Integer>> parts = new ArrayList<>();
+		parts.add(glyphs(5000));
+		parts.add(glyphs(5000));
+		List<Glyphset<Rectangle2D, Integer>> sources = Arrays.asList(glyphs, new GlyphsetUnion<>(parts));
+		for (Glyphset<Rectangle2D, Integer> source: sources) {
+			Aggregates<Integer> expected = new ForkJoinRenderer().aggregate(source, new TouchesPixel.Rectangles(), new Numbers.Count<>(), vt);
+			List<Double> fractions = new ArrayList<>();
+			ProgressiveRenderer r = new ProgressiveRenderer(new ForkJoinRenderer(), 16);
+			Aggregates<Integer> actual = r.aggregate(source, new TouchesPixel.Rectangles(), new Numbers.Count<>(), vt, ProgressiveRenderer.numbers(), 
+					(partial, fraction) -> {
+						fractions.add(fraction);
+						int estimate = partial.get(15, 15);
+						int full = expected.get(15, 15);
+						assertTrue(String.format("Estimate %d vs %d at %f", estimate, full, fraction), Math.abs(estimate-full) < full*.25);
+					});
+			
+			assertThat(fractions.size(), is(4));
+			for (int i=1; i<fractions.size(); i++) {assertTrue(fractions.get(i) > fractions.get(i-1));}
+			assertTrue(fractions.get(fractions.size()-1) < 1);
+			
+			for (int x=expected.lowX(); x<expected.highX(); x++) {
+				for (int y=expected.lowY(); y<expected.highY(); y++) {
+					assertThat(String.format("Mismatch at %d,%d", x, y), actual.get(x, y), is(expected.get(x, y)));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void partialsUnchanged() {
+		//First pass (every 16th glyph) touches a larger region than later passes, so merges could target a published partial
+		GlyphList<Rectangle2D, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<6400; i++) {
+			Rectangle2D r = i%16 == 0 ? new Rectangle2D.Double(0, 0, 40, 40) : new Rectangle2D.Double(10, 10, 10, 10); 
+			glyphs.add(new SimpleGlyph<>(r, i));
+		}
+		
+		List<Aggregates<Integer>> partials = new ArrayList<>();
+		List<Integer> published = new ArrayList<>();
+		ProgressiveRenderer r = new ProgressiveRenderer(new ForkJoinRenderer(), 16);
+		Aggregates<Integer> result = r.aggregate(glyphs, new TouchesPixel.Rectangles(), new Numbers.Count<>(), new AffineTransform(), null, 
+				(partial, fraction) -> {
+					partials.add(partial);
+					published.add(partial.get(15, 15));
+				});
+		
+		assertThat(result.get(15, 15), is(6400));
+		assertThat(partials.size(), is(4));
+		for (int i=0; i<partials.size(); i++) {
+			assertThat(partials.get(i), is(not(sameInstance(result))));
+			assertThat("Partial " + i, partials.get(i).get(15, 15), is(published.get(i)));
+			assertTrue(published.get(i) < 6400);
+		}
+	}
+	
+	@Test
+	public void emptyFirstPass() {
+		//First pass (glyphs 0 and 64) only has rectangles that contain no pixel centers, so it touches nothing
+		GlyphList<Rectangle2D, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<128; i++) {
+			Rectangle2D r = i%64 == 0 ? new Rectangle2D.Double(.4, .4, .2, .2) : new Rectangle2D.Double(0, 0, 10, 10); 
+			glyphs.add(new SimpleGlyph<>(r, i));
+		}
+		
+		List<Integer> published = new ArrayList<>();
+		ProgressiveRenderer r = new ProgressiveRenderer(new ForkJoinRenderer(), 64);
+		Aggregates<Integer> result = r.aggregate(glyphs, new TouchesPixel.Shapes(), new Numbers.Count<>(), new AffineTransform(), ProgressiveRenderer.numbers(), 
+				(partial, fraction) -> published.add(partial.get(5, 5)));
+		
+		assertThat(published.get(0), is(0));
+		assertThat(result.get(5, 5), is(126));
+	}
+}
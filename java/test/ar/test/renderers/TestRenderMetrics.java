@@ -0,0 +1,115 @@
+package ar.test.renderers;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Renderer;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SimpleGlyph;
+import ar.renderers.ForkJoinRenderer;
+import ar.renderers.RenderMetrics;
+import ar.renderers.RenderMetrics.Phase;
+import ar.renderers.ThreadpoolRenderer;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+
+public class TestRenderMetrics {
+	private static GlyphList<Point2D, Integer> glyphs(int size) {
+		Random r = new Random(3);
+		GlyphList<Point2D, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<size; i++) {glyphs.add(new SimpleGlyph<>(new Point2D.Double(r.nextDouble()*100, r.nextDouble()*100), 1));}
+		return glyphs;
+	}
+
+	private static void render(Renderer r, GlyphList<Point2D, Integer> glyphs) {
+		Aggregates<Integer> counts = r.aggregate(glyphs, new TouchesPixel.Points(), new Numbers.Count<>(), AffineTransform.getScaleInstance(2, 2));
+		Aggregates<Color> colors = r.transfer(counts, r.metrics().specialize(new Numbers.Interpolate<>(Color.white, Color.red), counts));
+		assertThat(colors.get(10, 10), is(notNullValue()));
+	}
+
+	private static void checkSnapshot(RenderMetrics.Snapshot s, long glyphs) {
+		assertThat(s.items(Phase.AGGREGATE), is(glyphs));
+		assertTrue(s.tasks(Phase.AGGREGATE) > 1);
+		assertTrue(s.wallNanos(Phase.AGGREGATE) > 0);
+		assertTrue(s.wallNanos(Phase.TRANSFER) > 0);
+		assertTrue(s.wallNanos(Phase.SPECIALIZE) > 0);
+		assertTrue(s.items(Phase.TRANSFER) > 0);
+		assertTrue(s.items(Phase.MERGE) > 0);
+		assertTrue(s.allocatedBytes() > 0);
+		assertTrue(s.skew(Phase.AGGREGATE) >= 1);
+		assertTrue(s.minTaskNanos(Phase.AGGREGATE) <= s.maxTaskNanos(Phase.AGGREGATE));
+		assertTrue(s.stdevTaskNanos(Phase.AGGREGATE) <= s.maxTaskNanos(Phase.AGGREGATE));
+		assertThat(Arrays.stream(s.histogram(Phase.AGGREGATE)).sum(), is(s.tasks(Phase.AGGREGATE)));
+	}
+
+	@Test
+	public void forkJoin() {
+		GlyphList<Point2D, Integer> glyphs = glyphs(10000);
+		RenderMetrics.Recorder metrics = new RenderMetrics.Recorder();
+		Renderer r = new ForkJoinRenderer(null, 4, 100, false, null, metrics);
+		render(r, glyphs);
+		checkSnapshot(metrics.snapshot(), glyphs.size());
+	}
+
+	@Test
+	public void threadpool() {
+		GlyphList<Point2D, Integer> glyphs = glyphs(10000);
+		RenderMetrics.Recorder metrics = new RenderMetrics.Recorder();
+		Renderer r = new ThreadpoolRenderer(null, 4, false, null, metrics);
+		render(r, glyphs);
+		checkSnapshot(metrics.snapshot(), glyphs.size());
+	}
+
+	@Test
+	public void sharedTargetAllocatesOnce() {
+		GlyphList<Point2D, Integer> glyphs = glyphs(1000);
+		RenderMetrics.Recorder metrics = new RenderMetrics.Recorder();
+		Renderer r = new ForkJoinRenderer(null, 4, 100, true, null, metrics);
+		Aggregates<Integer> counts = r.aggregate(glyphs, new TouchesPixel.Points(), new Numbers.Count<>(), AffineTransform.getScaleInstance(2, 2));
+
+		RenderMetrics.Snapshot s = metrics.snapshot();
+		assertThat(s.tasks(Phase.MERGE), is(0L));
+		assertThat(s.allocatedBytes(), is(4*(long) (counts.highX()-counts.lowX())*(counts.highY()-counts.lowY())));
+	}
+
+	@Test
+	public void resetAndNOP() throws Exception {
+		RenderMetrics.Recorder metrics = new RenderMetrics.Recorder();
+		metrics.task(Phase.TRANSFER, 10, 5);
+		metrics.task(Phase.TRANSFER, 10, 15);
+		metrics.phase(Phase.TRANSFER, 20);
+		RenderMetrics.Snapshot s = metrics.snapshot();
+		assertThat(s.items(Phase.TRANSFER), is(20L));
+		assertThat(s.skew(Phase.TRANSFER), is(1.5));
+		assertThat(s.histogram(Phase.TRANSFER)[3], is(1L));
+		assertThat(s.histogram(Phase.TRANSFER)[4], is(1L));
+		assertThat(s.asMap().get("transfer.wallNanos"), is(20L));
+
+		metrics.register("TestRenderMetrics");
+		ObjectName name = new ObjectName("ar.renderers:type=RenderMetrics,name=TestRenderMetrics");
+		assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+
+		metrics.reset();
+		s = metrics.snapshot();
+		assertThat(s.tasks(Phase.TRANSFER), is(0L));
+		assertThat(s.minTaskNanos(Phase.TRANSFER), is(0L));
+		assertTrue(Double.isNaN(s.skew(Phase.TRANSFER)));
+
+		RenderMetrics nop = new RenderMetrics.NOP();
+		nop.task(Phase.AGGREGATE, 10, 10);
+		assertThat(nop.snapshot().tasks(Phase.AGGREGATE), is(0L));
+	}
+}
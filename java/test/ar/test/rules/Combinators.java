@@ -14,6 +14,7 @@ import ar.glyphsets.implicitgeometry.MathValuers;
 import ar.glyphsets.implicitgeometry.Valuer;
 import ar.renderers.ForkJoinRenderer;
 import ar.rules.General;
+import ar.rules.Numbers;
 import ar.rules.combinators.*;
 
 public class Combinators {
@@ -139,4 +140,28 @@ public class Combinators {
 		Valuer<Aggregates<? extends Integer>, Boolean> p = new Predicates.All<>(new MathValuers.EQ<Integer>(3d));
 		assertTrue("Bulk test", p.apply(rslt));
 	}
+
+	@Test
+	public void SeqFused() {
+		Aggregates<Integer> a = AggregateUtils.make(0, 0, 20, 30, 0);
+		for (int x=0; x<20; x++) {
+			for (int y=0; y<30; y++) {a.set(x, y, x*y);}
+		}
+		
+		Transfer<Integer,Integer> t1 = new General.TransferFn<>(n -> n+1, 0);
+		Transfer<Integer,Integer> t2 = new General.TransferFn<>(n -> n*2, 0);
+		Transfer<Integer,Color> t3 = new Numbers.Interpolate<>(Color.white, Color.red);
+		Transfer.Specialized<Integer, Color> fused = new Seq<>(t1,t2).then(t3).specialize(a);
+		assertThat(fused, instanceOf(Seq.Fused.class));
+		
+		ForkJoinRenderer rend = new ForkJoinRenderer();
+		Aggregates<Integer> mid = rend.transfer(rend.transfer(a, t1.specialize(a)), t2.specialize(a));
+		Aggregates<Color> expected = rend.transfer(mid, t3.specialize(mid));		//Interpolation bounds from the intermediate values
+		Aggregates<Color> actual = rend.transfer(a, fused);
+		for (int x=0; x<20; x++) {
+			for (int y=0; y<30; y++) {assertThat(actual.get(x, y), is(expected.get(x, y)));}
+		}
+		assertThat(actual.get(0, 0), is(Color.white));
+		assertThat(actual.get(19, 29), is(Color.red));
+	}
 }
@@ -3,10 +3,26 @@ package ar.test.rules;
 import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
 
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
+import ar.Aggregates;
 import ar.Aggregator;
+import ar.Glyph;
+import ar.aggregates.implementations.IntAggregates;
+import ar.aggregates.implementations.RefFlatAggregates;
+import ar.aggregates.wrappers.TouchedBoundsWrapper;
+import ar.glyphsets.SimpleGlyph;
+import ar.renderers.ForkJoinRenderer;
 import ar.rules.Numbers;
+import ar.util.ColorKernels;
+import ar.util.Util;
+import ar.selectors.TouchesPixel;
 
 public class NumbersTests {
 	
@@ -28,4 +44,83 @@ public class NumbersTests {
 		assertThat(l.identity(), is(0l));
 		assertThat(i.identity(), is(0));
 	}
+	
+	@Test
+	public void primitiveCount() {
+		List<Glyph<Point2D, Object>> glyphs = new ArrayList<>();
+		for (int i=0; i<100; i++) {glyphs.add(new SimpleGlyph<>(new Point2D.Double(i%10, i%7), null));}
+		
+		Aggregator<Object, Integer> count = new Numbers.Count<>();
+		Aggregates<Integer> boxed = new RefFlatAggregates<>(0,0,10,10, count.identity());
+		Aggregates<Integer> primitive = TouchedBoundsWrapper.wrap(new IntAggregates(0,0,10,10, count.identity()), false);
+		assertThat(primitive, instanceOf(Aggregates.IntAccess.class));
+		
+		TouchesPixel.Points selector = new TouchesPixel.Points();
+		selector.processSubset(glyphs, new AffineTransform(), boxed, count);
+		selector.processSubset(glyphs, new AffineTransform(), primitive, count);
+		
+		for (int x=0; x<10; x++) {
+			for (int y=0; y<10; y++) {
+				assertThat(String.format("Mismatch at %d,%d", x,y), primitive.get(x, y), is(boxed.get(x, y)));
+			}
+		}
+		assertThat(primitive.highX(), is(10));
+		assertThat(primitive.highY(), is(7));
+	}
+
+	@Test
+	public void packedInterpolation() {
+		Color low = new Color(10, 200, 30, 40), high = new Color(250, 0, 90, 255);
+		int[] in = new int[1000];
+		for (int i=0; i<in.length; i++) {in[i] = i-100;}
+		int[] out = new int[in.length+2];
+		
+		//Linear matches Util.interpolate exactly, clamps out of range values and masks the default
+		ColorKernels.interpolate(in, 0, out, 1, in.length, 0, 7, low, high, 3, 777, ColorKernels.Scale.LINEAR);
+		assertThat(out[0], is(0));
+		assertThat(out[out.length-1], is(0));
+		for (int i=0; i<in.length; i++) {
+			int expected = in[i] == 0 ? 7 : Util.interpolate(low, high, 3, 777, in[i]).getRGB();
+			assertThat("Mismatch at " + in[i], out[i+1], is(expected));
+		}
+		
+		//Other scales match the scalar kernel and move through the range monotonically
+		for (ColorKernels.Scale scale: ColorKernels.Scale.values()) {
+			ColorKernels.interpolate(in, 0, out, 0, in.length, Integer.MIN_VALUE, 0, low, high, 0, 899, scale);
+			for (int i=0; i<in.length; i++) {
+				assertThat(scale + " at " + in[i], out[i], is(ColorKernels.interpolate(low, high, 0, 899, scale, in[i])));
+				if (i>0) {assertTrue(new Color(out[i], true).getRed() >= new Color(out[i-1], true).getRed());}
+			}
+			assertThat(out[100], is(low.getRGB()));
+			assertThat(out[999], is(high.getRGB()));
+		}
+		int mid = ColorKernels.interpolate(low, high, 0, 1000, ColorKernels.Scale.LINEAR, 10);
+		int logMid = ColorKernels.interpolate(low, high, 0, 1000, ColorKernels.Scale.LOG, 10);
+		assertTrue(new Color(logMid, true).getRed() > new Color(mid, true).getRed());
+
+		//Tables match the arithmetic, including fractional bounds
+		for (ColorKernels.Scale scale: ColorKernels.Scale.values()) {
+			int[] direct = new int[in.length];
+			ColorKernels.interpolate(in, 0, direct, 0, in.length, 5, 9, low, high, 2.5, 700.25, scale);
+			ColorKernels.Table.make(low, high, 2.5, 700.25, scale).apply(in, 0, out, 0, in.length, 5, 9);
+			for (int i=0; i<in.length; i++) {assertThat(scale + " at " + in[i], out[i], is(direct[i]));}
+		}
+		assertThat(ColorKernels.Table.make(low, high, 0, ColorKernels.TABLE_SIZE, ColorKernels.Scale.LINEAR), is(nullValue()));
+
+		//Degenerate range goes to the high color (as Util.interpolate)
+		ColorKernels.interpolate(in, 0, out, 0, 10, Integer.MIN_VALUE, 0, low, high, 5, 5, ColorKernels.Scale.LOG);
+		assertThat(out[3], is(high.getRGB()));
+	}
+	
+	@Test
+	public void scaledInterpolate() {
+		IntAggregates counts = new IntAggregates(0, 0, 10, 10, 0);
+		for (int i=0; i<100; i++) {counts.setInt(i%10, i/10, i);}
+		Color low = Color.white, high = Color.red;
+		Aggregates<Color> colors = new Numbers.Interpolate<Integer>(low, high, Color.blue, ColorKernels.Scale.CUBE_ROOT).specialize(counts).process(counts, new ForkJoinRenderer());
+		assertThat(colors.get(0, 0), is(Color.blue));
+		assertThat(colors.get(1, 0).getRGB(), is(ColorKernels.interpolate(low, high, 1, 99, ColorKernels.Scale.CUBE_ROOT, 1)));
+		assertThat(colors.get(9, 9), is(high));
+		assertThat(colors.get(7, 2).getRGB(), is(ColorKernels.interpolate(low, high, 1, 99, ColorKernels.Scale.CUBE_ROOT, 27)));
+	}
 }
@@ -0,0 +1,88 @@
+package ar.test.selectors;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.awt.Polygon;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.aggregates.AggregateUtils;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SimpleGlyph;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+
+public class TestShapes {
+	private static final int SIZE = 120;
+	
+	/**Shapes selector must set exactly the bins whose corner the transformed shape contains.**/
+	private static void assertMatchesContains(GlyphList<Shape, Integer> glyphs, AffineTransform view) {
+		Aggregates<Integer> actual = new TouchesPixel.Shapes().processSubset(glyphs, view, AggregateUtils.make(-SIZE, -SIZE, SIZE, SIZE, 0), new Numbers.Count<>());
+		for (int i=0; i<glyphs.size(); i++) {
+			Shape s = view.createTransformedShape(glyphs.get(i).shape());
+			GlyphList<Shape, Integer> one = new GlyphList<>();
+			one.add(glyphs.get(i));
+			Aggregates<Integer> single = new TouchesPixel.Shapes().processSubset(one, view, AggregateUtils.make(-SIZE, -SIZE, SIZE, SIZE, 0), new Numbers.Count<>());
+			for (int x=-SIZE; x<SIZE; x++) {
+				for (int y=-SIZE; y<SIZE; y++) {
+					assertThat(String.format("Glyph %d at %d,%d", i, x, y), single.get(x, y), is(s.contains(x, y) ? 1 : 0));
+				}
+			}
+		}
+		
+		for (int x=-SIZE; x<SIZE; x++) {
+			for (int y=-SIZE; y<SIZE; y++) {
+				int expected = 0;
+				for (int i=0; i<glyphs.size(); i++) {expected += view.createTransformedShape(glyphs.get(i).shape()).contains(x, y) ? 1 : 0;}
+				assertThat(String.format("Total at %d,%d", x, y), actual.get(x, y), is(expected));
+			}
+		}
+	}
+	
+	private static GlyphList<Shape, Integer> shapes() {
+		Random r = new Random(7);
+		GlyphList<Shape, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<6; i++) {
+			for (int rule: new int[]{Path2D.WIND_EVEN_ODD, Path2D.WIND_NON_ZERO}) {
+				Path2D p = new Path2D.Double(rule);		//Random (often self-intersecting) polygons
+				p.moveTo(r.nextDouble()*60-30, r.nextDouble()*60-30);
+				for (int v=0; v<8; v++) {p.lineTo(r.nextDouble()*60-30, r.nextDouble()*60-30);}
+				p.closePath();
+				glyphs.add(new SimpleGlyph<>(p, 1));
+			}
+		}
+		
+		Path2D holes = new Path2D.Double(Path2D.WIND_NON_ZERO);		//Integer vertices, horizontal edges, a hole and an unclosed sub-path
+		holes.moveTo(-20, -20); holes.lineTo(20, -20); holes.lineTo(20, 20); holes.lineTo(-20, 20); holes.closePath();
+		holes.moveTo(-10, -10); holes.lineTo(-10, 10); holes.lineTo(10, 10); holes.lineTo(10, -10); holes.closePath();
+		holes.moveTo(25, 0); holes.lineTo(35, 5); holes.lineTo(25, 10);
+		glyphs.add(new SimpleGlyph<>(holes, 1));
+		
+		glyphs.add(new SimpleGlyph<>(new Polygon(new int[]{0, 10, 5}, new int[]{0, 0, 10}, 3), 1));
+		glyphs.add(new SimpleGlyph<>(new Rectangle2D.Double(-3.5, 2, 7, 4.25), 1));
+		glyphs.add(new SimpleGlyph<>(new Ellipse2D.Double(-5, -5, 12.5, 7), 1));		//Curves: hit-tested
+		glyphs.add(new SimpleGlyph<>(new Path2D.Double(), 1));
+		return glyphs;
+	}
+	
+	@Test
+	public void identity() {assertMatchesContains(shapes(), new AffineTransform());}
+	
+	@Test
+	public void scaled() {assertMatchesContains(shapes(), new AffineTransform(1.7, 0, 0, 1.3, 3.25, -4.5));}
+
+	@Test
+	public void rotated() {
+		AffineTransform view = AffineTransform.getRotateInstance(.6);
+		view.scale(1.5, 1.5);
+		assertMatchesContains(shapes(), view);
+	}
+}
@@ -0,0 +1,108 @@
+package ar.test.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.awt.Point;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.aggregates.implementations.IntAggregates;
+import ar.aggregates.implementations.RefFlatAggregates;
+import ar.rules.CategoricalCounts;
+import ar.util.AggregateStats;
+import ar.util.Util;
+
+public class TestAggregateStats {
+	private static final int WIDTH = 700, HEIGHT = 500;		//Larger than one task
+	
+	@Test
+	public void numericMatchesSerial() {
+		Random r = new Random(3);
+		IntAggregates ints = new IntAggregates(-10, 5, WIDTH-10, HEIGHT+5, 0);
+		Aggregates<Double> doubles = new RefFlatAggregates<>(0, 0, WIDTH, HEIGHT, -1d);
+		double sum=0, squares=0;
+		long count=0;
+		int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+		for (int x=ints.lowX(); x<ints.highX(); x++) {
+			for (int y=ints.lowY(); y<ints.highY(); y++) {
+				int v = r.nextInt(10) == 0 ? r.nextInt(1000)-200 : 0;
+				ints.setInt(x, y, v);
+				doubles.set(x+10, y-5, v == 0 ? -1d : (double) v);
+				if (v == 0) {continue;}
+				sum += v;
+				squares += (double) v*v;
+				count++;
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+		}
+		doubles.set(3, 3, null);
+		doubles.set(4, 4, Double.NaN);
+		
+		double mean = sum/count;
+		double stdev = Math.sqrt(squares/count - mean*mean);
+		Util.Stats<Integer> s = Util.stats(ints);
+		assertThat(s.min, is(min));
+		assertThat(s.max, is(max));
+		assertEquals(mean, s.mean, 1e-9);
+		assertEquals(stdev, s.stdev, 1e-9);
+		assertThat(s.defaultCount, is((long) WIDTH*HEIGHT - count));
+		
+		Util.Stats<Double> d = Util.stats(doubles);
+		assertThat(d.min, is((double) min));
+		assertThat(d.max, is((double) max));
+		assertThat(d.nullCount, is(1L));
+		assertThat(d.nanCount, is(1L));
+		
+		Util.Stats<Integer> all = Util.stats(ints, false, false, false, false);
+		assertEquals(sum/(WIDTH*HEIGHT), all.mean, 1e-9);
+	}
+	
+	@Test
+	public void percentiles() {
+		IntAggregates ints = new IntAggregates(0, 0, WIDTH, HEIGHT, -1);
+		for (int x=0; x<WIDTH; x++) {
+			for (int y=0; y<HEIGHT; y++) {ints.setInt(x, y, (y*WIDTH+x)%100);}
+		}
+		double[] ps = AggregateStats.percentiles(ints, true, 0, .5, .99, 1);
+		assertThat(ps[0], is(0d));
+		assertThat(ps[1], is(49d));
+		assertThat(ps[2], is(98d));
+		assertThat(ps[3], is(99d));
+		
+		assertThat(AggregateStats.percentiles(new IntAggregates(0, 0, 0, 0, 0), true, .5)[0], is(Double.NaN));
+	}
+	
+	@Test
+	public void extremaLocations() {
+		IntAggregates ints = new IntAggregates(0, 0, WIDTH, HEIGHT, 0);
+		ints.setInt(600, 3, 9);
+		ints.setInt(200, 400, 9);
+		ints.setInt(200, 450, 9);
+		ints.setInt(650, 499, -4);
+		Comparator<Integer> comp = Integer::compare;
+		assertThat(AggregateStats.max(ints, comp), is(new Point(200, 400)));
+		assertThat(AggregateStats.min(ints, comp), is(new Point(650, 499)));
+	}
+	
+	@Test
+	public void categoryTotals() {
+		Aggregates<CategoricalCounts<String>> cats = new RefFlatAggregates<>(0, 0, WIDTH, HEIGHT, new CategoricalCounts<String>());
+		for (int x=0; x<WIDTH; x++) {
+			for (int y=0; y<HEIGHT; y++) {
+				CategoricalCounts<String> c = new CategoricalCounts<String>().extend("a", 1);
+				if (x%2 == 0) {c = c.extend("b", 2);}
+				cats.set(x, y, c);
+			}
+		}
+		Map<String, Long> totals = AggregateStats.categoryTotals(cats);
+		assertThat(totals.get("a"), is((long) WIDTH*HEIGHT));
+		assertThat(totals.get("b"), is((long) WIDTH*HEIGHT));
+		assertThat(AggregateStats.maxInt(cats, (a, x, y) -> a.get(x, y).fullSize()), is(3));
+	}
+}
@@ -0,0 +1,80 @@
+package ar.test.util;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ar.Aggregates;
+import ar.Renderer;
+import ar.aggregates.implementations.IntAggregates;
+import ar.aggregates.wrappers.TouchedBoundsWrapper;
+import ar.glyphsets.GlyphList;
+import ar.glyphsets.SimpleGlyph;
+import ar.renderers.ForkJoinRenderer;
+import ar.renderers.ThreadpoolRenderer;
+import ar.rules.Numbers;
+import ar.selectors.TouchesPixel;
+import ar.util.AggregateStats;
+import ar.util.RunningStats;
+import ar.util.Util;
+
+public class TestRunningStats {
+	@Test
+	public void tracksChanges() {
+		TouchedBoundsWrapper<Integer> aggs = TouchedBoundsWrapper.wrap(new IntAggregates(0, 0, 10, 10, 0), false, true);
+		RunningStats stats = aggs.stats();
+		aggs.set(1, 1, 4);
+		aggs.set(2, 2, 4);
+		aggs.set(3, 3, 1);
+		aggs.set(3, 3, 2);		//Min increased, but it was the only min: unknown from here
+		assertThat(stats.count(), is(3L));
+		assertFalse(stats.valid());
+		assertThat(RunningStats.of(aggs), is(nullValue()));
+		
+		aggs = TouchedBoundsWrapper.wrap(new IntAggregates(0, 0, 10, 10, 0), false, true);
+		aggs.set(1, 1, 3);
+		aggs.set(2, 2, 3);
+		aggs.set(3, 3, 1);
+		aggs.set(4, 4, 1);
+		aggs.set(1, 1, 8);		//Another 3 remains
+		aggs.set(3, 3, 0);		//Back to default; another 1 remains
+		Util.Stats<Integer> s = Util.stats(aggs);
+		assertTrue(aggs.stats().valid());
+		assertThat(s.min, is(1));
+		assertThat(s.max, is(8));
+		assertThat(s.mean, is(4d));
+		assertEquals(Math.sqrt(26/3d), s.stdev, 1e-9);
+		assertThat(s.defaultCount, is(cells(aggs)-3));
+	}
+	
+	private static long cells(Aggregates<?> aggs) {return ((long) aggs.highX()-aggs.lowX())*(aggs.highY()-aggs.lowY());}
+	
+	@Test
+	public void collectedWhileRendering() {
+		Random r = new Random(11);
+		GlyphList<Point2D, Integer> glyphs = new GlyphList<>();
+		for (int i=0; i<50000; i++) {glyphs.add(new SimpleGlyph<>(new Point2D.Double(r.nextGaussian()*50, r.nextGaussian()*30), 1));}
+		
+		for (Renderer renderer: new Renderer[]{new ForkJoinRenderer(), new ThreadpoolRenderer()}) {
+			for (AffineTransform view: new AffineTransform[]{new AffineTransform(), AffineTransform.getScaleInstance(20, 20)}) {		//Dense and sparse
+				Numbers.Count<Object> op = new Numbers.Count<>();
+				Aggregates<Integer> aggs = renderer.aggregate(glyphs, new TouchesPixel.Points(), op, view, 
+						ThreadpoolRenderer.defaultAllocator(glyphs, view, true), ThreadpoolRenderer.defaultMerge(op));
+				assertThat(RunningStats.of(aggs), is(notNullValue()));
+				
+				Util.Stats<Integer> running = Util.stats(aggs, false, false, false, false);
+				Util.Stats<Integer> scanned = AggregateStats.numeric(aggs, false, false, false, false);
+				assertThat(running.min, is(scanned.min));
+				assertThat(running.max, is(scanned.max));
+				assertThat(running.defaultCount, is(scanned.defaultCount));
+				assertEquals(scanned.mean, running.mean, 1e-9);
+				assertEquals(scanned.stdev, running.stdev, 1e-6);
+			}
+		}
+	}
+}
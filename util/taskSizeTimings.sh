@@ -1,10 +1,10 @@
 #!/bin/sh
-java -cp ARApp.jar ar.RenderSpeedTest -config Kiva -task 100000000 >> taskTiming.txt 
-java -cp ARApp.jar ar.RenderSpeedTest -config Kiva -task 10000000 >> taskTiming.txt 
-java -cp ARApp.jar ar.RenderSpeedTest -config Kiva -task 1000000 >> taskTiming.txt 
-java -cp ARApp.jar ar.RenderSpeedTest -config Kiva -task 100000 >> taskTiming.txt 
-java -cp ARApp.jar ar.RenderSpeedTest -config Kiva -task 10000 >> taskTiming.txt 
-java -cp ARApp.jar ar.RenderSpeedTest -config Kiva -task 1000 >> taskTiming.txt 
-java -cp ARApp.jar ar.RenderSpeedTest -config Kiva -task 100 >> taskTiming.txt 
-java -cp ARApp.jar ar.RenderSpeedTest -config Kiva -task 10 >> taskTiming.txt 
-java -cp ARApp.jar ar.RenderSpeedTest -config Kiva -task 1 >> taskTiming.txt 
+java -cp ARApp.jar ar.benchmarks.RenderSpeed -config KIVA -tasksMult 1 >> taskTiming.txt 
+java -cp ARApp.jar ar.benchmarks.RenderSpeed -config KIVA -tasksMult 2 >> taskTiming.txt 
+java -cp ARApp.jar ar.benchmarks.RenderSpeed -config KIVA -tasksMult 4 >> taskTiming.txt 
+java -cp ARApp.jar ar.benchmarks.RenderSpeed -config KIVA -tasksMult 8 >> taskTiming.txt 
+java -cp ARApp.jar ar.benchmarks.RenderSpeed -config KIVA -tasksMult 16 >> taskTiming.txt 
+java -cp ARApp.jar ar.benchmarks.RenderSpeed -config KIVA -tasksMult 32 >> taskTiming.txt 
+java -cp ARApp.jar ar.benchmarks.RenderSpeed -config KIVA -tasksMult 64 >> taskTiming.txt 
+java -cp ARApp.jar ar.benchmarks.RenderSpeed -config KIVA -tasksMult 128 >> taskTiming.txt 
+java -cp ARApp.jar ar.benchmarks.RenderSpeed -config KIVA -tasksMult 256 >> taskTiming.txt 